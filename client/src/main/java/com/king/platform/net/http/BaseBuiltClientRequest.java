@@ -2,6 +2,7 @@ package com.king.platform.net.http;
 
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 
 public interface BaseBuiltClientRequest<T, B extends BaseBuiltClientRequest<T, B>> {
@@ -13,6 +14,26 @@ public interface BaseBuiltClientRequest<T, B extends BaseBuiltClientRequest<T, B
 	 */
 	CompletableFuture<HttpResponse<T>> execute();
 
+	/**
+	 * Execute the built request and wait for its response on the calling thread.
+	 * The thread is parked while it waits, which is cheap on virtual threads, see
+	 * {@link com.king.platform.net.http.netty.NettyHttpClientBuilder#setVirtualThreadHttpCallbacks(boolean)}.
+	 * The request is cancelled if the waiting thread is interrupted.
+	 *
+	 * @return the response of the request
+	 * @throws ExecutionException if the request failed, the cause is the reason of the failure
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	default HttpResponse<T> executeBlocking() throws ExecutionException, InterruptedException {
+		CompletableFuture<HttpResponse<T>> future = execute();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		}
+	}
+
 	/**
 	 * Specific httpCallback that will be executed for all requests
 	 * HttpCallbacks are executed on the HttpCallbackExecutor
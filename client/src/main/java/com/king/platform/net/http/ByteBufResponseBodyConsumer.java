@@ -0,0 +1,33 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ResponseBodyConsumer} receiving the parts of the body as the buffers read from the connection, without copying them.
+ */
+public interface ByteBufResponseBodyConsumer<T> extends ResponseBodyConsumer<T> {
+	/**
+	 * Called on the nio thread instead of {@link #onReceivedContentPart(ByteBuffer)}.
+	 * @param buffer a retained part of the body, the consumer owns it and has to release it, also when this method throws
+	 */
+	void onReceivedContentPart(ByteBuf buffer) throws Exception;
+
+	/**
+	 * Called when the request fails after parts of the body have been received, the parts kept by the consumer should be released.
+	 */
+	void onError(Throwable throwable);
+
+	@Override
+	default void onReceivedContentPart(ByteBuffer buffer) throws Exception {
+		onReceivedContentPart(Unpooled.copiedBuffer(buffer));
+	}
+}
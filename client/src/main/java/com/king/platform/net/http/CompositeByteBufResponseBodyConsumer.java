@@ -0,0 +1,66 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Keeps the buffers read from the connection as the components of one composite buffer, the body is never copied.
+ * The body is a read only view of the buffers. Every call of {@link #getBody()}, and so of {@link HttpResponse#getBody()}, returns the same
+ * view, which holds the only reference to the buffers. The caller owns it and releases it exactly once when done. Until then the buffers
+ * can't be reused by the client, so the body should be released as soon as it has been parsed.
+ * <p>
+ * {@link ByteBuf#nioBuffers()} gives the body as {@link java.nio.ByteBuffer}s without copying, {@link ByteBuf#nioBuffer()} copies a body
+ * received in more than one part.
+ */
+public class CompositeByteBufResponseBodyConsumer implements ByteBufResponseBodyConsumer<ByteBuf> {
+	private CompositeByteBuf body;
+	private ByteBuf readOnlyBody;
+	private boolean failed;
+
+	@Override
+	public synchronized void onBodyStart(String contentType, String charset, long contentLength) throws Exception {
+		body = Unpooled.compositeBuffer(Integer.MAX_VALUE);  //the components are never consolidated, that would copy them
+	}
+
+	@Override
+	public synchronized void onReceivedContentPart(ByteBuf buffer) throws Exception {
+		if (failed || body == null) {
+			buffer.release();
+			return;
+		}
+		body.addComponent(true, buffer);
+	}
+
+	@Override
+	public void onCompletedBody() throws Exception {
+
+	}
+
+	@Override
+	public synchronized void onError(Throwable throwable) {
+		failed = true;
+		if (body != null) {
+			body.release();
+			body = null;
+			readOnlyBody = null;
+		}
+	}
+
+	@Override
+	public synchronized ByteBuf getBody() {
+		if (body == null) {
+			return Unpooled.EMPTY_BUFFER;
+		}
+		if (readOnlyBody == null) {
+			readOnlyBody = body.asReadOnly();
+		}
+		return readOnlyBody;
+	}
+}
@@ -7,6 +7,8 @@ package com.king.platform.net.http;
 
 
 import com.king.platform.net.http.netty.NettyChannelOptions;
+import com.king.platform.net.http.netty.pool.LoadBalancer;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.resolver.AddressResolverGroup;
 import io.netty.resolver.DefaultAddressResolverGroup;
 
@@ -36,9 +38,26 @@ public class ConfKeys<T> {
 	public static final ConfKeys<Boolean> SSL_ALLOW_ALL_CERTIFICATES = new ConfKeys<>(false);
 
 	/**
-	 * How long should the client handshake for in milli seconds, defaults to 1000
+	 * How long the client waits for the TLS handshake of a new connection in milli seconds, defaults to 10000 which is the default of netty
 	 */
-	public static final ConfKeys<Integer> SSL_HANDSHAKE_TIMEOUT_MILLIS = new ConfKeys<>(1000);
+	public static final ConfKeys<Integer> SSL_HANDSHAKE_TIMEOUT_MILLIS = new ConfKeys<>(10000);
+
+	/**
+	 * The max number of TLS sessions the client caches for resumption, shared by all servers, defaults to 0 which uses the default of the
+	 * SSL provider
+	 */
+	public static final ConfKeys<Integer> SSL_SESSION_CACHE_SIZE = new ConfKeys<>(0);
+
+	/**
+	 * How long a cached TLS session can be resumed in seconds, defaults to 1000. 0 uses the default of the SSL provider
+	 */
+	public static final ConfKeys<Integer> SSL_SESSION_TIMEOUT_SECONDS = new ConfKeys<>(1000);
+
+	/**
+	 * The SSL provider of the client, defaults to {@link SslProvider#JDK}. {@link SslProvider#OPENSSL} and {@link SslProvider#OPENSSL_REFCNT}
+	 * need netty-tcnative on the classpath, the client falls back to the JDK provider with a warning when it can't be loaded.
+	 */
+	public static final ConfKeys<SslProvider> SSL_PROVIDER = new ConfKeys<>(SslProvider.JDK);
 
 
 	/**
@@ -73,18 +92,74 @@ public class ConfKeys<T> {
 	 */
 	public static final ConfKeys<Boolean> EXECUTE_ON_CALLING_THREAD = new ConfKeys<>(false);
 
+	/**
+	 * Should the whole life cycle of a request (execution, timeouts, events and cancellation) run on one nio event loop, which is also the
+	 * event loop of its connection. Uses a channel pool per event loop unless a custom channel pool is set, defaults to false
+	 */
+	public static final ConfKeys<Boolean> EVENT_LOOP_CONFINED_REQUESTS = new ConfKeys<>(false);
+
+	/**
+	 * Should the internal objects of requests confined to an event loop (request context, event bus, response and time recorder) be taken
+	 * from recyclers and given back when the request has completed or failed. Only applies together with EVENT_LOOP_CONFINED_REQUESTS and the
+	 * default root event bus, and not to web socket requests. The time stamps handed to the metric callback are then only valid during the
+	 * callback, defaults to false
+	 */
+	public static final ConfKeys<Boolean> RECYCLE_REQUESTS = new ConfKeys<>(false);
+
+	/**
+	 * Should the callbacks completed on a nio event loop be handed to the default callback executor as one batch per run of the event loop,
+	 * instead of as one task per callback. Callbacks of requests with their own executor are not batched, defaults to false
+	 */
+	public static final ConfKeys<Boolean> BATCH_CALLBACK_DISPATCH = new ConfKeys<>(false);
+
+	/**
+	 * Should responses complete their futures and invoke their callbacks directly on the nio thread, instead of on the callback executor.
+	 * Saves the executor handoff for cheap callbacks, callbacks that block are logged as warnings, defaults to false
+	 */
+	public static final ConfKeys<Boolean> COMPLETE_ON_NIO_THREAD = new ConfKeys<>(false);
+
 
 	/**
 	 * Use epoll if available
 	 */
 	public static final ConfKeys<Boolean> USE_EPOLL = new ConfKeys<>(false);
 
+	/**
+	 * Negotiate HTTP/2 with ALPN on https connections and multiplex the requests to the server on one connection, falling back to
+	 * HTTP/1.1 if the server doesn't support it, defaults to false
+	 */
+	public static final ConfKeys<Boolean> USE_HTTP2 = new ConfKeys<>(false);
+
+	/**
+	 * Use HTTP/2 without negotiation (h2c with prior knowledge) on http connections, only for servers known to support it, defaults to false
+	 */
+	public static final ConfKeys<Boolean> HTTP2_PRIOR_KNOWLEDGE = new ConfKeys<>(false);
+
 
 	/**
-	 * Use custom dns resolver instead of standard {@link io.netty.resolver.DefaultAddressResolverGroup}
+	 * Use custom dns resolver instead of standard {@link io.netty.resolver.DefaultAddressResolverGroup}, which makes a blocking lookup for
+	 * each new connection. {@link com.king.platform.net.http.netty.dns.CachingAddressResolverGroup} caches the lookups of the client.
 	 */
 	public static final ConfKeys<AddressResolverGroup<?>> DNS_RESOLVER = new ConfKeys<>(DefaultAddressResolverGroup.INSTANCE);
 
+	/**
+	 * Should new connections try all resolved addresses of the host (happy eyeballs), starting the next attempt when the previous fails
+	 * or has not connected within {@link #HAPPY_EYEBALLS_ATTEMPT_DELAY_MILLIS}. The first connected attempt is used and the others are
+	 * cancelled. Defaults to false, which connects to the first resolved address only
+	 */
+	public static final ConfKeys<Boolean> HAPPY_EYEBALLS = new ConfKeys<>(false);
+
+	/**
+	 * How long a connection attempt runs before the next address is tried in parallel, defaults to 250
+	 */
+	public static final ConfKeys<Integer> HAPPY_EYEBALLS_ATTEMPT_DELAY_MILLIS = new ConfKeys<>(250);
+
+	/**
+	 * Spread the requests to hosts over several backend addresses, see {@link com.king.platform.net.http.netty.pool.LoadBalancer}.
+	 * Defaults to null, which sends the requests to the address the host resolves to.
+	 */
+	public static final ConfKeys<LoadBalancer> LOAD_BALANCER = new ConfKeys<>(null);
+
 	/**
 	 * Add any custom {@link io.netty.channel.ChannelOption} that will be used to populate the connection to the servers.
 	 */
@@ -110,6 +185,12 @@ public class ConfKeys<T> {
 	 */
 	public static final ConfKeys<Integer> KEEP_ALIVE_TIMEOUT_MILLIS = new ConfKeys<>(30_000);
 
+	/**
+	 * Should idempotent requests be retried once on a new connection when a pooled connection is closed by the server before
+	 * the response headers are read. Requests with a body are only retried if the body can be written again. Defaults to false
+	 */
+	public static final ConfKeys<Boolean> RETRY_IDEMPOTENT_REQUESTS_ON_STALE_CONNECTION = new ConfKeys<>(false);
+
 	/**
 	 * Set default request body charset, defaults to iso-8859-1
 	 */
@@ -104,6 +104,15 @@ public interface HttpClientRequestHeaderBuilder<T extends HttpClientRequestHeade
 	 */
 	T executingOn(Executor executor);
 
+	/**
+	 * Set if the future should be completed and the callbacks invoked directly on the nio thread, without going through an executor.
+	 * The callbacks must not block. When set, the executor of {@link #executingOn(Executor)} is not used.<br>
+	 * Overrides {@link ConfKeys#COMPLETE_ON_NIO_THREAD}
+	 * @param completeOnNioThread true if the request should be completed on the nio thread
+	 * @return the builder
+	 */
+	T completeOnNioThread(boolean completeOnNioThread);
+
 	/**
 	 * Set if the response should automatically be decompressed (if gziped).
 	 * Overrides {@link ConfKeys#AUTOMATICALLY_DECOMPRESS_RESPONSE}
@@ -42,6 +42,10 @@ public class HttpResponse<T> {
 		return status.reasonPhrase();
 	}
 
+	/**
+	 * @return the body built by the response body consumer, the same instance on every call. Reference counted bodies are released once
+	 * by the caller, see {@link CompositeByteBufResponseBodyConsumer}.
+	 */
 	public T getBody() {
 		return responseBodyConsumer.getBody();
 	}
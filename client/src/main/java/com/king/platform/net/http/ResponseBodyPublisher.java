@@ -0,0 +1,221 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Publishes the response body to one {@link ResponseBodySubscriber}, part by part as the subscriber requests them.
+ * Reading from the connection is paused while the subscriber has no outstanding demand, so at most the parts of one read are kept in memory.
+ * <pre>
+ * ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+ * CompletableFuture&lt;HttpResponse&lt;ResponseBodyPublisher&gt;&gt; future = httpClient.createGet(uri).build(() -&gt; publisher).execute();
+ * publisher.subscribe(subscriber);
+ * </pre>
+ * The response future completes when the whole body has been read from the connection, so it has to be subscribed to before waiting for the
+ * response. The subscriber is called on the nio thread or on the thread calling {@link ResponseBodySubscription#request(long)}, it must not block.
+ */
+public class ResponseBodyPublisher implements StreamingResponseBodyConsumer<ResponseBodyPublisher> {
+	private static final ResponseBodySubscription CANCELLED = new ResponseBodySubscription() {
+		@Override
+		public void request(long n) {
+		}
+
+		@Override
+		public void cancel() {
+		}
+	};
+
+	private final ArrayDeque<ByteBuffer> parts = new ArrayDeque<>();
+
+	private ResponseBodySubscriber subscriber;
+	private ResponseBodyReadControl readControl;
+	private long demand;
+	private boolean completed;
+	private Throwable error;
+	private boolean terminated;
+	private boolean draining;
+	private boolean reading = true;
+
+	public void subscribe(ResponseBodySubscriber subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+
+		boolean first;
+		synchronized (this) {
+			first = this.subscriber == null;
+			if (first) {
+				this.subscriber = subscriber;
+				draining = true;  //no signals before onSubscribe has returned
+			}
+		}
+
+		if (!first) {
+			subscriber.onSubscribe(CANCELLED);
+			subscriber.onError(new IllegalStateException("The response body can only be subscribed to once"));
+			return;
+		}
+
+		subscriber.onSubscribe(new Subscription());
+
+		synchronized (this) {
+			draining = false;
+		}
+		drain();
+	}
+
+	@Override
+	public void onReadControl(ResponseBodyReadControl readControl) {
+		synchronized (this) {
+			this.readControl = readControl;
+		}
+		drain();
+	}
+
+	@Override
+	public void onBodyStart(String contentType, String charset, long contentLength) throws Exception {
+	}
+
+	@Override
+	public void onReceivedContentPart(ByteBuffer buffer) throws Exception {
+		synchronized (this) {
+			if (terminated) {  //cancelled, the rest of the body is discarded
+				return;
+			}
+			ByteBuffer part = ByteBuffer.allocate(buffer.remaining());  //the buffer is released after this call
+			part.put(buffer);
+			part.flip();
+			parts.add(part);
+		}
+		drain();
+	}
+
+	@Override
+	public void onCompletedBody() throws Exception {
+		synchronized (this) {
+			completed = true;
+		}
+		drain();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		synchronized (this) {
+			if (error == null) {
+				error = throwable;
+			}
+		}
+		drain();
+	}
+
+	@Override
+	public ResponseBodyPublisher getBody() {
+		return this;
+	}
+
+	private void request(long n) {
+		synchronized (this) {
+			if (terminated) {
+				return;
+			}
+			if (n <= 0) {
+				parts.clear();
+				error = new IllegalArgumentException("Requested " + n + " parts, the demand has to be positive");
+			} else {
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+		}
+		drain();
+	}
+
+	private void cancel() {
+		synchronized (this) {
+			terminated = true;
+			parts.clear();
+			updateReading();
+		}
+	}
+
+	/**
+	 * Delivers the signals the subscriber is ready for. Only one thread drains at a time, a thread finding another thread draining leaves its
+	 * signals to that thread, which checks the state again before it stops.
+	 */
+	private void drain() {
+		synchronized (this) {
+			if (draining) {
+				return;
+			}
+			draining = true;
+		}
+
+		while (true) {
+			ResponseBodySubscriber subscriber;
+			ByteBuffer part = null;
+			Throwable failure = null;
+
+			synchronized (this) {
+				subscriber = this.subscriber;
+				if (subscriber == null || terminated) {
+					draining = false;
+					updateReading();
+					return;
+				}
+
+				if (error != null) {
+					terminated = true;
+					failure = error;
+					parts.clear();
+				} else if (demand > 0 && !parts.isEmpty()) {
+					demand--;
+					part = parts.poll();
+				} else if (completed && parts.isEmpty()) {
+					terminated = true;
+				} else {
+					draining = false;
+					updateReading();
+					return;
+				}
+			}
+
+			if (part != null) {
+				subscriber.onNext(part);
+			} else if (failure != null) {
+				subscriber.onError(failure);
+			} else {
+				subscriber.onComplete();
+			}
+		}
+	}
+
+	private void updateReading() {
+		boolean read = terminated || completed || demand > 0;
+		if (readControl == null || read == reading) {
+			return;
+		}
+
+		reading = read;
+		if (read) {
+			readControl.resumeReading();
+		} else {
+			readControl.pauseReading();
+		}
+	}
+
+	private class Subscription implements ResponseBodySubscription {
+		@Override
+		public void request(long n) {
+			ResponseBodyPublisher.this.request(n);
+		}
+
+		@Override
+		public void cancel() {
+			ResponseBodyPublisher.this.cancel();
+		}
+	}
+}
@@ -0,0 +1,23 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+/**
+ * Controls the reading of the response body from the connection, see {@link StreamingResponseBodyConsumer}.
+ * The methods can be called from any thread, they are applied on the nio thread of the connection.
+ */
+public interface ResponseBodyReadControl {
+	/**
+	 * Stop reading from the connection, the parts already read are still delivered to the consumer.
+	 */
+	void pauseReading();
+
+	/**
+	 * Continue reading from the connection.
+	 */
+	void resumeReading();
+}
@@ -0,0 +1,27 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the response body from a {@link ResponseBodyPublisher}, following the contract of a Reactive Streams subscriber:
+ * no more parts than requested through the subscription are delivered, the signals are never delivered concurrently
+ * and {@link #onComplete()} or {@link #onError(Throwable)} is the last signal.
+ */
+public interface ResponseBodySubscriber {
+	void onSubscribe(ResponseBodySubscription subscription);
+
+	/**
+	 * @param buffer a part of the body, owned by the subscriber
+	 */
+	void onNext(ByteBuffer buffer);
+
+	void onError(Throwable throwable);
+
+	void onComplete();
+}
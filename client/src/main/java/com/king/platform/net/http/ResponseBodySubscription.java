@@ -0,0 +1,22 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+/**
+ * The demand of a {@link ResponseBodySubscriber}, following the contract of a Reactive Streams subscription.
+ */
+public interface ResponseBodySubscription {
+	/**
+	 * Request n more parts of the body, n has to be positive.
+	 */
+	void request(long n);
+
+	/**
+	 * Stop receiving parts of the body. The rest of the response is read and discarded so the connection can be reused.
+	 */
+	void cancel();
+}
@@ -0,0 +1,26 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+/**
+ * A {@link ResponseBodyConsumer} that can pause the reading of the response body when it can't keep up with the server,
+ * instead of buffering the whole body in memory.
+ * <p>
+ * Reading is resumed by the client when the body has been read completely, paused reading must not be left for the idle timeout of the request
+ * to fire as that fails the request.
+ */
+public interface StreamingResponseBodyConsumer<T> extends ResponseBodyConsumer<T> {
+	/**
+	 * Called on the nio thread before {@link #onBodyStart(String, String, long)}.
+	 */
+	void onReadControl(ResponseBodyReadControl readControl);
+
+	/**
+	 * Called when the request fails after the consumer has been handed to the client, the body will not be completed.
+	 */
+	void onError(Throwable throwable);
+}
@@ -0,0 +1,110 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Hands the callbacks submitted from the event loops of the client to the callback executor in batches, one batch per event loop and run of
+ * the event loop. The first callback submitted during a run schedules the batch on the task queue of the event loop, which is processed after
+ * the I/O of the run, and the batch is then executed as one task on the callback executor. The callbacks of a batch run in the order they were
+ * submitted.
+ * <p>
+ * Callbacks submitted from other threads are handed to the callback executor one by one.
+ */
+class BatchingCallbackExecutor implements Executor {
+	private static final Logger logger = getLogger(BatchingCallbackExecutor.class);
+
+	private final Executor callbackExecutor;
+	private final EventExecutorGroup eventLoopGroup;
+
+	private final FastThreadLocal<Batch> batches = new FastThreadLocal<Batch>() {
+		@Override
+		protected Batch initialValue() {
+			for (EventExecutor eventLoop : eventLoopGroup) {
+				if (eventLoop.inEventLoop()) {
+					return new Batch(eventLoop);
+				}
+			}
+			return new Batch(null);
+		}
+	};
+
+	BatchingCallbackExecutor(Executor callbackExecutor, EventExecutorGroup eventLoopGroup) {
+		this.callbackExecutor = callbackExecutor;
+		this.eventLoopGroup = eventLoopGroup;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		Batch batch = batches.get();
+		if (batch.eventLoop == null) {
+			callbackExecutor.execute(command);
+		} else {
+			batch.add(command);
+		}
+	}
+
+	private static void runAll(List<Runnable> tasks) {
+		for (Runnable task : tasks) {
+			try {
+				task.run();
+			} catch (Throwable throwable) {  //the rest of the batch belongs to other requests
+				logger.error("Callback failed", throwable);
+			}
+		}
+	}
+
+	/**
+	 * The callbacks submitted on one event loop, only touched from that event loop.
+	 */
+	private final class Batch implements Runnable {
+		private final EventExecutor eventLoop;
+		private List<Runnable> tasks = new ArrayList<>();
+		private boolean scheduled;
+
+		private Batch(EventExecutor eventLoop) {
+			this.eventLoop = eventLoop;
+		}
+
+		private void add(Runnable task) {
+			tasks.add(task);
+			if (scheduled) {
+				return;
+			}
+
+			scheduled = true;
+			try {
+				eventLoop.execute(this);
+			} catch (RejectedExecutionException e) {  //the event loop is shutting down, don't keep the callbacks waiting for it
+				run();
+			}
+		}
+
+		@Override
+		public void run() {
+			scheduled = false;
+			List<Runnable> batch = tasks;
+			tasks = new ArrayList<>();
+
+			if (batch.size() == 1) {
+				callbackExecutor.execute(batch.get(0));
+			} else {
+				callbackExecutor.execute(() -> runAll(batch));
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import com.king.platform.net.http.netty.util.TimeProvider;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Keeps the time of the last read or write on the channel, for the idle timeout of the requests sent on it.
+ * The clock is read once per batch of reads and once per flush, not for every chunk passing through the pipeline,
+ * and the time is only looked at when the idle timer fires.
+ */
+public class ChannelActivityHandler extends ChannelDuplexHandler {
+	private static final AtomicLongFieldUpdater<ChannelActivityHandler> LAST_ACTIVITY_UPDATER = AtomicLongFieldUpdater.newUpdater
+		(ChannelActivityHandler.class, "lastActivity");
+
+	private final TimeProvider timeProvider;
+	private volatile long lastActivity;
+
+	public ChannelActivityHandler(TimeProvider timeProvider) {
+		this.timeProvider = timeProvider;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		touch();
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		touch();
+		ctx.fireChannelReadComplete();
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		touch();
+		ctx.flush();
+	}
+
+	private void touch() {
+		//only written from the event loop of the channel, the idle timer only has to see the write before its next check
+		LAST_ACTIVITY_UPDATER.lazySet(this, timeProvider.currentTimeInMillis());
+	}
+
+	public long getLastActivity() {
+		return lastActivity;
+	}
+}
@@ -8,8 +8,16 @@ package com.king.platform.net.http.netty;
 
 import com.king.platform.net.http.ConfKeys;
 import com.king.platform.net.http.netty.eventbus.*;
+import com.king.platform.net.http.netty.http2.Http2SettingsHandler;
+import com.king.platform.net.http.netty.http2.Http2StreamContentEncoder;
+import com.king.platform.net.http.netty.metric.RecordedTimeStamps;
+import com.king.platform.net.http.netty.pool.AcquireCallback;
+import com.king.platform.net.http.netty.pool.Backend;
+import com.king.platform.net.http.netty.pool.ChannelConnector;
 import com.king.platform.net.http.netty.pool.ChannelPool;
+import com.king.platform.net.http.netty.pool.LoadBalancer;
 import com.king.platform.net.http.netty.response.NettyHttpClientResponse;
+import com.king.platform.net.http.netty.util.KeepAliveHeader;
 import com.king.platform.net.http.netty.util.TimeProvider;
 import com.king.platform.net.http.netty.websocket.WebSocketHandler;
 import io.netty.bootstrap.Bootstrap;
@@ -21,26 +29,40 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
 import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http2.*;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.resolver.AddressResolverGroup;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.Timer;
+import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.slf4j.Logger;
 
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
-public class ChannelManager {
+public class ChannelManager implements ChannelConnector {
+	private static final int SERVER_KEEP_ALIVE_TIMEOUT_MARGIN_MILLIS = 500;
+
 	private final Logger logger = getLogger(getClass());
 
 	private final TimeProvider timeProvider;
@@ -48,12 +70,25 @@ public class ChannelManager {
 	private final ChannelPool channelPool;
 	private final Bootstrap httpBootstrap;
 	private final SslContext sslContext;
+	private final SslContext webSocketSslContext;
 	private final Bootstrap wsBootstrap;
+	private final ChannelInitializer<Channel> http2StreamInitializer;
 	private final Timer nettyTimer;
+	private final EventLoopGroup eventLoopGroup;
+	private final boolean retryIdempotentRequests;
+	private final boolean useHttp2;
+	private final boolean http2PriorKnowledge;
+	private final boolean confineRequestsToEventLoop;
+	private final HappyEyeballsConnector happyEyeballsConnector;
+	private final LoadBalancer loadBalancer;
+	private final int sslHandshakeTimeoutMillis;
+	private final SslProvider sslProvider;
+	private final ConcurrentHashMap<String, byte[]> sslSessionIds = new ConcurrentHashMap<>();  //the last negotiated session per peer
 
 
 	public ChannelManager(EventLoopGroup nioEventLoop, final HttpClientHandler httpClientHandler, WebSocketHandler webSocketHandler, Timer nettyTimer, TimeProvider timeProvider, ChannelPool
 		channelPool, final ConfMap confMap) {
+		this.eventLoopGroup = nioEventLoop;
 		this.nettyTimer = nettyTimer;
 		this.timeProvider = timeProvider;
 		this.channelPool = channelPool;
@@ -76,6 +111,7 @@ public class ChannelManager {
 				ChannelPipeline pipeline = ch.pipeline();
 
 				addLoggingIfDesired(pipeline, confMap.get(ConfKeys.NETTY_TRACE_LOGS));
+				pipeline.addLast("activity", new ChannelActivityHandler(timeProvider));
 				pipeline.addLast("http-codec", newHttpClientCodec());
 				pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
 				pipeline.addLast("httpClientHandler", httpClientHandler);
@@ -98,7 +134,34 @@ public class ChannelManager {
 		});
 
 
-		sslContext = getSslContext(confMap);
+		http2StreamInitializer = new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				ChannelPipeline pipeline = ch.pipeline();
+
+				addLoggingIfDesired(pipeline, confMap.get(ConfKeys.NETTY_TRACE_LOGS));
+				pipeline.addLast("activity", new ChannelActivityHandler(timeProvider));
+				pipeline.addLast("http-codec", new Http2StreamFrameToHttpObjectCodec(false));
+				pipeline.addLast("http2-content-encoder", new Http2StreamContentEncoder());
+				pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+				pipeline.addLast("httpClientHandler", httpClientHandler);
+			}
+		};
+
+		useHttp2 = confMap.get(ConfKeys.USE_HTTP2);
+		http2PriorKnowledge = confMap.get(ConfKeys.HTTP2_PRIOR_KNOWLEDGE);
+		sslProvider = selectSslProvider(confMap.get(ConfKeys.SSL_PROVIDER));
+		sslContext = getSslContext(confMap, useHttp2);
+		webSocketSslContext = useHttp2 ? getSslContext(confMap, false) : sslContext;
+		retryIdempotentRequests = confMap.get(ConfKeys.RETRY_IDEMPOTENT_REQUESTS_ON_STALE_CONNECTION);
+		confineRequestsToEventLoop = confMap.get(ConfKeys.EVENT_LOOP_CONFINED_REQUESTS);
+		happyEyeballsConnector = confMap.get(ConfKeys.HAPPY_EYEBALLS) ? new HappyEyeballsConnector(addressResolverGroup, confMap.get(ConfKeys
+			.HAPPY_EYEBALLS_ATTEMPT_DELAY_MILLIS)) : null;
+		loadBalancer = confMap.get(ConfKeys.LOAD_BALANCER);
+		if (loadBalancer != null) {
+			channelPool.setLoadBalancer(loadBalancer);
+		}
+		sslHandshakeTimeoutMillis = confMap.get(ConfKeys.SSL_HANDSHAKE_TIMEOUT_MILLIS);
 		httpBootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, confMap.get(ConfKeys.CONNECT_TIMEOUT_MILLIS));
 		wsBootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, confMap.get(ConfKeys.CONNECT_TIMEOUT_MILLIS));
 
@@ -136,14 +199,46 @@ public class ChannelManager {
 	}
 
 
-	private SslContext getSslContext(ConfMap confMap) {
-		SslContextBuilder sslContextBuilder = SslContextBuilder.forClient();
+	private void upgradePipelineToHttp2(Channel channel) {
+		ChannelPipeline pipeline = channel.pipeline();
+		pipeline.remove("activity");  //the activity of the requests is kept by their streams
+		pipeline.remove("http-codec");
+		pipeline.remove("chunkedWriter");
+		pipeline.remove("httpClientHandler");
+
+		pipeline.addLast("http2-codec", Http2FrameCodecBuilder.forClient().initialSettings(Http2Settings.defaultSettings().pushEnabled(false)).build());
+		pipeline.addLast("http2-multiplexer", new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+		pipeline.addLast("http2-settings", new Http2SettingsHandler());
+	}
+
+	private boolean shouldUseHttp2(ServerInfo serverInfo, SslHandler sslHandler) {
+		if (serverInfo.isWebSocket()) {
+			return false;
+		}
+
+		if (sslHandler != null) {
+			return ApplicationProtocolNames.HTTP_2.equals(sslHandler.applicationProtocol());
+		}
+
+		return http2PriorKnowledge;
+	}
+
+	private SslContext getSslContext(ConfMap confMap, boolean negotiateHttp2) {
+		SslContextBuilder sslContextBuilder = SslContextBuilder.forClient().sslProvider(sslProvider);
+
+		if (negotiateHttp2) {
+			sslContextBuilder.applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+				ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE, ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+				ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1));
+		}
 
 		if (confMap.get(ConfKeys.SSL_ALLOW_ALL_CERTIFICATES)) {
 			sslContextBuilder.trustManager(InsecureTrustManagerFactory.INSTANCE);
 		}
 
-		sslContextBuilder.sessionTimeout(confMap.get(ConfKeys.SSL_HANDSHAKE_TIMEOUT_MILLIS));
+		//the client session cache of the context is keyed by the host and port of the handlers, so each server resumes its own sessions
+		sslContextBuilder.sessionCacheSize(confMap.get(ConfKeys.SSL_SESSION_CACHE_SIZE));
+		sslContextBuilder.sessionTimeout(confMap.get(ConfKeys.SSL_SESSION_TIMEOUT_SECONDS));
 
 		try {
 			return sslContextBuilder.build();
@@ -153,6 +248,25 @@ public class ChannelManager {
 
 	}
 
+	private SslProvider selectSslProvider(SslProvider sslProvider) {
+		if (sslProvider != SslProvider.JDK && !OpenSsl.isAvailable()) {
+			logger.warn("SSL provider {} is not available, using the JDK provider instead", sslProvider, OpenSsl.unavailabilityCause());
+			return SslProvider.JDK;
+		}
+		return sslProvider;
+	}
+
+	/**
+	 * Release the SSL contexts when the client is shut down, the contexts of {@link SslProvider#OPENSSL_REFCNT} hold native memory.
+	 * Channels that are still open keep their context alive until they are closed.
+	 */
+	public void shutdown() {
+		ReferenceCountUtil.release(sslContext);
+		if (webSocketSslContext != sslContext) {
+			ReferenceCountUtil.release(webSocketSslContext);
+		}
+	}
+
 	private void addLoggingIfDesired(ChannelPipeline pipeline, boolean desired) {
 		if (desired) {
 			pipeline.addLast("logging", new LoggingHandler(LogLevel.TRACE));
@@ -170,6 +284,19 @@ public class ChannelManager {
 		ServerInfo serverInfo = httpRequestContext.getServerInfo();
 
 
+		if (confineRequestsToEventLoop && !confineToEventLoop(httpRequestContext, requestEventBus)) {
+			return;
+		}
+
+		if (loadBalancer != null) {
+			Backend backend = loadBalancer.select(serverInfo);
+			if (backend != null) {
+				backend.requestStarted();
+				httpRequestContext.setBackend(backend);
+				serverInfo = backend.getServerInfo();
+			}
+		}
+
 		logger.trace("Sending request {} to server {}", httpRequestContext, serverInfo);
 
 		scheduleTimeOutTasks(requestEventBus, httpRequestContext, httpRequestContext.getTotalRequestTimeoutMillis(), httpRequestContext.getIdleTimeoutMillis());
@@ -178,36 +305,150 @@ public class ChannelManager {
 
 		boolean keepAlive = httpRequestContext.isKeepAlive();
 
-		if (keepAlive && channelPool.isActive()) {
-			final Channel channel = channelPool.get(serverInfo);
-			if (channel != null) {
-				logger.trace("Got old channel {} for request {}", channel, httpRequestContext);
-				requestEventBus.triggerEvent(Event.REUSED_CONNECTION, serverInfo);
-				requestEventBus.triggerEvent(Event.onConnected);
+		if (keepAlive && channelPool.isActive() && !httpRequestContext.isForceNewConnection()) {
+			ErrorFlag errorHappened = subscribeToErrors(requestEventBus);
 
-				sendOnChannel(channel, httpRequestContext, requestEventBus);
+			EventLoop eventLoop = confineRequestsToEventLoop ? httpRequestContext.getEventLoop() : channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+			if (eventLoop == null || eventLoop.inEventLoop()) {
+				acquireChannel(httpRequestContext, requestEventBus, eventLoop, errorHappened);
 			} else {
-				logger.trace("Sending on a new channel for request {}", httpRequestContext);
-				sendOnNewChannel(httpRequestContext, requestEventBus);
+				eventLoop.execute(() -> acquireChannel(httpRequestContext, requestEventBus, eventLoop, errorHappened));
 			}
+
 		} else {
+			//retries of stale connections bypass the pool, so they are not counted against max connections per host
 			logger.trace("Sending on a new channel for request {}", httpRequestContext);
-			sendOnNewChannel(httpRequestContext, requestEventBus);
+			sendOnNewChannel(httpRequestContext, requestEventBus, false, httpRequestContext.getEventLoop());
 		}
 
 	}
 
+	/**
+	 * Pick the event loop of the request the first time it is sent, and move the sending to it.
+	 * Redirects and retries of the request are sent on the same event loop.
+	 * @return true if the request can be sent from the current thread
+	 */
+	private boolean confineToEventLoop(HttpRequestContext httpRequestContext, RequestEventBus requestEventBus) {
+		EventLoop eventLoop = httpRequestContext.getEventLoop();
+		if (eventLoop == null) {
+			eventLoop = channelPool.selectEventLoop(httpRequestContext.getServerInfo(), eventLoopGroup);
+			if (eventLoop == null) {
+				eventLoop = eventLoopGroup.next();
+			}
+			httpRequestContext.setEventLoop(eventLoop);
+		}
+
+		if (eventLoop.inEventLoop()) {
+			return true;
+		}
+
+		eventLoop.execute(() -> {
+			try {
+				sendHttpRequest(httpRequestContext, requestEventBus);
+			} catch (Throwable throwable) {
+				requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, throwable);
+			}
+		});
+		return false;
+	}
+
+	private void acquireChannel(final HttpRequestContext httpRequestContext, final RequestEventBus requestEventBus, final EventLoop eventLoop,
+								final ErrorFlag errorHappened) {
+		final ServerInfo serverInfo = httpRequestContext.getConnectionServerInfo();
+		//read up front, a request that failed while it waited may have been recycled when the pool gets back to it
+		final EventLoop requestEventLoop = httpRequestContext.getEventLoop();
+		final int keepAliveTimeoutMillis = httpRequestContext.getKeepAliveTimeoutMillis();
+		final boolean pipeliningAllowed = canBePipelined(httpRequestContext);
+
+		try {
+			channelPool.acquire(serverInfo, new AcquireCallback() {
+				@Override
+				public void onPooledChannel(Channel channel) {
+					if (requestEventLoop != null && !requestEventLoop.inEventLoop()) {  //pending acquires can be served from other threads
+						requestEventLoop.execute(() -> onPooledChannel(channel));
+						return;
+					}
+
+					if (errorHappened.isSet()) { //the request failed while it waited for a connection, give the channel back to the pool
+						channelPool.offer(serverInfo, channel, keepAliveTimeoutMillis);
+						return;
+					}
+
+					logger.trace("Got old channel {} for request {}", channel, httpRequestContext);
+					requestEventBus.triggerEvent(Event.REUSED_CONNECTION, serverInfo);
+					requestEventBus.triggerEvent(Event.onConnected);
+
+					httpRequestContext.setRetryOnStaleConnection(retryIdempotentRequests && httpRequestContext.isRetryable());
+					sendOnChannel(channel, httpRequestContext, requestEventBus);
+				}
+
+				@Override
+				public void onNewConnection() {
+					if (requestEventLoop != null && !requestEventLoop.inEventLoop()) {
+						requestEventLoop.execute(this::onNewConnection);
+						return;
+					}
+
+					if (errorHappened.isSet()) {
+						channelPool.connectionFailed(serverInfo, eventLoop);
+						return;
+					}
+
+					logger.trace("Sending on a new channel for request {}", httpRequestContext);
+					sendOnNewChannel(httpRequestContext, requestEventBus, true, eventLoop);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {  //pending acquires time out on the timer thread
+					if (requestEventLoop != null && !requestEventLoop.inEventLoop()) {
+						requestEventLoop.execute(() -> onError(throwable));
+						return;
+					}
+
+					if (!errorHappened.isSet()) {
+						requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, throwable);
+					}
+				}
+
+				@Override
+				public boolean isPipeliningAllowed() {
+					return pipeliningAllowed;
+				}
+			});
+		} catch (Throwable throwable) {
+			requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, throwable);
+		}
+	}
+
+	private boolean canBePipelined(HttpRequestContext httpRequestContext) {
+		HttpMethod httpMethod = httpRequestContext.getHttpMethod();
+		if (!(HttpMethod.GET.equals(httpMethod) || HttpMethod.HEAD.equals(httpMethod) || HttpMethod.OPTIONS.equals(httpMethod) ||
+			HttpMethod.TRACE.equals(httpMethod))) {
+			return false;
+		}
+
+		//the inflater is added or removed per request, which must not happen while an earlier response on the channel is being read
+		return httpRequestContext.getNettyHttpClientRequest().getHttpBody() == null && httpRequestContext.automaticallyDecompressResponse();
+	}
+
 	private void sendOnChannel(final Channel channel, final HttpRequestContext httpRequestContext, final RequestEventBus requestEventBus) {
+		if (channel.pipeline().get(Http2MultiplexHandler.class) != null) {
+			sendOnNewStream(channel, httpRequestContext, requestEventBus);
+			return;
+		}
+
 		addOrRemoveInflaterFromChannel(channel, httpRequestContext);
 
 		httpRequestContext.attachedToChannel(channel);
+		httpRequestContext.setChannelActivity(channel.pipeline().get(ChannelActivityHandler.class));
 		requestEventBus.triggerEvent(Event.onAttachedToChannel, channel);
 
 		requestEventBus.subscribe(Event.CLOSE, (payload) -> channel.close());
 
+		int generation = httpRequestContext.getGeneration();
 		ChannelFuture channelFuture = channel.writeAndFlush(httpRequestContext);
 		channelFuture.addListener(future -> {
-            if (!future.isSuccess()) {
+            if (!future.isSuccess() && httpRequestContext.isCurrent(generation)) {
                 requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, unrollNettyException(future.cause()));
             }
         });
@@ -215,6 +456,59 @@ public class ChannelManager {
 		logger.trace("Wrote {} to channel {}", httpRequestContext, channel);
 	}
 
+	private void sendOnNewStream(final Channel connection, final HttpRequestContext httpRequestContext, final RequestEventBus requestEventBus) {
+		ErrorFlag errorHappened = subscribeToErrors(requestEventBus);
+		ServerInfo connectionServerInfo = httpRequestContext.getConnectionServerInfo();
+		boolean keepAlive = httpRequestContext.isKeepAlive();
+		int keepAliveTimeoutMillis = httpRequestContext.getKeepAliveTimeoutMillis();
+
+		new Http2StreamChannelBootstrap(connection).handler(http2StreamInitializer).open().addListener((FutureListener<Http2StreamChannel>) future -> {
+			if (errorHappened.isSet()) {  //the request failed while the stream was opened, its context may already have been recycled
+				if (future.isSuccess()) {
+					future.getNow().close();
+				}
+				releaseHttp2Connection(connectionServerInfo, keepAlive, connection, keepAliveTimeoutMillis);
+				return;
+			}
+
+			if (!future.isSuccess()) {
+				releaseHttp2Connection(connectionServerInfo, keepAlive, connection, keepAliveTimeoutMillis);
+				requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, unrollNettyException(future.cause()));
+				return;
+			}
+
+			Http2StreamChannel stream = future.getNow();
+			logger.trace("Opened stream {} on channel {} for request {}", stream, connection, httpRequestContext);
+			sendOnChannel(stream, httpRequestContext, requestEventBus);
+		});
+	}
+
+	/**
+	 * Let other requests open streams on a new HTTP/2 connection while the request that opened it is still using it. The connection is
+	 * released by the request like any connection it got from the pool.
+	 */
+	private void shareHttp2Connection(HttpRequestContext httpRequestContext, Channel connection) {
+		if (httpRequestContext.isKeepAlive() && channelPool.isActive()) {
+			channelPool.offerShared(httpRequestContext.getConnectionServerInfo(), connection, httpRequestContext.getKeepAliveTimeoutMillis());
+		}
+	}
+
+	/**
+	 * Give the HTTP/2 connection of a finished stream back to the pool, or close it if it is not kept alive.
+	 */
+	private void releaseHttp2Connection(HttpRequestContext httpRequestContext, Channel connection, int keepAliveTimeoutMillis) {
+		releaseHttp2Connection(httpRequestContext.getConnectionServerInfo(), httpRequestContext.isKeepAlive(), connection, keepAliveTimeoutMillis);
+	}
+
+	private void releaseHttp2Connection(ServerInfo serverInfo, boolean keepAlive, Channel connection, int keepAliveTimeoutMillis) {
+		if (keepAlive && channelPool.isActive()) {
+			channelPool.offer(serverInfo, connection, keepAliveTimeoutMillis);
+		} else {
+			channelPool.discard(serverInfo, connection);
+			connection.close();
+		}
+	}
+
 	private void addOrRemoveInflaterFromChannel(Channel channel, HttpRequestContext httpRequestContext) {
 		if (httpRequestContext.automaticallyDecompressResponse()) {
 			if (channel.pipeline().get("inflater") == null) {
@@ -232,7 +526,8 @@ public class ChannelManager {
 
 		if (totalRequestTimeoutMillis > 0) {
 			TotalRequestTimeoutTimerTask totalRequestTimeoutTimerTask = new TotalRequestTimeoutTimerTask(requestEventBus, httpRequestContext);
-			TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(nettyTimer, requestEventBus, totalRequestTimeoutTimerTask);
+			TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(nettyTimer, httpRequestContext.getEventLoop(), requestEventBus,
+				totalRequestTimeoutTimerTask);
 			timeoutTimerHandler.scheduleTimeout(totalRequestTimeoutMillis, TimeUnit.MILLISECONDS);
 		}
 
@@ -241,7 +536,8 @@ public class ChannelManager {
 			IdleTimeoutTimerTask idleTimeoutTimerTask = new IdleTimeoutTimerTask(httpRequestContext, idleTimeoutMillis,
 				timeProvider, requestEventBus);
 
-			TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(nettyTimer, requestEventBus, idleTimeoutTimerTask);
+			TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(nettyTimer, httpRequestContext.getEventLoop(), requestEventBus,
+				idleTimeoutTimerTask);
 			timeoutTimerHandler.scheduleTimeout(idleTimeoutMillis, TimeUnit.MILLISECONDS);
 			idleTimeoutTimerTask.setTimeoutTimerHandler(timeoutTimerHandler);
 
@@ -257,61 +553,198 @@ public class ChannelManager {
 		}
 	}
 
-	private void sendOnNewChannel(final HttpRequestContext httpRequestContext, final RequestEventBus requestEventBus) {
+	private void sendOnNewChannel(final HttpRequestContext httpRequestContext, final RequestEventBus requestEventBus, boolean acquiredFromPool,
+								  EventLoop eventLoop) {
 		final ServerInfo serverInfo = httpRequestContext.getServerInfo();
+		final ServerInfo connectionServerInfo = httpRequestContext.getConnectionServerInfo();
 
-		ChannelFuture channelFuture = getBootstrap(serverInfo).connect(serverInfo.getHost(), serverInfo.getPort());
-		AtomicBoolean errorHappened = new AtomicBoolean();
-		requestEventBus.subscribe(Event.ERROR, (payload1, payload2) -> errorHappened.set(true));
+		Bootstrap bootstrap = getBootstrap(serverInfo);
+		if (eventLoop != null) { //the pool wants the channel on a specific event loop
+			bootstrap = bootstrap.clone(eventLoop);
+		}
 
-		channelFuture.addListener((ChannelFutureListener) future -> {
-			if (errorHappened.get()) { //we have already triggered an error while we waited for the connection to happen
-				if (future.isSuccess()) {
-					future.channel().close();
-				}
-				return;
+		Future<Channel> channelFuture = openChannel(bootstrap, connectionServerInfo);
+		ErrorFlag errorHappened = subscribeToErrors(requestEventBus);
+
+		EventLoop requestEventLoop = httpRequestContext.getEventLoop();
+		channelFuture.addListener((FutureListener<Channel>) future -> {
+			if (requestEventLoop != null && !requestEventLoop.inEventLoop()) {  //failed registrations are completed on the global event executor
+				requestEventLoop.execute(() -> onChannelOpened(future, httpRequestContext, requestEventBus, serverInfo, connectionServerInfo,
+					acquiredFromPool, eventLoop, errorHappened));
+			} else {
+				onChannelOpened(future, httpRequestContext, requestEventBus, serverInfo, connectionServerInfo, acquiredFromPool, eventLoop, errorHappened);
 			}
+		});
+	}
 
-			requestEventBus.triggerEvent(Event.TOUCH);
+	private void onChannelOpened(Future<Channel> future, HttpRequestContext httpRequestContext, RequestEventBus requestEventBus, ServerInfo serverInfo,
+								 ServerInfo connectionServerInfo, boolean acquiredFromPool, EventLoop eventLoop, ErrorFlag errorHappened) {
+		if (acquiredFromPool) { //the pool is counting this connection, tell it how the connect went
 			if (future.isSuccess()) {
-				requestEventBus.triggerEvent(Event.CREATED_CONNECTION, serverInfo);
-				requestEventBus.triggerEvent(Event.onConnected);
-
-				Channel channel = future.channel();
-				logger.trace("Opened a new channel {}, for request {}", channel, httpRequestContext);
-				channel.attr(ServerInfo.ATTRIBUTE_KEY).set(serverInfo);
-
-				if (serverInfo.isSecure()) {
-					SslHandler sslHandler = sslContext.newHandler(channel.alloc(), serverInfo.getHost(), serverInfo.getPort());
-					channel.pipeline().addFirst("ssl", sslHandler);
-
-					sslHandler.handshakeFuture().addListener((FutureListener<Channel>) sslHandshakeFuture -> {
-						requestEventBus.triggerEvent(Event.TOUCH);
-						if (sslHandshakeFuture.isSuccess()) {
-							logger.trace("SSL handshake successful, sending on channel {}, for request {}", channel, httpRequestContext);
-							sendOnChannel(channel, httpRequestContext, requestEventBus);
-						} else {
-							logger.error("Failed to do ssl handshake");
-							Throwable cause = unrollNettyException(sslHandshakeFuture.cause());
-							if (cause != null) {
-								cause = new ConnectException(cause.getMessage());
-							}
-							requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, cause);
+				channelPool.connectionOpened(connectionServerInfo, future.getNow());
+			} else {
+				channelPool.connectionFailed(connectionServerInfo, eventLoop);
+			}
+		}
+
+		if (errorHappened.isSet()) { //we have already triggered an error while we waited for the connection to happen
+			if (future.isSuccess()) {
+				future.getNow().close();
+			}
+			return;
+		}
+
+		requestEventBus.triggerEvent(Event.TOUCH);
+		if (future.isSuccess()) {
+			requestEventBus.triggerEvent(Event.CREATED_CONNECTION, connectionServerInfo);
+			requestEventBus.triggerEvent(Event.onConnected);
+
+			Channel channel = future.getNow();
+			logger.trace("Opened a new channel {}, for request {}", channel, httpRequestContext);
+			channel.attr(ServerInfo.ATTRIBUTE_KEY).set(serverInfo);
+
+			if (serverInfo.isSecure()) {
+				SslHandler sslHandler = addSslHandler(channel, serverInfo);
+
+				sslHandler.handshakeFuture().addListener((FutureListener<Channel>) sslHandshakeFuture -> {
+					if (errorHappened.isSet()) {  //the request failed, for example timed out, during the handshake
+						channel.close();
+						return;
+					}
+
+					requestEventBus.triggerEvent(Event.TOUCH);
+					if (sslHandshakeFuture.isSuccess()) {
+						requestEventBus.triggerEvent(Event.SSL_HANDSHAKE_COMPLETED, serverInfo, isResumedSession(serverInfo, sslHandler));
+						logger.trace("SSL handshake successful, sending on channel {}, for request {}", channel, httpRequestContext);
+						if (shouldUseHttp2(serverInfo, sslHandler)) {
+							upgradePipelineToHttp2(channel);
+							shareHttp2Connection(httpRequestContext, channel);
+						}
+						sendOnChannel(channel, httpRequestContext, requestEventBus);
+					} else {
+						logger.error("Failed to do ssl handshake");
+						Throwable cause = unrollNettyException(sslHandshakeFuture.cause());
+						if (cause != null) {
+							cause = new ConnectException(cause.getMessage());
 						}
-					});
+						requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, cause);
+					}
+				});
 
-				} else {
-					logger.trace("Sending over clear channel channel {}, for request {}", channel, httpRequestContext);
-					sendOnChannel(channel, httpRequestContext, requestEventBus);
+			} else {
+				logger.trace("Sending over clear channel channel {}, for request {}", channel, httpRequestContext);
+				if (shouldUseHttp2(serverInfo, null)) {
+					upgradePipelineToHttp2(channel);
+					shareHttp2Connection(httpRequestContext, channel);
 				}
+				sendOnChannel(channel, httpRequestContext, requestEventBus);
+			}
+
+		} else {
+			logger.trace("Failed to opened a new channel for request {}", httpRequestContext);
+			Throwable cause = unrollNettyException(future.cause());
+			requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, cause);
+		}
+	}
+
+	/**
+	 * Subscribe a flag that tells listeners completing later that the request has already failed.
+	 */
+	private ErrorFlag subscribeToErrors(RequestEventBus requestEventBus) {
+		ErrorFlag errorFlag = confineRequestsToEventLoop ? new ErrorFlag() : new ConcurrentErrorFlag();
+		requestEventBus.subscribe(Event.ERROR, errorFlag);
+		return errorFlag;
+	}
+
+	@Override
+	public Future<Channel> connect(ServerInfo connectionServerInfo, EventLoop eventLoop) {
+		Promise<Channel> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+
+		//connections to a load balanced backend are made on behalf of its host, like the connections of the requests to the host
+		ServerInfo serverInfo = loadBalancer != null ? loadBalancer.getConfiguredServer(connectionServerInfo) : connectionServerInfo;
+
+		Bootstrap bootstrap = getBootstrap(serverInfo);
+		if (eventLoop != null) {
+			bootstrap = bootstrap.clone(eventLoop);
+		}
+
+		openChannel(bootstrap, connectionServerInfo).addListener((FutureListener<Channel>) future -> {
+			if (!future.isSuccess()) {
+				promise.tryFailure(unrollNettyException(future.cause()));
+				return;
+			}
 
+			Channel channel = future.getNow();
+			logger.trace("Opened a new channel {} to {}", channel, connectionServerInfo);
+			channel.attr(ServerInfo.ATTRIBUTE_KEY).set(serverInfo);
+
+			if (serverInfo.isSecure()) {
+				SslHandler sslHandler = addSslHandler(channel, serverInfo);
+				sslHandler.handshakeFuture().addListener((FutureListener<Channel>) sslHandshakeFuture -> {
+					if (sslHandshakeFuture.isSuccess()) {
+						isResumedSession(serverInfo, sslHandler);  //not reported, but later handshakes may resume the session
+						if (shouldUseHttp2(serverInfo, sslHandler)) {
+							upgradePipelineToHttp2(channel);
+						}
+						promise.trySuccess(channel);
+					} else {
+						channel.close();
+						promise.tryFailure(unrollNettyException(sslHandshakeFuture.cause()));
+					}
+				});
 			} else {
-				logger.trace("Failed to opened a new channel for request {}", httpRequestContext);
-				Throwable cause = unrollNettyException(future.cause());
-				requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, cause);
+				if (shouldUseHttp2(serverInfo, null)) {
+					upgradePipelineToHttp2(channel);
+				}
+				promise.trySuccess(channel);
 			}
+		});
 
-        });
+		return promise;
+	}
+
+	private Future<Channel> openChannel(Bootstrap bootstrap, ServerInfo serverInfo) {
+		if (happyEyeballsConnector != null) {
+			return happyEyeballsConnector.connect(bootstrap, serverInfo.getHost(), serverInfo.getPort());
+		}
+
+		Promise<Channel> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+		bootstrap.connect(serverInfo.getHost(), serverInfo.getPort()).addListener((ChannelFutureListener) future -> {
+			if (future.isSuccess()) {
+				promise.trySuccess(future.channel());
+			} else {
+				promise.tryFailure(future.cause());
+			}
+		});
+		return promise;
+	}
+
+	@Override
+	public int getKeepAliveTimeoutMillis() {
+		return confMap.get(ConfKeys.KEEP_ALIVE_TIMEOUT_MILLIS);
+	}
+
+	private SslHandler addSslHandler(Channel channel, ServerInfo serverInfo) {
+		SslContext context = serverInfo.isWebSocket() ? webSocketSslContext : sslContext;
+		SslHandler sslHandler = context.newHandler(channel.alloc(), serverInfo.getHost(), serverInfo.getPort());
+		sslHandler.setHandshakeTimeoutMillis(sslHandshakeTimeoutMillis);
+		channel.pipeline().addFirst("ssl", sslHandler);
+		return sslHandler;
+	}
+
+	/**
+	 * OpenSSL tells if the handshake reused a session. For the JDK provider a resumed handshake negotiates the id of the session cached
+	 * for the peer, so the id is compared with the id negotiated by the last handshake with the peer, which is remembered here.
+	 */
+	private boolean isResumedSession(ServerInfo serverInfo, SslHandler sslHandler) {
+		SSLEngine engine = sslHandler.engine();
+		byte[] sessionId = engine.getSession().getId();
+		byte[] previousSessionId = sslSessionIds.put(serverInfo.getHost() + ":" + serverInfo.getPort(), sessionId);
+
+		if (engine instanceof ReferenceCountedOpenSslEngine) {
+			return ((ReferenceCountedOpenSslEngine) engine).isSessionReused();
+		}
+		return sessionId.length > 0 && Arrays.equals(sessionId, previousSessionId);
 	}
 
 	private Throwable unrollNettyException(Throwable cause) {
@@ -330,15 +763,74 @@ public class ChannelManager {
 	}
 
 
+	/**
+	 * Tell the load balanced backend of the request that it is done, with the latency of the response if one was read.
+	 */
+	private static void releaseBackend(HttpRequestContext httpRequestContext, boolean completed) {
+		Backend backend = httpRequestContext.releaseBackend();
+		if (backend == null) {
+			return;
+		}
+
+		long latencyMillis = -1;
+		NettyHttpClientResponse nettyHttpClientResponse = httpRequestContext.getNettyHttpClientResponse();
+		if (completed && nettyHttpClientResponse != null && nettyHttpClientResponse.getHttpResponseStatus() != null) {
+			RecordedTimeStamps timeStamps = httpRequestContext.getTimeRecorder();
+			if (timeStamps.getStartWriteHeaders() > 0 && timeStamps.getReadResponseHttpHeaders() >= timeStamps.getStartWriteHeaders()) {
+				latencyMillis = timeStamps.getReadResponseHttpHeaders() - timeStamps.getStartWriteHeaders();
+			}
+		}
+		backend.requestCompleted(latencyMillis);
+	}
+
+	/**
+	 * Requests confined to an event loop trigger their errors and run the listeners reading the flag on that event loop, so a plain field
+	 * is enough for them.
+	 */
+	private static class ErrorFlag implements EventBusCallback2<HttpRequestContext, Throwable> {
+		private boolean set;
+
+		@Override
+		public void onEvent(HttpRequestContext httpRequestContext, Throwable throwable) {
+			set = true;
+		}
+
+		boolean isSet() {
+			return set;
+		}
+	}
+
+	/**
+	 * Other requests can fail on any thread, for example on the timer thread of their timeouts.
+	 */
+	private static class ConcurrentErrorFlag extends ErrorFlag {
+		private volatile boolean set;
+
+		@Override
+		public void onEvent(HttpRequestContext httpRequestContext, Throwable throwable) {
+			set = true;
+		}
+
+		@Override
+		boolean isSet() {
+			return set;
+		}
+	}
+
 	private class ErrorCallback implements EventBusCallback2<HttpRequestContext, Throwable> {
 
 		@Override
 		public void onEvent(HttpRequestContext httpRequestContext, Throwable throwable) {
-			ServerInfo serverInfo = httpRequestContext.getServerInfo();
+			ServerInfo serverInfo = httpRequestContext.getConnectionServerInfo();
+			releaseBackend(httpRequestContext, false);
 
 			Channel channel = httpRequestContext.getAndDetachChannel();
 
-			if (channel != null) {
+			if (channel instanceof Http2StreamChannel) {  //only the stream has failed, the connection can still be used by other streams
+				channel.attr(BaseHttpRequestHandler.HTTP_CLIENT_HANDLER_TRIGGERED_ERROR).set(true);
+				channel.close();
+				releaseHttp2Connection(httpRequestContext, channel.parent(), httpRequestContext.getKeepAliveTimeoutMillis());
+			} else if (channel != null) {
 				channel.attr(BaseHttpRequestHandler.HTTP_CLIENT_HANDLER_TRIGGERED_ERROR).set(true);
 
 				channelPool.discard(serverInfo, channel);
@@ -356,7 +848,16 @@ public class ChannelManager {
 		public void onEvent(HttpRequestContext httpRequestContext) {
 			RequestEventBus requestEventBus = httpRequestContext.getRequestEventBus();
 			Channel channel = httpRequestContext.getAndDetachChannel();
-			ServerInfo serverInfo = httpRequestContext.getServerInfo();
+			ServerInfo serverInfo = httpRequestContext.getConnectionServerInfo();
+			releaseBackend(httpRequestContext, true);
+
+			if (channel instanceof Http2StreamChannel) {  //the stream is done, the connection it was multiplexed on can be used by other requests
+				channel.close();
+				releaseHttp2Connection(httpRequestContext, channel.parent(), httpRequestContext.getKeepAliveTimeoutMillis());
+				requestEventBus.triggerEvent(httpRequestContext.isKeepAlive() && channelPool.isActive() ? Event.POOLED_CONNECTION : Event.CLOSED_CONNECTION,
+					serverInfo);
+				return;
+			}
 
 			if (!channelPool.isActive()) {
 				if (channel != null) {
@@ -367,19 +868,36 @@ public class ChannelManager {
 			}
 
 			boolean keepAlive = httpRequestContext.isKeepAlive();
+			int keepAliveTimeoutMillis = httpRequestContext.getKeepAliveTimeoutMillis();
 			NettyHttpClientResponse nettyHttpClientResponse = httpRequestContext.getNettyHttpClientResponse();
 			if (nettyHttpClientResponse == null || nettyHttpClientResponse.getHttpHeaders() == null) {
 				keepAlive = false;
 			} else {
-				String connection = nettyHttpClientResponse.getHttpHeaders().get(HttpHeaderNames.CONNECTION);
+				HttpHeaders httpHeaders = nettyHttpClientResponse.getHttpHeaders();
+				String connection = httpHeaders.get(HttpHeaderNames.CONNECTION);
 				if (HttpHeaderValues.CLOSE.contentEqualsIgnoreCase(connection)) {
 					keepAlive = false;
 				}
+
+				KeepAliveHeader keepAliveHeader = KeepAliveHeader.parse(httpHeaders.get(HttpHeaderNames.KEEP_ALIVE));
+				if (keepAliveHeader != null) {
+					if (keepAliveHeader.getMax() == 0) {  //the server will not accept more requests on this connection
+						keepAlive = false;
+					}
+
+					if (keepAliveHeader.getTimeoutSeconds() != KeepAliveHeader.NOT_SET) {  //stop using the connection a bit before the server closes it
+						long serverKeepAliveTimeoutMillis = keepAliveHeader.getTimeoutSeconds() * 1000L - SERVER_KEEP_ALIVE_TIMEOUT_MARGIN_MILLIS;
+						serverKeepAliveTimeoutMillis = Math.max(0, Math.min(Integer.MAX_VALUE, serverKeepAliveTimeoutMillis));  //the server may send any timeout
+						keepAliveTimeoutMillis = Math.min(keepAliveTimeoutMillis, (int) serverKeepAliveTimeoutMillis);
+						if (keepAliveTimeoutMillis <= 0) {
+							keepAlive = false;
+						}
+					}
+				}
 			}
 
 			if (keepAlive) {
 				if (channel != null) {
-					int keepAliveTimeoutMillis = httpRequestContext.getKeepAliveTimeoutMillis();
 					channelPool.offer(serverInfo, channel, keepAliveTimeoutMillis);
 					requestEventBus.triggerEvent(Event.POOLED_CONNECTION, serverInfo);
 				}
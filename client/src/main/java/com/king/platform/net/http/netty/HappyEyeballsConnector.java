@@ -0,0 +1,155 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.resolver.AddressResolver;
+import io.netty.resolver.AddressResolverGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to all resolved addresses of a host with staggered attempts (RFC 8305), so an unreachable address only delays the connection by
+ * the attempt delay instead of the connect timeout. The addresses are tried alternating between the address families, starting with the
+ * family of the first address. The next attempt starts when the previous attempt fails or after the attempt delay, the first connected
+ * attempt wins and the others are cancelled.
+ * <p>
+ * The attempts of one connection run on one event loop, which is also the event loop of the connected channel.
+ */
+class HappyEyeballsConnector {
+	private final AddressResolverGroup<?> addressResolverGroup;
+	private final long attemptDelayMillis;
+
+	HappyEyeballsConnector(AddressResolverGroup<?> addressResolverGroup, long attemptDelayMillis) {
+		this.addressResolverGroup = addressResolverGroup;
+		this.attemptDelayMillis = attemptDelayMillis;
+	}
+
+	@SuppressWarnings("unchecked")
+	Future<Channel> connect(Bootstrap bootstrap, String host, int port) {
+		EventLoop eventLoop = (EventLoop) bootstrap.config().group().next();
+		Bootstrap eventLoopBootstrap = bootstrap.clone(eventLoop);
+		Promise<Channel> promise = eventLoop.newPromise();
+
+		AddressResolver<SocketAddress> resolver = (AddressResolver<SocketAddress>) addressResolverGroup.getResolver(eventLoop);
+		resolver.resolveAll(InetSocketAddress.createUnresolved(host, port)).addListener((FutureListener<List<SocketAddress>>) resolved -> {
+			if (!resolved.isSuccess()) {
+				promise.tryFailure(resolved.cause());
+				return;
+			}
+			new Attempts(eventLoopBootstrap, eventLoop, interleave(resolved.getNow()), promise).next();
+		});
+
+		return promise;
+	}
+
+	/**
+	 * Order the addresses alternating between the address families, keeping the order of the resolver within each family.
+	 */
+	static List<SocketAddress> interleave(List<? extends SocketAddress> addresses) {
+		ArrayDeque<SocketAddress> first = new ArrayDeque<>();
+		ArrayDeque<SocketAddress> second = new ArrayDeque<>();
+		boolean firstIsIpv6 = !addresses.isEmpty() && isIpv6(addresses.get(0));
+		for (SocketAddress address : addresses) {
+			if (isIpv6(address) == firstIsIpv6) {
+				first.add(address);
+			} else {
+				second.add(address);
+			}
+		}
+
+		List<SocketAddress> interleaved = new ArrayList<>(addresses.size());
+		while (!first.isEmpty() || !second.isEmpty()) {
+			if (!first.isEmpty()) {
+				interleaved.add(first.poll());
+			}
+			if (!second.isEmpty()) {
+				interleaved.add(second.poll());
+			}
+		}
+		return interleaved;
+	}
+
+	private static boolean isIpv6(SocketAddress address) {
+		return address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() instanceof Inet6Address;
+	}
+
+	/**
+	 * The attempts of one connection, only touched from its event loop.
+	 */
+	private class Attempts {
+		private final Bootstrap bootstrap;
+		private final EventLoop eventLoop;
+		private final ArrayDeque<SocketAddress> remaining;
+		private final Promise<Channel> promise;
+		private final List<ChannelFuture> pending = new ArrayList<>();
+		private ScheduledFuture<?> nextAttempt;
+		private Throwable lastFailure;
+
+		private Attempts(Bootstrap bootstrap, EventLoop eventLoop, List<SocketAddress> addresses, Promise<Channel> promise) {
+			this.bootstrap = bootstrap;
+			this.eventLoop = eventLoop;
+			this.remaining = new ArrayDeque<>(addresses);
+			this.promise = promise;
+		}
+
+		private void next() {
+			SocketAddress address = remaining.poll();
+			if (address == null) {
+				return;
+			}
+
+			nextAttempt = remaining.isEmpty() ? null : eventLoop.schedule(this::next, attemptDelayMillis, TimeUnit.MILLISECONDS);
+
+			ChannelFuture attempt = bootstrap.connect(address);
+			pending.add(attempt);
+			attempt.addListener((ChannelFutureListener) this::attemptDone);
+		}
+
+		private void attemptDone(ChannelFuture attempt) {
+			pending.remove(attempt);
+
+			if (promise.isDone()) {  //another attempt has already connected
+				if (attempt.isSuccess()) {
+					attempt.channel().close();
+				}
+				return;
+			}
+
+			if (attempt.isSuccess()) {
+				if (nextAttempt != null) {
+					nextAttempt.cancel(false);
+				}
+				for (ChannelFuture other : new ArrayList<>(pending)) {
+					other.cancel(false);
+				}
+				promise.trySuccess(attempt.channel());
+				return;
+			}
+
+			lastFailure = attempt.cause();
+			if (nextAttempt != null && nextAttempt.cancel(false)) {  //don't wait for the delay when the attempt has already failed
+				next();
+			} else if (remaining.isEmpty() && pending.isEmpty()) {
+				promise.tryFailure(lastFailure);
+			}
+		}
+	}
+}
@@ -10,31 +10,61 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class HttpCallbackInvoker<T> {
-	private final AtomicBoolean firstExecute = new AtomicBoolean();
+	private final AtomicBoolean firstExecute;  //null when the request is confined to its event loop, which is the only thread invoking it
 	private final Executor callbackExecutor;
 	private final HttpCallback<T> httpCallback;
+	private boolean executed;
 
 	public HttpCallbackInvoker(Executor callbackExecutor, HttpCallback<T> httpCallback) {
+		this(callbackExecutor, httpCallback, false);
+	}
+
+	public HttpCallbackInvoker(Executor callbackExecutor, HttpCallback<T> httpCallback, boolean confined) {
 		this.callbackExecutor = callbackExecutor;
 		this.httpCallback = httpCallback;
+		this.firstExecute = confined ? null : new AtomicBoolean();
 	}
 
 
 	public void onHttpResponseDone(HttpResponse httpResponse) {
-		if (firstExecute.compareAndSet(false, true)) {
-			callbackExecutor.execute(() -> httpCallback.onCompleted(httpResponse));
+		if (firstExecute()) {
+			completed(httpResponse);
 		}
 	}
 
 	public void onCompleted(HttpRequestContext httpRequestContext) {
-		if (firstExecute.compareAndSet(false, true)) {
-			callbackExecutor.execute(() -> httpCallback.onCompleted(httpRequestContext.getHttpResponse()));
+		if (firstExecute()) {
+			completed(httpRequestContext.getHttpResponse());
 		}
 	}
 
 	public void onError(HttpRequestContext httpRequestContext, Throwable throwable) {
-		if (firstExecute.compareAndSet(false, true)) {
-			callbackExecutor.execute(() -> httpCallback.onError(throwable));
+		if (firstExecute()) {
+			if (callbackExecutor == NioThreadExecutor.INSTANCE) {
+				NioThreadExecutor.INSTANCE.execute(HttpCallback::onError, httpCallback, throwable);
+			} else {
+				callbackExecutor.execute(() -> httpCallback.onError(throwable));
+			}
+		}
+	}
+
+	private boolean firstExecute() {
+		if (firstExecute != null) {
+			return firstExecute.compareAndSet(false, true);
+		}
+
+		if (executed) {
+			return false;
+		}
+		executed = true;
+		return true;
+	}
+
+	private void completed(HttpResponse<T> httpResponse) {
+		if (callbackExecutor == NioThreadExecutor.INSTANCE) {
+			NioThreadExecutor.INSTANCE.execute(HttpCallback::onCompleted, httpCallback, httpResponse);
+		} else {
+			callbackExecutor.execute(() -> httpCallback.onCompleted(httpResponse));
 		}
 	}
 }
@@ -6,6 +6,7 @@ import com.king.platform.net.http.netty.backpressure.BackPressure;
 import com.king.platform.net.http.netty.eventbus.*;
 import com.king.platform.net.http.netty.metric.TimeStampRecorder;
 import com.king.platform.net.http.netty.request.NettyHttpClientRequest;
+import com.king.platform.net.http.netty.request.StreamingHttpBody;
 import com.king.platform.net.http.netty.requestbuilder.UploadCallbackInvoker;
 import com.king.platform.net.http.netty.util.TimeProvider;
 import io.netty.handler.codec.http.HttpMethod;
@@ -22,14 +23,24 @@ public class HttpClientCallerImpl implements HttpClientCaller {
 	private final Logger logger = getLogger(getClass());
 	private final RootEventBus rootEventBus;
 	private final boolean executeOnCallingThread;
+	private final boolean confinedRequests;
+	private final boolean recycleRequests;
 	private final BackPressure executionBackPressure;
 	private final TimeProvider timeProvider;
 
-	HttpClientCallerImpl(RootEventBus rootEventBus, boolean executeOnCallingThread, BackPressure executionBackPressure, TimeProvider timeProvider) {
+	HttpClientCallerImpl(RootEventBus rootEventBus, boolean executeOnCallingThread, boolean confinedRequests, boolean recycleRequests,
+						 BackPressure executionBackPressure, TimeProvider timeProvider) {
 		this.rootEventBus = rootEventBus;
 		this.executeOnCallingThread = executeOnCallingThread;
+		this.confinedRequests = confinedRequests;
+		this.recycleRequests = recycleRequests;
 		this.executionBackPressure = executionBackPressure;
 		this.timeProvider = timeProvider;
+
+		if (recycleRequests) {  //the root callbacks run on the event loop of the request, before its own callbacks
+			rootEventBus.subscribePermanently(Event.COMPLETED, HttpRequestContext::scheduleRelease);
+			rootEventBus.subscribePermanently(Event.ERROR, (httpRequestContext, throwable) -> httpRequestContext.scheduleRelease());
+		}
 	}
 
 	@Override
@@ -42,20 +53,6 @@ public class HttpClientCallerImpl implements HttpClientCaller {
 
 		final RequestEventBus requestRequestEventBus = rootEventBus.createRequestEventBus();
 
-		if (externalEventTrigger != null) {
-			externalEventTrigger.registerEventListener(new EventListener() {
-				@Override
-				public <E> void onEvent(Event1<E> event, E payload) {
-					requestRequestEventBus.triggerEvent(event, payload);
-				}
-
-				@Override
-				public <E1, E2> void onEvent(Event2<E1, E2> event, E1 payload1, E2 payload2) {
-					requestRequestEventBus.triggerEvent(event, payload1, payload2);
-				}
-			});
-		}
-
 		subscribeToHttpCallbackEvents(callbackExecutor, httpCallback, requestRequestEventBus);
 		subscribeToNioCallbackEvents(nioCallback, requestRequestEventBus);
 		subscribeToUploadCallbacksEvents(callbackExecutor, uploadCallback, requestRequestEventBus);
@@ -69,11 +66,48 @@ public class HttpClientCallerImpl implements HttpClientCaller {
 			responseBodyConsumer = getResponseBodyConsumer();
 		}
 
+		if (responseBodyConsumer instanceof StreamingResponseBodyConsumer) {
+			StreamingResponseBodyConsumer<T> streamingResponseBodyConsumer = (StreamingResponseBodyConsumer<T>) responseBodyConsumer;
+			requestRequestEventBus.subscribePermanently(Event.ERROR, (context, throwable) -> streamingResponseBodyConsumer.onError(throwable));
+		}
+
+		if (responseBodyConsumer instanceof ByteBufResponseBodyConsumer) {
+			ByteBufResponseBodyConsumer<T> byteBufResponseBodyConsumer = (ByteBufResponseBodyConsumer<T>) responseBodyConsumer;
+			requestRequestEventBus.subscribePermanently(Event.ERROR, (context, throwable) -> byteBufResponseBodyConsumer.onError(throwable));
+		}
+
+		if (nettyHttpClientRequest.getHttpBody() instanceof StreamingHttpBody) {
+			StreamingHttpBody streamingHttpBody = (StreamingHttpBody) nettyHttpClientRequest.getHttpBody();
+			requestRequestEventBus.subscribePermanently(Event.ERROR, (context, throwable) -> streamingHttpBody.onRequestFailed(throwable));
+		}
+
 
-		final HttpRequestContext<T> httpRequestContext = new HttpRequestContext<>(httpMethod, nettyHttpClientRequest, requestRequestEventBus,
-			responseBodyConsumer,
-			idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects, keepAlive, keepAliveTimeoutMillis, new TimeStampRecorder(timeProvider), automaticallyDecompressResponse,
-			webSocketConf);
+		final HttpRequestContext<T> httpRequestContext;
+		if (recycleRequests && webSocketConf == null) {  //web sockets keep using their context after the upgrade has completed
+			httpRequestContext = HttpRequestContext.newRecycledInstance(httpMethod, nettyHttpClientRequest, requestRequestEventBus, responseBodyConsumer,
+				idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects, keepAlive, keepAliveTimeoutMillis, TimeStampRecorder.newInstance(timeProvider),
+				automaticallyDecompressResponse, null);
+		} else {
+			httpRequestContext = new HttpRequestContext<>(httpMethod, nettyHttpClientRequest, requestRequestEventBus,
+				responseBodyConsumer,
+				idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects, keepAlive, keepAliveTimeoutMillis, new TimeStampRecorder(timeProvider), automaticallyDecompressResponse,
+				webSocketConf);
+		}
+
+		if (externalEventTrigger != null) {
+			final int generation = httpRequestContext.getGeneration();
+			externalEventTrigger.registerEventListener(new EventListener() {
+				@Override
+				public <E> void onEvent(Event1<E> event, E payload) {
+					httpRequestContext.executeOnEventLoop(generation, () -> requestRequestEventBus.triggerEvent(event, payload));
+				}
+
+				@Override
+				public <E1, E2> void onEvent(Event2<E1, E2> event, E1 payload1, E2 payload2) {
+					httpRequestContext.executeOnEventLoop(generation, () -> requestRequestEventBus.triggerEvent(event, payload1, payload2));
+				}
+			});
+		}
 
 		ResponseFuture<T> future = new ResponseFuture<>(requestRequestEventBus, httpRequestContext, callbackExecutor);
 
@@ -104,7 +138,7 @@ public class HttpClientCallerImpl implements HttpClientCaller {
 		if (httpCallback == null) {
 			return;
 		}
-		HttpCallbackInvoker<T> httpCallbackInvoker = new HttpCallbackInvoker<>(callbackExecutor, httpCallback);
+		HttpCallbackInvoker<T> httpCallbackInvoker = new HttpCallbackInvoker<>(callbackExecutor, httpCallback, confinedRequests);
 		requestRequestEventBus.subscribePermanently(Event.COMPLETED, httpCallbackInvoker::onCompleted);
 		requestRequestEventBus.subscribePermanently(Event.ERROR, httpCallbackInvoker::onError);
 
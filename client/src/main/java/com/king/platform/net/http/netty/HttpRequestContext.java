@@ -9,26 +9,47 @@ import com.king.platform.net.http.HttpResponse;
 import com.king.platform.net.http.ResponseBodyConsumer;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
 import com.king.platform.net.http.netty.metric.TimeStampRecorder;
+import com.king.platform.net.http.netty.pool.Backend;
+import com.king.platform.net.http.netty.request.HttpBody;
 import com.king.platform.net.http.netty.request.NettyHttpClientRequest;
 import com.king.platform.net.http.netty.response.NettyHttpClientResponse;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.util.AttributeKey;
+import io.netty.util.Recycler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public class HttpRequestContext<T> {
 	public static final AttributeKey<HttpRequestContext> HTTP_REQUEST_ATTRIBUTE_KEY = AttributeKey.valueOf("__HttpRequestContext");
-
-	private final HttpMethod httpMethod;
-	private final NettyHttpClientRequest<T> nettyHttpClientRequest;
-
-	private final int idleTimeoutMillis;
-	private final int totalRequestTimeoutMillis;
-	private final boolean followRedirects;
-	private final boolean keepAlive;
-	private final TimeStampRecorder timeStampRecorder;
-	private final ResponseBodyConsumer<T> responseBodyConsumer;
-	private final RequestEventBus requestEventBus;
-	private final int keepAliveTimeoutMillis;
+	/**
+	 * Requests written on the channel while it was still waiting for the response of the request in {@link #HTTP_REQUEST_ATTRIBUTE_KEY},
+	 * in the order they were written.
+	 */
+	public static final AttributeKey<ArrayDeque<HttpRequestContext>> PIPELINED_REQUESTS_ATTRIBUTE_KEY = AttributeKey.valueOf("__PipelinedHttpRequestContexts");
+	private static final AtomicIntegerFieldUpdater<HttpRequestContext> BACKEND_RELEASED_UPDATER = AtomicIntegerFieldUpdater.newUpdater
+		(HttpRequestContext.class, "backendReleased");
+
+	private static final Recycler<HttpRequestContext> RECYCLER = new Recycler<HttpRequestContext>() {
+		@Override
+		protected HttpRequestContext newObject(Handle<HttpRequestContext> handle) {
+			return new HttpRequestContext(handle);
+		}
+	};
+
+	private HttpMethod httpMethod;
+	private NettyHttpClientRequest<T> nettyHttpClientRequest;
+
+	private int idleTimeoutMillis;
+	private int totalRequestTimeoutMillis;
+	private boolean followRedirects;
+	private boolean keepAlive;
+	private TimeStampRecorder timeStampRecorder;
+	private ResponseBodyConsumer<T> responseBodyConsumer;
+	private RequestEventBus requestEventBus;
+	private int keepAliveTimeoutMillis;
 
 
 	private NettyHttpClientResponse<T> nettyHttpClientResponse;
@@ -43,8 +64,52 @@ public class HttpRequestContext<T> {
 
 	private WebSocketConf webSocketConf;
 	private HttpResponse httpResponse;
+	private boolean retryOnStaleConnection;
+	private boolean forceNewConnection;
+	//read by threads outside of the event loop to find the loop of the request, for example by cancel() and external event triggers
+	private volatile EventLoop eventLoop;
+	//written once per channel the request is written on and read by the idle timeout, which runs on the timer thread unless the request is confined
+	private volatile ChannelActivityHandler channelActivity;
+	//written once when the request is sent and read when it completes or fails, which happens on any thread unless the request is confined
+	private volatile Backend backend;
+	private volatile int backendReleased;
+
+	//only set for contexts taken from the recycler, the root is the first context of the request and also releases its redirects and retries
+	private final Recycler.Handle<HttpRequestContext> handle;
+	private final Runnable releaseTask;
+	private HttpRequestContext root;
+	private HttpRequestContext nextContext;
+	private Channel writtenOnChannel;
+	private boolean releaseScheduled;
+	//bumped on the event loop when the context is released, so holders that outlive the request can tell it is no longer theirs
+	private volatile int generation;
 
 	public HttpRequestContext(HttpMethod httpMethod, NettyHttpClientRequest<T> nettyHttpClientRequest, RequestEventBus requestEventBus, ResponseBodyConsumer<T> responseBodyConsumer, int idleTimeoutMillis, int totalRequestTimeoutMillis, boolean followRedirects, boolean keepAlive, int keepAliveTimeoutMillis, TimeStampRecorder timeStampRecorder, boolean automaticallyDecompressResponse, WebSocketConf webSocketConf) {
+		this.handle = null;
+		this.releaseTask = null;
+		init(httpMethod, nettyHttpClientRequest, requestEventBus, responseBodyConsumer, idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects,
+			keepAlive, keepAliveTimeoutMillis, timeStampRecorder, automaticallyDecompressResponse, webSocketConf);
+	}
+
+	private HttpRequestContext(Recycler.Handle<HttpRequestContext> handle) {
+		this.handle = handle;
+		this.releaseTask = this::release;
+	}
+
+	/**
+	 * Take a context from the recycler. The context, the contexts of its redirects and retries, their responses, the time recorder and the
+	 * event bus are given back once the request has completed or failed on its event loop, see {@link #scheduleRelease()}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> HttpRequestContext<T> newRecycledInstance(HttpMethod httpMethod, NettyHttpClientRequest<T> nettyHttpClientRequest, RequestEventBus requestEventBus, ResponseBodyConsumer<T> responseBodyConsumer, int idleTimeoutMillis, int totalRequestTimeoutMillis, boolean followRedirects, boolean keepAlive, int keepAliveTimeoutMillis, TimeStampRecorder timeStampRecorder, boolean automaticallyDecompressResponse, WebSocketConf webSocketConf) {
+		HttpRequestContext<T> httpRequestContext = RECYCLER.get();
+		httpRequestContext.init(httpMethod, nettyHttpClientRequest, requestEventBus, responseBodyConsumer, idleTimeoutMillis, totalRequestTimeoutMillis,
+			followRedirects, keepAlive, keepAliveTimeoutMillis, timeStampRecorder, automaticallyDecompressResponse, webSocketConf);
+		httpRequestContext.root = httpRequestContext;
+		return httpRequestContext;
+	}
+
+	private void init(HttpMethod httpMethod, NettyHttpClientRequest<T> nettyHttpClientRequest, RequestEventBus requestEventBus, ResponseBodyConsumer<T> responseBodyConsumer, int idleTimeoutMillis, int totalRequestTimeoutMillis, boolean followRedirects, boolean keepAlive, int keepAliveTimeoutMillis, TimeStampRecorder timeStampRecorder, boolean automaticallyDecompressResponse, WebSocketConf webSocketConf) {
 		this.httpMethod = httpMethod;
 		this.nettyHttpClientRequest = nettyHttpClientRequest;
 		this.requestEventBus = requestEventBus;
@@ -62,19 +127,177 @@ public class HttpRequestContext<T> {
 
 	public HttpRequestContext createRedirectRequest(ServerInfo redirectServerInfo, String redirectLocation) {
 		NettyHttpClientRequest redirectRequest = nettyHttpClientRequest.createRedirectRequest(redirectServerInfo, redirectLocation);
-		HttpRequestContext httpRequestContext = new HttpRequestContext(httpMethod, redirectRequest, requestEventBus, responseBodyConsumer,
-			idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects, keepAlive, keepAliveTimeoutMillis, timeStampRecorder, automaticallyDecompressResponse, webSocketConf);
+		HttpRequestContext httpRequestContext = newContextOfRequest(redirectRequest);
 		httpRequestContext.redirectionCount = this.redirectionCount + 1;
+		httpRequestContext.eventLoop = eventLoop;
 
 		nettyHttpClientRequest.setKeepAlive(keepAlive);
 		httpRequestContext.setHttpResponse(httpResponse);
 		return httpRequestContext;
 	}
 
+	/**
+	 * Create a copy of this request that is sent on a new connection, used when the pooled connection of this request turned out to be stale.
+	 * @return the new request context
+	 */
+	public HttpRequestContext createRetryRequest() {
+		HttpRequestContext httpRequestContext = newContextOfRequest(nettyHttpClientRequest);
+		httpRequestContext.redirectionCount = this.redirectionCount;
+		httpRequestContext.forceNewConnection = true;
+		httpRequestContext.eventLoop = eventLoop;
+		return httpRequestContext;
+	}
+
+	private HttpRequestContext<T> newContextOfRequest(NettyHttpClientRequest<T> request) {
+		if (handle == null) {
+			return new HttpRequestContext<>(httpMethod, request, requestEventBus, responseBodyConsumer, idleTimeoutMillis, totalRequestTimeoutMillis,
+				followRedirects, keepAlive, keepAliveTimeoutMillis, timeStampRecorder, automaticallyDecompressResponse, webSocketConf);
+		}
+
+		@SuppressWarnings("unchecked") HttpRequestContext<T> httpRequestContext = RECYCLER.get();
+		httpRequestContext.init(httpMethod, request, requestEventBus, responseBodyConsumer, idleTimeoutMillis, totalRequestTimeoutMillis,
+			followRedirects, keepAlive, keepAliveTimeoutMillis, timeStampRecorder, automaticallyDecompressResponse, webSocketConf);
+		httpRequestContext.root = root;
+		httpRequestContext.nextContext = root.nextContext;
+		root.nextContext = httpRequestContext;
+		return httpRequestContext;
+	}
+
+	/**
+	 * @return true if the context was taken from the recycler
+	 */
+	public boolean isRecycled() {
+		return handle != null;
+	}
+
+	/**
+	 * @return the generation of the context, compare it with {@link #isCurrent(int)} to tell if the context has been released since
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return true if the context has not been released for recycling since the generation was read
+	 */
+	public boolean isCurrent(int generation) {
+		return this.generation == generation;
+	}
+
+	/**
+	 * Release the recycled contexts of the request once the events that are being dispatched have been handled, called on the event loop
+	 * of the request when it has completed or failed. Requests that are not recycled, or that failed before they were confined to an event
+	 * loop, are left to the garbage collector.
+	 */
+	public void scheduleRelease() {
+		HttpRequestContext rootContext = root;
+		if (rootContext == null || rootContext.releaseScheduled || rootContext.eventLoop == null) {
+			return;
+		}
+
+		rootContext.releaseScheduled = true;
+		rootContext.eventLoop.execute(rootContext.releaseTask);
+	}
+
+	private void release() {
+		TimeStampRecorder recordedTimeStamps = timeStampRecorder;
+		RequestEventBus releasedEventBus = requestEventBus;
+
+		HttpRequestContext context = this;
+		while (context != null) {
+			HttpRequestContext next = context.nextContext;
+			context.recycle();
+			context = next;
+		}
+
+		recordedTimeStamps.recycle();
+		releasedEventBus.release();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void recycle() {
+		generation++;  //only written on the event loop
+
+		if (writtenOnChannel != null) {  //the channel may already serve the next request, only forget this one
+			writtenOnChannel.attr(HTTP_REQUEST_ATTRIBUTE_KEY).compareAndSet(this, null);
+			ArrayDeque<HttpRequestContext> pipelinedRequests = writtenOnChannel.attr(PIPELINED_REQUESTS_ATTRIBUTE_KEY).get();
+			if (pipelinedRequests != null) {
+				pipelinedRequests.remove(this);
+			}
+		}
+
+		if (nettyHttpClientResponse != null) {
+			nettyHttpClientResponse.recycle();
+		}
+
+		httpMethod = null;
+		nettyHttpClientRequest = null;
+		requestEventBus = null;
+		responseBodyConsumer = null;
+		timeStampRecorder = null;
+		webSocketConf = null;
+		nettyHttpClientResponse = null;
+		httpResponse = null;
+		attachedChannel = null;
+		writtenOnChannel = null;
+		eventLoop = null;
+		channelActivity = null;
+		backend = null;
+		backendReleased = 0;
+		redirectionCount = 0;
+		hasCompleted = false;
+		expectedContentLength = 0;
+		readBytes = 0;
+		isRedirecting = false;
+		retryOnStaleConnection = false;
+		forceNewConnection = false;
+		root = null;
+		nextContext = null;
+		releaseScheduled = false;
+
+		handle.recycle(this);
+	}
+
 	public ServerInfo getServerInfo() {
 		return nettyHttpClientRequest.getServerInfo();
 	}
 
+	/**
+	 * @return the server the connection of the request is opened to and pooled under, which is the selected backend of load balanced
+	 * requests and otherwise the server of the request
+	 */
+	public ServerInfo getConnectionServerInfo() {
+		Backend currentBackend = backend;
+		return currentBackend != null ? currentBackend.getServerInfo() : getServerInfo();
+	}
+
+	public void setBackend(Backend backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * @return the backend the request was sent to the first time this is called after the request completed or failed, otherwise null
+	 */
+	public Backend releaseBackend() {
+		Backend currentBackend = backend;
+		if (currentBackend == null) {
+			return null;
+		}
+
+		if (eventLoop != null) {  //confined requests complete and fail on their event loop, an ordered store is enough
+			if (backendReleased != 0) {
+				return null;
+			}
+			BACKEND_RELEASED_UPDATER.lazySet(this, 1);
+			return currentBackend;
+		}
+
+		if (!BACKEND_RELEASED_UPDATER.compareAndSet(this, 0, 1)) {
+			return null;
+		}
+		return currentBackend;
+	}
+
 
 	public NettyHttpClientRequest<T> getNettyHttpClientRequest() {
 		return nettyHttpClientRequest;
@@ -119,6 +342,11 @@ public class HttpRequestContext<T> {
 
 	public void attachedToChannel(Channel channel) {
 		this.attachedChannel = channel;
+		this.writtenOnChannel = channel;
+	}
+
+	public boolean isAttachedToChannel() {
+		return attachedChannel != null;
 	}
 
 	public Channel getAndDetachChannel() {
@@ -127,6 +355,17 @@ public class HttpRequestContext<T> {
 		return channel;
 	}
 
+	/**
+	 * @return the activity of the channel the request was last written on, or null if it has not been written on a channel yet
+	 */
+	public ChannelActivityHandler getChannelActivity() {
+		return channelActivity;
+	}
+
+	public void setChannelActivity(ChannelActivityHandler channelActivity) {
+		this.channelActivity = channelActivity;
+	}
+
 	public TimeStampRecorder getTimeRecorder() {
 		return timeStampRecorder;
 	}
@@ -183,7 +422,87 @@ public class HttpRequestContext<T> {
 		return httpResponse;
 	}
 
+	public boolean isRetryOnStaleConnection() {
+		return retryOnStaleConnection;
+	}
+
+	public void setRetryOnStaleConnection(boolean retryOnStaleConnection) {
+		this.retryOnStaleConnection = retryOnStaleConnection;
+	}
+
+	/**
+	 * @return true if the request is idempotent and its body can be sent again
+	 */
+	public boolean isRetryable() {
+		if (!(HttpMethod.GET.equals(httpMethod) || HttpMethod.HEAD.equals(httpMethod) || HttpMethod.PUT.equals(httpMethod) ||
+			HttpMethod.DELETE.equals(httpMethod) || HttpMethod.OPTIONS.equals(httpMethod) || HttpMethod.TRACE.equals(httpMethod))) {
+			return false;
+		}
+
+		HttpBody httpBody = nettyHttpClientRequest.getHttpBody();
+		return httpBody == null || httpBody.isRepeatable();
+	}
+
+	public boolean isForceNewConnection() {
+		return forceNewConnection;
+	}
+
 	public int getKeepAliveTimeoutMillis() {
 		return keepAliveTimeoutMillis;
 	}
+
+	/**
+	 * @return the event loop the request is confined to, or null if it isn't confined to one
+	 */
+	public EventLoop getEventLoop() {
+		return eventLoop;
+	}
+
+	public void setEventLoop(EventLoop eventLoop) {
+		this.eventLoop = eventLoop;
+	}
+
+	/**
+	 * @return true if the request isn't confined to an event loop or this is its event loop
+	 */
+	public boolean inEventLoop() {
+		EventLoop currentEventLoop = eventLoop;
+		return currentEventLoop == null || currentEventLoop.inEventLoop();
+	}
+
+	/**
+	 * Run the task on the event loop the request is confined to, or directly if the request isn't confined or this is already the event loop.
+	 * @param task the task, typically triggering an event from outside of the event loop
+	 */
+	public void executeOnEventLoop(Runnable task) {
+		EventLoop currentEventLoop = eventLoop;
+		if (currentEventLoop == null || currentEventLoop.inEventLoop()) {
+			task.run();
+		} else {
+			currentEventLoop.execute(task);
+		}
+	}
+
+	/**
+	 * Like {@link #executeOnEventLoop(Runnable)}, but the task is dropped if the context has been released for recycling since the
+	 * generation was read. Used by the holders of the context that can outlive the request, like its future.
+	 * @param generation the generation read when the holder got the context
+	 * @param task the task
+	 */
+	public void executeOnEventLoop(int generation, Runnable task) {
+		EventLoop currentEventLoop = eventLoop;
+		if (!isCurrent(generation)) {  //read after the event loop, a context reused by a later request has a later generation
+			return;
+		}
+
+		if (currentEventLoop == null || currentEventLoop.inEventLoop()) {
+			task.run();
+		} else {
+			currentEventLoop.execute(() -> {
+				if (isCurrent(generation)) {
+					task.run();
+				}
+			});
+		}
+	}
 }
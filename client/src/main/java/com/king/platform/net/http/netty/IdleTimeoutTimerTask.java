@@ -11,19 +11,19 @@ import com.king.platform.net.http.netty.util.TimeProvider;
 import io.netty.util.Timeout;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class IdleTimeoutTimerTask implements TimeoutTimerTask {
-	private final AtomicBoolean canceled = new AtomicBoolean();
-	private final AtomicBoolean completed = new AtomicBoolean();
-	private final AtomicBoolean executing = new AtomicBoolean();
-
+	private static final AtomicLongFieldUpdater<IdleTimeoutTimerTask> LAST_TOUCHED_UPDATER = AtomicLongFieldUpdater.newUpdater(IdleTimeoutTimerTask
+		.class, "lastTouched");
 
 	private final HttpRequestContext httpRequestContext;
 
 	private final long maxIdleTime;
 	private final TimeProvider timeProvider;
 	private final RequestEventBus requestEventBus;
+
+	private volatile boolean done;
 	private volatile long lastTouched;
 
 	private TimeoutTimerHandler timeoutTimerHandler;
@@ -43,48 +43,51 @@ public class IdleTimeoutTimerTask implements TimeoutTimerTask {
 
 	@Override
 	public void run(Timeout timeout) throws Exception {
-		if (completed.get() || canceled.get()) {
+		if (done) {
 			return;
 		}
 
-		if (executing.compareAndSet(false, true)) {
-
-			long now = timeProvider.currentTimeInMillis();
+		long now = timeProvider.currentTimeInMillis();
 
-			long currentReadTimeoutInstant = maxIdleTime + lastTouched;
-			long durationBeforeCurrentReadTimeout = currentReadTimeoutInstant - now;
+		long touched = lastTouched;
+		ChannelActivityHandler channelActivity = httpRequestContext.getChannelActivity();
+		if (channelActivity != null) {  //reads and writes are only recorded by the channel, they don't trigger touch events
+			touched = Math.max(touched, channelActivity.getLastActivity());
+		}
 
-			if (durationBeforeCurrentReadTimeout <= 0L) {
-				// idleConnectTimeout reached
-				long durationSinceLastTouch = now - lastTouched;
+		long currentReadTimeoutInstant = maxIdleTime + touched;
+		long durationBeforeCurrentReadTimeout = currentReadTimeoutInstant - now;
 
-				String message = "Idle timeout of " + maxIdleTime + " ms was " + durationSinceLastTouch + " ms since last event";
+		if (durationBeforeCurrentReadTimeout <= 0L) {
+			// idleConnectTimeout reached
+			long durationSinceLastTouch = now - touched;
 
-				requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, new TimeoutException(message));
+			String message = "Idle timeout of " + maxIdleTime + " ms was " + durationSinceLastTouch + " ms since last event";
 
-				completed();
-			} else
-				timeoutTimerHandler.scheduleTimeout(durationBeforeCurrentReadTimeout, TimeUnit.MILLISECONDS);
-				executing.set(false);
-			}
+			requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, new TimeoutException(message));
 
+			completed();
+		} else {
+			timeoutTimerHandler.scheduleTimeout(durationBeforeCurrentReadTimeout, TimeUnit.MILLISECONDS);
 		}
+	}
 
 
 	@Override
 	public void completed() {
-		completed.set(true);
+		done = true;
 
 	}
 
 	@Override
 	public void cancel() {
-		canceled.set(true);
+		done = true;
 	}
 
 
 	private void touch(Void v) {
-		lastTouched = timeProvider.currentTimeInMillis();
+		//an ordered store is enough since the timer only has to see the touch before the next check
+		LAST_TOUCHED_UPDATER.lazySet(this, timeProvider.currentTimeInMillis());
 	}
 
 	public void setTimeoutTimerHandler(TimeoutTimerHandler timeoutTimerHandler) {
@@ -53,6 +53,8 @@ public class NettyHttpClient implements HttpClient {
 	private final ChannelPool channelPool;
 
 	private EventLoopGroup group;
+	private ChannelManager channelManager;
+	private Executor httpClientCallbackExecutor;
 	private BackPressure executionBackPressure;
 
 	private List<ShutdownJob> shutdownJobs = new ArrayList<>();
@@ -98,18 +100,29 @@ public class NettyHttpClient implements HttpClient {
 			group = new NioEventLoopGroup(nioThreads, nioThreadFactory);
 		}
 
+		if (confMap.get(ConfKeys.BATCH_CALLBACK_DISPATCH)) {
+			httpClientCallbackExecutor = new BatchingCallbackExecutor(defaultHttpClientCallbackExecutor, group);
+		} else {
+			httpClientCallbackExecutor = defaultHttpClientCallbackExecutor;
+		}
+
 		HttpClientResponseHandler responseHandler = new HttpClientResponseHandler(new HttpRedirector());
 		HttpClientRequestHandler requestHandler = new HttpClientRequestHandler();
 		HttpClientHandler clientHandler = new HttpClientHandler(responseHandler, requestHandler);
 		WebSocketResponseHandler webSocketResponseHandler = new WebSocketResponseHandler();
 		WebSocketHandler webSocketHandler = new WebSocketHandler(webSocketResponseHandler, requestHandler);
 
-		ChannelManager channelManager = new ChannelManager(group, clientHandler, webSocketHandler, cleanupTimer, timeProvider, channelPool, confMap);
+		channelManager = new ChannelManager(group, clientHandler, webSocketHandler, cleanupTimer, timeProvider, channelPool, confMap);
 		channelManager.subscribeToRootBus(rootEventBus);
+		channelPool.start(channelManager, group);
 
-		boolean executeOnCallingThread = confMap.get(ConfKeys.EXECUTE_ON_CALLING_THREAD);
+		//confined requests are moved to their event loop when they are sent, there is no point in handing them to the executor first
+		boolean confinedRequests = confMap.get(ConfKeys.EVENT_LOOP_CONFINED_REQUESTS);
+		boolean executeOnCallingThread = confMap.get(ConfKeys.EXECUTE_ON_CALLING_THREAD) || confinedRequests;
+		boolean recycleRequests = confinedRequests && confMap.get(ConfKeys.RECYCLE_REQUESTS);
 
-		httpClientCaller = new HttpClientCallerImpl(rootEventBus, executeOnCallingThread, executionBackPressure, timeProvider);
+		httpClientCaller = new HttpClientCallerImpl(rootEventBus, executeOnCallingThread, confinedRequests, recycleRequests, executionBackPressure,
+			timeProvider);
 	}
 
 	@Override
@@ -124,6 +137,10 @@ public class NettyHttpClient implements HttpClient {
 			group.shutdownGracefully(0, 10, TimeUnit.SECONDS);
 		}
 
+		if (channelManager != null) {
+			channelManager.shutdown();
+		}
+
 		for (ShutdownJob shutdownJob : shutdownJobs) {
 			shutdownJob.onShutdown();
 		}
@@ -139,70 +156,70 @@ public class NettyHttpClient implements HttpClient {
 	public HttpClientRequestWithBodyBuilder create(final com.king.platform.net.http.HttpMethod httpMethod, final String uri) {
 		verifyStarted();
 		return new HttpClientRequestWithBodyBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, NettyHttpMethods.toNettyMethod(httpMethod), uri, confMap,
-			defaultHttpClientCallbackExecutor);
+			httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestBuilder createGet(String uri) {
 		verifyStarted();
-		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.GET, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.GET, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestWithBodyBuilder createPost(String uri) {
 		verifyStarted();
 		return new HttpClientRequestWithBodyBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.POST, uri, confMap,
-			defaultHttpClientCallbackExecutor);
+			httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestWithBodyBuilder createPut(String uri) {
 		verifyStarted();
 		return new HttpClientRequestWithBodyBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.PUT, uri, confMap,
-			defaultHttpClientCallbackExecutor);
+			httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestBuilder createDelete(String uri) {
 		verifyStarted();
-		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.DELETE, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.DELETE, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestBuilder createHead(String uri) {
 		verifyStarted();
-		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.HEAD, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.HEAD, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestBuilder createOptions(String uri) {
 		verifyStarted();
-		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.OPTIONS, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.OPTIONS, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestBuilder createTrace(String uri) {
 		verifyStarted();
-		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.TRACE, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientRequestBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.TRACE, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientRequestWithBodyBuilder createPatch(String uri) {
 		verifyStarted();
 		return new HttpClientRequestWithBodyBuilderImpl(httpClientCaller, HttpVersion.HTTP_1_1, HttpMethod.PATCH, uri, confMap,
-			defaultHttpClientCallbackExecutor);
+			httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientSseRequestBuilder createSSE(String uri) {
 		verifyStarted();
-		return new HttpClientSseRequestBuilderImpl(httpClientCaller, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientSseRequestBuilderImpl(httpClientCaller, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	@Override
 	public HttpClientWebSocketRequestBuilder createWebSocket(String uri) {
 		verifyStarted();
-		return new HttpClientWebSocketRequestBuilderImpl(httpClientCaller, uri, confMap, defaultHttpClientCallbackExecutor);
+		return new HttpClientWebSocketRequestBuilderImpl(httpClientCaller, uri, confMap, httpClientCallbackExecutor);
 	}
 
 	private void verifyStarted() {
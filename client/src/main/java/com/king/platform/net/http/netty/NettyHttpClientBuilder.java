@@ -15,12 +15,15 @@ import com.king.platform.net.http.netty.metric.MetricCallback;
 import com.king.platform.net.http.netty.metric.MetricCollector;
 import com.king.platform.net.http.netty.metric.RecordedTimeStamps;
 import com.king.platform.net.http.netty.pool.ChannelPool;
+import com.king.platform.net.http.netty.pool.ChannelSelectionStrategy;
+import com.king.platform.net.http.netty.pool.EventLoopChannelPool;
 import com.king.platform.net.http.netty.pool.PoolingChannelPool;
 import com.king.platform.net.http.netty.util.SystemTimeProvider;
 import com.king.platform.net.http.netty.util.TimeProvider;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -46,6 +49,7 @@ public class NettyHttpClientBuilder {
 
 	private ThreadFactory nioThreadFactory;
 	private Executor httpCallbackExecutor;
+	private boolean virtualThreadHttpCallbacks;
 
 	private Timer cleanupTimer;
 	private TimeProvider timeProvider;
@@ -55,6 +59,14 @@ public class NettyHttpClientBuilder {
 
 	private MetricCallback metricCallback;
 	private int keepAliveTimeoutMS = 30_000;
+	private int maxConnectionsPerHost;
+	private int maxPendingAcquiresPerHost = 10_000;
+	private int connectionAcquireTimeoutMS = 1000;
+	private boolean channelPoolPerEventLoop;
+	private final Map<ServerInfo, Integer> minIdleConnectionsMap = new HashMap<>();
+	private ChannelSelectionStrategy channelSelectionStrategy;
+	private final Map<ServerInfo, ChannelSelectionStrategy> channelSelectionStrategyMap = new HashMap<>();
+	private final Map<ServerInfo, Integer> maxPipelinedRequestsMap = new HashMap<>();
 
 	private final Map<ConfKeys, Object>  optionsMap = new HashMap<>();
 
@@ -88,6 +100,9 @@ public class NettyHttpClientBuilder {
 		if (httpCallbackExecutor != null) {
 			throw new IllegalStateException("Can't set callback dispatcher threads when httpCallbackExecutor has already been set.");
 		}
+		if (virtualThreadHttpCallbacks) {
+			throw new IllegalStateException("Can't set callback dispatcher threads when virtual thread callbacks have already been set.");
+		}
 		this.httpCallbackExecutorThreads = httpCallbackExecutorThreads;
 		return this;
 	}
@@ -102,11 +117,31 @@ public class NettyHttpClientBuilder {
 		if (httpCallbackExecutorThreads != 0) {
 			throw new IllegalStateException("Can't set httpCallbackExecutor when httpCallbackExecutorThreads has already been set.");
 		}
+		if (virtualThreadHttpCallbacks) {
+			throw new IllegalStateException("Can't set httpCallbackExecutor when virtual thread callbacks have already been set.");
+		}
 
 		this.httpCallbackExecutor = executor;
 		return this;
 	}
 
+	/**
+	 * Run each http callback on a new virtual thread instead of on a pool of platform threads, so callbacks and callers of
+	 * {@link com.king.platform.net.http.BaseBuiltClientRequest#executeBlocking()} on the callback executor can block cheaply.
+	 * Requires Java 21 or later, creating the client fails on older versions. Defaults to false.
+	 * Can only be set if neither httpCallbackExecutor nor httpCallbackExecutorThreads has been set.
+	 * @param virtualThreadHttpCallbacks true if the http callbacks should run on virtual threads
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setVirtualThreadHttpCallbacks(boolean virtualThreadHttpCallbacks) {
+		if (httpCallbackExecutor != null || httpCallbackExecutorThreads != 0) {
+			throw new IllegalStateException("Can't use virtual thread callbacks when httpCallbackExecutor or httpCallbackExecutorThreads has already been set.");
+		}
+
+		this.virtualThreadHttpCallbacks = virtualThreadHttpCallbacks;
+		return this;
+	}
+
 
 	/**
 	 * Set an custom thread factory for netty nio.
@@ -185,6 +220,125 @@ public class NettyHttpClientBuilder {
 	}
 
 
+	/**
+	 * Set the max number of open connections to each host. Requests above the limit wait in a queue per host until
+	 * a connection is released back to the pool or closed. Defaults to 0, which means no limit.
+	 * @param maxConnectionsPerHost the max number of connections per host
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (channelPool != null) {
+			throw new IllegalStateException("Can't set max connections per host when a non-default channel pool has already been set.");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		return this;
+	}
+
+	/**
+	 * Set the max number of requests per host that can wait for a connection when max connections per host has been reached.
+	 * Requests above this fail directly. Defaults to 10000.
+	 * @param maxPendingAcquiresPerHost the max number of waiting requests per host
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setMaxPendingAcquiresPerHost(int maxPendingAcquiresPerHost) {
+		if (channelPool != null) {
+			throw new IllegalStateException("Can't set max pending acquires per host when a non-default channel pool has already been set.");
+		}
+		this.maxPendingAcquiresPerHost = maxPendingAcquiresPerHost;
+		return this;
+	}
+
+	/**
+	 * Set how long in ms a request waits for a connection when max connections per host has been reached. Defaults to 1000 ms
+	 * @param ms the time after which the request fails with an {@link com.king.platform.net.http.netty.TimeoutException}
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setConnectionAcquireTimeoutMs(int ms) {
+		if (channelPool != null) {
+			throw new IllegalStateException("Can't set connection acquire timeout when a non-default channel pool has already been set.");
+		}
+		this.connectionAcquireTimeoutMS = ms;
+		return this;
+	}
+
+
+	/**
+	 * Use a default channel pool that is partitioned per nio thread, see {@link com.king.platform.net.http.netty.pool.EventLoopChannelPool}.
+	 * Requests are executed on the nio thread that owns an idle connection to the server, which avoids contention on the pool
+	 * when many nio threads are used. Defaults to false.
+	 * @param channelPoolPerEventLoop true if the pool should be partitioned per nio thread
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setChannelPoolPerEventLoop(boolean channelPoolPerEventLoop) {
+		if (channelPool != null) {
+			throw new IllegalStateException("Can't use a channel pool per event loop when a non-default channel pool has already been set.");
+		}
+		this.channelPoolPerEventLoop = channelPoolPerEventLoop;
+		return this;
+	}
+
+	/**
+	 * Keep at least minIdleConnections idle connections to the host in the channel pool. The connections are opened when the client
+	 * is started, and closed or expired connections are replaced by the pool cleanup.
+	 * The connections are still limited by {@link #setMaxConnectionsPerHost(int)}. For a load balanced host each of its backends keeps
+	 * minIdleConnections idle connections.
+	 * @param uri the uri of the host, for example https://somehost:8443
+	 * @param minIdleConnections the min number of idle connections
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setMinIdleConnections(String uri, int minIdleConnections) {
+		try {
+			minIdleConnectionsMap.put(ServerInfo.buildFromUri(uri), minIdleConnections);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid uri " + uri, e);
+		}
+		return this;
+	}
+
+	/**
+	 * Set which idle connection is reused when a request is sent. Defaults to {@link ChannelSelectionStrategy#LIFO}.
+	 * @param channelSelectionStrategy the strategy for all hosts without their own strategy
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setChannelSelectionStrategy(ChannelSelectionStrategy channelSelectionStrategy) {
+		this.channelSelectionStrategy = channelSelectionStrategy;
+		return this;
+	}
+
+	/**
+	 * Set which idle connection is reused when a request is sent to the host.
+	 * @param uri the uri of the host, for example https://somehost:8443
+	 * @param channelSelectionStrategy the strategy for the host
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setChannelSelectionStrategy(String uri, ChannelSelectionStrategy channelSelectionStrategy) {
+		try {
+			channelSelectionStrategyMap.put(ServerInfo.buildFromUri(uri), channelSelectionStrategy);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid uri " + uri, e);
+		}
+		return this;
+	}
+
+	/**
+	 * Enable HTTP/1.1 pipelining to the host. When no idle connection is available, GET, HEAD, OPTIONS and TRACE requests without a body
+	 * are sent on a connection that is still waiting for the responses of earlier requests, as long as fewer than maxPipelinedRequests
+	 * requests are outstanding on it. If a pipelined connection is closed or fails, the requests that have not received their response
+	 * yet are retried on new connections.
+	 * Only enable pipelining for hosts that are known to support it. Defaults to 1, which disables pipelining.
+	 * @param uri the uri of the host, for example https://somehost:8443
+	 * @param maxPipelinedRequests the max number of outstanding requests per connection
+	 * @return the builder
+	 */
+	public NettyHttpClientBuilder setMaxPipelinedRequests(String uri, int maxPipelinedRequests) {
+		try {
+			maxPipelinedRequestsMap.put(ServerInfo.buildFromUri(uri), maxPipelinedRequests);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid uri " + uri, e);
+		}
+		return this;
+	}
+
 	/**
 	 * Configure global settings for the http client. Most of the settings can be overridden on each request. <br>
 	 *
@@ -206,10 +360,15 @@ public class NettyHttpClientBuilder {
 		List<NettyHttpClient.ShutdownJob> shutdownJobs = new ArrayList<>();
 
 		if (httpCallbackExecutor == null) {
-			if (httpCallbackExecutorThreads == 0) {
-				httpCallbackExecutorThreads = 2;
+			final ExecutorService executorService;
+			if (virtualThreadHttpCallbacks) {
+				executorService = newVirtualThreadPerTaskExecutor("HttpClient-HttpCallback");
+			} else {
+				if (httpCallbackExecutorThreads == 0) {
+					httpCallbackExecutorThreads = 2;
+				}
+				executorService = Executors.newFixedThreadPool(httpCallbackExecutorThreads, newThreadFactory("HttpClient-HttpCallback"));
 			}
-			final ExecutorService executorService = Executors.newFixedThreadPool(httpCallbackExecutorThreads, newThreadFactory("HttpClient-HttpCallback"));
 			httpCallbackExecutor = executorService;
 
 			shutdownJobs.add(new NettyHttpClient.ShutdownJob() {
@@ -242,7 +401,8 @@ public class NettyHttpClientBuilder {
 		}
 
 		if (rootEventBus == null) {
-			rootEventBus = new DefaultEventBus();
+			rootEventBus = new DefaultEventBus(Boolean.TRUE.equals(optionsMap.get(ConfKeys.EVENT_LOOP_CONFINED_REQUESTS)),
+				Boolean.TRUE.equals(optionsMap.get(ConfKeys.RECYCLE_REQUESTS)));
 		}
 
 		if (metricCallback == null) {
@@ -253,7 +413,28 @@ public class NettyHttpClientBuilder {
 
 		if (channelPool == null) {
 			optionsMap.putIfAbsent(ConfKeys.KEEP_ALIVE_TIMEOUT_MILLIS, keepAliveTimeoutMS);
-			channelPool = new PoolingChannelPool(cleanupTimer, timeProvider, metricCallback);
+			if (channelPoolPerEventLoop || Boolean.TRUE.equals(optionsMap.get(ConfKeys.EVENT_LOOP_CONFINED_REQUESTS))) {
+				channelPool = new EventLoopChannelPool(cleanupTimer, timeProvider, metricCallback, maxConnectionsPerHost, maxPendingAcquiresPerHost,
+					connectionAcquireTimeoutMS);
+			} else {
+				channelPool = new PoolingChannelPool(cleanupTimer, timeProvider, metricCallback, maxConnectionsPerHost, maxPendingAcquiresPerHost,
+					connectionAcquireTimeoutMS);
+			}
+		}
+
+		for (Map.Entry<ServerInfo, Integer> minIdleEntry : minIdleConnectionsMap.entrySet()) {
+			channelPool.setMinIdleConnections(minIdleEntry.getKey(), minIdleEntry.getValue());
+		}
+
+		if (channelSelectionStrategy != null) {
+			channelPool.setChannelSelectionStrategy(channelSelectionStrategy);
+		}
+		for (Map.Entry<ServerInfo, ChannelSelectionStrategy> strategyEntry : channelSelectionStrategyMap.entrySet()) {
+			channelPool.setChannelSelectionStrategy(strategyEntry.getKey(), strategyEntry.getValue());
+		}
+
+		for (Map.Entry<ServerInfo, Integer> pipeliningEntry : maxPipelinedRequestsMap.entrySet()) {
+			channelPool.setMaxPipelinedRequests(pipeliningEntry.getKey(), pipeliningEntry.getValue());
 		}
 
 		if (executionBackPressure == null) {
@@ -275,6 +456,21 @@ public class NettyHttpClientBuilder {
 	}
 
 
+	/**
+	 * The client is built for Java 8, so the virtual thread API of Java 21 is looked up reflectively.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 1L);
+			ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Virtual threads are not available on Java " + System.getProperty("java.version"), e);
+		}
+	}
+
 	private ThreadFactory newThreadFactory(final String name) {
 		return new ThreadFactory() {
 			private int threadId = 0;
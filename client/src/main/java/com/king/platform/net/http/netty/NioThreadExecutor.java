@@ -0,0 +1,74 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs callbacks inline on the thread completing the request, which is normally a nio thread.
+ * Callbacks running on it must not block, the time of each callback is measured and slow callbacks are logged as warnings.
+ * Exceptions thrown by the callbacks are logged, they are not allowed to reach the nio handlers.
+ */
+public final class NioThreadExecutor implements Executor {
+	public static final NioThreadExecutor INSTANCE = new NioThreadExecutor();
+
+	private static final Logger logger = getLogger(NioThreadExecutor.class);
+	private static final long SLOW_CALLBACK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final AtomicLong slowCallbacks = new AtomicLong();
+	private volatile long lastWarning = System.nanoTime() - WARNING_INTERVAL_NANOS;
+
+	private NioThreadExecutor() {
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		long start = System.nanoTime();
+		try {
+			command.run();
+		} catch (Throwable throwable) {
+			logger.error("Callback failed", throwable);
+		}
+		checkDuration(start, command);
+	}
+
+	/**
+	 * Same as {@link #execute(Runnable)}, without allocating a runnable for callbacks that are non capturing method references.
+	 */
+	public <A, B> void execute(BiConsumer<A, B> callback, A a, B b) {
+		long start = System.nanoTime();
+		try {
+			callback.accept(a, b);
+		} catch (Throwable throwable) {
+			logger.error("Callback failed", throwable);
+		}
+		checkDuration(start, a);
+	}
+
+	private void checkDuration(long start, Object callback) {
+		long now = System.nanoTime();
+		if (now - start < SLOW_CALLBACK_NANOS) {
+			return;
+		}
+
+		long slow = slowCallbacks.incrementAndGet();
+		if (now - lastWarning >= WARNING_INTERVAL_NANOS) {  //warn at most once per interval, a blocking callback is usually slow every time
+			lastWarning = now;
+			slowCallbacks.set(0);
+			logger.warn("Callback {} ran for {} ms on thread {}, {} slow callbacks since the last warning. Callbacks completed on the nio thread " +
+				"must not block, use an executor for them instead", callback, TimeUnit.NANOSECONDS.toMillis(now - start), Thread.currentThread()
+				.getName(), slow);
+		}
+	}
+}
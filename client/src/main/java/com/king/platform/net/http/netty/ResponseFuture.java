@@ -15,14 +15,22 @@ import java.util.concurrent.Executor;
 public class ResponseFuture<T> extends CompletableFuture<HttpResponse<T>> {
 	private final RequestEventBus requestEventBus;
 	private final HttpRequestContext requestContext;
+	//the future outlives recycled requests, it must not reach a context or event bus that serves a later request
+	private final int requestGeneration;
 
 	public ResponseFuture(RequestEventBus requestEventBus, HttpRequestContext requestContext, Executor callbackExecutor) {
 		this.requestEventBus = requestEventBus;
 		this.requestContext = requestContext;
+		this.requestGeneration = requestContext != null ? requestContext.getGeneration() : 0;
 
 		requestEventBus.subscribe(Event.ERROR, new RunOnceCallback2<HttpRequestContext, Throwable>() {
 			@Override
 			public void onFirstEvent(HttpRequestContext requestContext, Throwable throwable) {
+				if (callbackExecutor == NioThreadExecutor.INSTANCE) {
+					NioThreadExecutor.INSTANCE.execute(ResponseFuture::completeExceptionally, ResponseFuture.this, throwable);
+					return;
+				}
+
 				callbackExecutor.execute(new Runnable() {
 					@Override
 					public void run() {
@@ -36,10 +44,16 @@ public class ResponseFuture<T> extends CompletableFuture<HttpResponse<T>> {
 		requestEventBus.subscribe(Event.COMPLETED, new RunOnceCallback1<HttpRequestContext>() {
 			@Override
 			public void onFirstEvent(HttpRequestContext payload) {
+				HttpResponse<T> httpResponse = payload.getHttpResponse();  //the context may be recycled before the executor runs
+				if (callbackExecutor == NioThreadExecutor.INSTANCE) {
+					NioThreadExecutor.INSTANCE.execute(ResponseFuture::complete, ResponseFuture.this, httpResponse);
+					return;
+				}
+
 				callbackExecutor.execute(new Runnable() {
 					@Override
 					public void run() {
-						ResponseFuture.this.complete(payload.getHttpResponse());
+						ResponseFuture.this.complete(httpResponse);
 					}
 				});
 			}
@@ -54,7 +68,8 @@ public class ResponseFuture<T> extends CompletableFuture<HttpResponse<T>> {
 			return false;
 		}
 
-		requestEventBus.triggerEvent(Event.ERROR, requestContext, new CancellationException());
+		requestContext.executeOnEventLoop(requestGeneration, () -> requestEventBus.triggerEvent(Event.ERROR, requestContext,
+			new CancellationException()));
 
 		super.cancel(mayInterruptIfRunning);
 		return true;
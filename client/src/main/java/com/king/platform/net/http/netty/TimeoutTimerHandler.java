@@ -7,42 +7,73 @@ package com.king.platform.net.http.netty;
 
 import com.king.platform.net.http.netty.eventbus.Event;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
+import io.netty.channel.EventLoop;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
+import org.slf4j.Logger;
 
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import static org.slf4j.LoggerFactory.getLogger;
+
 public class TimeoutTimerHandler {
+	private final Logger logger = getLogger(getClass());
+
 	private final Timer nettyTimer;
-	private final RequestEventBus requestEventBus;
+	private final EventLoop eventLoop;
 	private final TimeoutTimerTask task;
-	private Timeout timeout;
+	private volatile Timeout timeout;
+	private volatile ScheduledFuture<?> scheduledFuture;
 
 	public TimeoutTimerHandler(Timer nettyTimer, RequestEventBus requestEventBus, final TimeoutTimerTask task) {
-		this.nettyTimer = nettyTimer;
-		this.requestEventBus = requestEventBus;
-		this.task = task;
+		this(nettyTimer, null, requestEventBus, task);
 	}
 
-	public void scheduleTimeout(long delayTime, TimeUnit timeUnit) {
-		timeout = nettyTimer.newTimeout(task, delayTime, timeUnit);
+	/**
+	 * @param eventLoop the event loop the request is confined to, the task is scheduled on it instead of on the timer when it is set
+	 */
+	public TimeoutTimerHandler(Timer nettyTimer, EventLoop eventLoop, RequestEventBus requestEventBus, final TimeoutTimerTask task) {
+		this.nettyTimer = nettyTimer;
+		this.eventLoop = eventLoop;
+		this.task = task;
 
 		requestEventBus.subscribe(Event.ERROR, this::cancel);
 		requestEventBus.subscribe(Event.onInternalCompletion, this::complete);
+	}
 
+	public void scheduleTimeout(long delayTime, TimeUnit timeUnit) {
+		if (eventLoop != null) {
+			scheduledFuture = eventLoop.schedule(this::runTask, delayTime, timeUnit);
+		} else {
+			timeout = nettyTimer.newTimeout(task, delayTime, timeUnit);
+		}
+	}
+
+	private void runTask() {
+		try {
+			task.run(null);  //the tasks don't use the timeout
+		} catch (Exception e) {
+			logger.error("Timeout task failed", e);
+		}
 	}
 
 	private void cancel(HttpRequestContext payload1, Throwable payload2) {
 		task.cancel();
-		if (timeout != null) {
-			timeout.cancel();
-		}
+		cancelScheduledTask();
 	}
 
 	private void complete(HttpRequestContext payload) {
 		task.completed();
+		cancelScheduledTask();
+	}
+
+	private void cancelScheduledTask() {
 		if (timeout != null) {
 			timeout.cancel();
 		}
+		if (scheduledFuture != null) {
+			scheduledFuture.cancel(false);
+		}
 	}
 }
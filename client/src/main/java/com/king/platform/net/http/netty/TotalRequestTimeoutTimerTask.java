@@ -9,12 +9,8 @@ import com.king.platform.net.http.netty.eventbus.Event;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
 import io.netty.util.Timeout;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-
 public class TotalRequestTimeoutTimerTask implements TimeoutTimerTask {
-	private final AtomicBoolean canceled = new AtomicBoolean();
-	private final AtomicBoolean completed = new AtomicBoolean();
-	private final AtomicBoolean executed = new AtomicBoolean();
+	private volatile boolean done;
 	private final RequestEventBus requestEventBus;
 	private final HttpRequestContext httpRequestContext;
 
@@ -25,7 +21,8 @@ public class TotalRequestTimeoutTimerTask implements TimeoutTimerTask {
 
 	@Override
 	public void run(Timeout timeout) throws Exception {
-		if (executed.compareAndSet(false, true) && !canceled.get() && !completed.get()) {
+		if (!done) {  //the task is only run by one thread, the timer or the event loop of the request
+			done = true;
 			requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, new TimeoutException("Request timed out"));
 		}
 
@@ -33,12 +30,12 @@ public class TotalRequestTimeoutTimerTask implements TimeoutTimerTask {
 
 	@Override
 	public void completed() {
-		completed.set(true);
+		done = true;
 	}
 
 	@Override
 	public void cancel() {
-		canceled.set(true);
+		done = true;
 	}
 
 
@@ -0,0 +1,26 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.dns;
+
+
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Looks up the addresses of a host name for the {@link CachingAddressResolverGroup}.
+ */
+public interface AddressLookup {
+	/**
+	 * @param hostname the host name, never an ip address
+	 * @param executor the event loop of the connection waiting for the addresses
+	 * @return the addresses and how long they can be cached, failed with {@link java.net.UnknownHostException} if the host has no addresses
+	 */
+	CompletableFuture<LookupResult> lookup(String hostname, EventExecutor executor);
+
+	default void close() {
+	}
+}
@@ -0,0 +1,260 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.dns;
+
+import com.king.platform.net.http.netty.util.SystemTimeProvider;
+import com.king.platform.net.http.netty.util.TimeProvider;
+import io.netty.resolver.AddressResolver;
+import io.netty.resolver.AddressResolverGroup;
+import io.netty.resolver.InetSocketAddressResolver;
+import io.netty.resolver.SimpleNameResolver;
+import io.netty.util.NetUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Resolves host names through an {@link AddressLookup} and caches the addresses for the time to live of the lookup, shared by all event loops
+ * of the client. Failed lookups are cached for a short time, so a burst of connections to a missing host makes one lookup.
+ * A cached entry used within the refresh window before it expires is looked up again in the background, so hosts in use don't wait for
+ * lookups when their entries expire. Concurrent lookups of the same host are made once.
+ * Expired entries are swept by the resolves once per max time to live, so hosts that are no longer resolved don't stay in the cache.
+ * <p>
+ * Set it as {@link com.king.platform.net.http.ConfKeys#DNS_RESOLVER}.
+ */
+public class CachingAddressResolverGroup extends AddressResolverGroup<InetSocketAddress> {
+	private static final Logger logger = getLogger(CachingAddressResolverGroup.class);
+
+	private final AddressLookup addressLookup;
+	private final long maxTtlMillis;
+	private final long negativeTtlMillis;
+	private final long refreshWindowMillis;
+	private final TimeProvider timeProvider;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, CompletableFuture<Entry>> lookups = new ConcurrentHashMap<>();
+	private final AtomicLong nextSweepAt;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+
+	/**
+	 * Cache the addresses for at most 5 minutes, failed lookups for 5 seconds and refresh entries used in the last 10 seconds before they
+	 * expire.
+	 */
+	public CachingAddressResolverGroup(AddressLookup addressLookup) {
+		this(addressLookup, TimeUnit.MINUTES.toMillis(5), TimeUnit.SECONDS.toMillis(5), TimeUnit.SECONDS.toMillis(10), new SystemTimeProvider());
+	}
+
+	/**
+	 * @param addressLookup the lookup of the addresses
+	 * @param maxTtlMillis the longest time addresses are cached, regardless of their time to live
+	 * @param negativeTtlMillis how long a failed lookup is cached
+	 * @param refreshWindowMillis how long before the entries expire they are refreshed when used, 0 to never refresh
+	 * @param timeProvider the clock of the cache
+	 */
+	public CachingAddressResolverGroup(AddressLookup addressLookup, long maxTtlMillis, long negativeTtlMillis, long refreshWindowMillis,
+									   TimeProvider timeProvider) {
+		this.addressLookup = addressLookup;
+		this.maxTtlMillis = maxTtlMillis;
+		this.negativeTtlMillis = negativeTtlMillis;
+		this.refreshWindowMillis = refreshWindowMillis;
+		this.timeProvider = timeProvider;
+		nextSweepAt = new AtomicLong(timeProvider.currentTimeInMillis() + getSweepIntervalMillis());
+	}
+
+	@Override
+	protected AddressResolver<InetSocketAddress> newResolver(EventExecutor executor) throws Exception {
+		return new InetSocketAddressResolver(executor, new CachingNameResolver(executor));
+	}
+
+	/**
+	 * @return the number of resolves answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of resolves that waited for a lookup
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of lookups made ahead of expiry for entries in use
+	 */
+	public long getRefreshes() {
+		return refreshes.sum();
+	}
+
+	/**
+	 * @return the number of cached entries, expired entries included until they are swept
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Drop all cached entries, the next resolve of each host makes a new lookup.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		addressLookup.close();
+	}
+
+	CompletableFuture<Entry> resolveHost(String hostname, EventExecutor executor) {
+		long now = timeProvider.currentTimeInMillis();
+		sweepExpiredEntries(now);
+
+		Entry entry = entries.get(hostname);
+
+		if (entry != null && now < entry.expiresAt) {
+			hits.increment();
+			if (entry.failure == null && refreshWindowMillis > 0 && now >= entry.expiresAt - refreshWindowMillis && !lookups.containsKey
+				(hostname)) {
+				refreshes.increment();
+				lookup(hostname, executor);
+			}
+			return CompletableFuture.completedFuture(entry);
+		}
+
+		misses.increment();
+		return lookup(hostname, executor);
+	}
+
+	private void sweepExpiredEntries(long now) {
+		long sweepAt = nextSweepAt.get();
+		if (now < sweepAt || !nextSweepAt.compareAndSet(sweepAt, now + getSweepIntervalMillis())) {  //one resolve sweeps, the others carry on
+			return;
+		}
+
+		for (Map.Entry<String, Entry> cachedEntry : entries.entrySet()) {
+			if (now >= cachedEntry.getValue().expiresAt) {
+				entries.remove(cachedEntry.getKey(), cachedEntry.getValue());  //keeps an entry replaced by a lookup in the meantime
+			}
+		}
+	}
+
+	private long getSweepIntervalMillis() {
+		return Math.max(Math.max(maxTtlMillis, negativeTtlMillis), 1);
+	}
+
+	private CompletableFuture<Entry> lookup(String hostname, EventExecutor executor) {
+		CompletableFuture<Entry> future = new CompletableFuture<>();
+		CompletableFuture<Entry> existing = lookups.putIfAbsent(hostname, future);
+		if (existing != null) {
+			return existing;
+		}
+
+		CompletableFuture<LookupResult> lookup;
+		try {
+			lookup = addressLookup.lookup(hostname, executor);
+			if (lookup == null) {
+				throw new NullPointerException("The lookup of " + hostname + " returned null");
+			}
+		} catch (Throwable throwable) {
+			lookup = new CompletableFuture<>();
+			lookup.completeExceptionally(throwable);
+		}
+
+		lookup.whenComplete((result, throwable) -> {
+			long now = timeProvider.currentTimeInMillis();
+			Entry entry;
+			if (throwable == null) {
+				entry = new Entry(result.getAddresses(), null, now + Math.min(Math.max(result.getTtlMillis(), 0), maxTtlMillis));
+				entries.put(hostname, entry);
+			} else {
+				Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() :
+					throwable;
+				logger.trace("Lookup of {} failed", hostname, cause);
+				entry = new Entry(null, cause, now + negativeTtlMillis);
+				Entry current = entries.get(hostname);
+				if (current == null || current.failure != null || now >= current.expiresAt) {  //a failed refresh keeps the addresses until they expire
+					entries.put(hostname, entry);
+				}
+			}
+
+			lookups.remove(hostname, future);
+			future.complete(entry);
+		});
+
+		return future;
+	}
+
+	static final class Entry {
+		private final List<InetAddress> addresses;
+		private final Throwable failure;
+		private final long expiresAt;
+
+		private Entry(List<InetAddress> addresses, Throwable failure, long expiresAt) {
+			this.addresses = addresses;
+			this.failure = failure;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private class CachingNameResolver extends SimpleNameResolver<InetAddress> {
+		private CachingNameResolver(EventExecutor executor) {
+			super(executor);
+		}
+
+		@Override
+		protected void doResolve(String inetHost, Promise<InetAddress> promise) throws Exception {
+			byte[] ipAddress = NetUtil.createByteArrayFromIpAddressString(inetHost);
+			if (ipAddress != null) {
+				promise.setSuccess(InetAddress.getByAddress(ipAddress));
+				return;
+			}
+
+			resolveHost(inetHost, executor()).whenComplete((entry, throwable) -> {
+				if (entry.failure != null) {
+					promise.tryFailure(entry.failure);
+				} else {
+					promise.trySuccess(entry.addresses.get(0));
+				}
+			});
+		}
+
+		@Override
+		protected void doResolveAll(String inetHost, Promise<List<InetAddress>> promise) throws Exception {
+			byte[] ipAddress = NetUtil.createByteArrayFromIpAddressString(inetHost);
+			if (ipAddress != null) {
+				promise.setSuccess(Collections.singletonList(InetAddress.getByAddress(ipAddress)));
+				return;
+			}
+
+			resolveHost(inetHost, executor()).whenComplete((entry, throwable) -> {
+				if (entry.failure != null) {
+					promise.tryFailure(entry.failure);
+				} else {
+					promise.trySuccess(entry.addresses);
+				}
+			});
+		}
+	}
+}
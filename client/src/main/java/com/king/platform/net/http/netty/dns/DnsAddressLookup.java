@@ -0,0 +1,119 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.dns;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.dns.DefaultDnsQuestion;
+import io.netty.handler.codec.dns.DnsRawRecord;
+import io.netty.handler.codec.dns.DnsRecord;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.resolver.HostsFileEntriesResolver;
+import io.netty.resolver.ResolvedAddressTypes;
+import io.netty.resolver.dns.DnsNameResolver;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up A records, and AAAA records for hosts without A records, with the asynchronous dns resolver of Netty.
+ * The time to live of the records is passed on to the cache, entries of the hosts file are cached for the longest time allowed.
+ * One resolver is created for each event loop asking for lookups.
+ */
+public class DnsAddressLookup implements AddressLookup {
+	private final DnsNameResolverBuilder dnsNameResolverBuilder;
+	private final ConcurrentHashMap<EventExecutor, DnsNameResolver> resolvers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param dnsNameResolverBuilder the configuration of the resolvers, for example the channel factory and the name servers.
+	 *                               The event loop is set for each resolver.
+	 */
+	public DnsAddressLookup(DnsNameResolverBuilder dnsNameResolverBuilder) {
+		this.dnsNameResolverBuilder = dnsNameResolverBuilder;
+	}
+
+	@Override
+	public CompletableFuture<LookupResult> lookup(String hostname, EventExecutor executor) {
+		CompletableFuture<LookupResult> future = new CompletableFuture<>();
+
+		InetAddress hostsFileAddress = HostsFileEntriesResolver.DEFAULT.address(hostname, ResolvedAddressTypes.IPV4_PREFERRED);
+		if (hostsFileAddress != null) {
+			future.complete(new LookupResult(Collections.singletonList(hostsFileAddress), Long.MAX_VALUE));
+			return future;
+		}
+
+		DnsNameResolver resolver = resolvers.computeIfAbsent(executor, eventLoop -> dnsNameResolverBuilder.copy().eventLoop((EventLoop) eventLoop)
+			.build());
+		query(resolver, hostname, DnsRecordType.A, future);
+		return future;
+	}
+
+	private void query(DnsNameResolver resolver, String hostname, DnsRecordType type, CompletableFuture<LookupResult> future) {
+		resolver.resolveAll(new DefaultDnsQuestion(hostname, type)).addListener((Future<List<DnsRecord>> records) -> {
+			if (!records.isSuccess()) {
+				UnknownHostException exception = new UnknownHostException("Failed to resolve '" + hostname + "'");
+				exception.initCause(records.cause());
+				future.completeExceptionally(exception);
+				return;
+			}
+
+			LookupResult result;
+			try {
+				result = toResult(hostname, records.getNow());
+			} catch (UnknownHostException e) {  //a record with an invalid address
+				future.completeExceptionally(e);
+				return;
+			} finally {
+				for (DnsRecord record : records.getNow()) {
+					ReferenceCountUtil.release(record);
+				}
+			}
+
+			if (result != null) {
+				future.complete(result);
+			} else if (type == DnsRecordType.A) {
+				query(resolver, hostname, DnsRecordType.AAAA, future);
+			} else {
+				future.completeExceptionally(new UnknownHostException("No addresses found for '" + hostname + "'"));
+			}
+		});
+	}
+
+	private static LookupResult toResult(String hostname, List<DnsRecord> records) throws UnknownHostException {
+		List<InetAddress> addresses = new ArrayList<>(records.size());
+		long ttlSeconds = Long.MAX_VALUE;
+		for (DnsRecord record : records) {
+			if (!(record instanceof DnsRawRecord) || (record.type() != DnsRecordType.A && record.type() != DnsRecordType.AAAA)) {
+				continue;
+			}
+			addresses.add(InetAddress.getByAddress(hostname, ByteBufUtil.getBytes(((DnsRawRecord) record).content())));
+			ttlSeconds = Math.min(ttlSeconds, record.timeToLive());
+		}
+
+		if (addresses.isEmpty()) {
+			return null;
+		}
+		return new LookupResult(addresses, TimeUnit.SECONDS.toMillis(ttlSeconds));
+	}
+
+	@Override
+	public void close() {
+		for (DnsNameResolver resolver : resolvers.values()) {
+			resolver.close();
+		}
+		resolvers.clear();
+	}
+}
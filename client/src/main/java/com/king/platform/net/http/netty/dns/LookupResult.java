@@ -0,0 +1,40 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.dns;
+
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+
+public final class LookupResult {
+	private final List<InetAddress> addresses;
+	private final long ttlMillis;
+
+	public LookupResult(List<InetAddress> addresses, long ttlMillis) {
+		if (addresses.isEmpty()) {
+			throw new IllegalArgumentException("A lookup result needs at least one address");
+		}
+		this.addresses = Collections.unmodifiableList(addresses);
+		this.ttlMillis = ttlMillis;
+	}
+
+	public List<InetAddress> getAddresses() {
+		return addresses;
+	}
+
+	/**
+	 * @return how long the addresses can be cached, the lowest time to live of the records
+	 */
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "LookupResult{addresses=" + addresses + ", ttlMillis=" + ttlMillis + '}';
+	}
+}
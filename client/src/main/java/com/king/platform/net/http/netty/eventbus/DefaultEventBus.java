@@ -5,61 +5,142 @@
 
 package com.king.platform.net.http.netty.eventbus;
 
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+import io.netty.util.Recycler;
+
+import java.util.Arrays;
+
+/**
+ * Callbacks are kept in tables indexed by the id of the event, each slot holding the callbacks of that event in subscription order.
+ * The slots are replaced, never modified, when a callback is subscribed, so triggering an event never has to take a lock.
+ * <p>
+ * The permanent callbacks of the root bus are compiled into a table that is shared by all request buses created from it,
+ * so creating a request bus does not copy any subscriptions. The request buses only allocate tables for their own callbacks.
+ * <p>
+ * When the requests are confined to an event loop, the request buses are subscribed to before the request is handed over to
+ * its event loop and only from that loop afterwards, so they subscribe without taking the lock.
+ * <p>
+ * Recycled request buses are taken from a recycler and given back when the request is released. Their tables are cleared and kept,
+ * so a reused bus does not allocate the tables again.
+ */
 public class DefaultEventBus implements RequestEventBus, RootEventBus {
-	private final ConcurrentHashMap<Event, ArrayList<EventBusCallback>> event1Callbacks;
-	private final ConcurrentHashMap<Event, ArrayList<EventBusCallback>> event2Callbacks;
+	private static final Recycler<DefaultEventBus> RECYCLER = new Recycler<DefaultEventBus>() {
+		@Override
+		protected DefaultEventBus newObject(Handle<DefaultEventBus> handle) {
+			return new DefaultEventBus(handle);
+		}
+	};
+
+	private final boolean root;
+	private final boolean recycledRequestBuses;
+	private final Recycler.Handle<DefaultEventBus> handle;
+	private boolean confinedRequestBuses;
+	private EventBusCallback[][] rootCallbacks;
 
-	private final ConcurrentHashMap<Event, ArrayList<EventBusCallback>> persistentEvent1Callbacks;
-	private final ConcurrentHashMap<Event, ArrayList<EventBusCallback>> persistentEvent2Callbacks;
+	private volatile EventBusCallback[][] persistentCallbacks;
+	private volatile EventBusCallback[][] callbacks;
 
 
 	public DefaultEventBus() {
-		event1Callbacks = new ConcurrentHashMap<>();
-		event2Callbacks = new ConcurrentHashMap<>();
+		this(false);
+	}
+
+	/**
+	 * @param confinedRequestBuses true if the request buses created from this bus are only used by one thread at a time
+	 */
+	public DefaultEventBus(boolean confinedRequestBuses) {
+		this(confinedRequestBuses, false);
+	}
+
+	/**
+	 * @param confinedRequestBuses true if the request buses created from this bus are only used by one thread at a time
+	 * @param recycledRequestBuses true if the request buses created from this bus are taken from a recycler, which requires them to be confined
+	 */
+	public DefaultEventBus(boolean confinedRequestBuses, boolean recycledRequestBuses) {
+		this.root = true;
+		this.recycledRequestBuses = confinedRequestBuses && recycledRequestBuses;
+		this.handle = null;
+		this.confinedRequestBuses = confinedRequestBuses;
+	}
+
+	private DefaultEventBus(boolean confinedRequestBuses, EventBusCallback[][] rootCallbacks) {
+		this.root = false;
+		this.recycledRequestBuses = false;
+		this.handle = null;
+		this.confinedRequestBuses = confinedRequestBuses;
+		this.rootCallbacks = rootCallbacks;
+	}
 
-		persistentEvent1Callbacks = new ConcurrentHashMap<>();
-		persistentEvent2Callbacks = new ConcurrentHashMap<>();
+	private DefaultEventBus(Recycler.Handle<DefaultEventBus> handle) {
+		this.root = false;
+		this.recycledRequestBuses = false;
+		this.handle = handle;
 	}
 
 
 	@Override
 	public <T> void subscribe(Event1<T> event, EventBusCallback1<T> callback) {
-		subscribe(event1Callbacks, event, callback);
+		subscribe((Event) event, callback);
 	}
 
 
 	@Override
 	public <T1, T2> void subscribe(Event2<T1, T2> event, EventBusCallback2<T1, T2> callback) {
-		subscribe(event2Callbacks, event, callback);
+		subscribe((Event) event, callback);
 	}
 
 
 	@Override
 	public <T> void subscribePermanently(Event1<T> event, EventBusCallback1<T> callback) {
-		subscribe(persistentEvent1Callbacks, event, callback);
+		subscribePermanently((Event) event, callback);
 	}
 
 	@Override
 	public <T1, T2> void subscribePermanently(Event2<T1, T2> event, EventBusCallback2<T1, T2> callback) {
-		subscribe(persistentEvent2Callbacks, event, callback);
+		subscribePermanently((Event) event, callback);
 	}
 
 
-	private void subscribe(ConcurrentHashMap<Event, ArrayList<EventBusCallback>> map, Event event, EventBusCallback callback) {
-		ArrayList<EventBusCallback> eventList = map.get(event);
+	private void subscribe(Event event, EventBusCallback callback) {
+		if (!root && confinedRequestBuses) {
+			callbacks = add(callbacks, event.getId(), callback, false);
+			return;
+		}
 
-		if (eventList == null) {
-			eventList = new ArrayList<>();
-			ArrayList<EventBusCallback> oldValue = map.putIfAbsent(event, eventList);
-			if (oldValue != null) {
-				eventList = oldValue;
-			}
+		synchronized (this) {
+			callbacks = add(callbacks, event.getId(), callback, false);
+		}
+	}
+
+	private void subscribePermanently(Event event, EventBusCallback callback) {
+		if (!root && confinedRequestBuses) {
+			persistentCallbacks = add(persistentCallbacks, event.getId(), callback, false);
+			return;
+		}
+
+		synchronized (this) {
+			persistentCallbacks = add(persistentCallbacks, event.getId(), callback, root);  //the table of the root bus is shared with the request buses
 		}
-		eventList.add(callback);
+	}
+
+	private static EventBusCallback[][] add(EventBusCallback[][] table, int id, EventBusCallback callback, boolean copyTable) {
+		if (table == null) {
+			table = new EventBusCallback[Math.max(EventIds.count(), id + 1)][];
+		} else if (table.length <= id) {
+			table = Arrays.copyOf(table, Math.max(EventIds.count(), id + 1));
+		} else if (copyTable) {
+			table = table.clone();
+		}
+
+		EventBusCallback[] eventCallbacks = table[id];
+		if (eventCallbacks == null) {
+			table[id] = new EventBusCallback[]{callback};
+		} else {
+			eventCallbacks = Arrays.copyOf(eventCallbacks, eventCallbacks.length + 1);
+			eventCallbacks[eventCallbacks.length - 1] = callback;
+			table[id] = eventCallbacks;
+		}
+
+		return table;
 	}
 
 
@@ -71,21 +152,29 @@ public class DefaultEventBus implements RequestEventBus, RootEventBus {
 
 	@Override
 	public <T> void triggerEvent(Event1<T> event, T payload) {
-		triggerEvent1(event, payload, persistentEvent1Callbacks);
-		triggerEvent1(event, payload, event1Callbacks);
+		int id = event.getId();
+		triggerEvent1(getCallbacks(rootCallbacks, id), payload);
+		triggerEvent1(getCallbacks(persistentCallbacks, id), payload);
+		triggerEvent1(getCallbacks(callbacks, id), payload);
 	}
 
 
 	@Override
 	public <T1, T2> void triggerEvent(Event2<T1, T2> event, T1 payload1, T2 payload2) {
-		triggerEvent2(event, payload1, payload2, persistentEvent2Callbacks);
-		triggerEvent2(event, payload1, payload2, event2Callbacks);
+		int id = event.getId();
+		triggerEvent2(getCallbacks(rootCallbacks, id), payload1, payload2);
+		triggerEvent2(getCallbacks(persistentCallbacks, id), payload1, payload2);
+		triggerEvent2(getCallbacks(callbacks, id), payload1, payload2);
 	}
 
+	private static EventBusCallback[] getCallbacks(EventBusCallback[][] table, int id) {
+		if (table == null || table.length <= id) {
+			return null;
+		}
+		return table[id];
+	}
 
-	private <T> void triggerEvent1(Event1<T> event, T payload, ConcurrentHashMap<Event, ArrayList<EventBusCallback>> callbacks) {
-		ArrayList<EventBusCallback> eventBusCallback1s = callbacks.get(event);
-
+	private <T> void triggerEvent1(EventBusCallback[] eventBusCallback1s, T payload) {
 		if (eventBusCallback1s == null) {
 			return;
 		}
@@ -96,9 +185,7 @@ public class DefaultEventBus implements RequestEventBus, RootEventBus {
 		}
 	}
 
-	private <T1, T2> void triggerEvent2(Event2<T1, T2> event, T1 payload1, T2 payload2, ConcurrentHashMap<Event, ArrayList<EventBusCallback>> callbacks) {
-		ArrayList<EventBusCallback> eventBusCallback2s = callbacks.get(event);
-
+	private <T1, T2> void triggerEvent2(EventBusCallback[] eventBusCallback2s, T1 payload1, T2 payload2) {
 		if (eventBusCallback2s == null) {
 			return;
 		}
@@ -112,37 +199,56 @@ public class DefaultEventBus implements RequestEventBus, RootEventBus {
 
 	@Override
 	public RequestEventBus createRequestEventBus() {
-		DefaultEventBus cleanEventBus = new DefaultEventBus();
+		if (root && recycledRequestBuses) {
+			DefaultEventBus requestEventBus = RECYCLER.get();
+			requestEventBus.confinedRequestBuses = true;
+			requestEventBus.rootCallbacks = persistentCallbacks;
+			return requestEventBus;
+		}
 
-		for (Map.Entry<Event, ArrayList<EventBusCallback>> entry : persistentEvent1Callbacks.entrySet()) {
-			for (EventBusCallback eventBusCallback : entry.getValue()) {
-				cleanEventBus.subscribePermanently((Event1) entry.getKey(), (EventBusCallback1) eventBusCallback);
-			}
+		if (root) {
+			return new DefaultEventBus(confinedRequestBuses, persistentCallbacks);
 		}
 
-		for (Map.Entry<Event, ArrayList<EventBusCallback>> entry : persistentEvent2Callbacks.entrySet()) {
-			for (EventBusCallback eventBusCallback : entry.getValue()) {
-				cleanEventBus.subscribePermanently((Event2) entry.getKey(), (EventBusCallback2) eventBusCallback);
+		EventBusCallback[][] compiledCallbacks = rootCallbacks;
+		EventBusCallback[][] requestPersistentCallbacks = persistentCallbacks;
+		if (requestPersistentCallbacks != null) {
+			for (int id = 0; id < requestPersistentCallbacks.length; id++) {
+				if (requestPersistentCallbacks[id] != null) {
+					for (EventBusCallback eventBusCallback : requestPersistentCallbacks[id]) {
+						compiledCallbacks = add(compiledCallbacks, id, eventBusCallback, true);
+					}
+				}
 			}
 		}
 
-		return cleanEventBus;
+		return new DefaultEventBus(confinedRequestBuses, compiledCallbacks);
 	}
 
+	@Override
+	public void release() {
+		if (handle == null) {
+			return;
+		}
 
-	ConcurrentHashMap<Event, ArrayList<EventBusCallback>> getEvent1Callbacks() {
-		return event1Callbacks;
+		clear(persistentCallbacks);
+		clear(callbacks);
+		rootCallbacks = null;
+		handle.recycle(this);
 	}
 
-	ConcurrentHashMap<Event, ArrayList<EventBusCallback>> getEvent2Callbacks() {
-		return event2Callbacks;
+	private static void clear(EventBusCallback[][] table) {
+		if (table != null) {
+			Arrays.fill(table, null);
+		}
 	}
 
-	ConcurrentHashMap<Event, ArrayList<EventBusCallback>> getPersistentEvent1Callbacks() {
-		return persistentEvent1Callbacks;
+
+	EventBusCallback[] getCallbacks(Event event) {
+		return getCallbacks(callbacks, event.getId());
 	}
 
-	ConcurrentHashMap<Event, ArrayList<EventBusCallback>> getPersistentEvent2Callbacks() {
-		return persistentEvent2Callbacks;
+	EventBusCallback[] getPersistentCallbacks(Event event) {
+		return getCallbacks(persistentCallbacks, event.getId());
 	}
 }
@@ -31,6 +31,10 @@ public interface Event {
 	Event1<ServerInfo> REUSED_CONNECTION = new Event1<>("ReusedConnection");
 	Event1<ServerInfo> POOLED_CONNECTION = new Event1<>("PooledConnection");
 	Event1<ServerInfo> CLOSED_CONNECTION = new Event1<>("CloseConnection");
+	/**
+	 * A TLS handshake with the server completed, the payload tells if the handshake resumed a cached session.
+	 */
+	Event2<ServerInfo, Boolean> SSL_HANDSHAKE_COMPLETED = new Event2<>("SslHandshakeCompleted");
 
 	Event1<Void> onConnecting = new Event1<>("onConnecting");
 	Event1<Channel> onAttachedToChannel = new Event1<>("onAttachedToChannel");
@@ -54,4 +58,9 @@ public interface Event {
 
 
 	String getName();
+
+	/**
+	 * Dense id of the event, starting at 0.
+	 */
+	int getId();
 }
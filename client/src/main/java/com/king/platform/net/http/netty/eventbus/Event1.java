@@ -9,9 +9,11 @@ public class Event1<T> implements Event {
 
 
 	private final String name;
+	private final int id;
 
 	Event1(String name) {
 		this.name = name;
+		this.id = EventIds.next();
 	}
 
 	@Override
@@ -19,6 +21,11 @@ public class Event1<T> implements Event {
 		return name;
 	}
 
+	@Override
+	public int getId() {
+		return id;
+	}
+
 	@Override
 	public String toString() {
 		return "Event[" + name + "]";
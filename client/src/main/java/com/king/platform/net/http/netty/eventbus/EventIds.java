@@ -0,0 +1,26 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.eventbus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the dense ids of the events, which the event bus uses as indexes into its callback tables.
+ */
+final class EventIds {
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private EventIds() {
+	}
+
+	static int next() {
+		return nextId.getAndIncrement();
+	}
+
+	static int count() {
+		return nextId.get();
+	}
+}
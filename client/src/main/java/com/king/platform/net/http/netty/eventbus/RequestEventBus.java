@@ -23,4 +23,11 @@ public interface RequestEventBus {
 
 	RequestEventBus createRequestEventBus();
 
+	/**
+	 * Called on the event loop of the request when it is done and its objects are recycled. Buses that are reused forget their callbacks,
+	 * the bus must not be used after this.
+	 */
+	default void release() {
+	}
+
 }
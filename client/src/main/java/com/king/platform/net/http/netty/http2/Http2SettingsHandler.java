@@ -0,0 +1,53 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.http2;
+
+
+import com.king.platform.net.http.netty.pool.ChannelPool;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Last handler of an HTTP/2 connection. It receives the connection level frames and keeps the max concurrent requests of the
+ * connection up to date, so that the channel pool never opens more streams than the server allows.
+ */
+public class Http2SettingsHandler extends ChannelInboundHandlerAdapter {
+	/**
+	 * Used until the server has sent its settings.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+	private final Logger logger = getLogger(getClass());
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		ctx.channel().attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(DEFAULT_MAX_CONCURRENT_STREAMS);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		try {
+			if (msg instanceof Http2SettingsFrame) {
+				Long maxConcurrentStreams = ((Http2SettingsFrame) msg).settings().maxConcurrentStreams();
+				if (maxConcurrentStreams != null) {
+					logger.trace("Server allows {} concurrent streams on channel {}", maxConcurrentStreams, ctx.channel());
+					ctx.channel().attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set((int) Math.min(maxConcurrentStreams, Integer.MAX_VALUE));
+				}
+			} else if (msg instanceof Http2GoAwayFrame) {  //the streams that are already open are completed, but no new streams are accepted
+				logger.trace("Server sent go away on channel {}", ctx.channel());
+				ctx.channel().attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(0);
+			}
+		} finally {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.http2;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.http.DefaultHttpContent;
+
+import java.util.List;
+
+/**
+ * The request bodies are written as plain buffers, which only HTTP/1.1 connections accept.
+ * Wraps them in http content, which the HTTP/2 stream codec turns into data frames.
+ */
+@ChannelHandler.Sharable
+public class Http2StreamContentEncoder extends MessageToMessageEncoder<ByteBuf> {
+	@Override
+	protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		out.add(new DefaultHttpContent(msg.retain()));
+	}
+}
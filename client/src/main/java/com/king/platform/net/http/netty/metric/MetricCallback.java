@@ -24,4 +24,12 @@ public interface MetricCallback {
 	void onServerPoolClosedConnection(String host, int poolSize);
 
 	void onServerPoolAddedConnection(String host, int poolSize);
+
+	/**
+	 * Called when a TLS handshake with the host completed for a request.
+	 * @param host the host
+	 * @param resumed true if the handshake resumed a cached session, false if it was a full handshake
+	 */
+	default void onSslHandshake(String host, boolean resumed) {
+	}
 }
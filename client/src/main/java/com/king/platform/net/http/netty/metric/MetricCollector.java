@@ -23,6 +23,9 @@ public class MetricCollector {
 		rootEventBus.subscribePermanently(Event.CLOSED_CONNECTION, (payload) -> metricCallback.onClosedConnectionTo(payload.getHost()));
 
 
+		rootEventBus.subscribePermanently(Event.SSL_HANDSHAKE_COMPLETED, (payload1, payload2) -> metricCallback.onSslHandshake(payload1.getHost(), payload2));
+
+
 		rootEventBus.subscribePermanently(Event.ERROR, (payload1, payload2) -> metricCallback.onError(payload1.getServerInfo().getHost(), payload1.getTimeRecorder()));
 
 
@@ -7,9 +7,18 @@ package com.king.platform.net.http.netty.metric;
 
 
 import com.king.platform.net.http.netty.util.TimeProvider;
+import io.netty.util.Recycler;
 
 public class TimeStampRecorder implements RecordedTimeStamps {
-	private final TimeProvider timeProvider;
+	private static final Recycler<TimeStampRecorder> RECYCLER = new Recycler<TimeStampRecorder>() {
+		@Override
+		protected TimeStampRecorder newObject(Handle<TimeStampRecorder> handle) {
+			return new TimeStampRecorder(handle);
+		}
+	};
+
+	private final Recycler.Handle<TimeStampRecorder> handle;
+	private TimeProvider timeProvider;
 	private long createdRequest;
 	private long startWriteHeaders;
 	private long completedWriteHeaders;
@@ -21,9 +30,44 @@ public class TimeStampRecorder implements RecordedTimeStamps {
 	private long responseBodyCompleted;
 
 	public TimeStampRecorder(TimeProvider timeProvider) {
+		this.handle = null;
 		this.timeProvider = timeProvider;
 	}
 
+	private TimeStampRecorder(Recycler.Handle<TimeStampRecorder> handle) {
+		this.handle = handle;
+	}
+
+	/**
+	 * Take a recorder from the recycler, it is given back by {@link #recycle()}.
+	 */
+	public static TimeStampRecorder newInstance(TimeProvider timeProvider) {
+		TimeStampRecorder timeStampRecorder = RECYCLER.get();
+		timeStampRecorder.timeProvider = timeProvider;
+		return timeStampRecorder;
+	}
+
+	/**
+	 * Clear the recorded time stamps and give the recorder back to the recycler if it was taken from it.
+	 */
+	public void recycle() {
+		if (handle == null) {
+			return;
+		}
+
+		timeProvider = null;
+		createdRequest = 0;
+		startWriteHeaders = 0;
+		completedWriteHeaders = 0;
+		startWriteBody = 0;
+		completedWriteBody = 0;
+		completedWriteLastBody = 0;
+		readResponseHttpHeaders = 0;
+		responseBodyStart = 0;
+		responseBodyCompleted = 0;
+		handle.recycle(this);
+	}
+
 	public void recordCreatedRequest() {
 		createdRequest = timeProvider.currentTimeInMillis();
 	}
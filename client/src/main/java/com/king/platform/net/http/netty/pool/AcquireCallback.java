@@ -0,0 +1,38 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import io.netty.channel.Channel;
+
+public interface AcquireCallback {
+	/**
+	 * Called when an idle pooled channel has been handed to the caller.
+	 * @param channel the channel to reuse
+	 */
+	void onPooledChannel(Channel channel);
+
+	/**
+	 * Called when the caller is allowed to open a new connection to the server.
+	 * The caller has to report the outcome through {@link ChannelPool#connectionOpened} or {@link ChannelPool#connectionFailed}.
+	 */
+	void onNewConnection();
+
+	/**
+	 * Called when no channel could be acquired, for example when the pending queue is full or the acquire timed out.
+	 * @param throwable the cause
+	 */
+	void onError(Throwable throwable);
+
+	/**
+	 * Whether the request may be pipelined on a channel that is still waiting for the responses of earlier requests.
+	 * Only used for servers that have pipelining enabled.
+	 * @return true if the request can be pipelined
+	 */
+	default boolean isPipeliningAllowed() {
+		return false;
+	}
+}
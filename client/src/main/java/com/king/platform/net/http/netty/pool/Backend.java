@@ -0,0 +1,84 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import com.king.platform.net.http.netty.ServerInfo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One address behind a load balanced host, see {@link LoadBalancer}. The connections to it are pooled under its own {@link ServerInfo}.
+ * Keeps the number of requests in flight to it and a moving average of its response latency, which the {@link LoadBalancingPolicy}
+ * uses to select between the backends of the host.
+ */
+public final class Backend {
+	private static final double LATENCY_SAMPLE_WEIGHT = 0.2;
+
+	private final ServerInfo serverInfo;
+	private final AtomicInteger outstandingRequests = new AtomicInteger();
+
+	private volatile double latencyMillis;
+	private boolean hasLatency;
+
+	Backend(ServerInfo serverInfo) {
+		this.serverInfo = serverInfo;
+	}
+
+	/**
+	 * @return the server the connections to this backend are opened to and pooled under
+	 */
+	public ServerInfo getServerInfo() {
+		return serverInfo;
+	}
+
+	/**
+	 * @return the number of requests sent to the backend that have not completed yet
+	 */
+	public int getOutstandingRequests() {
+		return outstandingRequests.get();
+	}
+
+	/**
+	 * @return the exponentially weighted moving average of the time from writing the request to reading the response headers, 0 until the
+	 * first response has been read
+	 */
+	public double getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	/**
+	 * Called by the client when a request is sent to the backend.
+	 */
+	public void requestStarted() {
+		outstandingRequests.incrementAndGet();
+	}
+
+	/**
+	 * Called by the client when a request sent to the backend has completed or failed.
+	 * @param latencyMillis the latency of the response, or a negative value if the request failed before a response was read
+	 */
+	public void requestCompleted(long latencyMillis) {
+		outstandingRequests.decrementAndGet();
+		if (latencyMillis >= 0) {
+			recordLatency(latencyMillis);
+		}
+	}
+
+	private synchronized void recordLatency(long sampleMillis) {
+		if (hasLatency) {
+			latencyMillis += LATENCY_SAMPLE_WEIGHT * (sampleMillis - latencyMillis);
+		} else {
+			latencyMillis = sampleMillis;
+			hasLatency = true;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Backend {" + serverInfo + ", outstandingRequests=" + outstandingRequests + ", latencyMillis=" + latencyMillis + "}";
+	}
+}
@@ -0,0 +1,27 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import com.king.platform.net.http.netty.ServerInfo;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.Future;
+
+public interface ChannelConnector {
+	/**
+	 * Open a new connection to the server, including the tls handshake for secure servers.
+	 * @param serverInfo the server
+	 * @param eventLoop the event loop the channel should be registered on, or null for any event loop
+	 * @return a future that is completed with the connected channel
+	 */
+	Future<Channel> connect(ServerInfo serverInfo, EventLoop eventLoop);
+
+	/**
+	 * @return the keep alive timeout in millis that should be used when the connected channels are pooled
+	 */
+	int getKeepAliveTimeoutMillis();
+}
@@ -8,12 +8,123 @@ package com.king.platform.net.http.netty.pool;
 
 import com.king.platform.net.http.netty.ServerInfo;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.AttributeKey;
 
 public interface ChannelPool {
+	/**
+	 * Set on channels that multiplex requests, like HTTP/2 connections, to the max number of concurrent requests the server allows on
+	 * the channel. Pools share such channels between all requests up to that limit, 0 means the channel can't take new requests.
+	 */
+	AttributeKey<Integer> MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY = AttributeKey.valueOf("__ChannelPool_MaxConcurrentRequests");
+
 	Channel get(ServerInfo serverInfo);
 
+	/**
+	 * Called when the client is started. Pools that keep a minimum of idle connections use the connector to open them.
+	 * @param channelConnector the connector used to open new connections
+	 * @param eventLoopGroup the event loop group of the client
+	 */
+	default void start(ChannelConnector channelConnector, EventLoopGroup eventLoopGroup) {
+	}
+
+	/**
+	 * Called before the client is started when requests are load balanced. The connections to a load balanced host are pooled under its
+	 * backends, so pools apply the settings of the host to the pools of its backends and warm up connections to the backends.
+	 * @param loadBalancer the load balancer of the client
+	 */
+	default void setLoadBalancer(LoadBalancer loadBalancer) {
+	}
+
+	/**
+	 * Keep at least minIdleConnections idle connections to the server in the pool. Missing connections are opened when the client
+	 * is started and then topped up periodically.
+	 * @param serverInfo the server
+	 * @param minIdleConnections the min number of idle connections
+	 */
+	default void setMinIdleConnections(ServerInfo serverInfo, int minIdleConnections) {
+	}
+
+	/**
+	 * Set how idle channels are selected for all servers that don't have their own strategy.
+	 * @param channelSelectionStrategy the strategy
+	 */
+	default void setChannelSelectionStrategy(ChannelSelectionStrategy channelSelectionStrategy) {
+	}
+
+	/**
+	 * Set how idle channels to the server are selected.
+	 * @param serverInfo the server
+	 * @param channelSelectionStrategy the strategy
+	 */
+	default void setChannelSelectionStrategy(ServerInfo serverInfo, ChannelSelectionStrategy channelSelectionStrategy) {
+	}
+
+	/**
+	 * Enable HTTP/1.1 pipelining to the server. Requests that allow it are sent on a channel that is still waiting for the responses of
+	 * earlier requests when no idle channel is available, as long as fewer than maxPipelinedRequests requests are outstanding on it.
+	 * @param serverInfo the server
+	 * @param maxPipelinedRequests the max number of outstanding requests per channel, 1 disables pipelining
+	 */
+	default void setMaxPipelinedRequests(ServerInfo serverInfo, int maxPipelinedRequests) {
+	}
+
+	/**
+	 * Select the event loop a request to the server should be executed on. Pools that are partitioned per event loop
+	 * expect {@link #acquire} to be called on the returned event loop, and new connections to be registered on it.
+	 * @param serverInfo the server
+	 * @param eventLoopGroup the event loop group of the client
+	 * @return the event loop, or null if the pool can be used from any thread
+	 */
+	default EventLoop selectEventLoop(ServerInfo serverInfo, EventLoopGroup eventLoopGroup) {
+		return null;
+	}
+
+	/**
+	 * Acquire a channel to the server. The callback is either handed an idle pooled channel, allowed to open a new connection or
+	 * failed. Pools that limit the number of connections per server may invoke the callback later, from another thread.
+	 * @param serverInfo the server
+	 * @param acquireCallback the callback
+	 */
+	default void acquire(ServerInfo serverInfo, AcquireCallback acquireCallback) {
+		Channel channel = get(serverInfo);
+		if (channel != null) {
+			acquireCallback.onPooledChannel(channel);
+		} else {
+			acquireCallback.onNewConnection();
+		}
+	}
+
+	/**
+	 * Called when a connection allowed through {@link AcquireCallback#onNewConnection()} has been opened.
+	 * @param serverInfo the server
+	 * @param channel the new channel
+	 */
+	default void connectionOpened(ServerInfo serverInfo, Channel channel) {
+	}
+
+	/**
+	 * Called when a connection allowed through {@link AcquireCallback#onNewConnection()} could not be opened. This may be called from any thread,
+	 * a failed registration is reported on the global event executor.
+	 * @param serverInfo the server
+	 * @param eventLoop the event loop the connection was opened for, as returned by {@link #selectEventLoop}
+	 */
+	default void connectionFailed(ServerInfo serverInfo, EventLoop eventLoop) {
+	}
+
 	void offer(ServerInfo serverInfo, Channel channel, int keepAliveTimeoutMillis);
 
+	/**
+	 * Called when a new channel that multiplexes requests has been opened by a request that is still using it. The pool shares the channel
+	 * with other requests right away, and it becomes idle once the request and the requests sharing it have offered it back.
+	 * @param serverInfo the server
+	 * @param channel the new channel
+	 * @param keepAliveTimeoutMillis the keep alive timeout of the channel
+	 */
+	default void offerShared(ServerInfo serverInfo, Channel channel, int keepAliveTimeoutMillis) {
+	}
+
 	void discard(ServerInfo serverInfo, Channel channel);
 
 	boolean isActive();
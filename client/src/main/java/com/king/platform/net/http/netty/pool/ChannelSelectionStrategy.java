@@ -0,0 +1,29 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+/**
+ * Which idle channel the pool hands out when a request to a server can reuse a connection.
+ */
+public enum ChannelSelectionStrategy {
+	/**
+	 * Reuse the most recently used channel. Keeps the number of busy connections low and the reused sockets warm,
+	 * and lets surplus connections expire.
+	 */
+	LIFO,
+
+	/**
+	 * Reuse the channel whose keep alive expires first, so that it is used before the server closes it. When all connections share
+	 * the same keep alive timeout this is the least recently used channel.
+	 */
+	FIFO,
+
+	/**
+	 * Reuse the channel that has been idle the longest, regardless of its keep alive timeout. All pooled connections are used in turn,
+	 * round robin over the set of open connections, which spreads the requests over the backends behind a layer 4 load balancer.
+	 */
+	ROUND_ROBIN
+}
@@ -0,0 +1,65 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The max connections to a server, shared by its pools on all event loops of an {@link EventLoopChannelPool}.
+ * Pools with pending acquires wait for a connection to be released, and one of them is woken up on each release.
+ */
+class ConnectionLimiter {
+	private final int maxConnections;
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final ConcurrentLinkedQueue<EventLoopServerPool> waitingPools = new ConcurrentLinkedQueue<>();
+
+	ConnectionLimiter(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	boolean tryReserve() {
+		while (true) {
+			int current = openConnections.get();
+			if (current >= maxConnections) {
+				return false;
+			}
+			if (openConnections.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	void release() {
+		openConnections.decrementAndGet();
+
+		EventLoopServerPool waitingPool = waitingPools.poll();
+		if (waitingPool != null) {
+			waitingPool.onConnectionReleased();
+		}
+	}
+
+	/**
+	 * Wait for a connection to be released. The pool checks {@link #hasAvailableConnections()} after it started waiting, so that a release
+	 * happening in between is not missed.
+	 */
+	void await(EventLoopServerPool serverPool) {
+		waitingPools.add(serverPool);
+	}
+
+	void stopWaiting(EventLoopServerPool serverPool) {
+		waitingPools.remove(serverPool);
+	}
+
+	boolean hasAvailableConnections() {
+		return openConnections.get() < maxConnections;
+	}
+
+	boolean hasWaitingPools() {
+		return !waitingPools.isEmpty();
+	}
+}
@@ -0,0 +1,472 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import com.king.platform.net.http.netty.ServerInfo;
+import com.king.platform.net.http.netty.metric.MetricCallback;
+import com.king.platform.net.http.netty.util.TimeProvider;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Channel pool that keeps one set of server pools per event loop. Each channel is pooled on the event loop it is registered on,
+ * and requests are dispatched to an event loop that has an idle channel to the server, so that all pool operations for a
+ * channel happen on the same thread. The server pools of an event loop are only used from that event loop, and expire their channels
+ * on it.
+ * The max connections per server is shared by the event loops, a request waiting for a connection on one event loop gets the connections
+ * released on the others.
+ */
+public class EventLoopChannelPool implements ChannelPool {
+
+	private final Timer cleanupTimer;
+	private final TimeProvider timeProvider;
+	private final MetricCallback metricCallback;
+
+	private final int maxConnectionsPerServer;
+	private final int maxPendingAcquiresPerServer;
+	private final int acquireTimeoutMillis;
+
+	private final ConcurrentHashMap<ServerInfo, Integer> minIdleConnectionsMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, ChannelSelectionStrategy> channelSelectionStrategyMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, Integer> maxPipelinedRequestsMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, ServerPools> serverPoolsMap = new ConcurrentHashMap<>();
+	private final AtomicInteger nextShard = new AtomicInteger();
+
+	private volatile ChannelConnector channelConnector;
+	private volatile LoadBalancer loadBalancer;
+	private volatile ChannelSelectionStrategy defaultChannelSelectionStrategy = ChannelSelectionStrategy.LIFO;
+	private volatile Shard[] shards;
+
+	public EventLoopChannelPool(final Timer cleanupTimer, TimeProvider timeProvider, final MetricCallback metricCallback) {
+		this(cleanupTimer, timeProvider, metricCallback, 0, 0, 0);
+	}
+
+	/**
+	 * @param maxConnectionsPerServer the max number of open connections to each server from all event loops, 0 means no limit
+	 * @param maxPendingAcquiresPerServer the max number of requests per server and event loop waiting for a connection
+	 * @param acquireTimeoutMillis how long a request waits for a connection before it fails
+	 */
+	public EventLoopChannelPool(final Timer cleanupTimer, TimeProvider timeProvider, final MetricCallback metricCallback, int maxConnectionsPerServer,
+								int maxPendingAcquiresPerServer, int acquireTimeoutMillis) {
+		this.cleanupTimer = cleanupTimer;
+		this.timeProvider = timeProvider;
+		this.metricCallback = metricCallback;
+		this.maxConnectionsPerServer = maxConnectionsPerServer;
+		this.maxPendingAcquiresPerServer = maxPendingAcquiresPerServer;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+
+		cleanupTimer.newTimeout(timeout -> {
+
+			Shard[] currentShards = shards;
+			if (currentShards != null) {
+				for (Shard shard : currentShards) {
+					shard.eventLoop.execute(() -> {
+						cleanServerPools(shard);
+						warmUpServerPools(shard);
+					});
+				}
+			}
+
+			cleanupTimer.newTimeout(timeout.task(), 1000, TimeUnit.MILLISECONDS);
+
+		}, 1000, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void start(ChannelConnector channelConnector, EventLoopGroup eventLoopGroup) {
+		this.channelConnector = channelConnector;
+		for (Shard shard : getShards(eventLoopGroup)) {
+			shard.eventLoop.execute(() -> warmUpServerPools(shard));
+		}
+	}
+
+	@Override
+	public void setLoadBalancer(LoadBalancer loadBalancer) {
+		this.loadBalancer = loadBalancer;
+	}
+
+	/**
+	 * The min idle connections are split evenly between the event loops.
+	 */
+	@Override
+	public void setMinIdleConnections(ServerInfo serverInfo, int minIdleConnections) {
+		minIdleConnectionsMap.put(serverInfo, minIdleConnections);
+	}
+
+	@Override
+	public void setChannelSelectionStrategy(ChannelSelectionStrategy channelSelectionStrategy) {
+		defaultChannelSelectionStrategy = channelSelectionStrategy;
+		updateChannelSelectionStrategies();
+	}
+
+	@Override
+	public void setChannelSelectionStrategy(ServerInfo serverInfo, ChannelSelectionStrategy channelSelectionStrategy) {
+		channelSelectionStrategyMap.put(serverInfo, channelSelectionStrategy);
+		updateChannelSelectionStrategies();
+	}
+
+	private void updateChannelSelectionStrategies() {
+		Shard[] currentShards = shards;
+		if (currentShards == null) {
+			return;
+		}
+
+		for (Shard shard : currentShards) {
+			shard.eventLoop.execute(() -> {
+				for (Map.Entry<ServerInfo, EventLoopServerPool> poolEntry : shard.serverPoolMap.entrySet()) {
+					poolEntry.getValue().setChannelSelectionStrategy(getChannelSelectionStrategy(poolEntry.getKey()));
+				}
+			});
+		}
+	}
+
+	private ChannelSelectionStrategy getChannelSelectionStrategy(ServerInfo serverInfo) {
+		return channelSelectionStrategyMap.getOrDefault(getConfiguredServer(serverInfo), defaultChannelSelectionStrategy);
+	}
+
+	private int getMaxPipelinedRequests(ServerInfo serverInfo) {
+		return maxPipelinedRequestsMap.getOrDefault(getConfiguredServer(serverInfo), 1);
+	}
+
+	/**
+	 * @return the server whose settings apply to the pool of the server, the load balanced host of a backend or else the server itself
+	 */
+	private ServerInfo getConfiguredServer(ServerInfo serverInfo) {
+		LoadBalancer currentLoadBalancer = loadBalancer;
+		return currentLoadBalancer != null ? currentLoadBalancer.getConfiguredServer(serverInfo) : serverInfo;
+	}
+
+	private List<ServerInfo> getPooledServers(ServerInfo serverInfo) {
+		LoadBalancer currentLoadBalancer = loadBalancer;
+		return currentLoadBalancer != null ? currentLoadBalancer.getPooledServers(serverInfo) : Collections.singletonList(serverInfo);
+	}
+
+	@Override
+	public void setMaxPipelinedRequests(ServerInfo serverInfo, int maxPipelinedRequests) {
+		maxPipelinedRequestsMap.put(serverInfo, maxPipelinedRequests);
+
+		Shard[] currentShards = shards;
+		if (currentShards == null) {
+			return;
+		}
+
+		for (Shard shard : currentShards) {
+			shard.eventLoop.execute(() -> {
+				for (ServerInfo pooledServer : getPooledServers(serverInfo)) {
+					EventLoopServerPool serverPool = shard.serverPoolMap.get(pooledServer);
+					if (serverPool != null) {
+						serverPool.setMaxPipelinedRequests(maxPipelinedRequests);
+					}
+				}
+			});
+		}
+	}
+
+	private void cleanServerPools(Shard shard) {
+		Iterator<Map.Entry<ServerInfo, EventLoopServerPool>> iterator = shard.serverPoolMap.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<ServerInfo, EventLoopServerPool> poolEntry = iterator.next();
+			if (!poolEntry.getValue().shouldRemovePool()) {
+				continue;
+			}
+
+			ServerInfo serverInfo = poolEntry.getKey();
+			iterator.remove();
+			serverPoolsMap.computeIfPresent(serverInfo, (server, serverPools) -> {
+				serverPools.pools.set(shard.index, null);
+				return serverPools.isEmpty() ? null : serverPools;
+			});
+			metricCallback.onRemovedServerPool(serverInfo.getHost());
+		}
+	}
+
+	private void warmUpServerPools(Shard shard) {
+		ChannelConnector connector = channelConnector;
+		if (connector == null) {
+			return;
+		}
+
+		Shard[] currentShards = shards;
+		for (Map.Entry<ServerInfo, Integer> minIdleEntry : minIdleConnectionsMap.entrySet()) {
+			for (ServerInfo pooledServer : getPooledServers(minIdleEntry.getKey())) {
+				EventLoopServerPool serverPool = getOrCreateServerPool(shard, pooledServer);
+				serverPool.setMinIdleConnections((minIdleEntry.getValue() + currentShards.length - 1) / currentShards.length);
+				serverPool.warmUp(connector);
+			}
+		}
+	}
+
+	@Override
+	public EventLoop selectEventLoop(ServerInfo serverInfo, EventLoopGroup eventLoopGroup) {
+		Shard[] currentShards = getShards(eventLoopGroup);
+
+		int start = (nextShard.getAndIncrement() & Integer.MAX_VALUE) % currentShards.length;
+
+		ServerPools serverPools = serverPoolsMap.get(serverInfo);
+		if (serverPools != null) {
+			for (int i = 0; i < currentShards.length; i++) {
+				int index = (start + i) % currentShards.length;
+				EventLoopServerPool serverPool = serverPools.pools.get(index);
+				if (serverPool != null && serverPool.hasIdleChannels()) {
+					return currentShards[index].eventLoop;
+				}
+			}
+		}
+
+		return currentShards[start].eventLoop;
+	}
+
+	@Override
+	public Channel get(ServerInfo serverInfo) {
+		EventLoopServerPool serverPool = currentShard().serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			return null;
+		}
+
+		return serverPool.poll(false);
+	}
+
+	@Override
+	public void acquire(ServerInfo serverInfo, AcquireCallback acquireCallback) {
+		getOrCreateServerPool(currentShard(), serverInfo).acquire(acquireCallback);
+	}
+
+	@Override
+	public void connectionOpened(ServerInfo serverInfo, Channel channel) {
+		EventLoop eventLoop = channel.eventLoop();
+		if (!eventLoop.inEventLoop()) {
+			eventLoop.execute(() -> connectionOpened(serverInfo, channel));
+			return;
+		}
+
+		EventLoopServerPool serverPool = shardFor(channel).serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			return;
+		}
+
+		serverPool.connectionOpened(channel);
+	}
+
+	@Override
+	public void connectionFailed(ServerInfo serverInfo, EventLoop eventLoop) {
+		if (!eventLoop.inEventLoop()) {
+			eventLoop.execute(() -> connectionFailed(serverInfo, eventLoop));
+			return;
+		}
+
+		EventLoopServerPool serverPool = shardFor(eventLoop).serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			return;
+		}
+
+		serverPool.releaseConnection();
+	}
+
+	@Override
+	public void offer(ServerInfo serverInfo, Channel channel, int keepAliveTimeoutMillis) {
+		EventLoop eventLoop = channel.eventLoop();
+		if (!eventLoop.inEventLoop()) {
+			eventLoop.execute(() -> offer(serverInfo, channel, keepAliveTimeoutMillis));
+			return;
+		}
+
+		getOrCreateServerPool(shardFor(channel), serverInfo).offer(channel, keepAliveTimeoutMillis);
+	}
+
+	@Override
+	public void offerShared(ServerInfo serverInfo, Channel channel, int keepAliveTimeoutMillis) {
+		EventLoop eventLoop = channel.eventLoop();
+		if (!eventLoop.inEventLoop()) {
+			eventLoop.execute(() -> offerShared(serverInfo, channel, keepAliveTimeoutMillis));
+			return;
+		}
+
+		getOrCreateServerPool(shardFor(channel), serverInfo).offerShared(channel, keepAliveTimeoutMillis);
+	}
+
+	@Override
+	public void discard(ServerInfo serverInfo, Channel channel) {
+		EventLoop eventLoop = channel.eventLoop();
+		if (!eventLoop.inEventLoop()) {
+			eventLoop.execute(() -> discard(serverInfo, channel));
+			return;
+		}
+
+		EventLoopServerPool serverPool = shardFor(channel).serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			return;
+		}
+
+		serverPool.discard(channel);
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public void shutdown() {
+		Shard[] currentShards = shards;
+		if (currentShards == null) {
+			return;
+		}
+
+		for (Shard shard : currentShards) {
+			shard.eventLoop.execute(() -> {
+				for (EventLoopServerPool serverPool : shard.serverPoolMap.values()) {
+					serverPool.shutdown();
+				}
+			});
+		}
+	}
+
+	protected int getPoolSize(ServerInfo serverInfo) {
+		ServerPools serverPools = serverPoolsMap.get(serverInfo);
+		if (serverPools == null) {
+			return 0;
+		}
+
+		int poolSize = 0;
+		for (int i = 0; i < serverPools.pools.length(); i++) {
+			EventLoopServerPool serverPool = serverPools.pools.get(i);
+			if (serverPool != null) {
+				poolSize += serverPool.getPoolSize();
+			}
+		}
+		return poolSize;
+	}
+
+	private EventLoopServerPool getOrCreateServerPool(Shard shard, ServerInfo serverInfo) {
+		EventLoopServerPool serverPool = shard.serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			serverPool = serverPoolsMap.compute(serverInfo, (server, serverPools) -> {  //atomic with the removal of empty server pools by the cleanup
+				if (serverPools == null) {
+					serverPools = new ServerPools(shards.length, maxConnectionsPerServer > 0 ? new ConnectionLimiter(maxConnectionsPerServer) : null);
+				}
+				serverPools.pools.set(shard.index, new EventLoopServerPool(serverInfo, shard.eventLoop, timeProvider, metricCallback,
+					serverPools.connectionLimiter, maxPendingAcquiresPerServer, acquireTimeoutMillis));
+				return serverPools;
+			}).pools.get(shard.index);
+			serverPool.setChannelSelectionStrategy(getChannelSelectionStrategy(serverInfo));
+			serverPool.setMaxPipelinedRequests(getMaxPipelinedRequests(serverInfo));
+			shard.serverPoolMap.put(serverInfo, serverPool);
+			metricCallback.onCreatedServerPool(serverInfo.getHost());
+		}
+		return serverPool;
+	}
+
+	private Shard[] getShards(EventLoopGroup eventLoopGroup) {
+		Shard[] currentShards = shards;
+		if (currentShards != null) {
+			return currentShards;
+		}
+
+		synchronized (this) {
+			if (shards == null) {
+				List<EventLoop> eventLoops = new ArrayList<>();
+				for (EventExecutor eventExecutor : eventLoopGroup) {
+					eventLoops.add((EventLoop) eventExecutor);
+				}
+
+				Shard[] newShards = new Shard[eventLoops.size()];
+				for (int i = 0; i < newShards.length; i++) {
+					newShards[i] = new Shard(i, eventLoops.get(i));
+				}
+				shards = newShards;
+			}
+			return shards;
+		}
+	}
+
+	private Shard currentShard() {
+		Shard[] currentShards = shards;
+		if (currentShards != null) {
+			for (Shard shard : currentShards) {
+				if (shard.eventLoop.inEventLoop()) {
+					return shard;
+				}
+			}
+		}
+		throw new IllegalStateException("EventLoopChannelPool can only be used from the event loop returned by selectEventLoop");
+	}
+
+	private Shard shardFor(Channel channel) {
+		Shard shard = findShard(channel.eventLoop());
+		if (shard == null) {
+			throw new IllegalStateException("Channel " + channel + " is not registered on an event loop known by this pool");
+		}
+		return shard;
+	}
+
+	private Shard shardFor(EventLoop eventLoop) {
+		Shard shard = findShard(eventLoop);
+		if (shard == null) {
+			throw new IllegalStateException("Event loop " + eventLoop + " is not known by this pool");
+		}
+		return shard;
+	}
+
+	private Shard findShard(EventLoop eventLoop) {
+		Shard[] currentShards = shards;
+		if (currentShards != null) {
+			for (Shard shard : currentShards) {
+				if (shard.eventLoop == eventLoop) {
+					return shard;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static class Shard {
+		private final int index;
+		private final EventLoop eventLoop;
+		private final HashMap<ServerInfo, EventLoopServerPool> serverPoolMap = new HashMap<>();  //only used from the event loop
+
+		private Shard(int index, EventLoop eventLoop) {
+			this.index = index;
+			this.eventLoop = eventLoop;
+		}
+	}
+
+	/**
+	 * The pools of a server on all event loops, indexed by shard, so that other threads can find an event loop with an idle channel.
+	 */
+	private static class ServerPools {
+		private final AtomicReferenceArray<EventLoopServerPool> pools;
+		private final ConnectionLimiter connectionLimiter;
+
+		private ServerPools(int shardCount, ConnectionLimiter connectionLimiter) {
+			pools = new AtomicReferenceArray<>(shardCount);
+			this.connectionLimiter = connectionLimiter;
+		}
+
+		private boolean isEmpty() {
+			for (int i = 0; i < pools.length(); i++) {
+				if (pools.get(i) != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
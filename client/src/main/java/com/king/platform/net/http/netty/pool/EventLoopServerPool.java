@@ -0,0 +1,511 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import com.king.platform.net.http.KingHttpException;
+import com.king.platform.net.http.netty.ServerInfo;
+import com.king.platform.net.http.netty.TimeoutException;
+import com.king.platform.net.http.netty.metric.MetricCallback;
+import com.king.platform.net.http.netty.util.TimeProvider;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The pool of one server on one event loop of an {@link EventLoopChannelPool}. Unlike {@link ServerPool} it is only used from its event
+ * loop, so it keeps its state in plain fields and schedules the expiry of its channels and the timeouts of its pending acquires on the
+ * event loop. Only the number of idle channels is published to other threads, for the pool to find an event loop with an idle channel.
+ * The max connections to the server is shared with the pools of the server on the other event loops through a {@link ConnectionLimiter}.
+ */
+class EventLoopServerPool {
+	private static final AtomicIntegerFieldUpdater<EventLoopServerPool> IDLE_CHANNEL_COUNT_UPDATER = AtomicIntegerFieldUpdater.newUpdater
+		(EventLoopServerPool.class, "idleChannelCount");
+
+	private final Logger logger = getLogger(getClass());
+	private final ServerInfo server;
+	private final EventLoop eventLoop;
+	private final TimeProvider timeProvider;
+	private final MetricCallback metricCallback;
+	private final ConnectionLimiter connectionLimiter;
+	private final int maxPendingAcquires;
+	private final int acquireTimeoutMillis;
+
+	private final IdleChannelList idleChannels = new IdleChannelList();
+	private final List<PooledChannel> sharedChannels = new ArrayList<>();
+	private final HashMap<Channel, PooledChannel> channelsMap = new HashMap<>();
+	private final ArrayDeque<PendingAcquire> pendingAcquires = new ArrayDeque<>();
+	private final List<PooledChannel> deadChannels = new ArrayList<>();
+	private int idGenerator;
+	private int openConnections;
+	private int warmingUpConnections;
+	private boolean waitingForConnection;
+	private int minIdleConnections;
+	private ChannelSelectionStrategy channelSelectionStrategy = ChannelSelectionStrategy.LIFO;
+	private int maxPipelinedRequests = 1;
+	private long lastOfferedConnectionTime;
+
+	private volatile int idleChannelCount;
+
+	/**
+	 * @param connectionLimiter the max number of open connections to the server from all event loops, null means no limit
+	 * @param maxPendingAcquires the max number of acquires waiting for a connection when the limit has been reached
+	 * @param acquireTimeoutMillis how long an acquire waits for a connection before it fails
+	 */
+	EventLoopServerPool(ServerInfo server, EventLoop eventLoop, TimeProvider timeProvider, MetricCallback metricCallback,
+						ConnectionLimiter connectionLimiter, int maxPendingAcquires, int acquireTimeoutMillis) {
+		this.server = server;
+		this.eventLoop = eventLoop;
+		this.timeProvider = timeProvider;
+		this.metricCallback = metricCallback;
+		this.connectionLimiter = connectionLimiter;
+		this.maxPendingAcquires = maxPendingAcquires;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		lastOfferedConnectionTime = timeProvider.currentTimeInMillis();
+	}
+
+	void acquire(AcquireCallback acquireCallback) {
+		assert eventLoop.inEventLoop();
+
+		Channel channel = pollChannel(acquireCallback.isPipeliningAllowed());
+		boolean newConnection = channel == null && reserveConnection();
+		if (channel == null && !newConnection && maxPendingAcquires > pendingAcquires.size()) {
+			PendingAcquire pendingAcquire = new PendingAcquire(acquireCallback);
+			pendingAcquires.add(pendingAcquire);
+			pendingAcquire.timeout = eventLoop.schedule(() -> timeoutPendingAcquire(pendingAcquire), acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+			logger.trace("Max connections reached for server {}, {} pending acquires", server, pendingAcquires.size());
+			closeDeadChannels();
+			waitForConnection();
+			return;
+		}
+
+		closeDeadChannels();
+
+		if (channel != null) {
+			acquireCallback.onPooledChannel(channel);
+		} else if (newConnection) {
+			acquireCallback.onNewConnection();
+		} else {
+			acquireCallback.onError(new KingHttpException("Too many pending requests to " + server));
+		}
+	}
+
+	void setChannelSelectionStrategy(ChannelSelectionStrategy channelSelectionStrategy) {
+		assert eventLoop.inEventLoop();
+		this.channelSelectionStrategy = channelSelectionStrategy;
+	}
+
+	void setMinIdleConnections(int minIdleConnections) {
+		assert eventLoop.inEventLoop();
+		this.minIdleConnections = minIdleConnections;
+	}
+
+	void setMaxPipelinedRequests(int maxPipelinedRequests) {
+		assert eventLoop.inEventLoop();
+		this.maxPipelinedRequests = maxPipelinedRequests;
+	}
+
+	/**
+	 * Open new connections on the event loop until the pool holds at least min idle connections, as long as max connections allows it.
+	 */
+	void warmUp(ChannelConnector channelConnector) {
+		assert eventLoop.inEventLoop();
+		int missingConnections = minIdleConnections - idleChannels.size() - warmingUpConnections;
+
+		for (int i = 0; i < missingConnections; i++) {
+			if (!reserveConnection()) {
+				return;
+			}
+
+			warmingUpConnections++;
+			logger.trace("Warming up new connection to server {}", server);
+
+			channelConnector.connect(server, eventLoop).addListener((FutureListener<Channel>) future -> {
+				if (eventLoop.inEventLoop()) {
+					onWarmedUp(channelConnector, future);
+				} else {  //failed registrations are completed on the global event executor
+					eventLoop.execute(() -> onWarmedUp(channelConnector, future));
+				}
+			});
+		}
+	}
+
+	private void onWarmedUp(ChannelConnector channelConnector, Future<Channel> future) {
+		warmingUpConnections--;
+
+		if (future.isSuccess()) {
+			Channel channel = future.getNow();
+			connectionOpened(channel);
+			offer(channel, channelConnector.getKeepAliveTimeoutMillis());
+		} else {
+			logger.trace("Failed to warm up connection to server {}", server, future.cause());
+			releaseConnection();
+		}
+	}
+
+	private boolean reserveConnection() {
+		if (connectionLimiter == null) {
+			return true;
+		}
+
+		if (!connectionLimiter.tryReserve()) {
+			return false;
+		}
+		openConnections++;
+		return true;
+	}
+
+	void connectionOpened(Channel channel) {
+		assert eventLoop.inEventLoop();
+		if (connectionLimiter == null) {
+			return;
+		}
+
+		channel.closeFuture().addListener(future -> releaseConnection());  //notified on the event loop of the channel
+	}
+
+	void releaseConnection() {
+		assert eventLoop.inEventLoop();
+		if (connectionLimiter == null) {
+			return;
+		}
+
+		openConnections--;
+		connectionLimiter.release();
+		servePendingAcquires();
+	}
+
+	/**
+	 * Called by the connection limiter, from any thread, when a connection to the server has been released while the pool was waiting.
+	 */
+	void onConnectionReleased() {
+		eventLoop.execute(() -> {
+			waitingForConnection = false;
+			servePendingAcquires();
+		});
+	}
+
+	private void waitForConnection() {
+		if (waitingForConnection) {
+			return;
+		}
+
+		waitingForConnection = true;
+		connectionLimiter.await(this);
+		if (connectionLimiter.hasAvailableConnections()) {  //released before the pool started waiting
+			stopWaitingForConnection();
+			eventLoop.execute(this::servePendingAcquires);
+		}
+	}
+
+	private void stopWaitingForConnection() {
+		if (!waitingForConnection) {
+			return;
+		}
+
+		waitingForConnection = false;
+		connectionLimiter.stopWaiting(this);
+	}
+
+	private void servePendingAcquires() {
+		while (!pendingAcquires.isEmpty()) {
+			PendingAcquire pendingAcquire = pendingAcquires.peek();
+			Channel channel = pollChannel(pendingAcquire.acquireCallback.isPipeliningAllowed());
+			if (channel == null && !reserveConnection()) {
+				closeDeadChannels();
+				waitForConnection();
+				return;
+			}
+
+			pendingAcquires.poll();
+			pendingAcquire.timeout.cancel(false);
+			closeDeadChannels();  //may serve the next pending acquires, this one is already taken out of the queue
+
+			if (channel != null) {
+				pendingAcquire.acquireCallback.onPooledChannel(channel);
+			} else {
+				pendingAcquire.acquireCallback.onNewConnection();
+			}
+		}
+
+		stopWaitingForConnection();
+	}
+
+	private void timeoutPendingAcquire(PendingAcquire pendingAcquire) {
+		if (pendingAcquires.remove(pendingAcquire)) {
+			if (pendingAcquires.isEmpty()) {
+				stopWaitingForConnection();
+			}
+			pendingAcquire.acquireCallback.onError(new TimeoutException("Timed out after " + acquireTimeoutMillis + " ms waiting for a connection to " +
+				server));
+		}
+	}
+
+	/**
+	 * @see ServerPool#poll(boolean)
+	 */
+	Channel poll(boolean pipelining) {
+		assert eventLoop.inEventLoop();
+		Channel channel = pollChannel(pipelining);
+		closeDeadChannels();
+		return channel;
+	}
+
+	/**
+	 * Poll without closing the dead channels found on the way. Closing a channel runs its close listeners, which can get back into the pool,
+	 * so the callers close them with {@link #closeDeadChannels()} once the pool is in a consistent state.
+	 */
+	private Channel pollChannel(boolean pipelining) {
+		ChannelSelectionStrategy strategy = channelSelectionStrategy;
+		long currentTime = timeProvider.currentTimeInMillis();
+
+		try {
+			while (true) {
+				PooledChannel pooledChannel = pollIdleChannel(strategy);
+				if (pooledChannel == null) {
+					return pollSharedChannel(pipelining);
+				}
+
+				if (pooledChannel.isValid(currentTime)) {
+					logger.trace("Found active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+					if (pooledChannel.getMaxSharedRequests(pipelining, maxPipelinedRequests) > 1) {  //let later requests share the channel
+						pooledChannel.sharedRequests = 1;
+						sharedChannels.add(pooledChannel);
+					}
+					return pooledChannel.channel;
+				}
+
+				channelsMap.remove(pooledChannel.channel);
+				deadChannels.add(pooledChannel);
+			}
+		} finally {
+			publishIdleChannelCount();
+		}
+	}
+
+	private void closeDeadChannels() {
+		while (!deadChannels.isEmpty()) {
+			PooledChannel pooledChannel = deadChannels.remove(deadChannels.size() - 1);
+			pooledChannel.channel.close();
+			logger.trace("Channel to {} with id {} created at {} is dead!", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+			metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+		}
+	}
+
+	private PooledChannel pollIdleChannel(ChannelSelectionStrategy strategy) {
+		switch (strategy) {
+			case FIFO:
+				return idleChannels.pollFirstExpiring();
+			case ROUND_ROBIN:
+				return idleChannels.pollLeastRecentlyUsed();
+			default:
+				return idleChannels.pollMostRecentlyUsed();
+		}
+	}
+
+	private Channel pollSharedChannel(boolean pipelining) {
+		PooledChannel leastUsedChannel = null;
+		for (PooledChannel pooledChannel : sharedChannels) {
+			if (pooledChannel.sharedRequests < pooledChannel.getMaxSharedRequests(pipelining, maxPipelinedRequests) && pooledChannel.channel.isActive() &&
+				(leastUsedChannel == null || pooledChannel.sharedRequests < leastUsedChannel.sharedRequests)) {
+				leastUsedChannel = pooledChannel;
+			}
+		}
+
+		if (leastUsedChannel == null) {
+			return null;
+		}
+
+		leastUsedChannel.sharedRequests++;
+		logger.trace("Sharing channel for server {} with id {}, {} outstanding requests", server, leastUsedChannel.id,
+			leastUsedChannel.sharedRequests);
+		return leastUsedChannel.channel;
+	}
+
+	void offer(Channel channel, int keepAliveTimeoutMillis) {
+		assert eventLoop.inEventLoop();
+		PooledChannel pooledChannel = addChannel(channel, keepAliveTimeoutMillis);
+		if (pooledChannel == null) {
+			return;
+		}
+		logger.trace("offering active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+
+		lastOfferedConnectionTime = timeProvider.currentTimeInMillis();
+		if (pooledChannel.sharedRequests == 0 || --pooledChannel.sharedRequests == 0) {  //no other request is using the channel
+			if (pendingAcquires.isEmpty() && connectionLimiter != null && connectionLimiter.hasWaitingPools()) {
+				logger.trace("Closing channel for server {} with id {}, other event loops are waiting for a connection", server, pooledChannel.id);
+				discard(channel);  //the close releases the connection to the waiting event loops
+				return;
+			}
+			if (pooledChannel.idle) {  //offered twice, move it to its new position
+				idleChannels.remove(pooledChannel);
+			}
+			sharedChannels.remove(pooledChannel);
+			pooledChannel.lastUsedTimeStamp = lastOfferedConnectionTime;
+			pooledChannel.maxTTL = keepAliveTimeoutMillis;  //the server may have shortened the keep alive since the channel was first pooled
+			idleChannels.add(pooledChannel);
+			pooledChannel.expiryFuture = eventLoop.schedule(() -> expire(pooledChannel), keepAliveTimeoutMillis, TimeUnit.MILLISECONDS);
+			publishIdleChannelCount();
+		}
+
+		servePendingAcquires();
+	}
+
+	/**
+	 * @see ServerPool#offerShared(Channel, int)
+	 */
+	void offerShared(Channel channel, int keepAliveTimeoutMillis) {
+		assert eventLoop.inEventLoop();
+		PooledChannel pooledChannel = addChannel(channel, keepAliveTimeoutMillis);
+		if (pooledChannel == null || pooledChannel.idle || pooledChannel.sharedRequests > 0) {  //gone or already known to the pool
+			return;
+		}
+		logger.trace("Sharing new channel for server {} with id {}", server, pooledChannel.id);
+
+		pooledChannel.sharedRequests = 1;
+		sharedChannels.add(pooledChannel);
+
+		servePendingAcquires();
+	}
+
+	private PooledChannel addChannel(Channel channel, int keepAliveTimeoutMillis) {
+		if (channel == null) {
+			return null;
+		}
+
+		if (!channel.isActive() || !channel.isOpen()) {
+			channelsMap.remove(channel);
+			return null;
+		}
+
+		PooledChannel pooledChannel = channelsMap.get(channel);
+		if (pooledChannel == null) {
+			pooledChannel = new PooledChannel(++idGenerator, timeProvider.currentTimeInMillis(), channel, keepAliveTimeoutMillis);
+			channelsMap.put(channel, pooledChannel);
+			logger.trace("Adding new active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+			metricCallback.onServerPoolAddedConnection(server.getHost(), channelsMap.size());
+
+			PooledChannel closedChannel = pooledChannel;
+			channel.closeFuture().addListener(future -> removeClosedChannel(closedChannel));
+		}
+		return pooledChannel;
+	}
+
+	void discard(Channel channel) {
+		assert eventLoop.inEventLoop();
+		if (channel == null) {
+			return;
+		}
+
+		PooledChannel pooledChannel = channelsMap.remove(channel);
+		if (pooledChannel != null) {
+			forget(pooledChannel);
+			//discard should not log an metric call for this since an event is triggerd by the calling method
+		}
+		channel.close();
+	}
+
+	private void removeClosedChannel(PooledChannel pooledChannel) {
+		forget(pooledChannel);
+
+		if (channelsMap.remove(pooledChannel.channel, pooledChannel)) {
+			logger.trace("Channel to {} with id {} created at {} was closed", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+			metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+		}
+	}
+
+	private void forget(PooledChannel pooledChannel) {
+		if (pooledChannel.idle) {
+			idleChannels.remove(pooledChannel);
+			publishIdleChannelCount();
+		}
+		if (pooledChannel.sharedRequests > 0) {
+			sharedChannels.remove(pooledChannel);
+			pooledChannel.sharedRequests = 0;
+		}
+	}
+
+	private void expire(PooledChannel pooledChannel) {
+		if (!pooledChannel.idle) {  //removing an idle channel cancels its expiry, this is only a safety net
+			return;
+		}
+
+		idleChannels.remove(pooledChannel);
+		publishIdleChannelCount();
+
+		logger.trace("Cleaned expired connection {}", pooledChannel.channel);
+		if (channelsMap.remove(pooledChannel.channel, pooledChannel)) {
+			metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+		}
+		pooledChannel.channel.close();
+	}
+
+	private void publishIdleChannelCount() {
+		IDLE_CHANNEL_COUNT_UPDATER.lazySet(this, idleChannels.size());
+	}
+
+	boolean shouldRemovePool() {
+		assert eventLoop.inEventLoop();
+		if (openConnections > 0 || !pendingAcquires.isEmpty() || warmingUpConnections > 0) {  //the pool is tracking connections
+			return false;
+		}
+		if (minIdleConnections > 0) {
+			return false;
+		}
+		return idleChannels.size() == 0 && lastOfferedConnectionTime + 10_000 <= timeProvider.currentTimeInMillis();  //keep the object around for 10s after the last connection has been closed
+	}
+
+	/**
+	 * Can be called from any thread.
+	 */
+	boolean hasIdleChannels() {
+		return idleChannelCount > 0;
+	}
+
+	/**
+	 * Can be called from any thread.
+	 */
+	int getPoolSize() {
+		return idleChannelCount;
+	}
+
+	void shutdown() {
+		assert eventLoop.inEventLoop();
+		stopWaitingForConnection();
+		while (!pendingAcquires.isEmpty()) {
+			PendingAcquire pendingAcquire = pendingAcquires.poll();
+			pendingAcquire.timeout.cancel(false);
+			pendingAcquire.acquireCallback.onError(new KingHttpException("The channel pool has been shut down"));
+		}
+
+		PooledChannel pooledChannel;
+		while ((pooledChannel = idleChannels.pollMostRecentlyUsed()) != null) {
+			pooledChannel.channel.close();  //can't wait for the close on the event loop
+		}
+		publishIdleChannelCount();
+	}
+
+	private static class PendingAcquire {
+		private final AcquireCallback acquireCallback;
+		private ScheduledFuture<?> timeout;
+
+		private PendingAcquire(AcquireCallback acquireCallback) {
+			this.acquireCallback = acquireCallback;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The idle channels of a server pool, kept in one intrusive doubly linked list per distinct keep alive timeout.
+ * Channels are added to the head of the list of their timeout, so each list is ordered by last use and therefore by expiry time,
+ * with the latest expiry first. Adding and removing a channel is O(1) in the number of idle channels, only the distinct timeouts are
+ * scanned, and servers use few of them. Removing a channel cancels its expiry timeout.
+ * All idle channels are also linked in the order they were offered, independent of their timeouts, to find the least and the most
+ * recently used channel in O(1).
+ */
+class IdleChannelList {
+	private final List<TtlList> ttlLists = new ArrayList<>(1);
+	private PooledChannel leastRecentlyUsed;
+	private PooledChannel mostRecentlyUsed;
+	private int size;
+
+	void add(PooledChannel pooledChannel) {
+		TtlList ttlList = null;
+		for (TtlList candidate : ttlLists) {
+			if (candidate.maxTTL == pooledChannel.maxTTL) {
+				ttlList = candidate;
+				break;
+			}
+		}
+		if (ttlList == null) {
+			ttlList = new TtlList(pooledChannel.maxTTL);
+			ttlLists.add(ttlList);
+		}
+
+		pooledChannel.previous = null;
+		pooledChannel.next = ttlList.head;
+		if (ttlList.head != null) {
+			ttlList.head.previous = pooledChannel;
+		} else {
+			ttlList.tail = pooledChannel;
+		}
+		ttlList.head = pooledChannel;
+
+		pooledChannel.previousUsed = mostRecentlyUsed;
+		pooledChannel.nextUsed = null;
+		if (mostRecentlyUsed != null) {
+			mostRecentlyUsed.nextUsed = pooledChannel;
+		} else {
+			leastRecentlyUsed = pooledChannel;
+		}
+		mostRecentlyUsed = pooledChannel;
+
+		pooledChannel.ttlList = ttlList;
+		pooledChannel.idle = true;
+		size++;
+	}
+
+	void remove(PooledChannel pooledChannel) {
+		TtlList ttlList = pooledChannel.ttlList;
+		if (pooledChannel.previous != null) {
+			pooledChannel.previous.next = pooledChannel.next;
+		} else {
+			ttlList.head = pooledChannel.next;
+		}
+		if (pooledChannel.next != null) {
+			pooledChannel.next.previous = pooledChannel.previous;
+		} else {
+			ttlList.tail = pooledChannel.previous;
+		}
+		if (ttlList.head == null) {
+			ttlLists.remove(ttlList);
+		}
+
+		if (pooledChannel.previousUsed != null) {
+			pooledChannel.previousUsed.nextUsed = pooledChannel.nextUsed;
+		} else {
+			leastRecentlyUsed = pooledChannel.nextUsed;
+		}
+		if (pooledChannel.nextUsed != null) {
+			pooledChannel.nextUsed.previousUsed = pooledChannel.previousUsed;
+		} else {
+			mostRecentlyUsed = pooledChannel.previousUsed;
+		}
+
+		pooledChannel.previous = null;
+		pooledChannel.next = null;
+		pooledChannel.previousUsed = null;
+		pooledChannel.nextUsed = null;
+		pooledChannel.ttlList = null;
+		pooledChannel.idle = false;
+		size--;
+
+		pooledChannel.cancelExpiry();
+	}
+
+	/**
+	 * @return the channel that was offered last, or null if there is none
+	 */
+	PooledChannel pollMostRecentlyUsed() {
+		PooledChannel channel = mostRecentlyUsed;
+		if (channel != null) {
+			remove(channel);
+		}
+		return channel;
+	}
+
+	/**
+	 * @return the channel that has been idle the longest, or null if there is none
+	 */
+	PooledChannel pollLeastRecentlyUsed() {
+		PooledChannel channel = leastRecentlyUsed;
+		if (channel != null) {
+			remove(channel);
+		}
+		return channel;
+	}
+
+	PooledChannel pollFirstExpiring() {
+		PooledChannel firstExpiring = peekFirstExpiring();
+		if (firstExpiring != null) {
+			remove(firstExpiring);
+		}
+		return firstExpiring;
+	}
+
+	/**
+	 * @return the channel whose keep alive expires first, or null if there is none
+	 */
+	PooledChannel peekFirstExpiring() {
+		PooledChannel firstExpiring = null;
+		for (TtlList ttlList : ttlLists) {
+			if (firstExpiring == null || ttlList.tail.expiryTimeStamp() < firstExpiring.expiryTimeStamp()) {
+				firstExpiring = ttlList.tail;
+			}
+		}
+		return firstExpiring;
+	}
+
+	int size() {
+		return size;
+	}
+
+	static class TtlList {
+		private final int maxTTL;
+		private PooledChannel head;
+		private PooledChannel tail;
+
+		private TtlList(int maxTTL) {
+			this.maxTTL = maxTTL;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+class LeastOutstandingRequestsPolicy implements LoadBalancingPolicy {
+
+	@Override
+	public Backend select(List<Backend> backends) {
+		int size = backends.size();
+		int start = ThreadLocalRandom.current().nextInt(size);  //spread the ties, an idle client would otherwise always pick the first backend
+
+		Backend selected = null;
+		for (int i = 0; i < size; i++) {
+			Backend backend = backends.get((start + i) % size);
+			if (selected == null || backend.getOutstandingRequests() < selected.getOutstandingRequests()) {
+				selected = backend;
+			}
+		}
+		return selected;
+	}
+}
@@ -0,0 +1,127 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import com.king.platform.net.http.netty.ServerInfo;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spreads the requests to a host over several backend addresses. Each request to a load balanced host is sent to the backend
+ * selected by the {@link LoadBalancingPolicy} of the host, and the connections to each backend are pooled separately under the
+ * {@link ServerInfo} of the backend. The requests still carry the host in their Host header, and secure connections still verify the
+ * certificate of the host.
+ * <p>
+ * Set it as {@link com.king.platform.net.http.ConfKeys#LOAD_BALANCER}. Requests to hosts without backends are sent as usual.
+ */
+public class LoadBalancer {
+	private final ConcurrentHashMap<ServerInfo, BackendGroup> backendGroups = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, ServerInfo> hosts = new ConcurrentHashMap<>();
+
+	/**
+	 * Send the requests to the host to the backends.
+	 * @param uri the uri of the host, for example https://api.internal
+	 * @param policy the policy selecting the backend of each request
+	 * @param backendUris the uris of the backends, with the same scheme as the host, for example https://10.0.0.1:8443
+	 * @return this load balancer
+	 */
+	public LoadBalancer addBackends(String uri, LoadBalancingPolicy policy, String... backendUris) {
+		if (backendUris.length == 0) {
+			throw new IllegalArgumentException("No backends for " + uri);
+		}
+
+		ServerInfo serverInfo = buildServerInfo(uri);
+
+		List<Backend> backends = new ArrayList<>();
+		for (String backendUri : backendUris) {
+			ServerInfo backendServerInfo = buildServerInfo(backendUri);
+			if (!serverInfo.getScheme().equals(backendServerInfo.getScheme())) {
+				throw new IllegalArgumentException("Backend " + backendUri + " does not have the scheme of " + uri);
+			}
+			backends.add(new Backend(backendServerInfo));
+		}
+
+		backendGroups.put(serverInfo, new BackendGroup(policy, Collections.unmodifiableList(backends)));
+		for (Backend backend : backends) {
+			hosts.put(backend.getServerInfo(), serverInfo);
+		}
+		return this;
+	}
+
+	/**
+	 * Select the backend a request to the server is sent to.
+	 * @param serverInfo the server of the request
+	 * @return the backend, or null if the server is not load balanced
+	 */
+	public Backend select(ServerInfo serverInfo) {
+		BackendGroup backendGroup = backendGroups.get(serverInfo);
+		if (backendGroup == null) {
+			return null;
+		}
+		return backendGroup.policy.select(backendGroup.backends);
+	}
+
+	/**
+	 * @param serverInfo the server
+	 * @return the backends of the server, empty if it is not load balanced
+	 */
+	public List<Backend> getBackends(ServerInfo serverInfo) {
+		BackendGroup backendGroup = backendGroups.get(serverInfo);
+		if (backendGroup == null) {
+			return Collections.emptyList();
+		}
+		return backendGroup.backends;
+	}
+
+	/**
+	 * @param serverInfo a server connections are pooled under
+	 * @return the load balanced host if the server is one of its backends, otherwise the server itself. The settings configured for the host
+	 * apply to the pools of all its backends.
+	 */
+	public ServerInfo getConfiguredServer(ServerInfo serverInfo) {
+		return hosts.getOrDefault(serverInfo, serverInfo);
+	}
+
+	/**
+	 * @param serverInfo a configured server
+	 * @return the servers the connections to the server are pooled under, its backends if it is load balanced, otherwise the server itself
+	 */
+	public List<ServerInfo> getPooledServers(ServerInfo serverInfo) {
+		BackendGroup backendGroup = backendGroups.get(serverInfo);
+		if (backendGroup == null) {
+			return Collections.singletonList(serverInfo);
+		}
+
+		List<ServerInfo> pooledServers = new ArrayList<>(backendGroup.backends.size());
+		for (Backend backend : backendGroup.backends) {
+			pooledServers.add(backend.getServerInfo());
+		}
+		return pooledServers;
+	}
+
+	private static ServerInfo buildServerInfo(String uri) {
+		try {
+			return ServerInfo.buildFromUri(uri);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid uri " + uri, e);
+		}
+	}
+
+	private static class BackendGroup {
+		private final LoadBalancingPolicy policy;
+		private final List<Backend> backends;
+
+		private BackendGroup(LoadBalancingPolicy policy, List<Backend> backends) {
+			this.policy = policy;
+			this.backends = backends;
+		}
+	}
+}
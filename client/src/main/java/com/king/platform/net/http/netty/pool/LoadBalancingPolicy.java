@@ -0,0 +1,44 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import java.util.List;
+
+/**
+ * Selects which backend of a load balanced host a request is sent to, see {@link LoadBalancer}.
+ * Policies may keep state for the host they are used for, so use one instance per host.
+ */
+public interface LoadBalancingPolicy {
+
+	/**
+	 * @param backends the backends of the host, never empty
+	 * @return the backend the request should be sent to
+	 */
+	Backend select(List<Backend> backends);
+
+	/**
+	 * @return a policy that sends the requests to the backends in turn
+	 */
+	static LoadBalancingPolicy roundRobin() {
+		return new RoundRobinPolicy();
+	}
+
+	/**
+	 * @return a policy that sends each request to the backend with the fewest requests in flight
+	 */
+	static LoadBalancingPolicy leastOutstandingRequests() {
+		return new LeastOutstandingRequestsPolicy();
+	}
+
+	/**
+	 * @return a policy that picks two random backends and sends the request to the one with the lowest latency weighted by its requests in
+	 * flight, which avoids slow backends without sending all requests to the currently fastest one
+	 */
+	static LoadBalancingPolicy powerOfTwoChoices() {
+		return new PowerOfTwoChoicesPolicy();
+	}
+}
@@ -0,0 +1,91 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import io.netty.channel.Channel;
+import io.netty.util.Timeout;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A channel known by a server pool. The links and the expiry are only used while the channel is in the {@link IdleChannelList} of the pool,
+ * and are guarded the same way as the list.
+ */
+class PooledChannel {
+	final int id;
+	final long creationTimeStamp;
+	final Channel channel;
+	long lastUsedTimeStamp;
+	int maxTTL;
+
+	boolean idle;
+	IdleChannelList.TtlList ttlList;  //the list of the channels with the same keep alive timeout
+	PooledChannel previous;
+	PooledChannel next;
+	PooledChannel previousUsed;  //the order the idle channels were offered in
+	PooledChannel nextUsed;
+	Timeout expiryTimeout;  //pools expiring on a timer
+	ScheduledFuture<?> expiryFuture;  //pools expiring on their event loop
+	int sharedRequests;  //requests sent on the channel while it is shared
+
+	PooledChannel(int id, long creationTimeStamp, Channel channel, int maxTTL) {
+		this.id = id;
+		this.creationTimeStamp = creationTimeStamp;
+		this.channel = channel;
+		this.maxTTL = maxTTL;
+	}
+
+	long expiryTimeStamp() {
+		return lastUsedTimeStamp + maxTTL;
+	}
+
+	void cancelExpiry() {
+		if (expiryTimeout != null) {
+			expiryTimeout.cancel();
+			expiryTimeout = null;
+		}
+		if (expiryFuture != null) {
+			expiryFuture.cancel(false);
+			expiryFuture = null;
+		}
+	}
+
+	/**
+	 * @return true if the channel is open, its keep alive has not expired and the server still accepts requests on it
+	 */
+	boolean isValid(long currentTime) {
+		if (expiryTimeStamp() <= currentTime) {  //TTL for this connection has expired
+			return false;
+		}
+
+		Integer maxConcurrentRequests = getMaxConcurrentRequests(channel);
+		if (maxConcurrentRequests != null && maxConcurrentRequests <= 0) {  //the server doesn't accept new requests on the channel
+			return false;
+		}
+
+		return channel.isActive() && channel.isOpen();
+	}
+
+	/**
+	 * @return how many requests may use the channel at the same time
+	 */
+	int getMaxSharedRequests(boolean pipelining, int maxPipelinedRequests) {
+		Integer maxConcurrentRequests = getMaxConcurrentRequests(channel);
+		if (maxConcurrentRequests != null) {
+			return maxConcurrentRequests;
+		}
+
+		return pipelining ? maxPipelinedRequests : 1;
+	}
+
+	private static Integer getMaxConcurrentRequests(Channel channel) {
+		if (!channel.hasAttr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY)) {
+			return null;
+		}
+		return channel.attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).get();
+	}
+}
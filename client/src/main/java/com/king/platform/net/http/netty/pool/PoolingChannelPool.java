@@ -10,8 +10,12 @@ import com.king.platform.net.http.netty.ServerInfo;
 import com.king.platform.net.http.netty.metric.MetricCallback;
 import com.king.platform.net.http.netty.util.TimeProvider;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
 import io.netty.util.Timer;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -19,36 +23,147 @@ import java.util.concurrent.TimeUnit;
 public class PoolingChannelPool implements ChannelPool {
 
 	private final ConcurrentHashMap<ServerInfo, ServerPool> serverPoolMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, Integer> minIdleConnectionsMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, ChannelSelectionStrategy> channelSelectionStrategyMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ServerInfo, Integer> maxPipelinedRequestsMap = new ConcurrentHashMap<>();
 
+	private final Timer cleanupTimer;
 	private final TimeProvider timeProvider;
 	private final MetricCallback metricCallback;
 
+	private final int maxConnectionsPerServer;
+	private final int maxPendingAcquiresPerServer;
+	private final int acquireTimeoutMillis;
+
+	private volatile ChannelConnector channelConnector;
+	private volatile LoadBalancer loadBalancer;
+	private volatile ChannelSelectionStrategy defaultChannelSelectionStrategy = ChannelSelectionStrategy.LIFO;
+
 	public PoolingChannelPool(final Timer cleanupTimer, TimeProvider timeProvider, final MetricCallback metricCallback) {
+		this(cleanupTimer, timeProvider, metricCallback, 0, 0, 0);
+	}
+
+	/**
+	 * @param maxConnectionsPerServer the max number of open connections to each server, 0 means no limit
+	 * @param maxPendingAcquiresPerServer the max number of requests per server waiting for a connection when the limit has been reached
+	 * @param acquireTimeoutMillis how long a request waits for a connection before it fails
+	 */
+	public PoolingChannelPool(final Timer cleanupTimer, TimeProvider timeProvider, final MetricCallback metricCallback, int maxConnectionsPerServer,
+							  int maxPendingAcquiresPerServer, int acquireTimeoutMillis) {
+		this.cleanupTimer = cleanupTimer;
 		this.timeProvider = timeProvider;
 		this.metricCallback = metricCallback;
+		this.maxConnectionsPerServer = maxConnectionsPerServer;
+		this.maxPendingAcquiresPerServer = maxPendingAcquiresPerServer;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
 
 
 		cleanupTimer.newTimeout(timeout -> {
 
-			for (Map.Entry<ServerInfo, ServerPool> poolEntry : serverPoolMap.entrySet()) {
-				ServerPool serverPool = poolEntry.getValue();
-				ServerInfo serverInfo = poolEntry.getKey();
+			cleanServerPools(serverPoolMap, metricCallback);
+			warmUpServerPools();
+
+			cleanupTimer.newTimeout(timeout.task(), 1000, TimeUnit.MILLISECONDS);
+
+		}, 1000, TimeUnit.MILLISECONDS);
+	}
+
+	static void cleanServerPools(Map<ServerInfo, ServerPool> serverPoolMap, MetricCallback metricCallback) {
+		for (Map.Entry<ServerInfo, ServerPool> poolEntry : serverPoolMap.entrySet()) {
+			ServerPool serverPool = poolEntry.getValue();
+			ServerInfo serverInfo = poolEntry.getKey();
 
-				serverPool.cleanExpiredConnections();
-				if (serverPool.shouldRemovePool()) {
-					ServerPool remove = serverPoolMap.remove(serverInfo);
-					if (remove != null) {
-						metricCallback.onRemovedServerPool(serverInfo.getHost());
-					}
+			if (serverPool.shouldRemovePool()) {
+				ServerPool remove = serverPoolMap.remove(serverInfo);
+				if (remove != null) {
+					metricCallback.onRemovedServerPool(serverInfo.getHost());
 				}
+			}
+
+		}
+	}
+
+	@Override
+	public void start(ChannelConnector channelConnector, EventLoopGroup eventLoopGroup) {
+		this.channelConnector = channelConnector;
+		warmUpServerPools();
+	}
+
+	@Override
+	public void setLoadBalancer(LoadBalancer loadBalancer) {
+		this.loadBalancer = loadBalancer;
+	}
 
+	@Override
+	public void setMinIdleConnections(ServerInfo serverInfo, int minIdleConnections) {
+		minIdleConnectionsMap.put(serverInfo, minIdleConnections);
+	}
+
+	@Override
+	public void setChannelSelectionStrategy(ChannelSelectionStrategy channelSelectionStrategy) {
+		defaultChannelSelectionStrategy = channelSelectionStrategy;
+		for (Map.Entry<ServerInfo, ServerPool> poolEntry : serverPoolMap.entrySet()) {
+			poolEntry.getValue().setChannelSelectionStrategy(getChannelSelectionStrategy(poolEntry.getKey()));
+		}
+	}
+
+	@Override
+	public void setChannelSelectionStrategy(ServerInfo serverInfo, ChannelSelectionStrategy channelSelectionStrategy) {
+		channelSelectionStrategyMap.put(serverInfo, channelSelectionStrategy);
+		for (ServerInfo pooledServer : getPooledServers(serverInfo)) {
+			ServerPool serverPool = serverPoolMap.get(pooledServer);
+			if (serverPool != null) {
+				serverPool.setChannelSelectionStrategy(channelSelectionStrategy);
 			}
+		}
+	}
 
-			cleanupTimer.newTimeout(timeout.task(), 1000, TimeUnit.MILLISECONDS);
+	private ChannelSelectionStrategy getChannelSelectionStrategy(ServerInfo serverInfo) {
+		return channelSelectionStrategyMap.getOrDefault(getConfiguredServer(serverInfo), defaultChannelSelectionStrategy);
+	}
 
-		}, 1000, TimeUnit.MILLISECONDS);
+	@Override
+	public void setMaxPipelinedRequests(ServerInfo serverInfo, int maxPipelinedRequests) {
+		maxPipelinedRequestsMap.put(serverInfo, maxPipelinedRequests);
+		for (ServerInfo pooledServer : getPooledServers(serverInfo)) {
+			ServerPool serverPool = serverPoolMap.get(pooledServer);
+			if (serverPool != null) {
+				serverPool.setMaxPipelinedRequests(maxPipelinedRequests);
+			}
+		}
+	}
+
+	private int getMaxPipelinedRequests(ServerInfo serverInfo) {
+		return maxPipelinedRequestsMap.getOrDefault(getConfiguredServer(serverInfo), 1);
+	}
+
+	/**
+	 * @return the server whose settings apply to the pool of the server, the load balanced host of a backend or else the server itself
+	 */
+	private ServerInfo getConfiguredServer(ServerInfo serverInfo) {
+		LoadBalancer currentLoadBalancer = loadBalancer;
+		return currentLoadBalancer != null ? currentLoadBalancer.getConfiguredServer(serverInfo) : serverInfo;
+	}
+
+	private List<ServerInfo> getPooledServers(ServerInfo serverInfo) {
+		LoadBalancer currentLoadBalancer = loadBalancer;
+		return currentLoadBalancer != null ? currentLoadBalancer.getPooledServers(serverInfo) : Collections.singletonList(serverInfo);
 	}
 
+	private void warmUpServerPools() {
+		ChannelConnector connector = channelConnector;
+		if (connector == null) {
+			return;
+		}
+
+		for (Map.Entry<ServerInfo, Integer> minIdleEntry : minIdleConnectionsMap.entrySet()) {
+			for (ServerInfo pooledServer : getPooledServers(minIdleEntry.getKey())) {
+				ServerPool serverPool = getOrCreateServerPool(pooledServer);
+				serverPool.setMinIdleConnections(minIdleEntry.getValue());
+				serverPool.warmUp(connector, null);
+			}
+		}
+	}
 
 	@Override
 	public Channel get(ServerInfo serverInfo) {
@@ -60,11 +175,59 @@ public class PoolingChannelPool implements ChannelPool {
 		return serverPool.poll();
 	}
 
+	@Override
+	public void acquire(ServerInfo serverInfo, AcquireCallback acquireCallback) {
+		if (maxConnectionsPerServer <= 0) {
+			ServerPool serverPool = serverPoolMap.get(serverInfo);
+			Channel channel = serverPool != null ? serverPool.poll(acquireCallback.isPipeliningAllowed()) : null;
+			if (channel != null) {
+				acquireCallback.onPooledChannel(channel);
+			} else {
+				acquireCallback.onNewConnection();
+			}
+			return;
+		}
+
+		getOrCreateServerPool(serverInfo).acquire(acquireCallback);
+	}
+
+	@Override
+	public void connectionOpened(ServerInfo serverInfo, Channel channel) {
+		ServerPool serverPool = serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			return;
+		}
+
+		serverPool.connectionOpened(channel);
+	}
+
+	@Override
+	public void connectionFailed(ServerInfo serverInfo, EventLoop eventLoop) {
+		ServerPool serverPool = serverPoolMap.get(serverInfo);
+		if (serverPool == null) {
+			return;
+		}
+
+		serverPool.releaseConnection();
+	}
+
 	@Override
 	public void offer(ServerInfo serverInfo, Channel channel, int keepAliveTimeoutMillis) {
+		getOrCreateServerPool(serverInfo).offer(channel, keepAliveTimeoutMillis);
+	}
+
+	@Override
+	public void offerShared(ServerInfo serverInfo, Channel channel, int keepAliveTimeoutMillis) {
+		getOrCreateServerPool(serverInfo).offerShared(channel, keepAliveTimeoutMillis);
+	}
+
+	private ServerPool getOrCreateServerPool(ServerInfo serverInfo) {
 		ServerPool serverPool = serverPoolMap.get(serverInfo);
 		if (serverPool == null) {
-			serverPool = new ServerPool(serverInfo, timeProvider, metricCallback);
+			serverPool = new ServerPool(serverInfo, cleanupTimer, timeProvider, metricCallback, maxConnectionsPerServer, maxPendingAcquiresPerServer,
+				acquireTimeoutMillis);
+			serverPool.setChannelSelectionStrategy(getChannelSelectionStrategy(serverInfo));
+			serverPool.setMaxPipelinedRequests(getMaxPipelinedRequests(serverInfo));
 			ServerPool old = serverPoolMap.putIfAbsent(serverInfo, serverPool);
 			if (old != null) {
 				serverPool = old;
@@ -73,8 +236,7 @@ public class PoolingChannelPool implements ChannelPool {
 
 			}
 		}
-
-		serverPool.offer(channel, keepAliveTimeoutMillis);
+		return serverPool;
 	}
 
 	@Override
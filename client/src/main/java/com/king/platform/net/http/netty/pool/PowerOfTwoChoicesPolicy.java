@@ -0,0 +1,39 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+class PowerOfTwoChoicesPolicy implements LoadBalancingPolicy {
+
+	@Override
+	public Backend select(List<Backend> backends) {
+		int size = backends.size();
+		if (size == 1) {
+			return backends.get(0);
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+
+		Backend a = backends.get(first);
+		Backend b = backends.get(second);
+		return cost(b) < cost(a) ? b : a;
+	}
+
+	/**
+	 * The expected wait for a new request, backends without a latency yet only compete on their requests in flight.
+	 */
+	static double cost(Backend backend) {
+		return (backend.getLatencyMillis() + 1) * (backend.getOutstandingRequests() + 1);
+	}
+}
@@ -0,0 +1,19 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RoundRobinPolicy implements LoadBalancingPolicy {
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Override
+	public Backend select(List<Backend> backends) {
+		return backends.get((next.getAndIncrement() & Integer.MAX_VALUE) % backends.size());
+	}
+}
@@ -6,17 +6,23 @@
 package com.king.platform.net.http.netty.pool;
 
 
+import com.king.platform.net.http.KingHttpException;
 import com.king.platform.net.http.netty.ServerInfo;
+import com.king.platform.net.http.netty.TimeoutException;
 import com.king.platform.net.http.netty.metric.MetricCallback;
 import com.king.platform.net.http.netty.util.TimeProvider;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -26,72 +32,393 @@ public class ServerPool {
 	private final ServerInfo server;
 
 	private final AtomicInteger idGenerator = new AtomicInteger();
-	private final ConcurrentLinkedDeque<PooledChannel> pooledChannels = new ConcurrentLinkedDeque<>();
+	private final IdleChannelList idleChannels = new IdleChannelList();
+	private final List<PooledChannel> sharedChannels = new ArrayList<>();  //guarded by idleChannels
 	private final ConcurrentHashMap<Channel, PooledChannel> channelsMap = new ConcurrentHashMap<>();
 	private final TimeProvider timeProvider;
 	private final MetricCallback metricCallback;
 
+	private final Timer timer;
+	private final int maxConnections;
+	private final int maxPendingAcquires;
+	private final int acquireTimeoutMillis;
+	private final ArrayDeque<PendingAcquire> pendingAcquires = new ArrayDeque<>();
+	private int openConnections; //guarded by pendingAcquires
+
+	private final AtomicInteger warmingUpConnections = new AtomicInteger();
+	private volatile int minIdleConnections;
+	private volatile ChannelSelectionStrategy channelSelectionStrategy = ChannelSelectionStrategy.LIFO;
+	private volatile int maxPipelinedRequests = 1;
+
 	private volatile long lastOfferedConnectionTime;
 
 	public ServerPool(ServerInfo server,TimeProvider timeProvider, MetricCallback metricCallback) {
+		this(server, null, timeProvider, metricCallback, 0, 0, 0);
+	}
+
+	/**
+	 * @param maxConnections the max number of open connections to the server, 0 means no limit
+	 * @param maxPendingAcquires the max number of acquires waiting for a connection when the limit has been reached
+	 * @param acquireTimeoutMillis how long an acquire waits for a connection before it fails
+	 */
+	public ServerPool(ServerInfo server, Timer timer, TimeProvider timeProvider, MetricCallback metricCallback, int maxConnections, int maxPendingAcquires,
+					  int acquireTimeoutMillis) {
+		this.timer = timer;
 		this.timeProvider = timeProvider;
 		this.metricCallback = metricCallback;
+		this.maxConnections = maxConnections;
+		this.maxPendingAcquires = maxPendingAcquires;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
 		lastOfferedConnectionTime = timeProvider.currentTimeInMillis();
 		this.server = server;
 	}
 
+	public void acquire(AcquireCallback acquireCallback) {
+		boolean pipelining = acquireCallback.isPipeliningAllowed();
+		Channel channel = poll(pipelining);
+		if (channel != null) {
+			acquireCallback.onPooledChannel(channel);
+			return;
+		}
+
+		if (maxConnections <= 0) {
+			acquireCallback.onNewConnection();
+			return;
+		}
+
+		boolean newConnection = false;
+		boolean pending = false;
+		List<PooledChannel> deadChannels = new ArrayList<>(0);
+
+		synchronized (pendingAcquires) {
+			channel = poll(pipelining, deadChannels);  //poll again while holding the lock, an offer could have happened in between
+
+			if (channel == null) {
+				if (openConnections < maxConnections) {
+					openConnections++;
+					newConnection = true;
+				} else if (pendingAcquires.size() < maxPendingAcquires) {
+					PendingAcquire pendingAcquire = new PendingAcquire(acquireCallback);
+					pendingAcquires.add(pendingAcquire);
+					pendingAcquire.timeout = timer.newTimeout(timeout -> timeoutPendingAcquire(pendingAcquire), acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+					logger.trace("Max connections reached for server {}, {} pending acquires", server, pendingAcquires.size());
+					pending = true;
+				}
+			}
+		}
+
+		closeDeadChannels(deadChannels);
+
+		if (pending) {
+			return;
+		}
+
+		if (channel != null) {
+			acquireCallback.onPooledChannel(channel);
+		} else if (newConnection) {
+			acquireCallback.onNewConnection();
+		} else {
+			acquireCallback.onError(new KingHttpException("Too many pending requests to " + server));
+		}
+	}
+
+	public void setChannelSelectionStrategy(ChannelSelectionStrategy channelSelectionStrategy) {
+		this.channelSelectionStrategy = channelSelectionStrategy;
+	}
+
+	public void setMinIdleConnections(int minIdleConnections) {
+		this.minIdleConnections = minIdleConnections;
+	}
+
+	public void setMaxPipelinedRequests(int maxPipelinedRequests) {
+		this.maxPipelinedRequests = maxPipelinedRequests;
+	}
+
+	/**
+	 * Open new connections until the pool holds at least min idle connections, as long as max connections allows it.
+	 * @param channelConnector the connector used to open the connections
+	 * @param eventLoop the event loop the connections should be registered on, or null for any event loop
+	 */
+	public void warmUp(ChannelConnector channelConnector, EventLoop eventLoop) {
+		int missingConnections = minIdleConnections - getPoolSize() - warmingUpConnections.get();
+
+		for (int i = 0; i < missingConnections; i++) {
+			if (!reserveConnection()) {
+				return;
+			}
+
+			warmingUpConnections.incrementAndGet();
+			logger.trace("Warming up new connection to server {}", server);
+
+			channelConnector.connect(server, eventLoop).addListener((FutureListener<Channel>) future -> {
+				warmingUpConnections.decrementAndGet();
+
+				if (future.isSuccess()) {
+					Channel channel = future.getNow();
+					connectionOpened(channel);
+					offer(channel, channelConnector.getKeepAliveTimeoutMillis());
+				} else {
+					logger.trace("Failed to warm up connection to server {}", server, future.cause());
+					releaseConnection();
+				}
+			});
+		}
+	}
+
+	private boolean reserveConnection() {
+		if (maxConnections <= 0) {
+			return true;
+		}
+
+		synchronized (pendingAcquires) {
+			if (openConnections >= maxConnections) {
+				return false;
+			}
+			openConnections++;
+			return true;
+		}
+	}
+
+	public void connectionOpened(Channel channel) {
+		if (maxConnections <= 0) {
+			return;
+		}
+
+		channel.closeFuture().addListener(future -> releaseConnection());
+	}
+
+	public void releaseConnection() {
+		if (maxConnections <= 0) {
+			return;
+		}
+
+		synchronized (pendingAcquires) {
+			openConnections--;
+		}
+
+		servePendingAcquires();
+	}
+
+	private void servePendingAcquires() {
+		if (maxConnections <= 0) {
+			return;
+		}
+
+		List<PooledChannel> deadChannels = null;
+
+		while (true) {
+			PendingAcquire pendingAcquire = null;
+			Channel channel;
+
+			synchronized (pendingAcquires) {
+				if (pendingAcquires.isEmpty()) {
+					return;
+				}
+
+				if (deadChannels == null) {
+					deadChannels = new ArrayList<>(0);
+				}
+
+				channel = poll(pendingAcquires.peek().acquireCallback.isPipeliningAllowed(), deadChannels);
+				if (channel != null || openConnections < maxConnections) {
+					if (channel == null) {
+						openConnections++;
+					}
+					pendingAcquire = pendingAcquires.poll();
+				}
+			}
+
+			closeDeadChannels(deadChannels);
+
+			if (pendingAcquire == null) {
+				return;
+			}
+
+			pendingAcquire.timeout.cancel();
+
+			if (channel != null) {
+				pendingAcquire.acquireCallback.onPooledChannel(channel);
+			} else {
+				pendingAcquire.acquireCallback.onNewConnection();
+			}
+		}
+	}
+
+	private void timeoutPendingAcquire(PendingAcquire pendingAcquire) {
+		boolean removed;
+		synchronized (pendingAcquires) {
+			removed = pendingAcquires.remove(pendingAcquire);
+		}
+
+		if (removed) {
+			pendingAcquire.acquireCallback.onError(new TimeoutException("Timed out after " + acquireTimeoutMillis + " ms waiting for a connection to " +
+				server));
+		}
+	}
+
 	public Channel poll() {
-		PooledChannel pooledChannel;
+		return poll(false);
+	}
+
+	/**
+	 * Poll an idle channel. If there is none, a channel that is still in use is shared with the request, if the channel multiplexes
+	 * requests or if the request may be pipelined and pipelining is enabled for the server.
+	 * @param pipelining true if the request may be pipelined
+	 * @return the channel, or null if there is none
+	 */
+	public Channel poll(boolean pipelining) {
+		return poll(pipelining, null);
+	}
 
-		while ((pooledChannel = pooledChannels.poll()) != null) {
-			if (isValidConnection(pooledChannel)) {
+	/**
+	 * @param deadChannels if not null, the dead channels found on the way are added to it instead of being closed, so that the poll can
+	 * be done while holding a lock. The caller closes them with {@link #closeDeadChannels(List)} after releasing the lock.
+	 */
+	private Channel poll(boolean pipelining, List<PooledChannel> deadChannels) {
+		ChannelSelectionStrategy strategy = channelSelectionStrategy;
+
+		while (true) {
+			PooledChannel pooledChannel;
+			synchronized (idleChannels) {
+				pooledChannel = pollIdleChannel(strategy);
+				if (pooledChannel == null) {
+					return pollSharedChannel(pipelining);
+				}
+			}
+
+			if (pooledChannel.isValid(timeProvider.currentTimeInMillis())) {
 				logger.trace("Found active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+				if (pooledChannel.getMaxSharedRequests(pipelining, maxPipelinedRequests) > 1) {  //let later requests share the channel until it is offered back by all of them
+					synchronized (idleChannels) {
+						pooledChannel.sharedRequests = 1;
+						sharedChannels.add(pooledChannel);
+					}
+				}
 				return pooledChannel.channel;
+			} else if (deadChannels != null) {
+				deadChannels.add(pooledChannel);
 			} else {
-				channelsMap.remove(pooledChannel.channel);
-				pooledChannel.channel.close();
-				logger.trace("Channel to {} with id {} created at {} is dead!", server, pooledChannel.id, pooledChannel.creationTimeStamp);
-				metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+				closeDeadChannel(pooledChannel);
+			}
+		}
+	}
+
+	/**
+	 * Close the dead channels found by a poll. Closing runs the close listeners of the channel, so it must not be done while holding a lock.
+	 */
+	private void closeDeadChannels(List<PooledChannel> deadChannels) {
+		if (deadChannels.isEmpty()) {
+			return;
+		}
+
+		for (PooledChannel pooledChannel : deadChannels) {
+			closeDeadChannel(pooledChannel);
+		}
+		deadChannels.clear();
+	}
+
+	private void closeDeadChannel(PooledChannel pooledChannel) {
+		channelsMap.remove(pooledChannel.channel);
+		pooledChannel.channel.close();
+		logger.trace("Channel to {} with id {} created at {} is dead!", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+		metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+	}
+
+	private PooledChannel pollIdleChannel(ChannelSelectionStrategy strategy) {
+		switch (strategy) {
+			case FIFO:
+				return idleChannels.pollFirstExpiring();
+			case ROUND_ROBIN:
+				return idleChannels.pollLeastRecentlyUsed();
+			default:
+				return idleChannels.pollMostRecentlyUsed();
+		}
+	}
+
+	private Channel pollSharedChannel(boolean pipelining) {
+		PooledChannel leastUsedChannel = null;
+		for (PooledChannel pooledChannel : sharedChannels) {
+			if (pooledChannel.sharedRequests < pooledChannel.getMaxSharedRequests(pipelining, maxPipelinedRequests) && pooledChannel.channel.isActive() &&
+				(leastUsedChannel == null || pooledChannel.sharedRequests < leastUsedChannel.sharedRequests)) {
+				leastUsedChannel = pooledChannel;
 			}
 		}
 
-		return null;
+		if (leastUsedChannel == null) {
+			return null;
+		}
 
+		leastUsedChannel.sharedRequests++;
+		logger.trace("Sharing channel for server {} with id {}, {} outstanding requests", server, leastUsedChannel.id,
+			leastUsedChannel.sharedRequests);
+		return leastUsedChannel.channel;
 	}
 
-	private boolean isValidConnection(PooledChannel pooledChannel) {
+	public void offer(Channel channel, int keepAliveTimeoutMillis) {
+		PooledChannel pooledChannel = addChannel(channel, keepAliveTimeoutMillis);
 		if (pooledChannel == null) {
-			return false;
+			return;
 		}
+		logger.trace("offering active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
 
-		Channel channel = pooledChannel.channel;
-		long currentTime = timeProvider.currentTimeInMillis();
+		lastOfferedConnectionTime = timeProvider.currentTimeInMillis();
+		synchronized (idleChannels) {
+			if (pooledChannel.sharedRequests > 0 && --pooledChannel.sharedRequests > 0) {  //other requests are still using the channel
+				pooledChannel = null;
+			} else if (pooledChannel.idle) {  //offered twice, move it to its new position
+				idleChannels.remove(pooledChannel);
+			}
+			if (pooledChannel != null) {
+				sharedChannels.remove(pooledChannel);
+				pooledChannel.lastUsedTimeStamp = timeProvider.currentTimeInMillis();
+				pooledChannel.maxTTL = keepAliveTimeoutMillis;  //the server may have shortened the keep alive since the channel was first pooled
+				idleChannels.add(pooledChannel);
+				scheduleExpiry(pooledChannel);
+			}
+		}
 
-		if (pooledChannel.lastUsedTimeStamp + pooledChannel.maxTTL <= currentTime) {  //TTL for this connection has expired
-			return false;
+		servePendingAcquires();
+	}
+
+	/**
+	 * Add a new channel that multiplexes requests while the request that opened it is still using it, so that other requests can share it
+	 * right away. The channel becomes idle when it has been offered back by all requests using it.
+	 */
+	public void offerShared(Channel channel, int keepAliveTimeoutMillis) {
+		PooledChannel pooledChannel = addChannel(channel, keepAliveTimeoutMillis);
+		if (pooledChannel == null) {
+			return;
 		}
+		logger.trace("Sharing new channel for server {} with id {}", server, pooledChannel.id);
 
-		if (channel.isActive() && channel.isOpen()) {
-			return true;
+		synchronized (idleChannels) {
+			if (pooledChannel.idle || pooledChannel.sharedRequests > 0) {  //already known to the pool
+				return;
+			}
+			pooledChannel.sharedRequests = 1;
+			sharedChannels.add(pooledChannel);
 		}
 
-		return false;
+		servePendingAcquires();
 	}
 
-	public void offer(Channel channel, int keepAliveTimeoutMillis) {
+	/**
+	 * @return the pooled channel of the channel, added to the pool if it is new, or null if the channel is no longer active
+	 */
+	private PooledChannel addChannel(Channel channel, int keepAliveTimeoutMillis) {
 		if (channel == null) {
-			return;
+			return null;
 		}
 
 		PooledChannel pooledChannel = channelsMap.get(channel);
 
 		if (!channel.isActive() || !channel.isOpen()) {
 			if (pooledChannel == null) {
-				return;
+				return null;
 			}
 
 			channelsMap.remove(channel);
-			return;
+			return null;
 		}
 
 		if (pooledChannel == null) {
@@ -100,14 +427,15 @@ public class ServerPool {
 			if (oldValue == null) {
 				logger.trace("Adding new active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
 				metricCallback.onServerPoolAddedConnection(server.getHost(), channelsMap.size());
+
+				PooledChannel closedChannel = pooledChannel;
+				channel.closeFuture().addListener(future -> removeClosedChannel(closedChannel));
+			} else {
+				pooledChannel = oldValue;
 			}
 
 		}
-		logger.trace("offering active channel for server {} with id {} created at {}", server, pooledChannel.id, pooledChannel.creationTimeStamp);
-
-		lastOfferedConnectionTime = timeProvider.currentTimeInMillis();
-		pooledChannel.lastUsedTimeStamp = timeProvider.currentTimeInMillis();
-		pooledChannels.addFirst(pooledChannel);
+		return pooledChannel;
 	}
 
 	public void discard(Channel channel) {
@@ -115,82 +443,156 @@ public class ServerPool {
 			return;
 		}
 
-		channel.close();
 		PooledChannel remove = channelsMap.remove(channel);
 		if (remove != null) {
-			//pooledChannels.remove(remove); we don't want to do remove since its expensive on a linkedList
+			synchronized (idleChannels) {
+				if (remove.idle) {
+					idleChannels.remove(remove);
+				}
+				removeSharedChannel(remove);
+			}
 			//discard should not log an metric call for this since an event is triggerd by the calling method
-			//metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
 		}
+		channel.close();
+	}
 
+	private void removeClosedChannel(PooledChannel pooledChannel) {
+		synchronized (idleChannels) {
+			if (pooledChannel.idle) {
+				idleChannels.remove(pooledChannel);
+			}
+			removeSharedChannel(pooledChannel);
+		}
+
+		if (channelsMap.remove(pooledChannel.channel, pooledChannel)) {
+			logger.trace("Channel to {} with id {} created at {} was closed", server, pooledChannel.id, pooledChannel.creationTimeStamp);
+			metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+		}
 	}
 
-	public void cleanExpiredConnections() {
-		HashSet<PooledChannel> currentPooledChannels = new HashSet<>(pooledChannels);
+	private void removeSharedChannel(PooledChannel pooledChannel) {
+		if (pooledChannel.sharedRequests > 0) {
+			sharedChannels.remove(pooledChannel);
+			pooledChannel.sharedRequests = 0;
+		}
+	}
 
-		List<PooledChannel> closedChannels = new ArrayList<>();
-		for (PooledChannel pooledChannel : currentPooledChannels) {
-			if (!isValidConnection(pooledChannel)) {
-				closedChannels.add(pooledChannel);
-			}
+	private void scheduleExpiry(PooledChannel pooledChannel) {
+		if (timer == null) {
+			return;
 		}
 
-		for (PooledChannel closedChannel : closedChannels) {
-			pooledChannels.remove(closedChannel);
-			PooledChannel remove = channelsMap.remove(closedChannel.channel);
+		pooledChannel.expiryTimeout = timer.newTimeout(timeout -> expire(pooledChannel, timeout), pooledChannel.maxTTL, TimeUnit.MILLISECONDS);
+	}
 
-			logger.trace("Cleaned expired connection {}", closedChannel.channel);
-			if (remove != null) {
-				remove.channel.close();
-				metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+	private void expire(PooledChannel pooledChannel, Timeout timeout) {
+		synchronized (idleChannels) {
+			if (pooledChannel.expiryTimeout != timeout) {  //the channel has been reused or removed since the expiry was scheduled
+				return;
 			}
+			idleChannels.remove(pooledChannel);
+		}
 
+		closeExpiredChannel(pooledChannel);
+	}
+
+	private void closeExpiredChannel(PooledChannel expiredChannel) {
+		logger.trace("Cleaned expired connection {}", expiredChannel.channel);
+		if (channelsMap.remove(expiredChannel.channel, expiredChannel)) {
+			metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
 		}
+		expiredChannel.channel.close();
+	}
 
+	/**
+	 * Close the idle channels whose keep alive has expired. The idle channels of each keep alive timeout are ordered by expiry time,
+	 * so only the expired channels are visited. Pools created with a timer expire each channel on the timer instead, so this is only needed
+	 * for pools without one.
+	 */
+	public void cleanExpiredConnections() {
+		long currentTime = timeProvider.currentTimeInMillis();
 
-		for (Channel channel : channelsMap.keySet()) {
-			if (channel.isActive() && channel.isOpen()) {
-				continue;
+		while (true) {
+			PooledChannel expiredChannel;
+			synchronized (idleChannels) {
+				expiredChannel = idleChannels.peekFirstExpiring();
+				if (expiredChannel == null || expiredChannel.expiryTimeStamp() > currentTime) {
+					return;
+				}
+				idleChannels.remove(expiredChannel);
 			}
 
-			channelsMap.remove(channel);
-			channel.close();
-			metricCallback.onServerPoolClosedConnection(server.getHost(), channelsMap.size());
+			closeExpiredChannel(expiredChannel);
 		}
 	}
 
 
 	public boolean shouldRemovePool() {
-		return pooledChannels.isEmpty() && lastOfferedConnectionTime + 10_000 <= timeProvider.currentTimeInMillis();  //keep the object around for 10s after the last connection has been closed
+		if (getOpenConnections() > 0 || getPendingAcquires() > 0) {  //the pool is tracking connections that has not been closed yet
+			return false;
+		}
+		if (minIdleConnections > 0) {
+			return false;
+		}
+		return getPoolSize() == 0 && lastOfferedConnectionTime + 10_000 <= timeProvider.currentTimeInMillis();  //keep the object around for 10s after the last connection has been closed
+	}
+
+	public boolean hasIdleChannels() {
+		return getPoolSize() > 0;
 	}
 
 	public int getPoolSize() {
-		return pooledChannels.size();
+		synchronized (idleChannels) {
+			return idleChannels.size();
+		}
 	}
 
 	public int getChannelSize() {
 		return channelsMap.size();
 	}
 
+	public int getOpenConnections() {
+		synchronized (pendingAcquires) {
+			return openConnections;
+		}
+	}
+
+	public int getPendingAcquires() {
+		synchronized (pendingAcquires) {
+			return pendingAcquires.size();
+		}
+	}
+
 	public void shutdown() {
-		for (PooledChannel pooledChannel : pooledChannels) {
+		List<PendingAcquire> failedAcquires;
+		synchronized (pendingAcquires) {
+			failedAcquires = new ArrayList<>(pendingAcquires);
+			pendingAcquires.clear();
+		}
+
+		for (PendingAcquire pendingAcquire : failedAcquires) {
+			pendingAcquire.timeout.cancel();
+			pendingAcquire.acquireCallback.onError(new KingHttpException("The channel pool has been shut down"));
+		}
+
+		while (true) {
+			PooledChannel pooledChannel;
+			synchronized (idleChannels) {
+				pooledChannel = idleChannels.pollMostRecentlyUsed();
+			}
+			if (pooledChannel == null) {
+				break;
+			}
 			pooledChannel.channel.close().awaitUninterruptibly();
 		}
 	}
 
+	private static class PendingAcquire {
+		private final AcquireCallback acquireCallback;
+		private Timeout timeout;
 
-	private static class PooledChannel {
-		private int id;
-		private long creationTimeStamp;
-		private long lastUsedTimeStamp;
-		private Channel channel;
-		private int maxTTL;
-
-		public PooledChannel(int id, long creationTimeStamp, Channel channel, int maxTTL) {
-			this.id = id;
-			this.creationTimeStamp = creationTimeStamp;
-			this.channel = channel;
-			this.maxTTL = maxTTL;
+		private PendingAcquire(AcquireCallback acquireCallback) {
+			this.acquireCallback = acquireCallback;
 		}
 	}
 }
@@ -44,4 +44,9 @@ public class ByteArrayHttpBody implements HttpBody {
 	public Charset getCharacterEncoding() {
 		return characterEncoding;
 	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
 }
@@ -70,4 +70,8 @@ public class FileHttpBody implements HttpBody {
 		return channel.write(new ChunkedNioFile(fileChannel, 0, length, 1024 * 8), channel.newProgressivePromise());
 	}
 
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
 }
@@ -20,4 +20,11 @@ public interface HttpBody {
 	Charset getCharacterEncoding();
 
 	ChannelFuture writeContent(ChannelHandlerContext ctx, boolean isSecure) throws IOException;
+
+	/**
+	 * @return true if the content can be written more than once, for example when the request is retried
+	 */
+	default boolean isRepeatable() {
+		return false;
+	}
 }
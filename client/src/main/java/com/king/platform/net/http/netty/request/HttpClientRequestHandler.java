@@ -15,10 +15,12 @@ import com.king.platform.net.http.netty.response.NettyHttpClientResponse;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http2.Http2StreamChannel;
 import io.netty.util.Attribute;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -43,11 +45,13 @@ public class HttpClientRequestHandler {
 
 			NettyHttpClientRequest request = httpRequestContext.getNettyHttpClientRequest();
 
-			ctx.channel().attr(HttpRequestContext.HTTP_REQUEST_ATTRIBUTE_KEY).set(httpRequestContext);
+			setCurrentRequest(ctx.channel(), httpRequestContext);
 
 			RequestEventBus requestEventBus = httpRequestContext.getRequestEventBus();
 
-			NettyHttpClientResponse nettyHttpClientResponse = new NettyHttpClientResponse(httpRequestContext.getResponseBodyConsumer(), requestEventBus);
+			NettyHttpClientResponse nettyHttpClientResponse = httpRequestContext.isRecycled() ?
+				NettyHttpClientResponse.newInstance(httpRequestContext.getResponseBodyConsumer(), requestEventBus) :
+				new NettyHttpClientResponse(httpRequestContext.getResponseBodyConsumer(), requestEventBus);
 			httpRequestContext.setNettyHttpClientResponse(nettyHttpClientResponse);
 
 			requestEventBus.triggerEvent(Event.POPULATE_CONNECTION_SPECIFIC_HEADERS, httpRequestContext.getServerInfo(), request.getNettyRequest().headers());
@@ -88,13 +92,38 @@ public class HttpClientRequestHandler {
 	}
 
 
+	private void setCurrentRequest(Channel channel, HttpRequestContext httpRequestContext) {
+		Attribute<HttpRequestContext> currentRequestAttribute = channel.attr(HttpRequestContext.HTTP_REQUEST_ATTRIBUTE_KEY);
+		Attribute<ArrayDeque<HttpRequestContext>> pipelinedRequestsAttribute = channel.attr(HttpRequestContext.PIPELINED_REQUESTS_ATTRIBUTE_KEY);
+
+		HttpRequestContext currentRequest = currentRequestAttribute.get();
+		ArrayDeque<HttpRequestContext> pipelinedRequests = pipelinedRequestsAttribute.get();
+
+		if ((currentRequest != null && !currentRequest.hasCompletedContent()) || (pipelinedRequests != null && !pipelinedRequests.isEmpty())) {
+			//the response of an earlier request has not been read yet, this request becomes current when the responses before it are done
+			if (pipelinedRequests == null) {
+				pipelinedRequests = new ArrayDeque<>();
+				pipelinedRequestsAttribute.set(pipelinedRequests);
+			}
+			logger.trace("Pipelining {} behind {} on channel {}", httpRequestContext, currentRequest, channel);
+			pipelinedRequests.add(httpRequestContext);
+		} else {
+			currentRequestAttribute.set(httpRequestContext);
+		}
+	}
+
 	private void writeHeaders(ChannelHandlerContext ctx, final HttpRequestContext httpRequestContext, HttpRequest httpRequest, final RequestEventBus
 		requestEventBus) {
 		httpRequestContext.getTimeRecorder().startWriteHeaders();
+		int generation = httpRequestContext.getGeneration();
 		ChannelFuture channelFuture = ctx.write(httpRequest);
 		channelFuture.addListener(new ChannelFutureListener() {
 			@Override
 			public void operationComplete(ChannelFuture future) throws Exception {
+				if (!httpRequestContext.isCurrent(generation)) {  //the request is done and its context has been recycled
+					return;
+				}
+
 				if (future.isSuccess()) {
 					logger.trace("Wrote headers operation completed, future: {}", future);
 					requestEventBus.triggerEvent(Event.onWroteHeaders);
@@ -114,11 +143,19 @@ public class HttpClientRequestHandler {
 		try {
 			httpRequestContext.getTimeRecorder().startWriteBody();
 			requestEventBus.triggerEvent(Event.onWroteContentStarted, httpBody.getContentLength());
-			ChannelFuture channelFuture = httpBody.writeContent(ctx, httpRequestContext.getServerInfo().isSecure());
+			//file regions can't be sent on HTTP/2 streams, so the body is written as if the channel was secure
+			boolean isSecure = httpRequestContext.getServerInfo().isSecure() || ctx.channel() instanceof Http2StreamChannel;
+			int generation = httpRequestContext.getGeneration();
+			ChannelFuture channelFuture = httpBody.writeContent(ctx, isSecure);
 
 			channelFuture.addListener(new ChannelProgressiveFutureListener() {
 				@Override
 				public void operationProgressed(ChannelProgressiveFuture future, long progress, long total) throws Exception {
+					if (!httpRequestContext.isCurrent(generation)) {
+						return;
+					}
+
+					//the body is written to the socket outside of the pipeline, so the channel activity does not see the progress
 					requestEventBus.triggerEvent(Event.TOUCH);
 					requestEventBus.triggerEvent(Event.onWroteContentProgressed, progress, total);
 
@@ -127,6 +164,9 @@ public class HttpClientRequestHandler {
 				@Override
 				public void operationComplete(ChannelProgressiveFuture future) throws Exception {
 					logger.trace("Wrote content operation completed, future: {}", future);
+					if (!httpRequestContext.isCurrent(generation)) {
+						return;
+					}
 
 					if (future.isSuccess()) {
 						httpRequestContext.getTimeRecorder().completedWriteBody();
@@ -149,11 +189,15 @@ public class HttpClientRequestHandler {
 	}
 
 	private void writeLastHttpContent(ChannelHandlerContext ctx, final HttpRequestContext httpRequestContext, final RequestEventBus requestEventBus) {
+		int generation = httpRequestContext.getGeneration();
 		ChannelFuture future = ctx.writeAndFlush(new DefaultLastHttpContent());
 		future.addListener(new ChannelFutureListener() {
 			@Override
 			public void operationComplete(ChannelFuture future) throws Exception {
 				logger.trace("writeLastHttpContent operation completed, future: {}", future);
+				if (!httpRequestContext.isCurrent(generation)) {
+					return;
+				}
 
 				if (future.isSuccess()) {
 					requestEventBus.triggerEvent(Event.onWroteContentCompleted);
@@ -0,0 +1,217 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.request;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A chunked request body written by a producer while the request is running, for example when proxying an upload.
+ * Nothing is read on the nio thread, the chunks are handed to the connection when it is writable, so a slow producer doesn't hold up the nio thread
+ * and a slow server doesn't make the chunks pile up in the connection.
+ * <p>
+ * The future returned by {@link #write(ByteBuffer)} completes when the connection has accepted the chunk, a producer waiting for it before
+ * writing the next chunk keeps at most one chunk queued. The future fails if the request fails.
+ * The body is written once, it can't be used for more than one request.
+ */
+public class StreamingHttpBody implements HttpBody {
+	private final String contentType;
+	private final Charset characterEncoding;
+
+	private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+	private ChunkedWriteHandler chunkedWriteHandler;
+	private boolean completed;
+	private Throwable failure;
+	private long progress;
+
+	public StreamingHttpBody(String contentType, Charset characterEncoding) {
+		this.contentType = contentType;
+		this.characterEncoding = characterEncoding;
+	}
+
+	/**
+	 * Write a chunk of the body, the buffer is copied and can be reused when this method returns.
+	 * @param buffer the chunk
+	 * @return a future completed on the nio thread when the connection has accepted the chunk
+	 */
+	public CompletableFuture<Void> write(ByteBuffer buffer) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		ChunkedWriteHandler handler;
+		synchronized (this) {
+			if (failure != null) {
+				future.completeExceptionally(failure);
+				return future;
+			}
+			if (completed) {
+				future.completeExceptionally(new IllegalStateException("The body has already been completed"));
+				return future;
+			}
+			chunks.add(new Chunk(Unpooled.copiedBuffer(buffer), future));
+			handler = chunkedWriteHandler;
+		}
+
+		resumeTransfer(handler);
+		return future;
+	}
+
+	/**
+	 * End the body after the chunks already written.
+	 */
+	public void complete() {
+		ChunkedWriteHandler handler;
+		synchronized (this) {
+			completed = true;
+			handler = chunkedWriteHandler;
+		}
+		resumeTransfer(handler);
+	}
+
+	/**
+	 * Fail the request, the chunks not yet accepted by the connection are discarded.
+	 * @param cause the failure of the request
+	 */
+	public void fail(Throwable cause) {
+		ChunkedWriteHandler handler;
+		synchronized (this) {
+			if (failure == null) {
+				failure = cause;
+			}
+			handler = chunkedWriteHandler;
+		}
+		resumeTransfer(handler);
+	}
+
+	/**
+	 * Called by the client when the request has failed, the producer sees the failure through the futures of its writes.
+	 */
+	public void onRequestFailed(Throwable cause) {
+		List<Chunk> discarded;
+		synchronized (this) {
+			if (failure == null) {
+				failure = cause;
+			}
+			discarded = new ArrayList<>(chunks);
+			chunks.clear();
+		}
+
+		for (Chunk chunk : discarded) {
+			chunk.discard(cause);
+		}
+	}
+
+	private static void resumeTransfer(ChunkedWriteHandler handler) {
+		if (handler != null) {  //before the body is written the chunks wait in the queue
+			handler.resumeTransfer();
+		}
+	}
+
+	@Override
+	public ChannelFuture writeContent(ChannelHandlerContext ctx, boolean isSecure) {
+		synchronized (this) {
+			chunkedWriteHandler = ctx.pipeline().get(ChunkedWriteHandler.class);
+		}
+		return ctx.write(new Input(), ctx.newProgressivePromise());
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1L;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public Charset getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	/**
+	 * Read by the chunked writer on the nio thread, which only asks for the next chunk when the channel is writable.
+	 */
+	private class Input implements ChunkedInput<ByteBuf> {
+		@Override
+		public boolean isEndOfInput() throws Exception {
+			synchronized (StreamingHttpBody.this) {
+				return failure == null && completed && chunks.isEmpty();
+			}
+		}
+
+		@Override
+		public void close() throws Exception {
+			if (isEndOfInput()) {
+				return;
+			}
+			onRequestFailed(new IllegalStateException("The connection stopped writing the body"));
+		}
+
+		@Deprecated
+		@Override
+		public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+			return readChunk(ctx.alloc());
+		}
+
+		@Override
+		public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+			Chunk chunk;
+			synchronized (StreamingHttpBody.this) {
+				if (failure != null) {
+					throw failure instanceof Exception ? (Exception) failure : new Exception(failure);
+				}
+				chunk = chunks.poll();
+				if (chunk == null) {  //the chunked writer waits for the next resumeTransfer
+					return null;
+				}
+				progress += chunk.content.readableBytes();
+			}
+
+			chunk.future.complete(null);
+			return chunk.content;
+		}
+
+		@Override
+		public long length() {
+			return -1L;
+		}
+
+		@Override
+		public long progress() {
+			synchronized (StreamingHttpBody.this) {
+				return progress;
+			}
+		}
+	}
+
+	private static class Chunk {
+		private final ByteBuf content;
+		private final CompletableFuture<Void> future;
+
+		private Chunk(ByteBuf content, CompletableFuture<Void> future) {
+			this.content = content;
+			this.future = future;
+		}
+
+		private void discard(Throwable cause) {
+			content.release();
+			future.completeExceptionally(cause);
+		}
+	}
+}
@@ -10,6 +10,7 @@ import com.king.platform.net.http.ConfKeys;
 import com.king.platform.net.http.HttpClientRequestHeaderBuilder;
 import com.king.platform.net.http.netty.ConfMap;
 import com.king.platform.net.http.netty.HttpClientCaller;
+import com.king.platform.net.http.netty.NioThreadExecutor;
 import com.king.platform.net.http.util.Param;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpVersion;
@@ -42,6 +43,7 @@ public abstract class HttpClientRequestHeaderBuilderImpl<T extends HttpClientReq
 	protected int keepAliveTimeoutMillis;
 	protected  boolean automaticallyDecompressResponse;
 	protected Executor callbackExecutor;
+	protected boolean completeOnNioThread;
 
 
 
@@ -67,6 +69,7 @@ public abstract class HttpClientRequestHeaderBuilderImpl<T extends HttpClientReq
 		defaultUserAgent = confMap.get(ConfKeys.USER_AGENT);
 
 		this.callbackExecutor = callbackExecutor;
+		completeOnNioThread = confMap.get(ConfKeys.COMPLETE_ON_NIO_THREAD);
 	}
 
 
@@ -145,6 +148,16 @@ public abstract class HttpClientRequestHeaderBuilderImpl<T extends HttpClientReq
 		return implClass.cast(this);
 	}
 
+	@Override
+	public T completeOnNioThread(boolean completeOnNioThread) {
+		this.completeOnNioThread = completeOnNioThread;
+		return implClass.cast(this);
+	}
+
+	protected Executor getCallbackExecutor() {
+		return completeOnNioThread ? NioThreadExecutor.INSTANCE : callbackExecutor;
+	}
+
 	@Override
 	public T automaticallyDecompressResponse(boolean automaticallyDecompressResponse) {
 		this.automaticallyDecompressResponse = automaticallyDecompressResponse;
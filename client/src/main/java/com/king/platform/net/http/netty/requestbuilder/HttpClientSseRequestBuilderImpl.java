@@ -33,27 +33,27 @@ public class HttpClientSseRequestBuilderImpl extends HttpClientRequestHeaderBuil
 
 		final BuiltNettyClientRequest<Void> builtNettyClientRequest = new BuiltNettyClientRequest<>(httpClientCaller, httpVersion, httpMethod, uri, defaultUserAgent,
 			idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects, acceptCompressedResponse, keepAlive, keepAliveTimeoutMillis, automaticallyDecompressResponse, null, null, null, queryParameters,
-			headerParameters, callbackExecutor, VoidResponseConsumer::new, null, ServerInfoValidator.HTTP);
+			headerParameters, getCallbackExecutor(), VoidResponseConsumer::new, null, ServerInfoValidator.HTTP);
 
 
 		return new BuiltSseClientRequest() {
 			@Override
 			public SseClient execute(SseClientCallback providedSseExecutionCallback) {
-				SseClientImpl sseClient = new SseClientImpl(providedSseExecutionCallback, builtNettyClientRequest, callbackExecutor);
+				SseClientImpl sseClient = new SseClientImpl(providedSseExecutionCallback, builtNettyClientRequest, getCallbackExecutor());
 				sseClient.connect();
 				return sseClient;
 			}
 
 			@Override
 			public SseClient execute() {
-				SseClientImpl sseClient = new SseClientImpl(null, builtNettyClientRequest, callbackExecutor);
+				SseClientImpl sseClient = new SseClientImpl(null, builtNettyClientRequest, getCallbackExecutor());
 				sseClient.connect();
 				return sseClient;
 			}
 
 			@Override
 			public SseClient build() {
-				return new SseClientImpl(null, builtNettyClientRequest, callbackExecutor);
+				return new SseClientImpl(null, builtNettyClientRequest, getCallbackExecutor());
 			}
 		};
 
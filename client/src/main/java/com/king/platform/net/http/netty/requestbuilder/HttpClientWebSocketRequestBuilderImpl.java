@@ -121,7 +121,7 @@ public class HttpClientWebSocketRequestBuilderImpl extends HttpClientRequestHead
 
 		final BuiltNettyClientRequest<Void> builtNettyClientRequest = new BuiltNettyClientRequest<>(httpClientCaller, httpVersion, httpMethod, uri, defaultUserAgent,
 			idleTimeoutMillis, totalRequestTimeoutMillis, followRedirects, acceptCompressedResponse, keepAlive, keepAliveTimeoutMillis, automaticallyDecompressResponse, null, null, null, queryParameters,
-			headerParameters, callbackExecutor, VoidResponseConsumer::new, webSocketConf, ServerInfoValidator.WEB_SOCKET);
+			headerParameters, getCallbackExecutor(), VoidResponseConsumer::new, webSocketConf, ServerInfoValidator.WEB_SOCKET);
 
 
 		return new BuiltWebSocketRequest() {
@@ -155,8 +155,8 @@ public class HttpClientWebSocketRequestBuilderImpl extends HttpClientRequestHead
 
 			private WebSocketClientImpl create() {
 				Executor listenerExecutor = null;
-				if (defaultCallbackExecutor != HttpClientWebSocketRequestBuilderImpl.this.callbackExecutor) {
-					listenerExecutor = HttpClientWebSocketRequestBuilderImpl.this.callbackExecutor;
+				if (defaultCallbackExecutor != getCallbackExecutor()) {
+					listenerExecutor = getCallbackExecutor();
 				} else {
 					listenerExecutor = Runnable::run; //if no executor has been supplied (ie, still on default executor), run on calling thread
 				}
@@ -0,0 +1,69 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.response;
+
+
+import com.king.platform.net.http.ResponseBodyReadControl;
+import com.king.platform.net.http.netty.eventbus.Event;
+import com.king.platform.net.http.netty.eventbus.RequestEventBus;
+import io.netty.channel.Channel;
+
+/**
+ * Pauses and resumes the reading of a response by toggling auto read of the channel, always on the event loop of the channel.
+ * Callers only record whether they want the channel read, the event loop then applies the latest wish. A pause and a resume racing between
+ * the event loop and another thread can therefore not be applied out of order.
+ * Once the response has been read it is released and it no longer touches the channel, which may be serving the next request.
+ */
+class ChannelReadControl implements ResponseBodyReadControl {
+	private final Channel channel;
+	private final RequestEventBus requestEventBus;
+	private volatile boolean reading = true;
+	private boolean released;
+
+	ChannelReadControl(Channel channel, RequestEventBus requestEventBus) {
+		this.channel = channel;
+		this.requestEventBus = requestEventBus;
+	}
+
+	@Override
+	public void pauseReading() {
+		reading = false;
+		applyOnEventLoop();
+	}
+
+	@Override
+	public void resumeReading() {
+		reading = true;
+		applyOnEventLoop();
+	}
+
+	/**
+	 * Called on the event loop when the response has been read completely.
+	 */
+	void release() {
+		setAutoRead(true);
+		released = true;
+	}
+
+	private void setAutoRead(boolean autoRead) {
+		if (released || channel.config().isAutoRead() == autoRead) {
+			return;
+		}
+
+		if (autoRead) {
+			requestEventBus.triggerEvent(Event.TOUCH);  //the time spent paused is not idle time of the server
+		}
+		channel.config().setAutoRead(autoRead);
+	}
+
+	private void applyOnEventLoop() {
+		if (channel.eventLoop().inEventLoop()) {
+			setAutoRead(reading);
+		} else {
+			channel.eventLoop().execute(() -> setAutoRead(reading));
+		}
+	}
+}
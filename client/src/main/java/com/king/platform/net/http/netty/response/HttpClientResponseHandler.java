@@ -6,7 +6,9 @@
 package com.king.platform.net.http.netty.response;
 
 
+import com.king.platform.net.http.ByteBufResponseBodyConsumer;
 import com.king.platform.net.http.ResponseBodyConsumer;
+import com.king.platform.net.http.StreamingResponseBodyConsumer;
 import com.king.platform.net.http.netty.BaseHttpRequestHandler;
 import com.king.platform.net.http.netty.ConnectionClosedException;
 import com.king.platform.net.http.netty.HttpRequestContext;
@@ -15,12 +17,14 @@ import com.king.platform.net.http.netty.eventbus.Event;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
 import com.king.platform.net.http.netty.util.StringUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
 import org.slf4j.Logger;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -87,51 +91,56 @@ public class HttpClientResponseHandler implements ResponseHandler {
 
 				if (httpRequestContext.isFollowRedirects() && HttpRedirector.isRedirectResponse(httpResponseStatus)) {
 					httpRedirector.redirectRequest(httpRequestContext, httpHeaders);
-					return;
-				}
 
-				if (httpRequestContext.getHttpMethod().equals(HttpMethod.HEAD)) {
+				} else if (httpRequestContext.getHttpMethod().equals(HttpMethod.HEAD)) {
 					httpRequestContext.getTimeRecorder().responseBodyStart();
 					httpRequestContext.getTimeRecorder().responseBodyCompleted();
-					return;
-				}
 
-				if (response.status().code() == 100) {
+				} else if (response.status().code() == 100) {
 					requestEventBus.triggerEvent(Event.WRITE_BODY, ctx);
 					return;
-				}
 
+				} else {
+					String contentLength = httpHeaders.get(HttpHeaderNames.CONTENT_LENGTH);
 
-				String contentLength = httpHeaders.get(HttpHeaderNames.CONTENT_LENGTH);
+					String contentType = httpHeaders.get(HttpHeaderNames.CONTENT_TYPE);
+					String charset = StringUtil.substringAfter(contentType, '=', true);
+					if (charset == null) {
+						charset = StandardCharsets.ISO_8859_1.name();
+					}
 
-				String contentType = httpHeaders.get(HttpHeaderNames.CONTENT_TYPE);
-				String charset = StringUtil.substringAfter(contentType, '=', true);
-				if (charset == null) {
-					charset = StandardCharsets.ISO_8859_1.name();
-				}
+					contentType = StringUtil.substringBefore(contentType, ';');
 
-				contentType = StringUtil.substringBefore(contentType, ';');
+					if (responseBodyConsumer instanceof StreamingResponseBodyConsumer) {
+						ChannelReadControl readControl = new ChannelReadControl(ctx.channel(), requestEventBus);
+						nettyHttpClientResponse.setReadControl(readControl);
+						((StreamingResponseBodyConsumer) responseBodyConsumer).onReadControl(readControl);
+					}
 
-				if (contentLength != null) {
-					long length = Long.parseLong(contentLength);
-					httpRequestContext.setExpectedContentLength(length);
-					responseBodyConsumer.onBodyStart(contentType, charset, length);
-				} else {
-					responseBodyConsumer.onBodyStart(contentType, charset, 0);
-				}
+					if (contentLength != null) {
+						long length = Long.parseLong(contentLength);
+						httpRequestContext.setExpectedContentLength(length);
+						responseBodyConsumer.onBodyStart(contentType, charset, length);
+					} else {
+						responseBodyConsumer.onBodyStart(contentType, charset, 0);
+					}
 
-				httpRequestContext.getTimeRecorder().responseBodyStart();
+					httpRequestContext.getTimeRecorder().responseBodyStart();
+				}
+			}
 
-			} else if (msg instanceof HttpContent) {
+			if (msg instanceof HttpContent) {  //HTTP/2 responses without a body are read as full responses, which are both headers and content
 				try {
 					logger.trace("read HttpContent");
-					requestEventBus.triggerEvent(Event.TOUCH);
-
 
 					HttpResponseStatus httpResponseStatus = nettyHttpClientResponse.getHttpResponseStatus();
 
 					if (httpResponseStatus == null || (httpRequestContext.isFollowRedirects() && HttpRedirector.isRedirectResponse(httpResponseStatus))) {
 						httpRequestContext.setRedirecting(true);
+						if (httpResponseStatus != null && msg instanceof LastHttpContent) {  //the redirect response has been read, the next response belongs to the next request
+							httpRequestContext.setHasCompleted(true);
+							nextPipelinedRequest(ctx.channel());
+						}
 						return;
 					}
 
@@ -149,23 +158,26 @@ public class HttpClientResponseHandler implements ResponseHandler {
 
 					int readableBytes = content.readableBytes();
 
-					if (readableBytes > 0) {
-						ByteBuffer byteBuffer = content.nioBuffer();
+					//unlike the HTTP/1.1 codec, the HTTP/2 codec does not drop the body of head responses
+					if (readableBytes > 0 && !httpRequestContext.getHttpMethod().equals(HttpMethod.HEAD)) {
+						if (responseBodyConsumer instanceof ByteBufResponseBodyConsumer) {  //the consumer keeps the buffer instead of copying it
+							((ByteBufResponseBodyConsumer) responseBodyConsumer).onReceivedContentPart(content.retain());
+						} else {
+							ByteBuffer byteBuffer = content.nioBuffer();
 
-						responseBodyConsumer.onReceivedContentPart(byteBuffer);
+							responseBodyConsumer.onReceivedContentPart(byteBuffer);
+						}
 						requestEventBus.triggerEvent(Event.onReceivedContentPart, readableBytes, content);
 						httpRequestContext.addReadBytes(readableBytes);
 					}
 
-					requestEventBus.triggerEvent(Event.TOUCH);
-
-
 					if (chunk instanceof LastHttpContent) {
 						if (incomnpleteReadOfData(httpRequestContext)) {
 							triggerServerClosedException(httpRequestContext, requestEventBus, "Connection closed before all response data was read!");
 							return;
 						}
 						logger.trace("Got LastHttpContent, completing request");
+						nextPipelinedRequest(ctx.channel());
 						handleCompletedTransfer(httpRequestContext, requestEventBus, nettyHttpClientResponse);
 					}
 				} finally {
@@ -185,6 +197,11 @@ public class HttpClientResponseHandler implements ResponseHandler {
 
 		httpRequestContext.setHasCompleted(true);
 
+		ChannelReadControl readControl = nettyHttpClientResponse.getReadControl();
+		if (readControl != null) {  //the channel may be reused by the next request
+			readControl.release();
+		}
+
 		responseBodyConsumer.onCompletedBody();
 
 		requestEventBus.triggerEvent(Event.onReceivedCompleted, httpResponseStatus, httpHeaders);
@@ -204,6 +221,8 @@ public class HttpClientResponseHandler implements ResponseHandler {
 	@Override
 	public void handleChannelInactive(ChannelHandlerContext ctx) {
 		logger.trace("Channel {} became inactive", ctx.channel());
+		boolean pipelined = retryPipelinedRequests(ctx.channel());
+
 		HttpRequestContext httpRequestContext = ctx.channel().attr(HttpRequestContext.HTTP_REQUEST_ATTRIBUTE_KEY).get();
 
 		if (httpRequestContext == null) {
@@ -211,6 +230,10 @@ public class HttpClientResponseHandler implements ResponseHandler {
 		}
 
 		if (ctx.channel().attr(BaseHttpRequestHandler.HTTP_CLIENT_HANDLER_TRIGGERED_ERROR).get()) {
+			if (pipelined && httpRequestContext.isAttachedToChannel() && !httpRequestContext.hasCompletedContent()) {
+				//another request pipelined on the channel failed and closed it
+				retryOrFail(httpRequestContext, httpRequestContext.getRequestEventBus(), "Connection closed by a failed pipelined request!");
+			}
 			return;
 		}
 
@@ -227,6 +250,10 @@ public class HttpClientResponseHandler implements ResponseHandler {
 		RequestEventBus requestEventBus = nettyHttpClientResponse.getRequestEventBus();
 
 		if (nettyHttpClientResponse.getHttpResponseStatus() == null || nettyHttpClientResponse.getHttpHeaders() == null) {  //the connection has closed before response headers has been read
+			if (httpRequestContext.isRetryOnStaleConnection() || (pipelined && httpRequestContext.isRetryable())) {
+				retryOnNewConnection(httpRequestContext, requestEventBus);
+				return;
+			}
 			triggerServerClosedException(httpRequestContext, requestEventBus, "Connection closed before response http headers was read!");
 			return;
 		}
@@ -246,6 +273,40 @@ public class HttpClientResponseHandler implements ResponseHandler {
 
 	}
 
+	private void nextPipelinedRequest(Channel channel) {
+		ArrayDeque<HttpRequestContext> pipelinedRequests = channel.attr(HttpRequestContext.PIPELINED_REQUESTS_ATTRIBUTE_KEY).get();
+		if (pipelinedRequests != null && !pipelinedRequests.isEmpty()) {
+			channel.attr(HttpRequestContext.HTTP_REQUEST_ATTRIBUTE_KEY).set(pipelinedRequests.poll());
+		}
+	}
+
+	/**
+	 * Retry the requests that were pipelined behind the current request on the closed channel, their responses will never be read.
+	 * @return true if requests have been pipelined on the channel
+	 */
+	private boolean retryPipelinedRequests(Channel channel) {
+		ArrayDeque<HttpRequestContext> pipelinedRequests = channel.attr(HttpRequestContext.PIPELINED_REQUESTS_ATTRIBUTE_KEY).getAndSet(null);
+		if (pipelinedRequests == null) {
+			return false;
+		}
+
+		for (HttpRequestContext pipelinedRequest : pipelinedRequests) {
+			if (pipelinedRequest.isAttachedToChannel()) {  //requests that failed on their own have already been detached
+				retryOrFail(pipelinedRequest, pipelinedRequest.getRequestEventBus(), "Connection closed before response http headers was read!");
+			}
+		}
+		return true;
+	}
+
+	private void retryOrFail(HttpRequestContext httpRequestContext, RequestEventBus requestEventBus, String message) {
+		NettyHttpClientResponse nettyHttpClientResponse = httpRequestContext.getNettyHttpClientResponse();
+		if (nettyHttpClientResponse.getHttpResponseStatus() == null && httpRequestContext.isRetryable()) {
+			retryOnNewConnection(httpRequestContext, requestEventBus);
+		} else {
+			triggerServerClosedException(httpRequestContext, requestEventBus, message);
+		}
+	}
+
 	private static HttpVersion httpVersion(final HttpRequestContext httpRequestContext) {
 		return httpRequestContext.getNettyHttpClientRequest().getNettyRequest().protocolVersion();
 	}
@@ -254,6 +315,16 @@ public class HttpClientResponseHandler implements ResponseHandler {
 		return httpRequestContext.getExpectedContentLength() > 0 && httpRequestContext.getReadBytes() != httpRequestContext.getExpectedContentLength();
 	}
 
+	private void retryOnNewConnection(HttpRequestContext httpRequestContext, RequestEventBus requestEventBus) {
+		HttpRequestContext retryHttpRequestContext = httpRequestContext.createRetryRequest();
+
+		requestEventBus.triggerEvent(Event.onInternalCompletion, httpRequestContext);
+
+		logger.trace("Pooled connection was stale, retrying request {} on a new connection", retryHttpRequestContext);
+
+		requestEventBus.triggerEvent(Event.EXECUTE_REQUEST, retryHttpRequestContext);
+	}
+
 	private void triggerServerClosedException(HttpRequestContext httpRequestContext, RequestEventBus requestEventBus, String message) {
 		requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, new ConnectionClosedException(message));
 	}
@@ -10,19 +10,65 @@ import com.king.platform.net.http.ResponseBodyConsumer;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Recycler;
 
 public class NettyHttpClientResponse<T> {
+	private static final Recycler<NettyHttpClientResponse> RECYCLER = new Recycler<NettyHttpClientResponse>() {
+		@Override
+		protected NettyHttpClientResponse newObject(Handle<NettyHttpClientResponse> handle) {
+			return new NettyHttpClientResponse(handle);
+		}
+	};
 
-	private final ResponseBodyConsumer<T> responseBodyConsumer;
-	private final RequestEventBus requestEventBus;
+	private final Recycler.Handle<NettyHttpClientResponse> handle;
+	private ResponseBodyConsumer<T> responseBodyConsumer;
+	private RequestEventBus requestEventBus;
 	private HttpResponseStatus httpResponseStatus;
 	private HttpHeaders httpHeaders;
+	private ChannelReadControl readControl;
 
 	public NettyHttpClientResponse(ResponseBodyConsumer<T> responseBodyConsumer, RequestEventBus requestEventBus) {
+		this.handle = null;
 		this.responseBodyConsumer = responseBodyConsumer;
 		this.requestEventBus = requestEventBus;
 	}
 
+	private NettyHttpClientResponse(Recycler.Handle<NettyHttpClientResponse> handle) {
+		this.handle = handle;
+	}
+
+	/**
+	 * Take a response from the recycler, it is given back by {@link #recycle()}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> NettyHttpClientResponse<T> newInstance(ResponseBodyConsumer<T> responseBodyConsumer, RequestEventBus requestEventBus) {
+		NettyHttpClientResponse<T> nettyHttpClientResponse = RECYCLER.get();
+		nettyHttpClientResponse.responseBodyConsumer = responseBodyConsumer;
+		nettyHttpClientResponse.requestEventBus = requestEventBus;
+		return nettyHttpClientResponse;
+	}
+
+	/**
+	 * Called on the event loop when the request is done. The read control handed to the body consumer stops touching the channel and the
+	 * response is given back to the recycler if it was taken from it.
+	 */
+	public void recycle() {
+		if (readControl != null) {  //a failed response has not released it
+			readControl.release();
+		}
+
+		if (handle == null) {
+			return;
+		}
+
+		responseBodyConsumer = null;
+		requestEventBus = null;
+		httpResponseStatus = null;
+		httpHeaders = null;
+		readControl = null;
+		handle.recycle(this);
+	}
+
 
 	public HttpResponseStatus getHttpResponseStatus() {
 		return httpResponseStatus;
@@ -44,6 +90,13 @@ public class NettyHttpClientResponse<T> {
 		return responseBodyConsumer;
 	}
 
+	ChannelReadControl getReadControl() {
+		return readControl;
+	}
+
+	void setReadControl(ChannelReadControl readControl) {
+		this.readControl = readControl;
+	}
 
 	public RequestEventBus getRequestEventBus() {
 		return requestEventBus;
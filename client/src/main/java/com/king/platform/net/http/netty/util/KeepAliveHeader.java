@@ -0,0 +1,75 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.util;
+
+
+/**
+ * The parameters of a Keep-Alive response header, for example {@code Keep-Alive: timeout=5, max=100}.
+ */
+public class KeepAliveHeader {
+	public static final int NOT_SET = -1;
+
+	private final int timeoutSeconds;
+	private final int max;
+
+	private KeepAliveHeader(int timeoutSeconds, int max) {
+		this.timeoutSeconds = timeoutSeconds;
+		this.max = max;
+	}
+
+	/**
+	 * Parse the value of a Keep-Alive header. Unknown or invalid parameters are ignored.
+	 * @param value the header value, may be null
+	 * @return the parsed header, or null if there was no header
+	 */
+	public static KeepAliveHeader parse(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		int timeoutSeconds = NOT_SET;
+		int max = NOT_SET;
+
+		for (String parameter : value.split(",")) {
+			String name = StringUtil.substringBefore(parameter, '=').trim();
+			String parameterValue = StringUtil.substringAfter(parameter, '=', false);
+			if (parameterValue == null) {
+				continue;
+			}
+
+			if ("timeout".equalsIgnoreCase(name)) {
+				timeoutSeconds = parseNonNegativeInt(parameterValue.trim());
+			} else if ("max".equalsIgnoreCase(name)) {
+				max = parseNonNegativeInt(parameterValue.trim());
+			}
+		}
+
+		return new KeepAliveHeader(timeoutSeconds, max);
+	}
+
+	private static int parseNonNegativeInt(String value) {
+		try {
+			int parsedValue = Integer.parseInt(value);
+			return parsedValue >= 0 ? parsedValue : NOT_SET;
+		} catch (NumberFormatException e) {
+			return NOT_SET;
+		}
+	}
+
+	/**
+	 * @return how long in seconds the server keeps the idle connection open, or {@link #NOT_SET}
+	 */
+	public int getTimeoutSeconds() {
+		return timeoutSeconds;
+	}
+
+	/**
+	 * @return how many more requests the server accepts on the connection, or {@link #NOT_SET}
+	 */
+	public int getMax() {
+		return max;
+	}
+}
@@ -0,0 +1,102 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompositeByteBufResponseBodyConsumerTest {
+	private CompositeByteBufResponseBodyConsumer consumer;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		consumer = new CompositeByteBufResponseBodyConsumer();
+		consumer.onBodyStart("application/json", "UTF-8", 0);
+	}
+
+	@Test
+	public void partsShouldBeKeptWithoutCopying() throws Exception {
+		ByteBuf first = buffer("{\"a\":");
+		ByteBuf second = buffer("1}");
+
+		consumer.onReceivedContentPart(first);
+		consumer.onReceivedContentPart(second);
+		consumer.onCompletedBody();
+
+		ByteBuf body = consumer.getBody();
+		assertEquals("{\"a\":1}", body.toString(StandardCharsets.UTF_8));
+		assertEquals(2, body.nioBufferCount());
+		assertTrue(body.isReadOnly());
+
+		first.setByte(0, '[');
+		assertEquals('[', body.getByte(0));
+	}
+
+	@Test
+	public void releasingTheBodyShouldReleaseTheParts() throws Exception {
+		ByteBuf first = buffer("first");
+		ByteBuf second = buffer("second");
+		consumer.onReceivedContentPart(first);
+		consumer.onReceivedContentPart(second);
+
+		assertTrue(consumer.getBody().release());
+
+		assertEquals(0, first.refCnt());
+		assertEquals(0, second.refCnt());
+	}
+
+	@Test
+	public void everyGetBodyShouldReturnTheSameBody() throws Exception {
+		ByteBuf part = buffer("part");
+		consumer.onReceivedContentPart(part);
+
+		ByteBuf body = consumer.getBody();
+		assertSame(body, consumer.getBody());
+
+		assertTrue(body.release());
+		assertEquals(0, part.refCnt());
+	}
+
+	@Test
+	public void errorShouldReleaseTheParts() throws Exception {
+		ByteBuf first = buffer("first");
+		consumer.onReceivedContentPart(first);
+
+		consumer.onError(new RuntimeException());
+		ByteBuf late = buffer("late");
+		consumer.onReceivedContentPart(late);
+
+		assertEquals(0, first.refCnt());
+		assertEquals(0, late.refCnt());
+	}
+
+	@Test
+	public void byteBufferPartsShouldBeCopied() throws Exception {
+		ByteBuffer part = ByteBuffer.wrap("part".getBytes(StandardCharsets.UTF_8));
+		consumer.onReceivedContentPart(part);
+		part.put(0, (byte) 'x');
+
+		assertEquals("part", consumer.getBody().toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void missingBodyShouldBeEmpty() throws Exception {
+		consumer = new CompositeByteBufResponseBodyConsumer();
+		assertEquals(0, consumer.getBody().readableBytes());
+	}
+
+	private static ByteBuf buffer(String content) {
+		return Unpooled.copiedBuffer(content, StandardCharsets.UTF_8);
+	}
+}
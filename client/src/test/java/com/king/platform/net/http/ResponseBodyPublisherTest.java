@@ -0,0 +1,189 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http;
+
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ResponseBodyPublisherTest {
+	private ResponseBodyPublisher publisher;
+	private ResponseBodyReadControl readControl;
+	private RecordingSubscriber subscriber;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		publisher = new ResponseBodyPublisher();
+		readControl = mock(ResponseBodyReadControl.class);
+		subscriber = new RecordingSubscriber();
+		publisher.onReadControl(readControl);
+		publisher.onBodyStart("text/plain", "UTF-8", 0);
+	}
+
+	@Test
+	public void readingShouldBePausedUntilThereIsDemand() throws Exception {
+		verify(readControl).pauseReading();
+
+		publisher.subscribe(subscriber);
+		verifyNoMoreInteractions(readControl);
+
+		subscriber.subscription.request(1);
+		verify(readControl).resumeReading();
+	}
+
+	@Test
+	public void partsShouldOnlyBeDeliveredOnDemand() throws Exception {
+		publisher.subscribe(subscriber);
+		publisher.onReceivedContentPart(part("a"));
+		publisher.onReceivedContentPart(part("b"));
+		publisher.onCompletedBody();
+
+		assertEquals(0, subscriber.parts.size());
+
+		subscriber.subscription.request(1);
+		assertEquals("a", subscriber.parts.get(0));
+		assertFalse(subscriber.completed);
+
+		subscriber.subscription.request(1);
+		assertEquals("b", subscriber.parts.get(1));
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void readingShouldBePausedWhenTheDemandIsUsed() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(2);
+		publisher.onReceivedContentPart(part("a"));
+		publisher.onReceivedContentPart(part("b"));
+
+		assertEquals(2, subscriber.parts.size());
+		verify(readControl, times(2)).pauseReading();
+		verify(readControl, times(1)).resumeReading();
+	}
+
+	@Test
+	public void partsShouldBeCopied() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(1);
+
+		ByteBuffer buffer = part("a");
+		publisher.onReceivedContentPart(buffer);
+		buffer.clear();
+		buffer.put((byte) 'x');
+
+		assertEquals("a", subscriber.parts.get(0));
+	}
+
+	@Test
+	public void errorShouldBeDeliveredWithoutDemand() throws Exception {
+		publisher.subscribe(subscriber);
+		publisher.onReceivedContentPart(part("a"));
+		RuntimeException error = new RuntimeException();
+		publisher.onError(error);
+
+		assertSame(error, subscriber.error);
+		assertEquals(0, subscriber.parts.size());
+	}
+
+	@Test
+	public void nonPositiveDemandShouldFailTheSubscriber() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(0);
+
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void cancelShouldResumeReadingAndStopSignals() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.subscription.cancel();
+		publisher.onReceivedContentPart(part("a"));
+		publisher.onCompletedBody();
+
+		verify(readControl).resumeReading();
+		assertEquals(0, subscriber.parts.size());
+		assertFalse(subscriber.completed);
+	}
+
+	@Test
+	public void secondSubscriberShouldBeRejected() throws Exception {
+		publisher.subscribe(subscriber);
+		RecordingSubscriber second = new RecordingSubscriber();
+		publisher.subscribe(second);
+
+		assertTrue(second.error instanceof IllegalStateException);
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	public void requestFromOnNextShouldNotRecurse() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			publisher.onReceivedContentPart(part("a"));
+		}
+
+		List<Integer> depths = new ArrayList<>();
+		publisher.subscribe(new RecordingSubscriber() {
+			private int depth;
+
+			@Override
+			public void onSubscribe(ResponseBodySubscription subscription) {
+				super.onSubscribe(subscription);
+				subscription.request(1);
+			}
+
+			@Override
+			public void onNext(ByteBuffer buffer) {
+				depth++;
+				depths.add(depth);
+				subscription.request(1);
+				depth--;
+			}
+		});
+
+		assertEquals(10, depths.size());
+		assertTrue(depths.stream().allMatch(depth -> depth == 1));
+	}
+
+	private static ByteBuffer part(String content) {
+		return ByteBuffer.wrap(content.getBytes());
+	}
+
+	private static class RecordingSubscriber implements ResponseBodySubscriber {
+		private final List<String> parts = new ArrayList<>();
+		ResponseBodySubscription subscription;
+		private Throwable error;
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(ResponseBodySubscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			parts.add(new String(bytes));
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+}
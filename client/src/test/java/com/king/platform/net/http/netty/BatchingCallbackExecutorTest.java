@@ -0,0 +1,103 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingCallbackExecutorTest {
+	private DefaultEventLoopGroup eventLoopGroup;
+	private AtomicInteger submittedTasks;
+	private BatchingCallbackExecutor batchingCallbackExecutor;
+	private List<String> ranTasks;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		eventLoopGroup = new DefaultEventLoopGroup(2);
+		submittedTasks = new AtomicInteger();
+		Executor callbackExecutor = command -> {
+			submittedTasks.incrementAndGet();
+			command.run();
+		};
+		batchingCallbackExecutor = new BatchingCallbackExecutor(callbackExecutor, eventLoopGroup);
+		ranTasks = new CopyOnWriteArrayList<>();
+	}
+
+	@Test
+	public void callbacksFromTheSameRunShouldBeSubmittedAsOneBatch() throws Exception {
+		EventLoop eventLoop = eventLoopGroup.next();
+		eventLoop.submit(() -> {
+			batchingCallbackExecutor.execute(() -> ranTasks.add("first"));
+			batchingCallbackExecutor.execute(() -> ranTasks.add("second"));
+			batchingCallbackExecutor.execute(() -> ranTasks.add("third"));
+		}).sync();
+
+		eventLoop.submit(() -> {
+		}).sync();
+
+		assertEquals(asList("first", "second", "third"), ranTasks);
+		assertEquals(1, submittedTasks.get());
+	}
+
+	@Test
+	public void callbacksFromLaterRunsShouldBeNewBatches() throws Exception {
+		EventLoop eventLoop = eventLoopGroup.next();
+		for (int i = 0; i < 3; i++) {
+			String name = "task" + i;
+			eventLoop.submit(() -> batchingCallbackExecutor.execute(() -> ranTasks.add(name))).sync();
+			eventLoop.submit(() -> {
+			}).sync();
+		}
+
+		assertEquals(asList("task0", "task1", "task2"), ranTasks);
+		assertEquals(3, submittedTasks.get());
+	}
+
+	@Test
+	public void aFailingCallbackShouldNotStopTheBatch() throws Exception {
+		EventLoop eventLoop = eventLoopGroup.next();
+		eventLoop.submit(() -> {
+			batchingCallbackExecutor.execute(() -> {
+				throw new IllegalStateException("failed");
+			});
+			batchingCallbackExecutor.execute(() -> ranTasks.add("second"));
+		}).sync();
+
+		eventLoop.submit(() -> {
+		}).sync();
+
+		assertEquals(asList("second"), ranTasks);
+	}
+
+	@Test
+	public void callbacksFromOtherThreadsShouldBeSubmittedDirectly() throws Exception {
+		CountDownLatch countDownLatch = new CountDownLatch(2);
+		batchingCallbackExecutor.execute(countDownLatch::countDown);
+		batchingCallbackExecutor.execute(countDownLatch::countDown);
+
+		assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
+		assertEquals(2, submittedTasks.get());
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,52 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import com.king.platform.net.http.netty.util.TimeProviderForTesting;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ChannelActivityHandlerTest {
+	private TimeProviderForTesting timeProvider;
+	private ChannelActivityHandler channelActivityHandler;
+	private EmbeddedChannel channel;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		timeProvider = new TimeProviderForTesting();
+		timeProvider.setNow(1000);
+		channelActivityHandler = new ChannelActivityHandler(timeProvider);
+		channel = new EmbeddedChannel(channelActivityHandler);
+	}
+
+	@Test
+	public void addingTheHandlerShouldCountAsActivity() throws Exception {
+		assertEquals(1000, channelActivityHandler.getLastActivity());
+	}
+
+	@Test
+	public void readsShouldBeRecorded() throws Exception {
+		timeProvider.forwardMillis(100);
+		channel.writeInbound("first", "second");
+
+		assertEquals(1100, channelActivityHandler.getLastActivity());
+	}
+
+	@Test
+	public void writesShouldBeRecordedWhenFlushed() throws Exception {
+		timeProvider.forwardMillis(100);
+		channel.write("first");
+
+		assertEquals(1000, channelActivityHandler.getLastActivity());
+
+		channel.flush();
+
+		assertEquals(1100, channelActivityHandler.getLastActivity());
+	}
+}
@@ -0,0 +1,45 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HappyEyeballsConnectorTest {
+	@Test
+	public void addressFamiliesShouldAlternateStartingWithTheFirst() throws Exception {
+		SocketAddress v6a = address("::1");
+		SocketAddress v6b = address("::2");
+		SocketAddress v4a = address("10.0.0.1");
+		SocketAddress v4b = address("10.0.0.2");
+		SocketAddress v4c = address("10.0.0.3");
+
+		List<SocketAddress> interleaved = HappyEyeballsConnector.interleave(Arrays.asList(v6a, v6b, v4a, v4b, v4c));
+
+		assertEquals(Arrays.asList(v6a, v4a, v6b, v4b, v4c), interleaved);
+	}
+
+	@Test
+	public void singleFamilyShouldKeepTheResolverOrder() throws Exception {
+		SocketAddress first = address("10.0.0.2");
+		SocketAddress second = address("10.0.0.1");
+
+		assertEquals(Arrays.asList(first, second), HappyEyeballsConnector.interleave(Arrays.asList(first, second)));
+		assertEquals(Collections.emptyList(), HappyEyeballsConnector.interleave(Collections.emptyList()));
+	}
+
+	private static SocketAddress address(String ip) throws Exception {
+		return new InetSocketAddress(InetAddress.getByName(ip), 80);
+	}
+}
@@ -9,6 +9,7 @@ import com.king.platform.net.http.netty.eventbus.DefaultEventBus;
 import com.king.platform.net.http.netty.eventbus.Event;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
 import com.king.platform.net.http.netty.util.TimeProviderForTesting;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -95,6 +96,38 @@ public class IdleTimeoutTimerTaskTest {
 
 	}
 
+	@Test
+	public void shouldRescheduleIfTheChannelWasActive() throws Exception {
+		ChannelActivityHandler channelActivity = new ChannelActivityHandler(timeProvider);
+		EmbeddedChannel channel = new EmbeddedChannel(channelActivity);
+		when(httpRequestContext.getChannelActivity()).thenReturn(channelActivity);
+
+		timeProvider.forwardMillis(75);
+
+		channel.writeInbound("data");
+
+		timeProvider.forwardMillis(75);
+
+		idleTimeoutTimerTask.run(null);
+
+		verify(requestEventBus, times(0)).triggerEvent(eq(Event.ERROR), eq(httpRequestContext), any(TimeoutException.class));
+
+		verify(timeoutTimerHandler).scheduleTimeout(25, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void shouldTimeoutIfTheChannelWasIdle() throws Exception {
+		ChannelActivityHandler channelActivity = new ChannelActivityHandler(timeProvider);
+		new EmbeddedChannel(channelActivity);
+		when(httpRequestContext.getChannelActivity()).thenReturn(channelActivity);
+
+		timeProvider.forwardMillis(200);
+
+		idleTimeoutTimerTask.run(null);
+
+		verify(requestEventBus).triggerEvent(eq(Event.ERROR), eq(httpRequestContext), any(TimeoutException.class));
+	}
+
 	@Test
 	public void shouldNotRunIfCompleted() throws Exception {
 		idleTimeoutTimerTask.completed();
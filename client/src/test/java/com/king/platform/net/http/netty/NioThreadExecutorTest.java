@@ -0,0 +1,59 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class NioThreadExecutorTest {
+
+	@Test
+	public void callbacksShouldRunInline() throws Exception {
+		AtomicReference<Thread> thread = new AtomicReference<>();
+		NioThreadExecutor.INSTANCE.execute(() -> thread.set(Thread.currentThread()));
+
+		assertSame(Thread.currentThread(), thread.get());
+	}
+
+	@Test
+	public void callbacksWithArgumentsShouldRunInline() throws Exception {
+		List<String> values = new ArrayList<>();
+		NioThreadExecutor.INSTANCE.execute(List::add, values, "value");
+
+		assertEquals(asList("value"), values);
+	}
+
+	@Test
+	public void failingCallbacksShouldNotThrow() throws Exception {
+		NioThreadExecutor.INSTANCE.execute(() -> {
+			throw new IllegalStateException("failed");
+		});
+		NioThreadExecutor.INSTANCE.execute((a, b) -> {
+			throw new IllegalStateException("failed");
+		}, null, null);
+	}
+
+	@Test
+	public void slowCallbacksShouldStillComplete() throws Exception {
+		List<String> values = new ArrayList<>();
+		NioThreadExecutor.INSTANCE.execute(() -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+			}
+			values.add("slow");
+		});
+
+		assertEquals(asList("slow"), values);
+	}
+}
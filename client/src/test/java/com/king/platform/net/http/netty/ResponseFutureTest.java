@@ -9,6 +9,11 @@ import com.king.platform.net.http.HttpResponse;
 import com.king.platform.net.http.netty.eventbus.DefaultEventBus;
 import com.king.platform.net.http.netty.eventbus.Event;
 import com.king.platform.net.http.netty.eventbus.RequestEventBus;
+import com.king.platform.net.http.netty.metric.TimeStampRecorder;
+import com.king.platform.net.http.netty.request.NettyHttpClientRequest;
+import com.king.platform.net.http.netty.util.TimeProviderForTesting;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.handler.codec.http.HttpMethod;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -18,8 +23,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 
 
 public class ResponseFutureTest {
@@ -61,6 +67,31 @@ public class ResponseFutureTest {
 	}
 
 
+	@Test
+	public void nioThreadExecutorShouldCompleteTheFutureOnTheTriggeringThread() throws Exception {
+		ResponseFuture<HttpResponse> nioThreadFuture = new ResponseFuture<>(requestEventBus, requestContext, NioThreadExecutor.INSTANCE);
+		CompletableFuture<Thread> completingThread = nioThreadFuture.thenApply(response -> Thread.currentThread());
+
+		HttpRequestContext context = mock(HttpRequestContext.class);
+		when(context.getHttpResponse()).thenReturn(mock(HttpResponse.class));
+		requestEventBus.triggerEvent(Event.COMPLETED, context);
+
+		assertSame(Thread.currentThread(), completingThread.getNow(null));
+	}
+
+	@Test
+	public void failingDependentsShouldNotReachTheEventBusOnTheNioThread() throws Exception {
+		ResponseFuture<HttpResponse> nioThreadFuture = new ResponseFuture<>(requestEventBus, requestContext, NioThreadExecutor.INSTANCE);
+		nioThreadFuture.whenComplete((response, throwable) -> {
+			throw new IllegalStateException("failed");
+		});
+
+		Throwable t = new Exception();
+		requestEventBus.triggerEvent(Event.ERROR, requestContext, t);
+
+		assertTrue(nioThreadFuture.isCompletedExceptionally());
+	}
+
 	@Test
 	public void cancelShouldCompleteTheFuture() throws Exception {
 		responseFuture.cancel(true);
@@ -75,6 +106,32 @@ public class ResponseFutureTest {
 
 	}
 
+	@Test
+	public void cancelAfterTheRecycledRequestWasReleasedShouldNotReachItsEventBus() throws Exception {
+		DefaultEventLoop eventLoop = new DefaultEventLoop();
+		try {
+			RequestEventBus recycledRequestEventBus = mock(RequestEventBus.class);
+			HttpRequestContext<Void> recycledContext = HttpRequestContext.newRecycledInstance(HttpMethod.GET, mock(NettyHttpClientRequest.class),
+				recycledRequestEventBus, null, 0, 0, false, true, 0, new TimeStampRecorder(new TimeProviderForTesting()), false, null);
+			recycledContext.setEventLoop(eventLoop);
+			int generation = recycledContext.getGeneration();
+			ResponseFuture<Void> future = new ResponseFuture<>(recycledRequestEventBus, recycledContext, Runnable::run);
+
+			eventLoop.submit(recycledContext::scheduleRelease).sync();
+			eventLoop.submit(() -> {
+			}).sync();  //the release runs after the task that scheduled it
+			assertFalse(recycledContext.isCurrent(generation));
+			verify(recycledRequestEventBus).release();
+
+			assertTrue(future.cancel(true));
+			eventLoop.submit(() -> {
+			}).sync();
+			verify(recycledRequestEventBus, never()).triggerEvent(eq(Event.ERROR), any(), any());
+		} finally {
+			eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+		}
+	}
+
 	@Test
 	public void factoryMethodForErrorShouldReturnDoneFuture() throws Exception {
 		Exception exception = new Exception();
@@ -0,0 +1,99 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty;
+
+import com.king.platform.net.http.netty.eventbus.DefaultEventBus;
+import com.king.platform.net.http.netty.eventbus.Event;
+import com.king.platform.net.http.netty.eventbus.RequestEventBus;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TimeoutTimerHandlerTest {
+	private Timer timer;
+	private Timeout timeout;
+	private TimeoutTimerTask task;
+	private RequestEventBus requestEventBus;
+	private HttpRequestContext httpRequestContext;
+	private EmbeddedChannel channel;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		timer = mock(Timer.class);
+		timeout = mock(Timeout.class);
+		when(timer.newTimeout(any(), anyLong(), any())).thenReturn(timeout);
+		task = mock(TimeoutTimerTask.class);
+		requestEventBus = new DefaultEventBus().createRequestEventBus();
+		httpRequestContext = mock(HttpRequestContext.class);
+		channel = new EmbeddedChannel();
+	}
+
+	@Test
+	public void taskShouldBeScheduledOnTheTimerWithoutEventLoop() throws Exception {
+		TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(timer, requestEventBus, task);
+		timeoutTimerHandler.scheduleTimeout(100, TimeUnit.MILLISECONDS);
+
+		verify(timer).newTimeout(task, 100, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void taskShouldBeScheduledOnTheEventLoop() throws Exception {
+		EventLoop eventLoop = channel.eventLoop();
+		TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(timer, eventLoop, requestEventBus, task);
+		timeoutTimerHandler.scheduleTimeout(0, TimeUnit.MILLISECONDS);
+
+		channel.runScheduledPendingTasks();
+
+		verify(task).run(null);
+		verifyNoInteractions(timer);
+	}
+
+	@Test
+	public void errorShouldCancelTheScheduledTask() throws Exception {
+		TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(timer, channel.eventLoop(), requestEventBus, task);
+		timeoutTimerHandler.scheduleTimeout(0, TimeUnit.MILLISECONDS);
+
+		requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, new RuntimeException());
+		channel.runScheduledPendingTasks();
+
+		verify(task).cancel();
+		verify(task, never()).run(any());
+	}
+
+	@Test
+	public void completionShouldCancelTheTimeout() throws Exception {
+		TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(timer, requestEventBus, task);
+		timeoutTimerHandler.scheduleTimeout(100, TimeUnit.MILLISECONDS);
+
+		requestEventBus.triggerEvent(Event.onInternalCompletion, httpRequestContext);
+
+		verify(task).completed();
+		verify(timeout).cancel();
+	}
+
+	@Test
+	public void reschedulingShouldNotSubscribeAgain() throws Exception {
+		TimeoutTimerHandler timeoutTimerHandler = new TimeoutTimerHandler(timer, requestEventBus, task);
+		timeoutTimerHandler.scheduleTimeout(100, TimeUnit.MILLISECONDS);
+		timeoutTimerHandler.scheduleTimeout(100, TimeUnit.MILLISECONDS);
+		timeoutTimerHandler.scheduleTimeout(100, TimeUnit.MILLISECONDS);
+
+		requestEventBus.triggerEvent(Event.ERROR, httpRequestContext, new RuntimeException());
+
+		verify(task, times(1)).cancel();
+		verify(timer, times(3)).newTimeout(eq(task), eq(100L), eq(TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,187 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.dns;
+
+import com.king.platform.net.http.netty.util.TimeProviderForTesting;
+import io.netty.resolver.AddressResolver;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingAddressResolverGroupTest {
+	private StubAddressLookup addressLookup;
+	private TimeProviderForTesting timeProvider;
+	private CachingAddressResolverGroup resolverGroup;
+	private AddressResolver<InetSocketAddress> resolver;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		addressLookup = new StubAddressLookup();
+		timeProvider = new TimeProviderForTesting();
+		resolverGroup = new CachingAddressResolverGroup(addressLookup, 60_000, 1000, 5000, timeProvider);
+		resolver = resolverGroup.getResolver(ImmediateEventExecutor.INSTANCE);
+	}
+
+	@Test
+	public void resolvesWithinTheTtlShouldUseTheCache() throws Exception {
+		addressLookup.answer("10.0.0.1", 30_000);
+
+		assertEquals("10.0.0.1", resolve("example.com"));
+		timeProvider.forwardMillis(24_999);
+		assertEquals("10.0.0.1", resolve("example.com"));
+
+		assertEquals(1, addressLookup.lookups);
+		assertEquals(1, resolverGroup.getHits());
+		assertEquals(1, resolverGroup.getMisses());
+	}
+
+	@Test
+	public void expiredEntriesShouldBeLookedUpAgain() throws Exception {
+		addressLookup.answer("10.0.0.1", 30_000);
+		addressLookup.answer("10.0.0.2", 30_000);
+
+		assertEquals("10.0.0.1", resolve("example.com"));
+		timeProvider.forwardMillis(30_000);
+		assertEquals("10.0.0.2", resolve("example.com"));
+
+		assertEquals(2, resolverGroup.getMisses());
+	}
+
+	@Test
+	public void ttlShouldBeLimitedByTheMaxTtl() throws Exception {
+		addressLookup.answer("10.0.0.1", Long.MAX_VALUE);
+		addressLookup.answer("10.0.0.2", Long.MAX_VALUE);
+
+		resolve("example.com");
+		timeProvider.forwardMillis(60_000);
+
+		assertEquals("10.0.0.2", resolve("example.com"));
+	}
+
+	@Test
+	public void failedLookupsShouldBeCachedForTheNegativeTtl() throws Exception {
+		addressLookup.fail();
+		addressLookup.answer("10.0.0.1", 30_000);
+
+		assertTrue(resolveFailure("missing.example.com") instanceof UnknownHostException);
+		timeProvider.forwardMillis(999);
+		assertTrue(resolveFailure("missing.example.com") instanceof UnknownHostException);
+		assertEquals(1, addressLookup.lookups);
+
+		timeProvider.forwardMillis(1);
+		assertEquals("10.0.0.1", resolve("missing.example.com"));
+	}
+
+	@Test
+	public void entriesUsedBeforeExpiryShouldBeRefreshed() throws Exception {
+		addressLookup.answer("10.0.0.1", 30_000);
+		addressLookup.answer("10.0.0.2", 30_000);
+
+		resolve("example.com");
+		timeProvider.forwardMillis(25_000);
+		resolve("example.com");
+		assertEquals(1, resolverGroup.getRefreshes());
+
+		timeProvider.forwardMillis(10_000);
+		assertEquals("10.0.0.2", resolve("example.com"));
+		assertEquals(2, addressLookup.lookups);
+		assertEquals(1, resolverGroup.getMisses());
+	}
+
+	@Test
+	public void failedRefreshShouldKeepTheAddresses() throws Exception {
+		addressLookup.answer("10.0.0.1", 30_000);
+		addressLookup.fail();
+		addressLookup.fail();
+
+		resolve("example.com");
+		timeProvider.forwardMillis(25_000);
+		resolve("example.com");
+
+		assertEquals("10.0.0.1", resolve("example.com"));
+		assertEquals(3, addressLookup.lookups);
+	}
+
+	@Test
+	public void concurrentResolvesShouldShareTheLookup() throws Exception {
+		CompletableFuture<LookupResult> pending = new CompletableFuture<>();
+		addressLookup.results.add(pending);
+
+		Future<InetSocketAddress> first = resolver.resolve(InetSocketAddress.createUnresolved("example.com", 80));
+		Future<InetSocketAddress> second = resolver.resolve(InetSocketAddress.createUnresolved("example.com", 80));
+		assertFalse(first.isDone());
+
+		pending.complete(new LookupResult(Collections.singletonList(InetAddress.getByName("10.0.0.1")), 30_000));
+
+		assertEquals("10.0.0.1", first.getNow().getAddress().getHostAddress());
+		assertEquals("10.0.0.1", second.getNow().getAddress().getHostAddress());
+		assertEquals(1, addressLookup.lookups);
+	}
+
+	@Test
+	public void expiredEntriesOfHostsNoLongerResolvedShouldBeSwept() throws Exception {
+		addressLookup.answer("10.0.0.1", 30_000);
+		addressLookup.answer("10.0.0.2", 30_000);
+
+		resolve("first.example.com");
+		assertEquals(1, resolverGroup.getSize());
+
+		timeProvider.forwardMillis(60_000);
+		resolve("second.example.com");
+
+		assertEquals(1, resolverGroup.getSize());
+		assertEquals(2, addressLookup.lookups);
+	}
+
+	@Test
+	public void ipAddressesShouldNotBeLookedUp() throws Exception {
+		assertEquals("127.0.0.1", resolve("127.0.0.1"));
+		assertEquals(0, addressLookup.lookups);
+	}
+
+	private String resolve(String hostname) throws Exception {
+		Future<InetSocketAddress> future = resolver.resolve(InetSocketAddress.createUnresolved(hostname, 80));
+		return future.get().getAddress().getHostAddress();
+	}
+
+	private Throwable resolveFailure(String hostname) {
+		Future<InetSocketAddress> future = resolver.resolve(InetSocketAddress.createUnresolved(hostname, 80));
+		assertTrue(future.isDone());
+		return future.cause();
+	}
+
+	private static class StubAddressLookup implements AddressLookup {
+		private final ArrayDeque<CompletableFuture<LookupResult>> results = new ArrayDeque<>();
+		private int lookups;
+
+		private void answer(String address, long ttlMillis) throws UnknownHostException {
+			results.add(CompletableFuture.completedFuture(new LookupResult(Collections.singletonList(InetAddress.getByName(address)), ttlMillis)));
+		}
+
+		private void fail() {
+			CompletableFuture<LookupResult> result = new CompletableFuture<>();
+			result.completeExceptionally(new UnknownHostException());
+			results.add(result);
+		}
+
+		@Override
+		public CompletableFuture<LookupResult> lookup(String hostname, EventExecutor executor) {
+			lookups++;
+			return results.poll();
+		}
+	}
+}
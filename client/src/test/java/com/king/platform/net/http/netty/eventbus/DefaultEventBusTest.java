@@ -3,6 +3,10 @@ package com.king.platform.net.http.netty.eventbus;
 import com.king.platform.net.http.netty.HttpRequestContext;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 
@@ -23,8 +27,99 @@ public class DefaultEventBusTest {
 		requestEventBus1.subscribePermanently(Event.COMPLETED, new COMPLETEDREQUEST());
 
 
-		assertEquals(1, rootEventBus.getPersistentEvent1Callbacks().get(Event.COMPLETED).size());
+		assertEquals(1, rootEventBus.getPersistentCallbacks(Event.COMPLETED).length);
+
+	}
+
+	@Test
+	public void rootCallbacksShouldBeTriggeredBeforeRequestCallbacks() throws Exception {
+		List<String> triggered = new ArrayList<>();
+		DefaultEventBus rootEventBus = new DefaultEventBus();
+		rootEventBus.subscribePermanently(Event.COMPLETED, (payload) -> triggered.add("root"));
+
+		RequestEventBus requestEventBus = rootEventBus.createRequestEventBus();
+		requestEventBus.subscribe(Event.COMPLETED, (payload) -> triggered.add("request"));
+		requestEventBus.subscribePermanently(Event.COMPLETED, (payload) -> triggered.add("permanent"));
+
+		requestEventBus.triggerEvent(Event.COMPLETED, null);
+
+		assertEquals(asList("root", "permanent", "request"), triggered);
+	}
+
+	@Test
+	public void releasedRecycledRequestBussesShouldForgetTheirCallbacks() throws Exception {
+		List<String> triggered = new ArrayList<>();
+		DefaultEventBus rootEventBus = new DefaultEventBus(true, true);
+		rootEventBus.subscribePermanently(Event.COMPLETED, (payload) -> triggered.add("root"));
+
+		RequestEventBus requestEventBus = rootEventBus.createRequestEventBus();
+		requestEventBus.subscribe(Event.COMPLETED, (payload) -> triggered.add("request"));
+		requestEventBus.subscribePermanently(Event.COMPLETED, (payload) -> triggered.add("permanent"));
+		requestEventBus.release();
+
+		for (int i = 0; i < 10; i++) {  //the recycler may drop the first buses it is given back
+			rootEventBus.createRequestEventBus().release();
+		}
+
+		RequestEventBus reusedRequestEventBus = rootEventBus.createRequestEventBus();
+		reusedRequestEventBus.triggerEvent(Event.COMPLETED, null);
+
+		assertEquals(asList("root"), triggered);
+	}
+
+	@Test
+	public void confinedRequestBussesShouldTriggerRootCallbacksBeforeRequestCallbacks() throws Exception {
+		List<String> triggered = new ArrayList<>();
+		DefaultEventBus rootEventBus = new DefaultEventBus(true);
+		rootEventBus.subscribePermanently(Event.COMPLETED, (payload) -> triggered.add("root"));
 
+		RequestEventBus requestEventBus = rootEventBus.createRequestEventBus();
+		requestEventBus.subscribe(Event.COMPLETED, (payload) -> triggered.add("request"));
+		requestEventBus.subscribePermanently(Event.COMPLETED, (payload) -> triggered.add("permanent"));
+
+		requestEventBus.triggerEvent(Event.COMPLETED, null);
+
+		assertEquals(asList("root", "permanent", "request"), triggered);
+		assertEquals(1, rootEventBus.getPersistentCallbacks(Event.COMPLETED).length);
+	}
+
+	@Test
+	public void requestCallbacksShouldOnlyBeTriggeredOnTheirOwnBus() throws Exception {
+		List<String> triggered = new ArrayList<>();
+		DefaultEventBus rootEventBus = new DefaultEventBus();
+		rootEventBus.subscribePermanently(Event.ERROR, (payload1, payload2) -> triggered.add("root"));
+
+		RequestEventBus firstRequestEventBus = rootEventBus.createRequestEventBus();
+		firstRequestEventBus.subscribe(Event.ERROR, (payload1, payload2) -> triggered.add("first"));
+		firstRequestEventBus.subscribePermanently(Event.ERROR, (payload1, payload2) -> triggered.add("firstPermanent"));
+		RequestEventBus secondRequestEventBus = rootEventBus.createRequestEventBus();
+
+		secondRequestEventBus.triggerEvent(Event.ERROR, null, null);
+		rootEventBus.triggerEvent(Event.ERROR, null, null);
+
+		assertEquals(asList("root", "root"), triggered);
+	}
+
+	@Test
+	public void requestBusShouldNotSeeRootCallbacksSubscribedAfterItWasCreated() throws Exception {
+		List<String> triggered = new ArrayList<>();
+		DefaultEventBus rootEventBus = new DefaultEventBus();
+		rootEventBus.subscribePermanently(Event.TOUCH, (payload) -> triggered.add("first"));
+
+		RequestEventBus requestEventBus = rootEventBus.createRequestEventBus();
+		rootEventBus.subscribePermanently(Event.TOUCH, (payload) -> triggered.add("second"));
+		rootEventBus.subscribePermanently(Event.CLOSE, (payload) -> triggered.add("close"));
+
+		requestEventBus.triggerEvent(Event.TOUCH);
+		requestEventBus.triggerEvent(Event.CLOSE);
+
+		assertEquals(asList("first"), triggered);
+	}
+
+	@Test
+	public void eventsShouldHaveDenseIds() throws Exception {
+		assertEquals(Event.ERROR.getId() + 1, Event.COMPLETED.getId());
+		assertEquals(Event.ERROR.getId() + 2, Event.TOUCH.getId());
 	}
 
 	private static class ERROR implements EventBusCallback2<HttpRequestContext, Throwable> {
@@ -0,0 +1,206 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+import com.king.platform.net.http.netty.ServerInfo;
+import com.king.platform.net.http.netty.metric.MetricCallback;
+import com.king.platform.net.http.netty.util.TimeProviderForTesting;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventLoopChannelPoolTest {
+	private DefaultEventLoopGroup eventLoopGroup;
+	private EventLoopChannelPool channelPool;
+	private ServerInfo serverInfo;
+	private int keepAliveTimeoutMillis = 15 * 1000;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		eventLoopGroup = new DefaultEventLoopGroup(2);
+		Timer timer = mock(Timer.class);
+		when(timer.newTimeout(any(), anyLong(), any())).thenReturn(mock(Timeout.class));
+
+		channelPool = new EventLoopChannelPool(timer, new TimeProviderForTesting(), mock(MetricCallback.class));
+		serverInfo = ServerInfo.buildFromUri("http://somehost:8081/foo/bar");
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void selectEventLoopShouldReturnEventLoopWithIdleChannel() throws Exception {
+		EventLoop firstEventLoop = channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+		EventLoop otherEventLoop = channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+		assertNotSame(firstEventLoop, otherEventLoop);
+
+		Channel channel = getActiveChannelMock(otherEventLoop);
+		offer(channel);
+
+		assertSame(otherEventLoop, channelPool.selectEventLoop(serverInfo, eventLoopGroup));
+		assertSame(otherEventLoop, channelPool.selectEventLoop(serverInfo, eventLoopGroup));
+	}
+
+	@Test
+	public void channelShouldOnlyBeReturnedOnItsOwnEventLoop() throws Exception {
+		EventLoop firstEventLoop = channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+		EventLoop otherEventLoop = channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+
+		Channel channel = getActiveChannelMock(firstEventLoop);
+		offer(channel);
+
+		assertNull(runOn(otherEventLoop, () -> channelPool.get(serverInfo)));
+		assertSame(channel, runOn(firstEventLoop, () -> channelPool.get(serverInfo)));
+		assertEquals(0, channelPool.getPoolSize(serverInfo));
+	}
+
+	@Test
+	public void getOutsideOfEventLoopShouldFail() throws Exception {
+		channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+
+		assertThrows(IllegalStateException.class, () -> channelPool.get(serverInfo));
+	}
+
+	@Test
+	public void connectionFailedOutsideOfEventLoopShouldReleaseTheSlotOfItsEventLoop() throws Exception {
+		Timer timer = mock(Timer.class);
+		when(timer.newTimeout(any(), anyLong(), any())).thenReturn(mock(Timeout.class));
+		EventLoopChannelPool limitedPool = new EventLoopChannelPool(timer, new TimeProviderForTesting(), mock(MetricCallback.class), 2, 1, 500);
+		EventLoop eventLoop = limitedPool.selectEventLoop(serverInfo, eventLoopGroup);
+
+		AtomicInteger newConnections = new AtomicInteger();
+		AcquireCallback acquireCallback = new AcquireCallback() {
+			@Override
+			public void onPooledChannel(Channel channel) {
+			}
+
+			@Override
+			public void onNewConnection() {
+				newConnections.incrementAndGet();
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+			}
+		};
+
+		runOn(eventLoop, () -> {
+			limitedPool.acquire(serverInfo, acquireCallback);
+			return null;
+		});
+
+		limitedPool.connectionFailed(serverInfo, eventLoop);  //failed registrations are reported on the global event executor
+
+		runOn(eventLoop, () -> {
+			limitedPool.acquire(serverInfo, acquireCallback);
+			return null;
+		});
+		assertEquals(2, newConnections.get());
+	}
+
+	@Test
+	public void maxConnectionsShouldBeSharedByAllEventLoops() throws Exception {
+		DefaultEventLoopGroup fourEventLoops = new DefaultEventLoopGroup(4);
+		try {
+			Timer timer = mock(Timer.class);
+			when(timer.newTimeout(any(), anyLong(), any())).thenReturn(mock(Timeout.class));
+			EventLoopChannelPool limitedPool = new EventLoopChannelPool(timer, new TimeProviderForTesting(), mock(MetricCallback.class), 2, 10, 5000);
+			limitedPool.selectEventLoop(serverInfo, fourEventLoops);
+
+			List<EventLoop> connectedEventLoops = new CopyOnWriteArrayList<>();
+			AtomicInteger errors = new AtomicInteger();
+			for (EventExecutor eventExecutor : fourEventLoops) {
+				EventLoop eventLoop = (EventLoop) eventExecutor;
+				runOn(eventLoop, () -> {
+					limitedPool.acquire(serverInfo, new AcquireCallback() {
+						@Override
+						public void onPooledChannel(Channel channel) {
+						}
+
+						@Override
+						public void onNewConnection() {
+							connectedEventLoops.add(eventLoop);
+						}
+
+						@Override
+						public void onError(Throwable throwable) {
+							errors.incrementAndGet();
+						}
+					});
+					return null;
+				});
+			}
+			assertEquals(2, connectedEventLoops.size());
+
+			limitedPool.connectionFailed(serverInfo, connectedEventLoops.get(0));
+			for (int i = 0; i < 2; i++) {  //the release is executed on its event loop, and hands the connection over to a waiting event loop
+				for (EventExecutor eventExecutor : fourEventLoops) {
+					runOn((EventLoop) eventExecutor, () -> null);
+				}
+			}
+
+			assertEquals(3, connectedEventLoops.size());
+			assertEquals(0, errors.get());
+		} finally {
+			fourEventLoops.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void idleChannelShouldExpireOnItsEventLoop() throws Exception {
+		EventLoop eventLoop = channelPool.selectEventLoop(serverInfo, eventLoopGroup);
+		Channel channel = getActiveChannelMock(eventLoop);
+		channelPool.offer(serverInfo, channel, 50);
+		runOn(eventLoop, () -> null);
+		assertEquals(1, channelPool.getPoolSize(serverInfo));
+
+		eventLoop.schedule(() -> null, 100, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS);  //runs after the expiry of the channel
+
+		assertEquals(0, channelPool.getPoolSize(serverInfo));
+		verify(channel).close();
+	}
+
+	private void offer(Channel channel) throws Exception {
+		channelPool.offer(serverInfo, channel, keepAliveTimeoutMillis);
+		runOn(channel.eventLoop(), () -> null);  //the offer is executed on the event loop of the channel
+	}
+
+	private <T> T runOn(EventLoop eventLoop, Callable<T> callable) throws Exception {
+		return eventLoop.submit(callable).get(1, TimeUnit.SECONDS);
+	}
+
+	private Channel getActiveChannelMock(EventLoop eventLoop) {
+		Channel channel = mock(Channel.class);
+		when(channel.isActive()).thenReturn(true);
+		when(channel.isOpen()).thenReturn(true);
+		when(channel.closeFuture()).thenReturn(new DefaultChannelPromise(channel, ImmediateEventExecutor.INSTANCE));
+		when(channel.eventLoop()).thenReturn(eventLoop);
+		return channel;
+	}
+}
@@ -0,0 +1,158 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.pool;
+
+import com.king.platform.net.http.netty.ServerInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadBalancerTest {
+	private static final String HOST = "http://api.internal";
+
+	private ServerInfo serverInfo;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		serverInfo = ServerInfo.buildFromUri(HOST);
+	}
+
+	@Test
+	public void roundRobinShouldSendToTheBackendsInTurn() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.roundRobin(), "http://10.0.0.1:8080",
+			"http://10.0.0.2:8080", "http://10.0.0.3:8080");
+
+		List<Backend> backends = loadBalancer.getBackends(serverInfo);
+		for (int i = 0; i < 6; i++) {
+			assertSame(backends.get(i % 3), loadBalancer.select(serverInfo));
+		}
+	}
+
+	@Test
+	public void backendsShouldKeepTheirOwnAddress() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.roundRobin(), "http://10.0.0.1:8080");
+
+		Backend backend = loadBalancer.select(serverInfo);
+		assertEquals(ServerInfo.buildFromUri("http://10.0.0.1:8080"), backend.getServerInfo());
+	}
+
+	@Test
+	public void hostsWithoutBackendsShouldNotBeBalanced() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.roundRobin(), "http://10.0.0.1:8080");
+
+		assertNull(loadBalancer.select(ServerInfo.buildFromUri("http://other.internal")));
+		assertTrue(loadBalancer.getBackends(ServerInfo.buildFromUri("http://other.internal")).isEmpty());
+	}
+
+	@Test
+	public void backendsShouldBePooledUnderTheirHost() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.roundRobin(), "http://10.0.0.1:8080",
+			"http://10.0.0.2:8080");
+		ServerInfo backend1 = ServerInfo.buildFromUri("http://10.0.0.1:8080");
+		ServerInfo backend2 = ServerInfo.buildFromUri("http://10.0.0.2:8080");
+		ServerInfo other = ServerInfo.buildFromUri("http://other.internal");
+
+		assertEquals(Arrays.asList(backend1, backend2), loadBalancer.getPooledServers(serverInfo));
+		assertEquals(Collections.singletonList(other), loadBalancer.getPooledServers(other));
+
+		assertEquals(serverInfo, loadBalancer.getConfiguredServer(backend1));
+		assertEquals(serverInfo, loadBalancer.getConfiguredServer(backend2));
+		assertEquals(other, loadBalancer.getConfiguredServer(other));
+	}
+
+	@Test
+	public void backendsShouldHaveTheSchemeOfTheHost() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		assertThrows(IllegalArgumentException.class, () -> loadBalancer.addBackends("https://api.internal", LoadBalancingPolicy.roundRobin(),
+			"http://10.0.0.1:8080"));
+		assertThrows(IllegalArgumentException.class, () -> loadBalancer.addBackends(HOST, LoadBalancingPolicy.roundRobin()));
+	}
+
+	@Test
+	public void leastOutstandingRequestsShouldPickTheLeastBusyBackend() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.leastOutstandingRequests(), "http://10.0.0.1:8080",
+			"http://10.0.0.2:8080", "http://10.0.0.3:8080");
+
+		List<Backend> backends = loadBalancer.getBackends(serverInfo);
+		backends.get(0).requestStarted();
+		backends.get(0).requestStarted();
+		backends.get(2).requestStarted();
+
+		for (int i = 0; i < 10; i++) {
+			assertSame(backends.get(1), loadBalancer.select(serverInfo));
+		}
+
+		backends.get(0).requestCompleted(-1);
+		backends.get(0).requestCompleted(-1);
+		backends.get(1).requestStarted();
+		backends.get(1).requestStarted();
+
+		for (int i = 0; i < 10; i++) {
+			assertSame(backends.get(0), loadBalancer.select(serverInfo));
+		}
+	}
+
+	@Test
+	public void powerOfTwoChoicesShouldAvoidTheSlowBackend() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.powerOfTwoChoices(), "http://10.0.0.1:8080",
+			"http://10.0.0.2:8080");
+
+		List<Backend> backends = loadBalancer.getBackends(serverInfo);
+		Backend slow = backends.get(0);
+		Backend fast = backends.get(1);
+		slow.requestStarted();
+		slow.requestCompleted(200);
+		fast.requestStarted();
+		fast.requestCompleted(10);
+
+		for (int i = 0; i < 10; i++) {
+			assertSame(fast, loadBalancer.select(serverInfo));
+		}
+	}
+
+	@Test
+	public void powerOfTwoChoicesShouldWeighLatencyWithOutstandingRequests() throws Exception {
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, LoadBalancingPolicy.powerOfTwoChoices(), "http://10.0.0.1:8080",
+			"http://10.0.0.2:8080");
+
+		List<Backend> backends = loadBalancer.getBackends(serverInfo);
+		Backend slower = backends.get(0);
+		Backend busy = backends.get(1);
+		slower.requestStarted();
+		slower.requestCompleted(20);
+		busy.requestStarted();
+		busy.requestCompleted(10);
+		for (int i = 0; i < 3; i++) {
+			busy.requestStarted();
+		}
+
+		assertSame(slower, loadBalancer.select(serverInfo));
+	}
+
+	@Test
+	public void latencyShouldBeAMovingAverage() throws Exception {
+		Backend backend = new Backend(serverInfo);
+		assertEquals(0, backend.getLatencyMillis());
+
+		backend.requestStarted();
+		backend.requestCompleted(100);
+		assertEquals(100, backend.getLatencyMillis(), 0.001);
+
+		backend.requestStarted();
+		backend.requestCompleted(200);
+		assertEquals(120, backend.getLatencyMillis(), 0.001);
+
+		backend.requestStarted();
+		backend.requestCompleted(-1);  //failed requests don't have a latency
+		assertEquals(120, backend.getLatencyMillis(), 0.001);
+		assertEquals(0, backend.getOutstandingRequests());
+	}
+}
@@ -9,9 +9,11 @@ import com.king.platform.net.http.netty.ServerInfo;
 import com.king.platform.net.http.netty.metric.MetricCallback;
 import com.king.platform.net.http.netty.util.TimeProviderForTesting;
 import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelPromise;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
 import io.netty.util.TimerTask;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -23,6 +25,8 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PoolingChannelPoolTest {
@@ -49,7 +53,7 @@ public class PoolingChannelPoolTest {
 
 
 		timeProvider = new TimeProviderForTesting();
-		timer = new TestTimer();
+		timer = new TestTimer(timeProvider);
 
 		poolingChannelPool = new PoolingChannelPool(timer, timeProvider, mock(MetricCallback.class));
 
@@ -61,6 +65,7 @@ public class PoolingChannelPoolTest {
 		Channel channel = mock(Channel.class);
 		when(channel.isActive()).thenReturn(true);
 		when(channel.isOpen()).thenReturn(true);
+		when(channel.closeFuture()).thenReturn(new DefaultChannelPromise(channel, ImmediateEventExecutor.INSTANCE));
 		return channel;
 	}
 
@@ -127,6 +132,55 @@ public class PoolingChannelPoolTest {
 		assertEquals(0, poolingChannelPool.getPoolSize(serverInfo));
 	}
 
+	@Test
+	public void getWithFifoStrategyShouldReturnLeastRecentlyUsedChannel() throws Exception {
+		ServerInfo otherServerInfo = ServerInfo.buildFromUri("http://otherhost:8081/");
+		poolingChannelPool.setChannelSelectionStrategy(serverInfo, ChannelSelectionStrategy.FIFO);
+
+		Channel channel1 = getActiveChannelMock();
+		Channel channel2 = getActiveChannelMock();
+		poolingChannelPool.offer(serverInfo, channel1, keepAliveTimeoutMillis);
+		poolingChannelPool.offer(serverInfo, channel2, keepAliveTimeoutMillis);
+
+		Channel otherChannel1 = getActiveChannelMock();
+		Channel otherChannel2 = getActiveChannelMock();
+		poolingChannelPool.offer(otherServerInfo, otherChannel1, keepAliveTimeoutMillis);
+		poolingChannelPool.offer(otherServerInfo, otherChannel2, keepAliveTimeoutMillis);
+
+		assertSame(channel1, poolingChannelPool.get(serverInfo));
+		assertSame(otherChannel2, poolingChannelPool.get(otherServerInfo));  //other servers still use the default strategy
+
+		poolingChannelPool.offer(serverInfo, channel1, keepAliveTimeoutMillis);
+		assertSame(channel2, poolingChannelPool.get(serverInfo));
+		assertSame(channel1, poolingChannelPool.get(serverInfo));
+	}
+
+	@Test
+	public void strategyOfALoadBalancedHostShouldApplyToItsBackends() throws Exception {
+		ServerInfo backendServerInfo = ServerInfo.buildFromUri("http://10.0.0.1:8081/");
+		poolingChannelPool.setLoadBalancer(new LoadBalancer().addBackends("http://somehost:8081", LoadBalancingPolicy.roundRobin(),
+			"http://10.0.0.1:8081"));
+		poolingChannelPool.setChannelSelectionStrategy(serverInfo, ChannelSelectionStrategy.FIFO);
+
+		Channel channel1 = getActiveChannelMock();
+		Channel channel2 = getActiveChannelMock();
+		poolingChannelPool.offer(backendServerInfo, channel1, keepAliveTimeoutMillis);
+		poolingChannelPool.offer(backendServerInfo, channel2, keepAliveTimeoutMillis);
+
+		assertSame(channel1, poolingChannelPool.get(backendServerInfo));
+	}
+
+	@Test
+	public void defaultStrategyShouldApplyToExistingServerPools() throws Exception {
+		Channel channel1 = getActiveChannelMock();
+		Channel channel2 = getActiveChannelMock();
+		poolingChannelPool.offer(serverInfo, channel1, keepAliveTimeoutMillis);
+		poolingChannelPool.offer(serverInfo, channel2, keepAliveTimeoutMillis);
+
+		poolingChannelPool.setChannelSelectionStrategy(ChannelSelectionStrategy.FIFO);
+
+		assertSame(channel1, poolingChannelPool.get(serverInfo));
+	}
 
 	@Test
 	public void getOfAnInactiveChannel() throws Exception {
@@ -191,6 +245,26 @@ public class PoolingChannelPoolTest {
 
 	}
 
+	@Test
+	public void reusedChannelShouldNotBeExpiredByEarlierOffer() throws Exception {
+		Channel channel = getActiveChannelMock();
+		poolingChannelPool.offer(serverInfo, channel, keepAliveTimeoutMillis);
+
+		timeProvider.forwardSeconds(10);
+		assertSame(channel, poolingChannelPool.get(serverInfo));
+		poolingChannelPool.offer(serverInfo, channel, keepAliveTimeoutMillis);
+
+		timeProvider.forwardSeconds(10);
+		timer.invoke();
+		assertEquals(1, poolingChannelPool.getPoolSize(serverInfo));
+		verify(channel, never()).close();
+
+		timeProvider.forwardSeconds(5);
+		timer.invoke();
+		assertEquals(0, poolingChannelPool.getPoolSize(serverInfo));
+		verify(channel).close();
+	}
+
 	@Test
 	public void discard() throws Exception {
 
@@ -198,12 +272,18 @@ public class PoolingChannelPoolTest {
 	}
 
 	private static class TestTimer implements Timer {
-		private final List<TimerTask> tasks = new ArrayList<>();
+		private final TimeProviderForTesting timeProvider;
+		private final List<TestTimeout> timeouts = new ArrayList<>();
+
+		private TestTimer(TimeProviderForTesting timeProvider) {
+			this.timeProvider = timeProvider;
+		}
 
 		@Override
 		public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
-			tasks.add(task);
-			return mock(Timeout.class);
+			TestTimeout timeout = new TestTimeout(this, task, timeProvider.currentTimeInMillis() + unit.toMillis(delay));
+			timeouts.add(timeout);
+			return timeout;
 		}
 
 		@Override
@@ -212,11 +292,58 @@ public class PoolingChannelPoolTest {
 		}
 
 		public void invoke() throws Exception {
+			List<TestTimeout> expiredTimeouts = new ArrayList<>();
+			for (TestTimeout timeout : timeouts) {
+				if (timeout.deadline <= timeProvider.currentTimeInMillis()) {
+					expiredTimeouts.add(timeout);
+				}
+			}
+			timeouts.removeAll(expiredTimeouts);
+
+			for (TestTimeout timeout : expiredTimeouts) {
+				if (!timeout.cancelled) {
+					timeout.task.run(timeout);
+				}
+			}
+		}
+	}
+
+	private static class TestTimeout implements Timeout {
+		private final Timer timer;
+		private final TimerTask task;
+		private final long deadline;
+		private boolean cancelled;
 
-			TimerTask timerTask = tasks.get(0);
-			Timeout timeout = mock(Timeout.class);
-			when(timeout.task()).thenReturn(timerTask);
-			timerTask.run(timeout);
+		private TestTimeout(Timer timer, TimerTask task, long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public Timer timer() {
+			return timer;
+		}
+
+		@Override
+		public TimerTask task() {
+			return task;
+		}
+
+		@Override
+		public boolean isExpired() {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public boolean cancel() {
+			cancelled = true;
+			return true;
 		}
 	}
 }
@@ -8,13 +8,30 @@ package com.king.platform.net.http.netty.pool;
 import com.king.platform.net.http.netty.ServerInfo;
 import com.king.platform.net.http.netty.metric.MetricCallback;
 import com.king.platform.net.http.netty.util.TimeProviderForTesting;
+import com.king.platform.net.http.KingHttpException;
+import com.king.platform.net.http.netty.TimeoutException;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,7 +72,7 @@ public class ServerPoolTest {
 		serverPool.discard(validChannel);
 
 		assertEquals(0, serverPool.getChannelSize());
-		assertEquals(1, serverPool.getPoolSize()); //the channel should still be in the pool since its not removed from the queue
+		assertEquals(0, serverPool.getPoolSize());
 		verify(validChannel).close();
 	}
 
@@ -68,6 +85,120 @@ public class ServerPoolTest {
 		assertEquals(0, serverPool.getPoolSize()); //the pool is now empty since it was explicitly cleaned
 	}
 
+	@Test
+	public void closedIdleChannelShouldBeRemovedDirectly() throws Exception {
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		channel.close();
+
+		assertEquals(0, serverPool.getChannelSize());
+		assertEquals(0, serverPool.getPoolSize());
+	}
+
+	@Test
+	public void cleanShouldOnlyRemoveExpiredChannels() throws Exception {
+		Channel firstChannel = createStateFullChannel();
+		serverPool.offer(firstChannel, keepAliveTimeoutMillis);
+		timeProvider.forwardSeconds(50);
+		Channel secondChannel = createStateFullChannel();
+		serverPool.offer(secondChannel, keepAliveTimeoutMillis);
+		Channel shortLivedChannel = createStateFullChannel();
+		serverPool.offer(shortLivedChannel, 10 * 1000);
+
+		timeProvider.forwardSeconds(51);
+		serverPool.cleanExpiredConnections();
+
+		assertEquals(1, serverPool.getPoolSize());
+		verify(firstChannel).close();
+		verify(shortLivedChannel).close();
+		verify(secondChannel, times(0)).close();
+		assertSame(secondChannel, serverPool.poll());
+	}
+
+	@Test
+	public void channelsWithMixedKeepAliveTimeoutsShouldExpireInExpiryOrder() throws Exception {
+		Channel longLivedChannel = createStateFullChannel();
+		serverPool.offer(longLivedChannel, 30 * 1000);
+		Channel shortLivedChannel = createStateFullChannel();
+		serverPool.offer(shortLivedChannel, 10 * 1000);
+		Channel mediumLivedChannel = createStateFullChannel();
+		serverPool.offer(mediumLivedChannel, 20 * 1000);
+		timeProvider.forwardSeconds(5);
+		Channel laterShortLivedChannel = createStateFullChannel();
+		serverPool.offer(laterShortLivedChannel, 10 * 1000);
+
+		timeProvider.forwardSeconds(11);
+		serverPool.cleanExpiredConnections();
+
+		assertEquals(2, serverPool.getPoolSize());
+		verify(longLivedChannel, times(0)).close();
+		verify(mediumLivedChannel, times(0)).close();
+
+		timeProvider.forwardSeconds(20);
+		serverPool.cleanExpiredConnections();
+
+		assertEquals(0, serverPool.getPoolSize());
+		InOrder expiryOrder = inOrder(shortLivedChannel, laterShortLivedChannel, mediumLivedChannel, longLivedChannel);
+		expiryOrder.verify(shortLivedChannel).close();
+		expiryOrder.verify(laterShortLivedChannel).close();
+		expiryOrder.verify(mediumLivedChannel).close();
+		expiryOrder.verify(longLivedChannel).close();
+	}
+
+	@Test
+	public void reofferWithShorterKeepAliveShouldShortenTheTTL() throws Exception {
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		assertSame(channel, serverPool.poll());
+		serverPool.offer(channel, 5 * 1000);
+
+		timeProvider.forwardSeconds(6);
+		serverPool.cleanExpiredConnections();
+
+		assertEquals(0, serverPool.getPoolSize());
+		verify(channel).close();
+	}
+
+	@Test
+	public void pollShouldReturnTheLastOfferedChannel() throws Exception {
+		Channel firstChannel = createStateFullChannel();
+		Channel secondChannel = createStateFullChannel();
+		serverPool.offer(firstChannel, keepAliveTimeoutMillis);
+		serverPool.offer(secondChannel, keepAliveTimeoutMillis);
+
+		assertSame(secondChannel, serverPool.poll());
+		assertSame(firstChannel, serverPool.poll());
+		assertNull(serverPool.poll());
+	}
+
+	@Test
+	public void strategiesShouldPickByUseOrExpiryWithDifferentKeepAliveTimeouts() throws Exception {
+		Channel longLivedChannel = createStateFullChannel();
+		Channel shortLivedChannel = createStateFullChannel();
+		Channel mediumLivedChannel = createStateFullChannel();
+		serverPool.offer(longLivedChannel, 30 * 1000);
+		timeProvider.forwardSeconds(1);
+		serverPool.offer(shortLivedChannel, 5 * 1000);
+		timeProvider.forwardSeconds(1);
+		serverPool.offer(mediumLivedChannel, 20 * 1000);
+
+		serverPool.setChannelSelectionStrategy(ChannelSelectionStrategy.ROUND_ROBIN);
+		assertSame(longLivedChannel, serverPool.poll());
+		serverPool.offer(longLivedChannel, 30 * 1000);
+		assertSame(shortLivedChannel, serverPool.poll());
+		serverPool.offer(shortLivedChannel, 5 * 1000);
+
+		serverPool.setChannelSelectionStrategy(ChannelSelectionStrategy.FIFO);
+		assertSame(shortLivedChannel, serverPool.poll());
+		assertSame(mediumLivedChannel, serverPool.poll());
+
+		serverPool.setChannelSelectionStrategy(ChannelSelectionStrategy.LIFO);
+		serverPool.offer(mediumLivedChannel, 20 * 1000);
+		assertSame(mediumLivedChannel, serverPool.poll());
+		assertSame(longLivedChannel, serverPool.poll());
+		assertNull(serverPool.poll());
+	}
+
 	@Test
 	public void cleanShouldRemoveToOldChannels() throws Exception {
 		Channel validChannel = createStateFullChannel();
@@ -152,6 +283,385 @@ public class ServerPoolTest {
 		assertNull(channel);
 	}
 
+	@Test
+	public void acquireBelowMaxConnectionsShouldAllowNewConnection() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		RecordingAcquireCallback callback = new RecordingAcquireCallback();
+
+		limitedPool.acquire(callback);
+
+		assertEquals(1, callback.newConnections);
+		assertEquals(1, limitedPool.getOpenConnections());
+	}
+
+	@Test
+	public void acquireOverMaxConnectionsShouldWaitForOfferedChannel() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		RecordingAcquireCallback firstCallback = new RecordingAcquireCallback();
+		RecordingAcquireCallback secondCallback = new RecordingAcquireCallback();
+
+		limitedPool.acquire(firstCallback);
+		EmbeddedChannel channel = new EmbeddedChannel();
+		limitedPool.connectionOpened(channel);
+
+		limitedPool.acquire(secondCallback);
+		assertEquals(0, secondCallback.newConnections);
+		assertTrue(secondCallback.channels.isEmpty());
+		assertEquals(1, limitedPool.getPendingAcquires());
+
+		limitedPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, secondCallback.channels.get(0));
+		assertEquals(0, limitedPool.getPendingAcquires());
+		assertEquals(0, limitedPool.getPoolSize());
+	}
+
+	@Test
+	public void closedConnectionShouldLetPendingAcquireOpenNewConnection() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		RecordingAcquireCallback firstCallback = new RecordingAcquireCallback();
+		RecordingAcquireCallback secondCallback = new RecordingAcquireCallback();
+
+		limitedPool.acquire(firstCallback);
+		EmbeddedChannel channel = new EmbeddedChannel();
+		limitedPool.connectionOpened(channel);
+		limitedPool.acquire(secondCallback);
+
+		channel.close();
+
+		assertEquals(1, secondCallback.newConnections);
+		assertEquals(1, limitedPool.getOpenConnections());
+	}
+
+	@Test
+	public void deadChannelFoundForPendingAcquireShouldBeClosedOutsideOfTheLock() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		RecordingAcquireCallback secondCallback = new RecordingAcquireCallback();
+
+		limitedPool.acquire(new RecordingAcquireCallback());
+		EmbeddedChannel channel = new EmbeddedChannel();
+		limitedPool.connectionOpened(channel);
+		limitedPool.acquire(secondCallback);
+
+		AtomicBoolean closedOutsideOfTheLock = new AtomicBoolean();
+		channel.closeFuture().addListener(future -> {
+			Thread thread = new Thread(limitedPool::getPendingAcquires);
+			thread.start();
+			thread.join(1000);
+			closedOutsideOfTheLock.set(!thread.isAlive());
+		});
+
+		channel.attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(0);
+		limitedPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertTrue(closedOutsideOfTheLock.get());
+		assertTrue(secondCallback.channels.isEmpty());
+		assertEquals(1, secondCallback.newConnections);
+	}
+
+	@Test
+	public void failedConnectionShouldReleaseItsSlot() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+
+		limitedPool.acquire(new RecordingAcquireCallback());
+		limitedPool.releaseConnection();
+
+		assertEquals(0, limitedPool.getOpenConnections());
+	}
+
+	@Test
+	public void acquireShouldFailWhenPendingQueueIsFull() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		RecordingAcquireCallback thirdCallback = new RecordingAcquireCallback();
+
+		limitedPool.acquire(new RecordingAcquireCallback());
+		limitedPool.acquire(new RecordingAcquireCallback());
+		limitedPool.acquire(thirdCallback);
+
+		assertTrue(thirdCallback.errors.get(0) instanceof KingHttpException);
+		assertEquals(1, limitedPool.getPendingAcquires());
+	}
+
+	@Test
+	public void pendingAcquireShouldTimeout() throws Exception {
+		Timer timer = mock(Timer.class);
+		ServerPool limitedPool = createLimitedPool(timer, 1, 1);
+		RecordingAcquireCallback secondCallback = new RecordingAcquireCallback();
+
+		limitedPool.acquire(new RecordingAcquireCallback());
+		limitedPool.acquire(secondCallback);
+
+		ArgumentCaptor<TimerTask> timerTask = ArgumentCaptor.forClass(TimerTask.class);
+		verify(timer).newTimeout(timerTask.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+		timerTask.getValue().run(mock(Timeout.class));
+
+		assertTrue(secondCallback.errors.get(0) instanceof TimeoutException);
+		assertEquals(0, limitedPool.getPendingAcquires());
+	}
+
+	@Test
+	public void poolWithOpenConnectionsShouldNotBeRemoved() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		limitedPool.acquire(new RecordingAcquireCallback());
+
+		timeProvider.forwardSeconds(20);
+
+		assertFalse(limitedPool.shouldRemovePool());
+	}
+
+	@Test
+	public void warmUpShouldOpenMissingIdleConnections() throws Exception {
+		RecordingChannelConnector channelConnector = new RecordingChannelConnector();
+		serverPool.setMinIdleConnections(3);
+		serverPool.offer(createStateFullChannel(), keepAliveTimeoutMillis);
+
+		serverPool.warmUp(channelConnector, null);
+		assertEquals(2, channelConnector.promises.size());
+
+		serverPool.warmUp(channelConnector, null);
+		assertEquals(2, channelConnector.promises.size());  //connections that are being opened count as idle
+
+		for (Promise<Channel> promise : channelConnector.promises) {
+			promise.setSuccess(createStateFullChannel());
+		}
+		assertEquals(3, serverPool.getPoolSize());
+
+		serverPool.warmUp(channelConnector, null);
+		assertEquals(2, channelConnector.promises.size());
+	}
+
+	@Test
+	public void warmUpShouldNotOpenMoreThanMaxConnections() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 2, 1);
+		limitedPool.acquire(new RecordingAcquireCallback());
+
+		RecordingChannelConnector channelConnector = new RecordingChannelConnector();
+		limitedPool.setMinIdleConnections(3);
+		limitedPool.warmUp(channelConnector, null);
+
+		assertEquals(1, channelConnector.promises.size());
+		assertEquals(2, limitedPool.getOpenConnections());
+	}
+
+	@Test
+	public void failedWarmUpShouldReleaseItsSlot() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 2, 1);
+
+		RecordingChannelConnector channelConnector = new RecordingChannelConnector();
+		limitedPool.setMinIdleConnections(1);
+		limitedPool.warmUp(channelConnector, null);
+		assertEquals(1, limitedPool.getOpenConnections());
+
+		channelConnector.promises.get(0).setFailure(new ConnectException());
+		assertEquals(0, limitedPool.getOpenConnections());
+		assertEquals(0, limitedPool.getPoolSize());
+	}
+
+	@Test
+	public void poolWithMinIdleConnectionsShouldNotBeRemoved() throws Exception {
+		serverPool.setMinIdleConnections(1);
+
+		timeProvider.forwardSeconds(20);
+
+		assertFalse(serverPool.shouldRemovePool());
+	}
+
+	private ServerPool createLimitedPool(Timer timer, int maxConnections, int maxPendingAcquires) throws Exception {
+		when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class))).thenReturn(mock(Timeout.class));
+		return new ServerPool(ServerInfo.buildFromUri("http://localhost/"), timer, timeProvider, mock(MetricCallback.class), maxConnections,
+			maxPendingAcquires, 500);
+	}
+
+	@Test
+	public void pollWithPipeliningShouldShareBusyChannelUpToMaxPipelinedRequests() throws Exception {
+		serverPool.setMaxPipelinedRequests(3);
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, serverPool.poll(true));
+		assertSame(channel, serverPool.poll(true));
+		assertSame(channel, serverPool.poll(true));
+		assertNull(serverPool.poll(true));
+	}
+
+	@Test
+	public void pollWithoutPipeliningShouldNotShareBusyChannel() throws Exception {
+		serverPool.setMaxPipelinedRequests(3);
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, serverPool.poll(true));
+		assertNull(serverPool.poll(false));
+	}
+
+	@Test
+	public void pollShouldNotPipelineWhenPipeliningIsDisabled() throws Exception {
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, serverPool.poll(true));
+		assertNull(serverPool.poll(true));
+	}
+
+	@Test
+	public void pipeliningChannelShouldBecomeIdleWhenAllRequestsHaveBeenOffered() throws Exception {
+		serverPool.setMaxPipelinedRequests(2);
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		serverPool.poll(true);
+		serverPool.poll(true);
+
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		assertEquals(0, serverPool.getPoolSize());
+		assertSame(channel, serverPool.poll(true));
+
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		assertEquals(1, serverPool.getPoolSize());
+		assertSame(channel, serverPool.poll(false));
+	}
+
+	@Test
+	public void pollWithPipeliningShouldPreferIdleChannels() throws Exception {
+		serverPool.setMaxPipelinedRequests(2);
+		Channel firstChannel = createStateFullChannel();
+		Channel secondChannel = createStateFullChannel();
+		serverPool.offer(firstChannel, keepAliveTimeoutMillis);
+		serverPool.offer(secondChannel, keepAliveTimeoutMillis);
+
+		assertSame(secondChannel, serverPool.poll(true));
+		assertSame(firstChannel, serverPool.poll(true));
+		assertSame(secondChannel, serverPool.poll(true));
+		assertSame(firstChannel, serverPool.poll(true));
+		assertNull(serverPool.poll(true));
+	}
+
+	@Test
+	public void discardedPipeliningChannelShouldNotBeShared() throws Exception {
+		serverPool.setMaxPipelinedRequests(2);
+		Channel channel = createStateFullChannel();
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		serverPool.poll(true);
+		serverPool.discard(channel);
+
+		assertNull(serverPool.poll(true));
+		assertEquals(0, serverPool.getChannelSize());
+	}
+
+	@Test
+	public void pendingPipeliningAcquireShouldBeServedByBusyChannel() throws Exception {
+		ServerPool limitedPool = createLimitedPool(mock(Timer.class), 1, 1);
+		limitedPool.setMaxPipelinedRequests(2);
+		Channel channel = createStateFullChannel();
+		limitedPool.acquire(new RecordingAcquireCallback());
+		limitedPool.connectionOpened(channel);
+		limitedPool.offer(channel, keepAliveTimeoutMillis);
+
+		RecordingAcquireCallback firstCallback = new PipeliningAcquireCallback();
+		RecordingAcquireCallback secondCallback = new PipeliningAcquireCallback();
+		RecordingAcquireCallback thirdCallback = new PipeliningAcquireCallback();
+		limitedPool.acquire(firstCallback);
+		limitedPool.acquire(secondCallback);
+		limitedPool.acquire(thirdCallback);
+
+		assertSame(channel, firstCallback.channels.get(0));
+		assertSame(channel, secondCallback.channels.get(0));
+		assertEquals(1, limitedPool.getPendingAcquires());
+
+		limitedPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, thirdCallback.channels.get(0));
+		assertEquals(0, limitedPool.getPendingAcquires());
+	}
+
+	@Test
+	public void multiplexedChannelShouldBeSharedUpToMaxConcurrentRequests() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		channel.attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(3);
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, serverPool.poll());
+		assertSame(channel, serverPool.poll());
+		assertSame(channel, serverPool.poll());
+		assertNull(serverPool.poll());
+
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		assertSame(channel, serverPool.poll());
+	}
+
+	@Test
+	public void newMultiplexedChannelShouldBeSharedWhileItsFirstRequestIsRunning() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		channel.attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(2);
+		serverPool.offerShared(channel, keepAliveTimeoutMillis);
+
+		assertEquals(0, serverPool.getPoolSize());
+		assertSame(channel, serverPool.poll());
+		assertNull(serverPool.poll());
+
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		assertEquals(0, serverPool.getPoolSize());  //still used by the other request
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+		assertEquals(1, serverPool.getPoolSize());
+	}
+
+	@Test
+	public void multiplexedChannelThatAcceptsNoMoreRequestsShouldNotBeUsed() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		channel.attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(3);
+		serverPool.offer(channel, keepAliveTimeoutMillis);
+
+		assertSame(channel, serverPool.poll());
+		channel.attr(ChannelPool.MAX_CONCURRENT_REQUESTS_ATTRIBUTE_KEY).set(0);
+
+		assertNull(serverPool.poll());
+	}
+
+	private static class PipeliningAcquireCallback extends RecordingAcquireCallback {
+		@Override
+		public boolean isPipeliningAllowed() {
+			return true;
+		}
+	}
+
+	private static class RecordingAcquireCallback implements AcquireCallback {
+		private final List<Channel> channels = new ArrayList<>();
+		private final List<Throwable> errors = new ArrayList<>();
+		private int newConnections;
+
+		@Override
+		public void onPooledChannel(Channel channel) {
+			channels.add(channel);
+		}
+
+		@Override
+		public void onNewConnection() {
+			newConnections++;
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			errors.add(throwable);
+		}
+	}
+
+	private static class RecordingChannelConnector implements ChannelConnector {
+		private final List<Promise<Channel>> promises = new ArrayList<>();
+
+		@Override
+		public Future<Channel> connect(ServerInfo serverInfo, EventLoop eventLoop) {
+			Promise<Channel> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+			promises.add(promise);
+			return promise;
+		}
+
+		@Override
+		public int getKeepAliveTimeoutMillis() {
+			return 100 * 1000;
+		}
+	}
 
 	private Channel createStateFullChannel() {
 		final AtomicBoolean state = new AtomicBoolean(true);
@@ -168,11 +678,15 @@ public class ServerPoolTest {
 		when(channel.isActive()).thenAnswer(answer);
 		when(channel.isOpen()).thenAnswer(answer);
 
+		DefaultChannelPromise closeFuture = new DefaultChannelPromise(channel, ImmediateEventExecutor.INSTANCE);
+		when(channel.closeFuture()).thenReturn(closeFuture);
+
 		when(channel.close()).thenAnswer(new Answer<ChannelFuture>() {
 			@Override
 			public ChannelFuture answer(InvocationOnMock invocation) throws Throwable {
 				state.set(false);
-				return null;
+				closeFuture.trySuccess();
+				return closeFuture;
 			}
 		});
 
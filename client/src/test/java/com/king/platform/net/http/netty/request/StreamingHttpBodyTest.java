@@ -0,0 +1,108 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.request;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class StreamingHttpBodyTest {
+	private StreamingHttpBody streamingHttpBody;
+	private EmbeddedChannel channel;
+
+	@BeforeEach
+	public void setUp() {
+		streamingHttpBody = new StreamingHttpBody("test/content", StandardCharsets.UTF_8);
+		channel = new EmbeddedChannel(new ChunkedWriteHandler(), new ChannelInboundHandlerAdapter());
+	}
+
+	@Test
+	public void chunksWrittenBeforeTheBodyShouldBeSent() throws Exception {
+		CompletableFuture<Void> write = streamingHttpBody.write(chunk("first"));
+		assertFalse(write.isDone());
+
+		ChannelFuture channelFuture = writeContent();
+		streamingHttpBody.write(chunk("second"));
+		streamingHttpBody.complete();
+
+		assertTrue(write.isDone());
+		assertTrue(channelFuture.isSuccess());
+		assertEquals("first", readOutbound());
+		assertEquals("second", readOutbound());
+	}
+
+	@Test
+	public void bodyShouldWaitForTheProducer() throws Exception {
+		ChannelFuture channelFuture = writeContent();
+		assertFalse(channelFuture.isDone());
+
+		streamingHttpBody.write(chunk("first"));
+		assertEquals("first", readOutbound());
+		assertFalse(channelFuture.isDone());
+
+		streamingHttpBody.complete();
+		assertTrue(channelFuture.isSuccess());
+	}
+
+	@Test
+	public void failureShouldFailTheBodyAndDiscardTheChunks() throws Exception {
+		ChannelFuture channelFuture = writeContent();
+		IOException failure = new IOException("aborted");
+
+		streamingHttpBody.fail(failure);
+
+		assertSame(failure, channelFuture.cause());
+		CompletableFuture<Void> write = streamingHttpBody.write(chunk("late"));
+		assertTrue(write.isCompletedExceptionally());
+	}
+
+	@Test
+	public void requestFailureShouldFailPendingWrites() throws Exception {
+		CompletableFuture<Void> write = streamingHttpBody.write(chunk("first"));
+		IOException failure = new IOException("connection refused");
+
+		streamingHttpBody.onRequestFailed(failure);
+
+		assertTrue(write.isCompletedExceptionally());
+	}
+
+	@Test
+	public void writeAfterCompleteShouldFail() throws Exception {
+		streamingHttpBody.complete();
+		assertTrue(streamingHttpBody.write(chunk("late")).isCompletedExceptionally());
+	}
+
+	private ChannelFuture writeContent() {
+		ChannelFuture channelFuture = streamingHttpBody.writeContent(channel.pipeline().lastContext(), false);
+		channel.flush();
+		return channelFuture;
+	}
+
+	private String readOutbound() {
+		ByteBuf byteBuf = channel.readOutbound();
+		try {
+			return byteBuf.toString(StandardCharsets.UTF_8);
+		} finally {
+			byteBuf.release();
+		}
+	}
+
+	private static ByteBuffer chunk(String content) {
+		return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
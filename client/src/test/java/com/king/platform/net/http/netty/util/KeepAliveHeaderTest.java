@@ -0,0 +1,40 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.netty.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class KeepAliveHeaderTest {
+
+	@Test
+	public void parseTimeoutAndMax() throws Exception {
+		KeepAliveHeader keepAliveHeader = KeepAliveHeader.parse("timeout=5, max=100");
+		assertEquals(5, keepAliveHeader.getTimeoutSeconds());
+		assertEquals(100, keepAliveHeader.getMax());
+	}
+
+	@Test
+	public void parseOnlyTimeout() throws Exception {
+		KeepAliveHeader keepAliveHeader = KeepAliveHeader.parse("Timeout=15");
+		assertEquals(15, keepAliveHeader.getTimeoutSeconds());
+		assertEquals(KeepAliveHeader.NOT_SET, keepAliveHeader.getMax());
+	}
+
+	@Test
+	public void parseShouldIgnoreInvalidParameters() throws Exception {
+		KeepAliveHeader keepAliveHeader = KeepAliveHeader.parse("timeout=abc, max=-1, foo=bar, baz");
+		assertEquals(KeepAliveHeader.NOT_SET, keepAliveHeader.getTimeoutSeconds());
+		assertEquals(KeepAliveHeader.NOT_SET, keepAliveHeader.getMax());
+	}
+
+	@Test
+	public void parseOfMissingHeader() throws Exception {
+		assertNull(KeepAliveHeader.parse(null));
+	}
+}
@@ -151,6 +151,11 @@ public class TestingHttpClientFactory {
 		return this;
 	}
 
+	public TestingHttpClientFactory setMaxPipelinedRequests(String uri, int maxPipelinedRequests) {
+		nettyHttpClientBuilder.setMaxPipelinedRequests(uri, maxPipelinedRequests);
+		return this;
+	}
+
 	public HttpClient create() {
 		HttpClient httpClient = nettyHttpClientBuilder.createHttpClient();
 		return httpClient;
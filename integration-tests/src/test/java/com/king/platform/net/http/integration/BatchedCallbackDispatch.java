@@ -0,0 +1,92 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BatchedCallbackDispatch {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		httpClient = new TestingHttpClientFactory()
+			.useChannelPool()
+			.setOption(ConfKeys.BATCH_CALLBACK_DISPATCH, true)
+			.create();
+		httpClient.start();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(req.getParameter("id"));
+				resp.getWriter().flush();
+			}
+		}, "/echo");
+	}
+
+	@Test
+	public void callbacksShouldBeInvokedForAllRequests() throws Exception {
+		List<BlockingHttpCallback> httpCallbacks = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			BlockingHttpCallback httpCallback = new BlockingHttpCallback();
+			httpClient.createGet("http://localhost:" + port + "/echo?id=" + i).build().withHttpCallback(httpCallback).execute();
+			httpCallbacks.add(httpCallback);
+		}
+
+		for (int i = 0; i < 100; i++) {
+			BlockingHttpCallback httpCallback = httpCallbacks.get(i);
+			httpCallback.waitForCompletion();
+			assertNull(httpCallback.getException());
+			assertEquals(200, httpCallback.getStatusCode());
+			assertEquals(String.valueOf(i), httpCallback.getBody());
+		}
+	}
+
+	@Test
+	public void futuresShouldBeCompletedForAllRequests() throws Exception {
+		List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(httpClient.createGet("http://localhost:" + port + "/echo?id=" + i).build().execute());
+		}
+
+		for (int i = 0; i < 100; i++) {
+			HttpResponse<String> response = futures.get(i).get(1, TimeUnit.SECONDS);
+			assertEquals(200, response.getStatusCode());
+			assertEquals(String.valueOf(i), response.getBody());
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+}
@@ -0,0 +1,139 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.HttpCallback;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.NettyHttpClientBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockingExecution {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	private String okBody = "EVERYTHING IS OKAY!";
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				try {
+					Thread.sleep(Long.parseLong(req.getParameter("delay")));
+				} catch (InterruptedException e) {
+				}
+
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+	}
+
+	@Test
+	public void executeBlockingShouldReturnTheResponse() throws Exception {
+		httpClient = new TestingHttpClientFactory().create();
+		httpClient.start();
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/testOk?delay=0").build().executeBlocking();
+
+		assertEquals(200, response.getStatusCode());
+		assertEquals(okBody, response.getBody());
+	}
+
+	@Test
+	public void executeBlockingShouldThrowTheFailureOfTheRequest() throws Exception {
+		httpClient = new TestingHttpClientFactory().create();
+		httpClient.start();
+
+		int closedPort = JettyIntegrationServer.findFreePort();
+		ExecutionException executionException = assertThrows(ExecutionException.class, () -> httpClient.createGet("http://localhost:" + closedPort +
+			"/testOk").build().executeBlocking());
+
+		assertTrue(executionException.getCause() instanceof ConnectException, String.valueOf(executionException.getCause()));
+	}
+
+	@Test
+	public void interruptingExecuteBlockingShouldCancelTheRequest() throws Exception {
+		httpClient = new TestingHttpClientFactory().create();
+		httpClient.start();
+
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				httpClient.createGet("http://localhost:" + port + "/testOk?delay=2000").build().executeBlocking();
+			} catch (Throwable throwable) {
+				thrown.set(throwable);
+			}
+		});
+		thread.start();
+
+		Thread.sleep(200);
+		thread.interrupt();
+		thread.join(1000);
+
+		assertFalse(thread.isAlive());
+		assertTrue(thrown.get() instanceof InterruptedException, String.valueOf(thrown.get()));
+	}
+
+	@Test
+	public void callbacksShouldRunOnVirtualThreadsWhenAvailable() throws Exception {
+		NettyHttpClientBuilder nettyHttpClientBuilder = new NettyHttpClientBuilder().setVirtualThreadHttpCallbacks(true);
+
+		if (Integer.parseInt(System.getProperty("java.specification.version").replaceFirst("^1\\.", "")) < 21) {
+			assertThrows(IllegalStateException.class, nettyHttpClientBuilder::createHttpClient);
+			return;
+		}
+
+		httpClient = nettyHttpClientBuilder.createHttpClient();
+		httpClient.start();
+
+		CompletableFuture<String> callbackThread = new CompletableFuture<>();
+		httpClient.createGet("http://localhost:" + port + "/testOk?delay=0").build().withHttpCallback(new HttpCallback<String>() {
+			@Override
+			public void onCompleted(HttpResponse<String> httpResponse) {
+				callbackThread.complete(Thread.currentThread().toString());
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				callbackThread.completeExceptionally(throwable);
+			}
+		}).execute();
+
+		String threadName = callbackThread.get(1, TimeUnit.SECONDS);
+		assertTrue(threadName.startsWith("VirtualThread"), threadName);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		if (httpClient != null) {
+			httpClient.shutdown();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.dns.CachingAddressResolverGroup;
+import com.king.platform.net.http.netty.dns.DnsAddressLookup;
+import com.king.platform.net.http.netty.dns.LookupResult;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingDnsResolver {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private CachingAddressResolverGroup resolverGroup;
+	private int port;
+
+	private final String okBody = "EVERYTHING IS OKAY!";
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+	}
+
+	@Test
+	public void newConnectionsShouldUseTheCachedAddresses() throws Exception {
+		resolverGroup = new CachingAddressResolverGroup(new DnsAddressLookup(new DnsNameResolverBuilder().channelFactory(NioDatagramChannel::new)));
+		createClient();
+
+		for (int i = 0; i < 3; i++) {
+			HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/testOk").build().execute().get(5, TimeUnit.SECONDS);
+			assertEquals(okBody, response.getBody());
+		}
+
+		assertEquals(1, resolverGroup.getMisses());
+		assertEquals(2, resolverGroup.getHits());
+	}
+
+	@Test
+	public void hostNamesShouldBeResolvedByTheLookup() throws Exception {
+		AtomicInteger lookups = new AtomicInteger();
+		resolverGroup = new CachingAddressResolverGroup((hostname, executor) -> {
+			lookups.incrementAndGet();
+			CompletableFuture<LookupResult> result = new CompletableFuture<>();
+			if (hostname.equals("service.stub")) {
+				result.complete(new LookupResult(Collections.singletonList(InetAddress.getLoopbackAddress()), 60_000));
+			} else {
+				result.completeExceptionally(new UnknownHostException(hostname));
+			}
+			return result;
+		});
+		createClient();
+
+		for (int i = 0; i < 3; i++) {
+			HttpResponse<String> response = httpClient.createGet("http://service.stub:" + port + "/testOk").build().execute().get(5, TimeUnit
+				.SECONDS);
+			assertEquals(okBody, response.getBody());
+		}
+
+		for (int i = 0; i < 3; i++) {
+			ExecutionException executionException = assertThrows(ExecutionException.class, () -> httpClient.createGet("http://missing.stub:" +
+				port + "/testOk").build().execute().get(5, TimeUnit.SECONDS));
+			assertTrue(executionException.getCause() instanceof UnknownHostException, String.valueOf(executionException.getCause()));
+		}
+
+		assertEquals(2, lookups.get());
+	}
+
+	private void createClient() {
+		httpClient = new TestingHttpClientFactory().setOption(ConfKeys.DNS_RESOLVER, resolverGroup).create();
+		httpClient.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+		resolverGroup.close();
+	}
+}
@@ -0,0 +1,111 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpCallback;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompleteOnNioThread {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	private String okBody = "EVERYTHING IS OKAY!";
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+	}
+
+	@Test
+	public void callbacksShouldBeInvokedOnTheNioThread() throws Exception {
+		httpClient = new TestingHttpClientFactory().setOption(ConfKeys.COMPLETE_ON_NIO_THREAD, true).create();
+		httpClient.start();
+
+		ThreadRecordingHttpCallback httpCallback = new ThreadRecordingHttpCallback();
+		CompletableFuture<HttpResponse<String>> future = httpClient.createGet("http://localhost:" + port + "/testOk").build().withHttpCallback
+			(httpCallback).execute();
+
+		assertEquals(okBody, future.get(1, TimeUnit.SECONDS).getBody());
+		String threadName = httpCallback.thread.get(1, TimeUnit.SECONDS);
+		assertTrue(threadName.startsWith("HttpClient-nio-event-loop"), threadName);
+	}
+
+	@Test
+	public void requestsShouldBeAbleToOverrideTheDefault() throws Exception {
+		httpClient = new TestingHttpClientFactory().create();
+		httpClient.start();
+
+		ThreadRecordingHttpCallback httpCallback = new ThreadRecordingHttpCallback();
+		httpClient.createGet("http://localhost:" + port + "/testOk").completeOnNioThread(true).build().withHttpCallback(httpCallback).execute();
+		String threadName = httpCallback.thread.get(1, TimeUnit.SECONDS);
+		assertTrue(threadName.startsWith("HttpClient-nio-event-loop"), threadName);
+
+		httpCallback = new ThreadRecordingHttpCallback();
+		httpClient.createGet("http://localhost:" + port + "/testOk").build().withHttpCallback(httpCallback).execute();
+		threadName = httpCallback.thread.get(1, TimeUnit.SECONDS);
+		assertTrue(threadName.startsWith("HttpClient-HttpCallback"), threadName);
+	}
+
+	@Test
+	public void errorsShouldBeDeliveredOnTheNioThread() throws Exception {
+		httpClient = new TestingHttpClientFactory().setOption(ConfKeys.COMPLETE_ON_NIO_THREAD, true).create();
+		httpClient.start();
+
+		ThreadRecordingHttpCallback httpCallback = new ThreadRecordingHttpCallback();
+		httpClient.createGet("http://localhost:" + JettyIntegrationServer.findFreePort() + "/testOk").build().withHttpCallback(httpCallback).execute();
+
+		String threadName = httpCallback.thread.get(1, TimeUnit.SECONDS);
+		assertTrue(threadName.startsWith("HttpClient-nio-event-loop"), threadName);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+
+	private static class ThreadRecordingHttpCallback implements HttpCallback<String> {
+		private final CompletableFuture<String> thread = new CompletableFuture<>();
+
+		@Override
+		public void onCompleted(HttpResponse<String> httpResponse) {
+			thread.complete(Thread.currentThread().getName());
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			thread.complete(Thread.currentThread().getName());
+		}
+	}
+}
@@ -10,10 +10,12 @@ import com.king.platform.net.http.ConfKeys;
 import com.king.platform.net.http.HttpClient;
 import com.king.platform.net.http.HttpResponse;
 import com.king.platform.net.http.netty.NettyHttpClientBuilder;
+import com.king.platform.net.http.netty.ServerInfo;
 import com.king.platform.net.http.netty.eventbus.DefaultEventBus;
 import com.king.platform.net.http.netty.eventbus.Event;
 import com.king.platform.net.http.netty.metric.MetricCallback;
 import com.king.platform.net.http.netty.pool.ChannelPool;
+import com.king.platform.net.http.netty.pool.EventLoopChannelPool;
 import com.king.platform.net.http.netty.pool.NoChannelPool;
 import com.king.platform.net.http.netty.pool.PoolingChannelPool;
 import com.king.platform.net.http.netty.util.SystemTimeProvider;
@@ -29,11 +31,18 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 
 public class ConnectionPool {
 	IntegrationServer integrationServer;
@@ -65,14 +74,22 @@ public class ConnectionPool {
 
 
 	private void createHttpClient(boolean useConnectionPool) {
+		createHttpClient(useConnectionPool, 0);
+	}
+
+	private void createHttpClient(boolean useConnectionPool, int maxConnectionsPerServer) {
 		HashedWheelTimer cleanupTimer = new HashedWheelTimer();
 		SystemTimeProvider timeProvider = new SystemTimeProvider();
 
 		ChannelPool pool = new NoChannelPool();
 		if (useConnectionPool) {
-			pool = new PoolingChannelPool(cleanupTimer, timeProvider,  mock(MetricCallback.class));
+			pool = new PoolingChannelPool(cleanupTimer, timeProvider,  mock(MetricCallback.class), maxConnectionsPerServer, 100, 5000);
 		}
 
+		createHttpClient(pool);
+	}
+
+	private void createHttpClient(ChannelPool pool) {
 		NettyHttpClientBuilder nettyHttpClientBuilder = new NettyHttpClientBuilder()
 			.setNioThreads(2)
 			.setHttpCallbackExecutorThreads(2).setRootEventBus(rootEventBus);
@@ -178,6 +195,80 @@ public class ConnectionPool {
 
 	}
 
+	@Test
+	public void concurrentGetsWithMaxConnectionsPerServer() throws Exception {
+		AtomicInteger createdConnections = new AtomicInteger();
+		AtomicInteger reusedConnections = new AtomicInteger();
+		rootEventBus.subscribePermanently(Event.CREATED_CONNECTION, (serverInfo) -> createdConnections.incrementAndGet());
+		rootEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		createHttpClient(true, 2);
+
+		List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			futures.add(httpClient.createGet("http://localhost:" + port + "/testOk").build().execute());
+		}
+
+		for (CompletableFuture<HttpResponse<String>> future : futures) {
+			HttpResponse<String> response = future.get(5, TimeUnit.SECONDS);
+			assertEquals(okBody, response.getBody());
+			assertEquals(200, response.getStatusCode());
+		}
+
+		assertTrue(createdConnections.get() <= 2);
+		assertEquals(20, createdConnections.get() + reusedConnections.get());
+	}
+
+	@Test
+	public void concurrentGetsWithChannelPoolPerEventLoop() throws Exception {
+		AtomicInteger createdConnections = new AtomicInteger();
+		AtomicInteger reusedConnections = new AtomicInteger();
+		rootEventBus.subscribePermanently(Event.CREATED_CONNECTION, (serverInfo) -> createdConnections.incrementAndGet());
+		rootEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		createHttpClient(new EventLoopChannelPool(new HashedWheelTimer(), new SystemTimeProvider(), mock(MetricCallback.class), 2, 100, 5000));
+
+		for (int round = 0; round < 2; round++) {
+			List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				futures.add(httpClient.createGet("http://localhost:" + port + "/testOk").build().execute());
+			}
+
+			for (CompletableFuture<HttpResponse<String>> future : futures) {
+				HttpResponse<String> response = future.get(5, TimeUnit.SECONDS);
+				assertEquals(okBody, response.getBody());
+				assertEquals(200, response.getStatusCode());
+			}
+		}
+
+		assertTrue(createdConnections.get() <= 2);
+		assertEquals(40, createdConnections.get() + reusedConnections.get());
+	}
+
+	@Test
+	public void getsWithMinIdleConnectionsShouldReuseWarmedUpConnections() throws Exception {
+		AtomicInteger createdConnections = new AtomicInteger();
+		AtomicInteger reusedConnections = new AtomicInteger();
+		rootEventBus.subscribePermanently(Event.CREATED_CONNECTION, (serverInfo) -> createdConnections.incrementAndGet());
+		rootEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		MetricCallback metricCallback = mock(MetricCallback.class);
+		ChannelPool pool = new PoolingChannelPool(new HashedWheelTimer(), new SystemTimeProvider(), metricCallback);
+		pool.setMinIdleConnections(ServerInfo.buildFromUri("http://localhost:" + port), 2);
+		createHttpClient(pool);
+
+		verify(metricCallback, timeout(5000).times(2)).onServerPoolAddedConnection(eq("localhost"), anyInt());
+
+		for (int i = 0; i < 5; i++) {
+			HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/testOk").build().execute().get(5, TimeUnit.SECONDS);
+			assertEquals(okBody, response.getBody());
+			assertEquals(200, response.getStatusCode());
+		}
+
+		assertEquals(0, createdConnections.get());
+		assertEquals(5, reusedConnections.get());
+	}
+
 	private void validateExpectedEvents(List<Event> expectedEvents) {
 		List<RecordingEventBus.Interaction> filteredInteractions = rootEventBus.getFilteredInteractions(RecordingEventBus.InteractionType.TRIGGER);
 
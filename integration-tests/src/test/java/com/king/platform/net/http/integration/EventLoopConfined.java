@@ -0,0 +1,219 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.NioCallback;
+import com.king.platform.net.http.netty.TimeoutException;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventLoopConfined {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	private String okBody = "EVERYTHING IS OKAY!";
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		httpClient = new TestingHttpClientFactory()
+			.setChannelPool(null) //use the channel pool the client picks for confined requests
+			.setOption(ConfKeys.EVENT_LOOP_CONFINED_REQUESTS, true)
+			.create();
+		httpClient.start();
+
+	}
+
+	@Test
+	public void allNioCallbacksShouldHappenOnTheSameThread() throws Exception {
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+
+		for (int i = 0; i < 5; i++) {
+			ThreadRecordingNioCallback nioCallback = new ThreadRecordingNioCallback();
+			BlockingHttpCallback httpCallback = new BlockingHttpCallback();
+			httpClient.createGet("http://localhost:" + port + "/testOk").build().withHttpCallback(httpCallback).withNioCallback(nioCallback).execute();
+			httpCallback.waitForCompletion();
+
+			assertEquals(okBody, httpCallback.getBody());
+			assertTrue(nioCallback.completed.await(1, TimeUnit.SECONDS));
+			assertEquals(1, nioCallback.threads.size(), "Callbacks happened on " + nioCallback.threads);
+		}
+	}
+
+	@Test
+	public void redirectsShouldStayOnTheSameThread() throws Exception {
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.sendRedirect("/testOk");
+			}
+		}, "/redirect");
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+
+		ThreadRecordingNioCallback nioCallback = new ThreadRecordingNioCallback();
+		BlockingHttpCallback httpCallback = new BlockingHttpCallback();
+		httpClient.createGet("http://localhost:" + port + "/redirect").build().withHttpCallback(httpCallback).withNioCallback(nioCallback).execute();
+		httpCallback.waitForCompletion();
+
+		assertEquals(okBody, httpCallback.getBody());
+		assertTrue(nioCallback.completed.await(1, TimeUnit.SECONDS));
+		assertEquals(1, nioCallback.threads.size(), "Callbacks happened on " + nioCallback.threads);
+	}
+
+	@Test
+	public void idleGetShouldTriggerTimeout() throws Exception {
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+
+		BlockingHttpCallback httpCallback = new BlockingHttpCallback();
+		httpClient.createGet("http://localhost:" + port + "/testOk").idleTimeoutMillis(100).totalRequestTimeoutMillis(2000).build().withHttpCallback
+			(httpCallback).execute();
+		httpCallback.waitForCompletion();
+
+		assertTrue(httpCallback.getException() instanceof TimeoutException);
+	}
+
+	@Test
+	public void cancelShouldFailTheRequest() throws Exception {
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+
+		BlockingHttpCallback httpCallback = new BlockingHttpCallback();
+		CompletableFuture<HttpResponse<String>> future = httpClient.createGet("http://localhost:" + port + "/testOk").build().withHttpCallback
+			(httpCallback).execute();
+
+		Thread.sleep(100);
+		assertTrue(future.cancel(true));
+		httpCallback.waitForCompletion();
+
+		assertTrue(future.isCancelled());
+		assertNotNull(httpCallback.getException());
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+
+	private static class ThreadRecordingNioCallback implements NioCallback {
+		private final Set<String> threads = ConcurrentHashMap.newKeySet();
+		private final CountDownLatch completed = new CountDownLatch(1);
+
+		private void record() {
+			threads.add(Thread.currentThread().getName());
+		}
+
+		@Override
+		public void onConnecting() {
+			record();
+		}
+
+		@Override
+		public void onConnected() {
+			record();
+		}
+
+		@Override
+		public void onWroteHeaders() {
+			record();
+		}
+
+		@Override
+		public void onWroteContentProgressed(long progress, long total) {
+			record();
+		}
+
+		@Override
+		public void onWroteContentCompleted() {
+			record();
+		}
+
+		@Override
+		public void onReceivedStatus(HttpResponseStatus httpResponseStatus) {
+			record();
+		}
+
+		@Override
+		public void onReceivedHeaders(HttpHeaders httpHeaders) {
+			record();
+		}
+
+		@Override
+		public void onReceivedContentPart(int len, ByteBuf buffer) {
+			record();
+		}
+
+		@Override
+		public void onReceivedCompleted(HttpResponseStatus httpResponseStatus, HttpHeaders httpHeaders) {
+			record();
+			completed.countDown();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			record();
+		}
+	}
+}
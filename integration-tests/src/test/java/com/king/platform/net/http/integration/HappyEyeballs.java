@@ -0,0 +1,143 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.dns.CachingAddressResolverGroup;
+import com.king.platform.net.http.netty.dns.LookupResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HappyEyeballs {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private CachingAddressResolverGroup resolverGroup;
+	private int port;
+
+	private final String okBody = "EVERYTHING IS OKAY!";
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+	}
+
+	@Test
+	public void unreachableAddressShouldNotWaitForTheConnectTimeout() throws Exception {
+		int port = JettyIntegrationServer.findFreePort();
+
+		//a listener that never accepts, with a full accept queue the connects to it hang like to a black holed address
+		try (ServerSocket blackHole = new ServerSocket(); ServerSocket server = new ServerSocket()) {
+			blackHole.bind(new InetSocketAddress("127.0.0.1", port), 1);
+			List<Socket> queued = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				Socket socket = new Socket();
+				socket.connect(blackHole.getLocalSocketAddress(), 1000);
+				queued.add(socket);
+			}
+
+			server.bind(new InetSocketAddress("127.0.0.2", port));
+			Thread serverThread = new Thread(() -> respond(server));
+			serverThread.start();
+
+			createClient(Arrays.asList(InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2")));
+
+			long start = System.nanoTime();
+			HttpResponse<String> response = httpClient.createGet("http://service.stub:" + port + "/testOk").build().execute().get(10, TimeUnit
+				.SECONDS);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertEquals(okBody, response.getBody());
+			assertTrue(elapsedMillis < 2000, "The connection took " + elapsedMillis + " ms");
+
+			for (Socket socket : queued) {
+				socket.close();
+			}
+		}
+	}
+
+	@Test
+	public void refusedAddressShouldTryTheNextAddress() throws Exception {
+		int closedPort = JettyIntegrationServer.findFreePort();
+		createClient(Arrays.asList(InetAddress.getByName("127.0.0.2"), InetAddress.getLoopbackAddress()));
+
+		HttpResponse<String> response = httpClient.createGet("http://service.stub:" + port + "/testOk").build().execute().get(5, TimeUnit.SECONDS);
+		assertEquals(okBody, response.getBody());
+
+		ExecutionException executionException = assertThrows(ExecutionException.class, () -> httpClient.createGet("http://service.stub:" +
+			closedPort + "/testOk").build().execute().get(5, TimeUnit.SECONDS));
+		assertTrue(executionException.getCause() instanceof ConnectException, String.valueOf(executionException.getCause()));
+	}
+
+	private void respond(ServerSocket server) {
+		try (Socket socket = server.accept()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			String line;
+			while ((line = reader.readLine()) != null && !line.isEmpty()) {
+			}
+
+			String response = "HTTP/1.1 200 OK\r\nContent-Length: " + okBody.length() + "\r\nConnection: close\r\n\r\n" + okBody;
+			socket.getOutputStream().write(response.getBytes(StandardCharsets.US_ASCII));
+			socket.getOutputStream().flush();
+		} catch (IOException e) {
+		}
+	}
+
+	private void createClient(List<InetAddress> addresses) {
+		resolverGroup = new CachingAddressResolverGroup((hostname, executor) -> CompletableFuture.completedFuture(new LookupResult(addresses,
+			60_000)));
+
+		httpClient = new TestingHttpClientFactory()
+			.setOption(ConfKeys.DNS_RESOLVER, resolverGroup)
+			.setOption(ConfKeys.HAPPY_EYEBALLS, true)
+			.setOption(ConfKeys.HAPPY_EYEBALLS_ATTEMPT_DELAY_MILLIS, 100)
+			.setOption(ConfKeys.CONNECT_TIMEOUT_MILLIS, 5000)
+			.create();
+		httpClient.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+		resolverGroup.close();
+	}
+}
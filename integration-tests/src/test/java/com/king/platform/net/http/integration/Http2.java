@@ -0,0 +1,269 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.eventbus.Event;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.*;
+import io.netty.handler.ssl.*;
+import io.netty.util.AttributeKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Http2 {
+	private static final AttributeKey<AtomicInteger> OPEN_STREAMS = AttributeKey.valueOf("openStreams");
+
+	private NioEventLoopGroup serverGroup;
+	private Channel serverChannel;
+	private HttpClient httpClient;
+	private int port;
+	private AtomicInteger acceptedConnections = new AtomicInteger();
+	private AtomicInteger maxOpenStreams = new AtomicInteger();
+	private AtomicInteger createdConnections = new AtomicInteger();
+	private AtomicInteger reusedConnections = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		port = JettyIntegrationServer.findFreePort();
+		serverGroup = new NioEventLoopGroup(1);
+	}
+
+	/**
+	 * Starts an HTTP/2 only server which answers every request with its method, path and body after the delay.
+	 */
+	private void startServer(SslContext sslContext, long maxConcurrentStreams, long responseDelayMillis) throws Exception {
+		ChannelInitializer<Channel> streamInitializer = new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+				ch.pipeline().addLast(new HttpObjectAggregator(1024 * 1024));
+				ch.pipeline().addLast(new SimpleChannelInboundHandler<FullHttpRequest>() {
+					@Override
+					protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+						AtomicInteger openStreams = ctx.channel().parent().attr(OPEN_STREAMS).get();
+						maxOpenStreams.accumulateAndGet(openStreams.incrementAndGet(), Math::max);
+
+						String body = request.method() + " " + request.uri() + " " + request.content().toString(StandardCharsets.UTF_8);
+						ctx.executor().schedule(() -> {
+							openStreams.decrementAndGet();
+							FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+								Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+							response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+							ctx.writeAndFlush(response);
+						}, responseDelayMillis, TimeUnit.MILLISECONDS);
+					}
+				});
+			}
+		};
+
+		serverChannel = new ServerBootstrap()
+			.group(serverGroup)
+			.channel(NioServerSocketChannel.class)
+			.childHandler(new ChannelInitializer<SocketChannel>() {
+				@Override
+				protected void initChannel(SocketChannel ch) throws Exception {
+					acceptedConnections.incrementAndGet();
+					ch.attr(OPEN_STREAMS).set(new AtomicInteger());
+					if (sslContext != null) {
+						ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+					}
+					ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams
+						(maxConcurrentStreams)).build());
+					ch.pipeline().addLast(new Http2MultiplexHandler(streamInitializer));
+				}
+			})
+			.bind(port).sync().channel();
+	}
+
+	private SslContext createServerSslContext() throws Exception {
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+		try (InputStream inputStream = getClass().getResourceAsStream("/keystore.jks")) {
+			keyStore.load(inputStream, "changeme".toCharArray());
+		}
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, "changeme".toCharArray());
+
+		return SslContextBuilder.forServer(keyManagerFactory)
+			.applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+				ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE, ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+				ApplicationProtocolNames.HTTP_2))
+			.build();
+	}
+
+	private HttpClient createHttpClient(TestingHttpClientFactory testingHttpClientFactory) {
+		RecordingEventBus recordingEventBus = testingHttpClientFactory.getRecordingEventBus();
+		recordingEventBus.subscribePermanently(Event.CREATED_CONNECTION, (serverInfo) -> createdConnections.incrementAndGet());
+		recordingEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		HttpClient httpClient = testingHttpClientFactory.create();
+		httpClient.start();
+		return httpClient;
+	}
+
+	private HttpClient createPriorKnowledgeHttpClient() {
+		return createHttpClient(new TestingHttpClientFactory()
+			.useChannelPool()
+			.setOption(ConfKeys.HTTP2_PRIOR_KNOWLEDGE, true));
+	}
+
+	@Test
+	public void concurrentRequestsShouldBeMultiplexedOnOneConnection() throws Exception {
+		startServer(null, 100, 200);
+		httpClient = createPriorKnowledgeHttpClient();
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/first").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+		assertEquals("GET /first ", response.getBody());
+
+		List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(httpClient.createGet("http://localhost:" + port + "/stream" + i).build().execute());
+		}
+
+		for (int i = 0; i < 10; i++) {
+			response = futures.get(i).get(1, TimeUnit.SECONDS);
+			assertEquals(200, response.getStatusCode());
+			assertEquals("GET /stream" + i + " ", response.getBody());
+		}
+
+		assertEquals(1, acceptedConnections.get());
+		assertEquals(1, createdConnections.get());
+		assertEquals(10, reusedConnections.get());
+		assertEquals(10, maxOpenStreams.get());
+	}
+
+	@Test
+	public void postBodyShouldBeSentOnTheStream() throws Exception {
+		startServer(null, 100, 0);
+		httpClient = createPriorKnowledgeHttpClient();
+
+		HttpResponse<String> response = httpClient.createPost("http://localhost:" + port + "/post")
+			.content("Hello World".getBytes(StandardCharsets.UTF_8))
+			.build()
+			.execute()
+			.get(1, TimeUnit.SECONDS);
+
+		assertEquals(200, response.getStatusCode());
+		assertEquals("POST /post Hello World", response.getBody());
+	}
+
+	@Test
+	public void headResponseShouldNotHaveABody() throws Exception {
+		startServer(null, 100, 0);
+		httpClient = createPriorKnowledgeHttpClient();
+
+		HttpResponse<String> response = httpClient.createHead("http://localhost:" + port + "/head").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+
+		response = httpClient.createGet("http://localhost:" + port + "/get").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals("GET /get ", response.getBody());
+		assertEquals(1, acceptedConnections.get());
+	}
+
+	@Test
+	public void maxConcurrentStreamsOfTheServerShouldBeRespected() throws Exception {
+		startServer(null, 2, 200);
+		httpClient = createPriorKnowledgeHttpClient();
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/first").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+
+		List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			futures.add(httpClient.createGet("http://localhost:" + port + "/stream" + i).build().execute());
+		}
+
+		for (CompletableFuture<HttpResponse<String>> future : futures) {
+			assertEquals(200, future.get(1, TimeUnit.SECONDS).getStatusCode());
+		}
+
+		assertTrue(acceptedConnections.get() > 1);
+		assertEquals(2, maxOpenStreams.get());
+	}
+
+	@Test
+	public void httpsShouldNegotiateHttp2() throws Exception {
+		startServer(createServerSslContext(), 100, 0);
+		httpClient = createHttpClient(new TestingHttpClientFactory()
+			.useChannelPool()
+			.setOption(ConfKeys.SSL_ALLOW_ALL_CERTIFICATES, true)
+			.setOption(ConfKeys.USE_HTTP2, true));
+
+		for (int i = 0; i < 3; i++) {
+			HttpResponse<String> response = httpClient.createGet("https://localhost:" + port + "/secure" + i).build().execute().get(1, TimeUnit.SECONDS);
+			assertEquals(200, response.getStatusCode());
+			assertEquals("GET /secure" + i + " ", response.getBody());
+		}
+
+		assertEquals(1, acceptedConnections.get());
+	}
+
+	@Test
+	public void httpsShouldFallBackToHttp11WhenTheServerDoesNotSupportHttp2() throws Exception {
+		IntegrationServer integrationServer = new JettyIntegrationServer();
+		integrationServer.startHttps();
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(req.getProtocol());
+				resp.getWriter().flush();
+			}
+		}, "/protocol");
+
+		try {
+			httpClient = createHttpClient(new TestingHttpClientFactory()
+				.setOption(ConfKeys.SSL_ALLOW_ALL_CERTIFICATES, true)
+				.setOption(ConfKeys.USE_HTTP2, true));
+
+			HttpResponse<String> response = httpClient.createGet("https://localhost:" + integrationServer.getPort() + "/protocol").build().execute()
+				.get(1, TimeUnit.SECONDS);
+			assertEquals(200, response.getStatusCode());
+			assertEquals("HTTP/1.1", response.getBody());
+		} finally {
+			integrationServer.shutdown();
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		if (serverChannel != null) {
+			serverChannel.close().sync();
+		}
+		serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+		if (httpClient != null) {
+			httpClient.shutdown();
+		}
+	}
+}
@@ -7,6 +7,7 @@ package com.king.platform.net.http.integration;
 
 
 import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
 import com.king.platform.net.http.netty.NettyHttpClientBuilder;
 import com.king.platform.net.http.netty.eventbus.DefaultEventBus;
 import com.king.platform.net.http.netty.eventbus.Event;
@@ -19,6 +20,8 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -153,6 +156,57 @@ public class KeepAlive {
 
 	}
 
+	@Test
+	public void connectionShouldNotPoolIfServerKeepAliveMaxIsReached() throws Exception {
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.setHeader("connection", "keep-alive");
+				resp.setHeader("keep-alive", "timeout=5, max=0");
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+
+		BlockingHttpCallback httpCallback = new BlockingHttpCallback();
+		httpClient.createGet("http://localhost:" + port + "/testOk").keepAlive(true).build().withHttpCallback(httpCallback).execute();
+		httpCallback.waitForCompletion();
+
+		assertTrue(recordingEventBus.hasTriggered(Event.CLOSED_CONNECTION));
+		assertFalse(recordingEventBus.hasTriggered(Event.POOLED_CONNECTION));
+
+		assertEquals(okBody, httpCallback.getBody());
+		assertEquals(200, httpCallback.getStatusCode());
+	}
+
+	@Test
+	public void connectionShouldNotBeReusedAfterServerKeepAliveTimeout() throws Exception {
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.setHeader("connection", "keep-alive");
+				resp.setHeader("keep-alive", "timeout=1");
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+
+		AtomicInteger reusedConnections = new AtomicInteger();
+		recordingEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		httpClient.createGet("http://localhost:" + port + "/testOk").keepAlive(true).build().execute().get(1, TimeUnit.SECONDS);
+		httpClient.createGet("http://localhost:" + port + "/testOk").keepAlive(true).build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(1, reusedConnections.get());
+
+		Thread.sleep(600);  //the server timeout minus the safety margin has passed
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/testOk").keepAlive(true).build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(okBody, response.getBody());
+		assertEquals(1, reusedConnections.get());
+	}
+
 	@AfterEach
 	public void tearDown() throws Exception {
 		integrationServer.shutdown();
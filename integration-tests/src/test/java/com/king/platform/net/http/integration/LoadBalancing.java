@@ -0,0 +1,125 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.ServerInfo;
+import com.king.platform.net.http.netty.pool.Backend;
+import com.king.platform.net.http.netty.pool.LoadBalancer;
+import com.king.platform.net.http.netty.pool.LoadBalancingPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadBalancing {
+	private static final String HOST = "http://api.internal:8080";
+
+	private final List<IntegrationServer> integrationServers = new ArrayList<>();
+	private final List<AtomicInteger> requestCounts = new ArrayList<>();
+	private final Set<String> hostHeaders = ConcurrentHashMap.newKeySet();
+	private HttpClient httpClient;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			AtomicInteger requestCount = new AtomicInteger();
+			int delayMillis = i == 0 ? 200 : 0;
+
+			IntegrationServer integrationServer = new JettyIntegrationServer();
+			integrationServer.start();
+			integrationServer.addServlet(new HttpServlet() {
+				@Override
+				protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+					requestCount.incrementAndGet();
+					hostHeaders.add(req.getHeader("Host"));
+					if (req.getParameter("slow") != null) {
+						try {
+							Thread.sleep(delayMillis);
+						} catch (InterruptedException e) {
+						}
+					}
+					resp.getWriter().write("OK");
+					resp.getWriter().flush();
+				}
+			}, "/testOk");
+
+			integrationServers.add(integrationServer);
+			requestCounts.add(requestCount);
+		}
+	}
+
+	private LoadBalancer startClient(LoadBalancingPolicy policy) {
+		List<String> backendUris = new ArrayList<>();
+		for (IntegrationServer integrationServer : integrationServers) {
+			backendUris.add("http://localhost:" + integrationServer.getPort());
+		}
+
+		LoadBalancer loadBalancer = new LoadBalancer().addBackends(HOST, policy, backendUris.toArray(new String[0]));
+		httpClient = new TestingHttpClientFactory()
+			.useChannelPool()
+			.setOption(ConfKeys.LOAD_BALANCER, loadBalancer)
+			.create();
+		httpClient.start();
+		return loadBalancer;
+	}
+
+	@Test
+	public void roundRobinShouldSpreadTheRequestsEvenly() throws Exception {
+		startClient(LoadBalancingPolicy.roundRobin());
+
+		for (int i = 0; i < 9; i++) {
+			HttpResponse<String> response = httpClient.createGet(HOST + "/testOk").build().execute().get(5, TimeUnit.SECONDS);
+			assertEquals(200, response.getStatusCode());
+			assertEquals("OK", response.getBody());
+		}
+
+		for (AtomicInteger requestCount : requestCounts) {
+			assertEquals(3, requestCount.get());
+		}
+		assertEquals(1, hostHeaders.size());
+		assertTrue(hostHeaders.contains("api.internal:8080"), "Host headers " + hostHeaders);
+	}
+
+	@Test
+	public void powerOfTwoChoicesShouldAvoidTheSlowBackend() throws Exception {
+		LoadBalancer loadBalancer = startClient(LoadBalancingPolicy.powerOfTwoChoices());
+
+		for (int i = 0; i < 30; i++) {
+			HttpResponse<String> response = httpClient.createGet(HOST + "/testOk?slow=true").build().execute().get(5, TimeUnit.SECONDS);
+			assertEquals(200, response.getStatusCode());
+		}
+
+		assertTrue(requestCounts.get(0).get() <= 2, "The slow backend got " + requestCounts.get(0) + " requests");
+
+		Backend slow = loadBalancer.getBackends(ServerInfo.buildFromUri(HOST)).get(0);
+		assertTrue(slow.getLatencyMillis() == 0 || slow.getLatencyMillis() >= 200, "Latency of the slow backend " + slow.getLatencyMillis());
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		for (IntegrationServer integrationServer : integrationServers) {
+			integrationServer.shutdown();
+		}
+		httpClient.shutdown();
+	}
+}
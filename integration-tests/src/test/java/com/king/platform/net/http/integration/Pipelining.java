@@ -0,0 +1,165 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.eventbus.Event;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.slf4j.LoggerFactory.getLogger;
+
+public class Pipelining {
+	private final Logger logger = getLogger(getClass());
+
+	private HttpClient httpClient;
+	private int port;
+	private ServerSocket serverSocket;
+	private AtomicInteger acceptedConnections = new AtomicInteger();
+	private AtomicInteger reusedConnections = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		port = JettyIntegrationServer.findFreePort();
+		serverSocket = new ServerSocket(port);
+	}
+
+	private void startServer(int answeredPipelinedRequests) {
+		new Thread(() -> {
+			try {
+				Socket socket = serverSocket.accept();
+				acceptedConnections.incrementAndGet();
+
+				writeResponse(socket.getOutputStream(), readRequestPath(socket.getInputStream()));  //the request that opens the connection
+
+				List<String> paths = new ArrayList<>();
+				for (int i = 0; i < 3; i++) {  //all three requests are read before the first one is answered
+					paths.add(readRequestPath(socket.getInputStream()));
+				}
+
+				for (int i = 0; i < answeredPipelinedRequests; i++) {
+					writeResponse(socket.getOutputStream(), paths.get(i));
+				}
+
+				if (answeredPipelinedRequests < paths.size()) {
+					socket.close();
+				}
+
+				while (true) {  //connections opened for retried requests
+					Socket retrySocket = serverSocket.accept();
+					acceptedConnections.incrementAndGet();
+					writeResponse(retrySocket.getOutputStream(), readRequestPath(retrySocket.getInputStream()));
+				}
+			} catch (IOException e) {
+				logger.trace("Server socket closed", e);
+			}
+		}).start();
+	}
+
+	private HttpClient createHttpClient() {
+		TestingHttpClientFactory testingHttpClientFactory = new TestingHttpClientFactory()
+			.useChannelPool()
+			.setMaxPipelinedRequests("http://localhost:" + port, 3);
+
+		RecordingEventBus recordingEventBus = testingHttpClientFactory.getRecordingEventBus();
+		recordingEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		HttpClient httpClient = testingHttpClientFactory.create();
+		httpClient.start();
+		return httpClient;
+	}
+
+	@Test
+	public void pipelinedRequestsShouldGetTheirResponsesInOrder() throws Exception {
+		startServer(3);
+		httpClient = createHttpClient();
+
+		assertEquals("/first", get("/first").get(1, TimeUnit.SECONDS).getBody());
+
+		List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			futures.add(get("/pipelined" + i));
+		}
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("/pipelined" + i, futures.get(i).get(1, TimeUnit.SECONDS).getBody());
+		}
+
+		assertEquals(1, acceptedConnections.get());
+		assertEquals(3, reusedConnections.get());
+	}
+
+	@Test
+	public void pipelinedRequestsShouldBeRetriedWhenTheConnectionIsClosed() throws Exception {
+		startServer(1);
+		httpClient = createHttpClient();
+
+		assertEquals("/first", get("/first").get(1, TimeUnit.SECONDS).getBody());
+
+		List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			futures.add(get("/pipelined" + i));
+		}
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("/pipelined" + i, futures.get(i).get(1, TimeUnit.SECONDS).getBody());
+		}
+
+		assertEquals(3, acceptedConnections.get());
+	}
+
+	private CompletableFuture<HttpResponse<String>> get(String path) {
+		return httpClient.createGet("http://localhost:" + port + path).build().execute();
+	}
+
+	private String readRequestPath(InputStream inputStream) throws IOException {
+		StringBuilder request = new StringBuilder();
+		while (request.indexOf("\r\n\r\n") < 0) {
+			int read = inputStream.read();
+			if (read == -1) {
+				throw new IOException("Client closed the connection");
+			}
+			request.append((char) read);
+		}
+
+		String requestLine = request.substring(0, request.indexOf("\r\n"));
+		return requestLine.split(" ")[1];
+	}
+
+	private void writeResponse(OutputStream outputStream, String body) throws IOException {
+		outputStream.write(("HTTP/1.1 200 OK\r\n" +
+			"Content-Length: " + body.length() + "\r\n" +
+			"Connection: keep-alive\r\n" +
+			"\r\n" +
+			body).getBytes(StandardCharsets.ISO_8859_1));
+		outputStream.flush();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		serverSocket.close();
+		if (httpClient != null) {
+			httpClient.shutdown();
+		}
+	}
+}
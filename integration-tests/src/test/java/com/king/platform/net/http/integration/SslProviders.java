@@ -0,0 +1,83 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import io.netty.handler.ssl.SslProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SslProviders {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	private final String okBody = "EVERYTHING IS OKAY!";
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.startHttps();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+	}
+
+	@Test
+	public void openSslShouldWorkOrFallBackToTheJdkProvider() throws Exception {
+		startClient(SslProvider.OPENSSL);
+
+		HttpResponse<String> response = httpClient.createGet("https://localhost:" + port + "/testOk").build().execute().get(5, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+		assertEquals(okBody, response.getBody());
+	}
+
+	@Test
+	public void referenceCountedOpenSslShouldWorkOrFallBackToTheJdkProvider() throws Exception {
+		startClient(SslProvider.OPENSSL_REFCNT);
+
+		for (int i = 0; i < 3; i++) {
+			HttpResponse<String> response = httpClient.createGet("https://localhost:" + port + "/testOk").build().execute().get(5, TimeUnit
+				.SECONDS);
+			assertEquals(okBody, response.getBody());
+		}
+	}
+
+	private void startClient(SslProvider sslProvider) {
+		httpClient = new TestingHttpClientFactory()
+			.setOption(ConfKeys.SSL_PROVIDER, sslProvider)
+			.setOption(ConfKeys.NETTY_TRACE_LOGS, false)
+			.create();
+		httpClient.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		if (httpClient != null) {
+			httpClient.shutdown();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.metric.MetricCallback;
+import com.king.platform.net.http.netty.metric.RecordedTimeStamps;
+import io.netty.handler.ssl.SslProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SslSessionResumption {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	private final String okBody = "EVERYTHING IS OKAY!";
+	private final List<Boolean> handshakes = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.startHttps();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/testOk");
+	}
+
+	@Test
+	public void newConnectionsShouldResumeTheSession() throws Exception {
+		startClient(SslProvider.JDK);
+		assertResumedSessions();
+	}
+
+	@Test
+	public void newConnectionsShouldResumeTheSessionWithOpenSsl() throws Exception {
+		startClient(SslProvider.OPENSSL);  //falls back to the JDK provider when OpenSSL is not available
+		assertResumedSessions();
+	}
+
+	private void startClient(SslProvider sslProvider) {
+		httpClient = new TestingHttpClientFactory()
+			.setMetricCallback(new HandshakeRecordingMetricCallback())
+			.setOption(ConfKeys.SSL_PROVIDER, sslProvider)
+			.create();
+		httpClient.start();
+	}
+
+	private void assertResumedSessions() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			HttpResponse<String> response = httpClient.createGet("https://localhost:" + port + "/testOk").build().execute().get(5, TimeUnit
+				.SECONDS);
+			assertEquals(okBody, response.getBody());
+		}
+
+		assertEquals(3, handshakes.size(), "Handshakes " + handshakes);
+		assertFalse(handshakes.get(0), "The first handshake can't resume a session");
+		assertTrue(handshakes.get(1), "Handshakes " + handshakes);
+		assertTrue(handshakes.get(2), "Handshakes " + handshakes);
+	}
+
+	@Test
+	public void handshakeShouldTimeOut() throws Exception {
+		httpClient = new TestingHttpClientFactory()
+			.setMetricCallback(new HandshakeRecordingMetricCallback())
+			.setOption(ConfKeys.SSL_HANDSHAKE_TIMEOUT_MILLIS, 200)
+			.create();
+		httpClient.start();
+
+		try (ServerSocket silentServer = new ServerSocket(0)) {
+			Thread acceptor = new Thread(() -> {
+				try (Socket socket = silentServer.accept()) {
+					Thread.sleep(5000);
+				} catch (IOException | InterruptedException e) {
+				}
+			});
+			acceptor.setDaemon(true);
+			acceptor.start();
+
+			long start = System.currentTimeMillis();
+			ExecutionException exception = assertThrows(ExecutionException.class, () -> httpClient.createGet("https://localhost:" + silentServer
+				.getLocalPort() + "/testOk").idleTimeoutMillis(5000).build().execute().get(5, TimeUnit.SECONDS));
+
+			assertNotNull(exception.getCause());
+			assertTrue(System.currentTimeMillis() - start < 3000, "The handshake failed after " + (System.currentTimeMillis() - start) + " ms");
+			assertTrue(handshakes.isEmpty());
+			acceptor.interrupt();
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+
+	private class HandshakeRecordingMetricCallback implements MetricCallback {
+		@Override
+		public void onSslHandshake(String host, boolean resumed) {
+			handshakes.add(resumed);
+		}
+
+		@Override
+		public void onClosedConnectionTo(String host) {
+		}
+
+		@Override
+		public void onCreatedConnectionTo(String host) {
+		}
+
+		@Override
+		public void onReusedConnectionTo(String host) {
+		}
+
+		@Override
+		public void onError(String host, RecordedTimeStamps timeStampRecorder) {
+		}
+
+		@Override
+		public void onCompletedRequest(String host, RecordedTimeStamps recordedTimeStamps) {
+		}
+
+		@Override
+		public void onCreatedServerPool(String host) {
+		}
+
+		@Override
+		public void onRemovedServerPool(String host) {
+		}
+
+		@Override
+		public void onServerPoolClosedConnection(String host, int poolSize) {
+		}
+
+		@Override
+		public void onServerPoolAddedConnection(String host, int poolSize) {
+		}
+	}
+}
@@ -0,0 +1,150 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ConfKeys;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.ConnectionClosedException;
+import com.king.platform.net.http.netty.eventbus.Event;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+public class StaleConnection {
+	private final Logger logger = getLogger(getClass());
+
+	private HttpClient httpClient;
+	private int port;
+	private ServerSocket serverSocket;
+	private AtomicInteger acceptedConnections = new AtomicInteger();
+	private AtomicInteger createdConnections = new AtomicInteger();
+	private AtomicInteger reusedConnections = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		port = JettyIntegrationServer.findFreePort();
+		serverSocket = new ServerSocket(port);
+
+		new Thread(() -> {
+			try {
+				Socket firstSocket = serverSocket.accept();  //answers the first request and closes the connection on the second one
+				acceptedConnections.incrementAndGet();
+				readRequestHeaders(firstSocket.getInputStream());
+				writeResponse(firstSocket.getOutputStream());
+				readRequestHeaders(firstSocket.getInputStream());
+				firstSocket.close();
+
+				Socket secondSocket = serverSocket.accept();
+				acceptedConnections.incrementAndGet();
+				readRequestHeaders(secondSocket.getInputStream());
+				writeResponse(secondSocket.getOutputStream());
+			} catch (IOException e) {
+				logger.trace("Server socket closed", e);
+			}
+		}).start();
+	}
+
+	private HttpClient createHttpClient(boolean retryIdempotentRequests) {
+		TestingHttpClientFactory testingHttpClientFactory = new TestingHttpClientFactory()
+			.useChannelPool()
+			.setOption(ConfKeys.RETRY_IDEMPOTENT_REQUESTS_ON_STALE_CONNECTION, retryIdempotentRequests);
+
+		RecordingEventBus recordingEventBus = testingHttpClientFactory.getRecordingEventBus();
+		recordingEventBus.subscribePermanently(Event.CREATED_CONNECTION, (serverInfo) -> createdConnections.incrementAndGet());
+		recordingEventBus.subscribePermanently(Event.REUSED_CONNECTION, (serverInfo) -> reusedConnections.incrementAndGet());
+
+		HttpClient httpClient = testingHttpClientFactory.create();
+		httpClient.start();
+		return httpClient;
+	}
+
+	@Test
+	public void idempotentRequestOnStaleConnectionShouldBeRetried() throws Exception {
+		httpClient = createHttpClient(true);
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+
+		response = httpClient.createGet("http://localhost:" + port + "/").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+		assertEquals("Hello World", response.getBody());
+
+		assertEquals(2, acceptedConnections.get());
+		assertEquals(2, createdConnections.get());
+		assertEquals(1, reusedConnections.get());
+	}
+
+	@Test
+	public void nonIdempotentRequestOnStaleConnectionShouldFail() throws Exception {
+		httpClient = createHttpClient(true);
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+
+		ExecutionException exception = assertThrows(ExecutionException.class, () -> httpClient.createPost("http://localhost:" + port + "/").build()
+			.execute().get(1, TimeUnit.SECONDS));
+		assertTrue(exception.getCause() instanceof ConnectionClosedException);
+		assertEquals(1, acceptedConnections.get());
+	}
+
+	@Test
+	public void staleConnectionShouldNotBeRetriedByDefault() throws Exception {
+		httpClient = createHttpClient(false);
+
+		HttpResponse<String> response = httpClient.createGet("http://localhost:" + port + "/").build().execute().get(1, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+
+		ExecutionException exception = assertThrows(ExecutionException.class, () -> httpClient.createGet("http://localhost:" + port + "/").build()
+			.execute().get(1, TimeUnit.SECONDS));
+		assertTrue(exception.getCause() instanceof ConnectionClosedException);
+		assertEquals(1, acceptedConnections.get());
+	}
+
+	private void readRequestHeaders(InputStream inputStream) throws IOException {
+		int matched = 0;
+		byte[] endOfHeaders = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+		while (matched < endOfHeaders.length) {
+			int read = inputStream.read();
+			if (read == -1) {
+				throw new IOException("Client closed the connection");
+			}
+			matched = read == endOfHeaders[matched] ? matched + 1 : (read == endOfHeaders[0] ? 1 : 0);
+		}
+	}
+
+	private void writeResponse(OutputStream outputStream) throws IOException {
+		outputStream.write(("HTTP/1.1 200 OK\r\n" +
+			"Content-Length: 11\r\n" +
+			"Connection: keep-alive\r\n" +
+			"\r\n" +
+			"Hello World").getBytes(StandardCharsets.ISO_8859_1));
+		outputStream.flush();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		serverSocket.close();
+		if (httpClient != null) {
+			httpClient.shutdown();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.netty.request.StreamingHttpBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamedRequestBody {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+
+	private String okBody = "EVERYTHING IS OKAY!";
+	private byte[] content;
+	private AtomicReference<byte[]> receivedBody;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		content = new byte[4 * 1024 * 1024];
+		new Random().nextBytes(content);
+		receivedBody = new AtomicReference<>();
+
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				InputStream inputStream = req.getInputStream();
+				byte[] data = new byte[4096];
+				int bytesRead;
+				while ((bytesRead = inputStream.read(data, 0, data.length)) >= 0) {
+					body.write(data, 0, bytesRead);
+				}
+				receivedBody.set(body.toByteArray());
+
+				resp.getWriter().write(okBody);
+				resp.getWriter().flush();
+			}
+		}, "/upload");
+
+		httpClient = new TestingHttpClientFactory().create();
+		httpClient.start();
+	}
+
+	@Test
+	public void producedChunksShouldBeSent() throws Exception {
+		StreamingHttpBody httpBody = new StreamingHttpBody("application/octet-stream", StandardCharsets.UTF_8);
+		CompletableFuture<HttpResponse<String>> future = httpClient.createPost("http://localhost:" + port + "/upload").content(httpBody).build()
+			.execute();
+
+		int chunkSize = 16 * 1024;
+		for (int offset = 0; offset < content.length; offset += chunkSize) {
+			httpBody.write(ByteBuffer.wrap(content, offset, chunkSize)).get(5, TimeUnit.SECONDS);
+		}
+		httpBody.complete();
+
+		HttpResponse<String> response = future.get(5, TimeUnit.SECONDS);
+		assertEquals(200, response.getStatusCode());
+		assertEquals(okBody, response.getBody());
+		assertArrayEquals(content, receivedBody.get());
+	}
+
+	@Test
+	public void slowProducerShouldNotFailTheRequest() throws Exception {
+		StreamingHttpBody httpBody = new StreamingHttpBody("text/plain", StandardCharsets.UTF_8);
+		CompletableFuture<HttpResponse<String>> future = httpClient.createPost("http://localhost:" + port + "/upload").content(httpBody).build()
+			.execute();
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5; i++) {
+			Thread.sleep(50);
+			String part = "part" + i;
+			expected.append(part);
+			httpBody.write(ByteBuffer.wrap(part.getBytes(StandardCharsets.UTF_8))).get(5, TimeUnit.SECONDS);
+		}
+		httpBody.complete();
+
+		assertEquals(200, future.get(5, TimeUnit.SECONDS).getStatusCode());
+		assertEquals(expected.toString(), new String(receivedBody.get(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void failedProducerShouldFailTheRequest() throws Exception {
+		StreamingHttpBody httpBody = new StreamingHttpBody("text/plain", StandardCharsets.UTF_8);
+		CompletableFuture<HttpResponse<String>> future = httpClient.createPost("http://localhost:" + port + "/upload").content(httpBody).build()
+			.execute();
+
+		httpBody.write(ByteBuffer.wrap(okBody.getBytes(StandardCharsets.UTF_8))).get(5, TimeUnit.SECONDS);
+		IOException failure = new IOException("The upload was aborted");
+		httpBody.fail(failure);
+
+		ExecutionException executionException = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+		assertSame(failure, executionException.getCause());
+	}
+
+	@Test
+	public void failedRequestShouldFailTheWrites() throws Exception {
+		int closedPort = JettyIntegrationServer.findFreePort();
+		StreamingHttpBody httpBody = new StreamingHttpBody("text/plain", StandardCharsets.UTF_8);
+		CompletableFuture<HttpResponse<String>> future = httpClient.createPost("http://localhost:" + closedPort + "/upload").content(httpBody).build()
+			.execute();
+
+		CompletableFuture<Void> write = httpBody.write(ByteBuffer.wrap(okBody.getBytes(StandardCharsets.UTF_8)));
+
+		ExecutionException executionException = assertThrows(ExecutionException.class, () -> write.get(5, TimeUnit.SECONDS));
+		assertTrue(executionException.getCause() instanceof ConnectException, String.valueOf(executionException.getCause()));
+		assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+}
@@ -0,0 +1,167 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.ByteArrayResponseBodyConsumer;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import com.king.platform.net.http.ResponseBodyPublisher;
+import com.king.platform.net.http.ResponseBodySubscriber;
+import com.king.platform.net.http.ResponseBodySubscription;
+import com.king.platform.net.http.netty.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamedResponseBody {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+	private byte[] content;
+	private Set<Integer> remotePorts;
+	private ExecutorService subscriberExecutor;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		content = new byte[4 * 1024 * 1024];
+		new Random().nextBytes(content);
+		remotePorts = ConcurrentHashMap.newKeySet();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				remotePorts.add(req.getRemotePort());
+				resp.setContentLength(content.length);
+				resp.getOutputStream().write(content);
+				resp.getOutputStream().flush();
+			}
+		}, "/content");
+
+		httpClient = new TestingHttpClientFactory().useChannelPool().create();
+		httpClient.start();
+
+		subscriberExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	@Test
+	public void slowSubscriberShouldReceiveTheWholeBody() throws Exception {
+		ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+		CompletableFuture<HttpResponse<ResponseBodyPublisher>> future = httpClient.createGet("http://localhost:" + port + "/content")
+			.idleTimeoutMillis(2000).build(() -> publisher).execute();
+
+		SlowSubscriber subscriber = new SlowSubscriber();
+		publisher.subscribe(subscriber);
+
+		assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+		assertNull(subscriber.error);
+		assertEquals(Md5Util.getChecksum(content), Md5Util.getChecksum(subscriber.body.toByteArray()));
+		assertEquals(200, future.get(1, TimeUnit.SECONDS).getStatusCode());
+	}
+
+	@Test
+	public void pooledConnectionShouldBeReadingAfterAStreamedBody() throws Exception {
+		ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+		CompletableFuture<HttpResponse<ResponseBodyPublisher>> future = httpClient.createGet("http://localhost:" + port + "/content")
+			.idleTimeoutMillis(2000).build(() -> publisher).execute();
+		SlowSubscriber subscriber = new SlowSubscriber();
+		publisher.subscribe(subscriber);
+		assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+		future.get(1, TimeUnit.SECONDS);
+
+		HttpResponse<byte[]> response = httpClient.createGet("http://localhost:" + port + "/content").idleTimeoutMillis(2000).build(ByteArrayResponseBodyConsumer::new)
+			.execute().get(5, TimeUnit.SECONDS);
+
+		assertArrayEquals(content, response.getBody());
+		assertEquals(1, remotePorts.size(), "The connection was not reused " + remotePorts);
+	}
+
+	@Test
+	public void failedRequestShouldBeSignaledToTheSubscriber() throws Exception {
+		ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+		CompletableFuture<HttpResponse<ResponseBodyPublisher>> future = httpClient.createGet("http://localhost:" + port + "/content")
+			.idleTimeoutMillis(200).build(() -> publisher).execute();
+
+		ExecutionException executionException = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+		assertTrue(executionException.getCause() instanceof TimeoutException);
+
+		SlowSubscriber subscriber = new SlowSubscriber();
+		publisher.subscribe(subscriber);
+		assertTrue(subscriber.completed.await(1, TimeUnit.SECONDS));
+		assertTrue(subscriber.error instanceof TimeoutException);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		subscriberExecutor.shutdownNow();
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+
+	private class SlowSubscriber implements ResponseBodySubscriber {
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private volatile Throwable error;
+		private ResponseBodySubscription subscription;
+
+		@Override
+		public void onSubscribe(ResponseBodySubscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			synchronized (body) {
+				body.write(bytes, 0, bytes.length);
+			}
+
+			subscriberExecutor.execute(() -> {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+				}
+				subscription.request(1);
+			});
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+// Copyright (C) king.com Ltd 2015
+// https://github.com/king/king-http-client
+// Author: Magnus Gustafsson
+// License: Apache 2.0, https://raw.github.com/king/king-http-client/LICENSE-APACHE
+
+package com.king.platform.net.http.integration;
+
+
+import com.king.platform.net.http.CompositeByteBufResponseBodyConsumer;
+import com.king.platform.net.http.HttpClient;
+import com.king.platform.net.http.HttpResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZeroCopyResponseBody {
+	IntegrationServer integrationServer;
+	private HttpClient httpClient;
+	private int port;
+	private byte[] content;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		content = new byte[2 * 1024 * 1024];
+		new Random().nextBytes(content);
+
+		integrationServer = new JettyIntegrationServer();
+		integrationServer.start();
+		port = integrationServer.getPort();
+
+		integrationServer.addServlet(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				if (req.getParameter("chunked") == null) {
+					resp.setContentLength(content.length);
+				}
+				resp.getOutputStream().write(content);
+				resp.getOutputStream().flush();
+			}
+		}, "/content");
+
+		httpClient = new TestingHttpClientFactory().create();
+		httpClient.start();
+	}
+
+	@Test
+	public void bodyShouldBeComposedOfTheReadBuffers() throws Exception {
+		HttpResponse<ByteBuf> response = httpClient.createGet("http://localhost:" + port + "/content").build
+			(CompositeByteBufResponseBodyConsumer::new).execute().get(5, TimeUnit.SECONDS);
+
+		ByteBuf body = response.getBody();
+		try {
+			assertEquals(200, response.getStatusCode());
+			assertTrue(body.nioBufferCount() > 1);
+			assertArrayEquals(content, ByteBufUtil.getBytes(body));
+		} finally {
+			body.release();
+		}
+	}
+
+	@Test
+	public void chunkedBodyShouldBeComposedOfTheReadBuffers() throws Exception {
+		HttpResponse<ByteBuf> response = httpClient.createGet("http://localhost:" + port + "/content").addQueryParameter("chunked", "true").build
+			(CompositeByteBufResponseBodyConsumer::new).execute().get(5, TimeUnit.SECONDS);
+
+		ByteBuf body = response.getBody();
+		try {
+			assertArrayEquals(content, ByteBufUtil.getBytes(body));
+		} finally {
+			body.release();
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		integrationServer.shutdown();
+		httpClient.shutdown();
+	}
+}